@@ -0,0 +1,32 @@
+package com.ensoftcorp.open.cg.benchmark;
+
+/**
+ * A measured unit of work over a program fixture.
+ *
+ * The harness calls setup once per fixture and then calls run for each warmup
+ * and measured iteration, so setup holds everything that is not meant to be
+ * measured (ex: the CHA call graph the type propagations start from). The value
+ * returned by run is consumed by the harness so that the work cannot be
+ * eliminated as dead code.
+ */
+public abstract class Benchmark {
+
+	/**
+	 * Returns the name of the benchmark (ex: CHA)
+	 * @return
+	 */
+	public abstract String getName();
+
+	/**
+	 * Prepares the benchmark to run against the given fixture
+	 * @param fixture
+	 */
+	public abstract void setup(ProgramFixture fixture);
+
+	/**
+	 * Runs a single iteration of the benchmark
+	 * @return a checksum of the result
+	 */
+	public abstract long run();
+
+}
@@ -0,0 +1,280 @@
+package com.ensoftcorp.open.cg.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Runs the call graph benchmarks against program fixtures from a plain JVM.
+ *
+ * Atlas does not need to be running and no workspace needs to be indexed, but
+ * the analysis classes reference Atlas types, so the classpath needs the
+ * harness, the com.ensoftcorp.open.cg plugin and its dependencies (the Atlas
+ * plugin jars, the open commons, java commons and points-to plugins and ASM),
+ * ex: the classpath of an Eclipse launch configuration for this plugin.
+ *
+ * Each benchmark is set up once per fixture, run for a number of warmup
+ * iterations (so the JIT has compiled the hot paths) and then timed for a
+ * number of measured iterations.
+ *
+ * The peak heap is the highest heap usage (summed over the heap memory pools)
+ * observed while a benchmark ran, which includes the fixture itself.
+ *
+ * Usage:
+ * BenchmarkHarness [--fixture file]... [--synthetic option=value,...]... [--scaling minCallsites,maxCallsites]
+ *                  [--benchmarks CHA,RA,...] [--warmup n] [--iterations n] [--csv file]
+ *
+ * The synthetic program options are seed, types, depth, fanout, methods, callsites,
+ * virtual, allocations, fields, reads, writes, exceptions and roots (see SyntheticProgram).
+ */
+public class BenchmarkHarness {
+
+	private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+	private static final int DEFAULT_MEASURED_ITERATIONS = 10;
+
+	// consumes the benchmark results so they cannot be eliminated
+	private static volatile long blackhole = 0;
+
+	public static void main(String[] args) throws IOException {
+		List<ProgramFixture> fixtures = new ArrayList<ProgramFixture>();
+		Set<String> benchmarkNames = null; // all benchmarks
+		int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+		int measuredIterations = DEFAULT_MEASURED_ITERATIONS;
+		File csv = null;
+		for(int i=0; i<args.length; i++){
+			String arg = args[i];
+			if(i + 1 >= args.length){
+				usage("Missing value for " + arg);
+			}
+			String value = args[++i];
+			if(arg.equals("--fixture")){
+				fixtures.add(ProgramFixture.load(new File(value)));
+			} else if(arg.equals("--synthetic")){
+				fixtures.add(configure(new SyntheticProgram(), value).generate());
+			} else if(arg.equals("--scaling")){
+				// the default synthetic program at each power of ten callsites in the range
+				String[] range = value.split(",");
+				if(range.length != 2){
+					usage("Expected minCallsites,maxCallsites but found " + value);
+				}
+				long minCallsites = Long.parseLong(range[0]);
+				long maxCallsites = Long.parseLong(range[1]);
+				if(minCallsites < 1){
+					usage("Expected at least 1 minCallsites but found " + minCallsites);
+				}
+				for(long callsites = minCallsites; callsites <= maxCallsites; callsites *= 10){
+					fixtures.add(SyntheticProgram.withCallsites(0, (int) Math.min(callsites, Integer.MAX_VALUE)).generate());
+					// stops before the next power of ten passes the maximum or overflows
+					if(callsites > maxCallsites / 10){
+						break;
+					}
+				}
+			} else if(arg.equals("--benchmarks")){
+				benchmarkNames = new HashSet<String>(Arrays.asList(value.split(",")));
+			} else if(arg.equals("--warmup")){
+				warmupIterations = Integer.parseInt(value);
+			} else if(arg.equals("--iterations")){
+				measuredIterations = Integer.parseInt(value);
+			} else if(arg.equals("--csv")){
+				csv = new File(value);
+			} else {
+				usage("Unknown option " + arg);
+			}
+		}
+		if(fixtures.isEmpty()){
+			usage("No fixtures given");
+		}
+		if(measuredIterations < 1){
+			usage("At least one measured iteration is required");
+		}
+
+		List<Result> results = new ArrayList<Result>();
+		System.out.println(String.format(Locale.ROOT, "%-40s %10s %-12s %12s %12s %12s %12s %14s", "Fixture", "Callsites", "Benchmark", "Mean (ms)", "StdDev (ms)", "Min (ms)", "Max (ms)", "Peak Heap (MB)"));
+		for(ProgramFixture fixture : fixtures){
+			for(Benchmark benchmark : CallGraphBenchmarks.getBenchmarks()){
+				if(benchmarkNames != null && !benchmarkNames.contains(benchmark.getName())){
+					continue;
+				}
+				Result result = measure(fixture, benchmark, warmupIterations, measuredIterations);
+				results.add(result);
+				System.out.println(String.format(Locale.ROOT, "%-40s %10d %-12s %12.3f %12.3f %12.3f %12.3f %14.1f", 
+						abbreviate(result.fixture, 40), result.callsites, result.benchmark, result.getMean(), result.getStandardDeviation(), result.getMin(), result.getMax(), toMegabytes(result.peakHeap)));
+			}
+		}
+
+		if(csv != null){
+			try (PrintWriter writer = new PrintWriter(csv, "UTF-8")) {
+				writer.println("fixture,callsites,benchmark,iterations,mean_ms,stddev_ms,min_ms,max_ms,peak_heap_mb");
+				for(Result result : results){
+					writer.println(String.format(Locale.ROOT, "%s,%d,%s,%d,%.3f,%.3f,%.3f,%.3f,%.1f", 
+							result.fixture, result.callsites, result.benchmark, result.times.length, result.getMean(), result.getStandardDeviation(), result.getMin(), result.getMax(), toMegabytes(result.peakHeap)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets up the benchmark for the fixture, then warms it up and measures it
+	 * @param fixture
+	 * @param benchmark
+	 * @param warmupIterations
+	 * @param measuredIterations
+	 * @return
+	 */
+	public static Result measure(ProgramFixture fixture, Benchmark benchmark, int warmupIterations, int measuredIterations){
+		benchmark.setup(fixture);
+		for(int i=0; i<warmupIterations; i++){
+			blackhole += benchmark.run();
+		}
+		System.gc();
+		List<MemoryPoolMXBean> heapPools = new ArrayList<MemoryPoolMXBean>();
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP){
+				pool.resetPeakUsage();
+				heapPools.add(pool);
+			}
+		}
+		double[] times = new double[measuredIterations];
+		for(int i=0; i<measuredIterations; i++){
+			long start = System.nanoTime();
+			blackhole += benchmark.run();
+			times[i] = (System.nanoTime() - start) / 1000000.0;
+		}
+		long peakHeap = 0;
+		for(MemoryPoolMXBean pool : heapPools){
+			peakHeap += pool.getPeakUsage().getUsed();
+		}
+		return new Result(fixture.getName(), fixture.getProgram().getCallsiteCount(), benchmark.getName(), times, peakHeap);
+	}
+
+	/**
+	 * Configures a synthetic program from comma separated option=value pairs
+	 * @param program
+	 * @param options
+	 * @return
+	 */
+	private static SyntheticProgram configure(SyntheticProgram program, String options){
+		for(String option : options.split(",")){
+			String[] pair = option.split("=");
+			if(pair.length != 2){
+				usage("Expected option=value but found " + option);
+			}
+			String value = pair[1];
+			switch(pair[0]){
+				case "seed": program.setSeed(Long.parseLong(value)); break;
+				case "types": program.setTypes(Integer.parseInt(value)); break;
+				case "depth": program.setHierarchyDepth(Integer.parseInt(value)); break;
+				case "fanout": program.setHierarchyFanOut(Integer.parseInt(value)); break;
+				case "methods": program.setMethodsPerType(Integer.parseInt(value)); break;
+				case "callsites": program.setCallsitesPerMethod(Integer.parseInt(value)); break;
+				case "virtual": program.setVirtualCallsiteRatio(Double.parseDouble(value)); break;
+				case "allocations": program.setAllocationDensity(Double.parseDouble(value)); break;
+				case "fields": program.setFieldsPerType(Integer.parseInt(value)); break;
+				case "reads": program.setFieldReadDensity(Double.parseDouble(value)); break;
+				case "writes": program.setFieldWriteDensity(Double.parseDouble(value)); break;
+				case "exceptions": program.setExceptionFlowDensity(Double.parseDouble(value)); break;
+				case "roots": program.setRootMethods(Integer.parseInt(value)); break;
+				default: usage("Unknown synthetic program option " + pair[0]);
+			}
+		}
+		return program;
+	}
+
+	private static String abbreviate(String name, int length){
+		return name.length() <= length ? name : name.substring(0, length - 3) + "...";
+	}
+
+	private static double toMegabytes(long bytes){
+		return bytes / (1024.0 * 1024.0);
+	}
+
+	private static void usage(String message){
+		System.err.println(message);
+		System.err.println("Usage: BenchmarkHarness [--fixture file]... [--synthetic option=value,...]... [--scaling minCallsites,maxCallsites] "
+				+ "[--benchmarks CHA,RA,RTA,MTA,FTA,ETA,ClassicXTA,XTA,EdgeWriter] [--warmup n] [--iterations n] [--csv file]");
+		System.err.println("Synthetic program options: seed, types, depth, fanout, methods, callsites, virtual, allocations, fields, reads, writes, exceptions, roots");
+		System.exit(1);
+	}
+
+	/**
+	 * The measured iteration times of a benchmark against a fixture
+	 */
+	public static class Result {
+		private final String fixture;
+		private final int callsites;
+		private final String benchmark;
+		private final double[] times;
+		private final long peakHeap;
+
+		private Result(String fixture, int callsites, String benchmark, double[] times, long peakHeap){
+			this.fixture = fixture;
+			this.callsites = callsites;
+			this.benchmark = benchmark;
+			this.times = times;
+			this.peakHeap = peakHeap;
+		}
+
+		public String getFixture(){
+			return fixture;
+		}
+
+		public int getCallsites(){
+			return callsites;
+		}
+
+		public String getBenchmark(){
+			return benchmark;
+		}
+
+		/**
+		 * Returns the peak heap usage in bytes while the measured iterations ran
+		 * @return
+		 */
+		public long getPeakHeap(){
+			return peakHeap;
+		}
+
+		public double getMean(){
+			double sum = 0;
+			for(double time : times){
+				sum += time;
+			}
+			return sum / times.length;
+		}
+
+		public double getStandardDeviation(){
+			double mean = getMean();
+			double sum = 0;
+			for(double time : times){
+				sum += (time - mean) * (time - mean);
+			}
+			return Math.sqrt(sum / times.length);
+		}
+
+		public double getMin(){
+			double min = Double.MAX_VALUE;
+			for(double time : times){
+				min = Math.min(min, time);
+			}
+			return min;
+		}
+
+		public double getMax(){
+			double max = 0;
+			for(double time : times){
+				max = Math.max(max, time);
+			}
+			return max;
+		}
+	}
+
+}
@@ -0,0 +1,317 @@
+package com.ensoftcorp.open.cg.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import com.ensoftcorp.open.cg.analysis.ClassHierarchyAnalysis;
+import com.ensoftcorp.open.cg.analysis.RapidTypeAnalysis;
+import com.ensoftcorp.open.cg.analysis.ReachabilityAnalysis;
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
+import com.ensoftcorp.open.cg.propagation.ClassicHybridTypePropagation;
+import com.ensoftcorp.open.cg.propagation.ExceptionTypePropagation;
+import com.ensoftcorp.open.cg.propagation.FieldTypePropagation;
+import com.ensoftcorp.open.cg.propagation.HybridTypePropagation;
+import com.ensoftcorp.open.cg.propagation.MethodTypePropagation;
+import com.ensoftcorp.open.cg.propagation.TypePropagation;
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.DispatchResolver;
+import com.ensoftcorp.open.cg.snapshot.ExceptionFlow;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.cg.utils.CallEdgeBuffer;
+import com.ensoftcorp.open.cg.utils.LongHashSet;
+
+/**
+ * The benchmarks of the call graph algorithms.
+ *
+ * Each benchmark runs the part of an analysis that works against the program
+ * snapshot, which is where the analyses spend their time once the snapshot is
+ * built, by calling the same snapshot level entry point the analysis runs.
+ * Reading the Atlas graph into a snapshot and writing the resolved edges back
+ * to the graph need a running Atlas, so the edge writer benchmark measures the
+ * buffering of resolved edges that precedes the graph writes (see CallEdgeBuffer).
+ *
+ * Library call edges are not resolved, since a fixture does not distinguish
+ * application and library methods.
+ */
+public class CallGraphBenchmarks {
+
+	private CallGraphBenchmarks(){}
+
+	/**
+	 * Returns a new instance of every benchmark
+	 * @return
+	 */
+	public static List<Benchmark> getBenchmarks(){
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new ClassHierarchy());
+		benchmarks.add(new Reachability());
+		benchmarks.add(new RapidType());
+		benchmarks.add(new MethodType());
+		benchmarks.add(new FieldType());
+		benchmarks.add(new ExceptionType());
+		benchmarks.add(new ClassicHybridType());
+		benchmarks.add(new HybridType());
+		benchmarks.add(new EdgeWriter());
+		return benchmarks;
+	}
+
+	/**
+	 * CHA, every callsite resolved to every override in the subtypes of its receiver type
+	 * (see ClassHierarchyAnalysis.resolveCallsites)
+	 */
+	public static class ClassHierarchy extends Benchmark {
+		private ProgramSnapshot program;
+
+		@Override
+		public String getName() {
+			return "CHA";
+		}
+
+		@Override
+		public void setup(ProgramFixture fixture) {
+			program = fixture.getProgram();
+		}
+
+		@Override
+		public long run() {
+			CallEdgeBuffer callEdges = new CallEdgeBuffer(ClassHierarchyAnalysis.CALL, ClassHierarchyAnalysis.PER_CONTROL_FLOW);
+			CallEdgeBuffer libraryCallEdges = new CallEdgeBuffer(ClassHierarchyAnalysis.LIBRARY_CALL, ClassHierarchyAnalysis.LIBRARY_PER_CONTROL_FLOW);
+			ClassHierarchyAnalysis.resolveCallsites(program, false, callEdges, libraryCallEdges);
+			return callEdges.getCallEdgeCount() + callEdges.getPerControlFlowEdgeCount();
+		}
+	}
+
+	/**
+	 * RA, every dynamic dispatch resolved to every concrete method with a matching signature
+	 * (see ReachabilityAnalysis.resolveCallsites)
+	 */
+	public static class Reachability extends Benchmark {
+		private ProgramSnapshot program;
+
+		@Override
+		public String getName() {
+			return "RA";
+		}
+
+		@Override
+		public void setup(ProgramFixture fixture) {
+			program = fixture.getProgram();
+		}
+
+		@Override
+		public long run() {
+			CallEdgeBuffer callEdges = new CallEdgeBuffer(ReachabilityAnalysis.CALL, ReachabilityAnalysis.PER_CONTROL_FLOW);
+			CallEdgeBuffer libraryCallEdges = new CallEdgeBuffer(ReachabilityAnalysis.LIBRARY_CALL, ReachabilityAnalysis.LIBRARY_PER_CONTROL_FLOW);
+			ReachabilityAnalysis.resolveCallsites(program, false, null, callEdges, libraryCallEdges);
+			return callEdges.getCallEdgeCount();
+		}
+	}
+
+	/**
+	 * RTA with reachability, the dispatches of the methods reachable from the roots
+	 * restricted to the allocated types (see RapidTypeAnalysis.resolveReachableCallsites)
+	 */
+	public static class RapidType extends Benchmark {
+		private ProgramSnapshot program;
+		private BitSet rootMethods;
+		private BitSet allocatedTypes;
+
+		@Override
+		public String getName() {
+			return "RTA";
+		}
+
+		@Override
+		public void setup(ProgramFixture fixture) {
+			program = fixture.getProgram();
+			rootMethods = new BitSet(program.getMethodCount());
+			for(int rootMethod : fixture.getRootMethods()){
+				rootMethods.set(rootMethod);
+			}
+
+			// the allocated types and the parameter types of the roots
+			allocatedTypes = new BitSet(program.getTypeCount());
+			Adjacency allocationTypes = program.getAllocationTypes();
+			for(int i=0; i<allocationTypes.size(); i++){
+				allocatedTypes.set(allocationTypes.target(i));
+			}
+			Adjacency parameterTypes = program.getParameterTypes();
+			for(int rootMethod = rootMethods.nextSetBit(0); rootMethod >= 0; rootMethod = rootMethods.nextSetBit(rootMethod+1)){
+				for(int i=parameterTypes.start(rootMethod); i<parameterTypes.end(rootMethod); i++){
+					allocatedTypes.set(parameterTypes.target(i));
+				}
+			}
+		}
+
+		@Override
+		public long run() {
+			CallEdgeBuffer callEdges = new CallEdgeBuffer(RapidTypeAnalysis.CALL, RapidTypeAnalysis.PER_CONTROL_FLOW);
+			RapidTypeAnalysis.resolveReachableCallsites(program, rootMethods, (BitSet) allocatedTypes.clone(), callEdges, new AnalysisMetrics());
+			return callEdges.getCallEdgeCount();
+		}
+	}
+
+	/**
+	 * A type propagation started from the CHA call graph, which is resolved once in setup
+	 */
+	private static abstract class PropagationBenchmark extends Benchmark {
+		private ProgramSnapshot program;
+		private CallGraphSnapshot<Void> cgCHA;
+		private ExceptionFlow exceptionFlow;
+		private int[] rootMethods;
+
+		protected abstract TypePropagation createPropagation(ProgramSnapshot program, CallGraphSnapshot<Void> cgCHA, ExceptionFlow exceptionFlow);
+
+		@Override
+		public void setup(ProgramFixture fixture) {
+			program = fixture.getProgram();
+			exceptionFlow = fixture.getExceptionFlow();
+			rootMethods = fixture.getRootMethods();
+			CallEdgeBuffer callEdges = new CallEdgeBuffer(ClassHierarchyAnalysis.CALL, ClassHierarchyAnalysis.PER_CONTROL_FLOW);
+			CallEdgeBuffer libraryCallEdges = new CallEdgeBuffer(ClassHierarchyAnalysis.LIBRARY_CALL, ClassHierarchyAnalysis.LIBRARY_PER_CONTROL_FLOW);
+			ClassHierarchyAnalysis.resolveCallsites(program, false, callEdges, libraryCallEdges);
+			CallGraphSnapshot.Builder<Void> builder = new CallGraphSnapshot.Builder<Void>(program.getMethodCount(), program.getCallsiteCount());
+			for(long key : callEdges.getCallEdges()){
+				builder.addCallEdge(LongHashSet.high(key), LongHashSet.low(key), null);
+			}
+			for(long key : callEdges.getPerControlFlowEdges()){
+				builder.addPerControlFlowEdge(LongHashSet.high(key), LongHashSet.low(key), null);
+			}
+			cgCHA = builder.build();
+		}
+
+		@Override
+		public long run() {
+			TypePropagation propagation = createPropagation(program, cgCHA, exceptionFlow);
+			propagation.run(rootMethods);
+			return propagation.getCallEdges().cardinality();
+		}
+	}
+
+	public static class MethodType extends PropagationBenchmark {
+		@Override
+		public String getName() {
+			return "MTA";
+		}
+
+		@Override
+		protected TypePropagation createPropagation(ProgramSnapshot program, CallGraphSnapshot<Void> cgCHA, ExceptionFlow exceptionFlow) {
+			return new MethodTypePropagation(program, cgCHA);
+		}
+	}
+
+	public static class FieldType extends PropagationBenchmark {
+		@Override
+		public String getName() {
+			return "FTA";
+		}
+
+		@Override
+		protected TypePropagation createPropagation(ProgramSnapshot program, CallGraphSnapshot<Void> cgCHA, ExceptionFlow exceptionFlow) {
+			return new FieldTypePropagation(program, cgCHA);
+		}
+	}
+
+	public static class ExceptionType extends PropagationBenchmark {
+		@Override
+		public String getName() {
+			return "ETA";
+		}
+
+		@Override
+		protected TypePropagation createPropagation(ProgramSnapshot program, CallGraphSnapshot<Void> cgCHA, ExceptionFlow exceptionFlow) {
+			return new ExceptionTypePropagation(program, cgCHA, exceptionFlow);
+		}
+	}
+
+	public static class ClassicHybridType extends PropagationBenchmark {
+		@Override
+		public String getName() {
+			return "ClassicXTA";
+		}
+
+		@Override
+		protected TypePropagation createPropagation(ProgramSnapshot program, CallGraphSnapshot<Void> cgCHA, ExceptionFlow exceptionFlow) {
+			return new ClassicHybridTypePropagation(program, cgCHA);
+		}
+	}
+
+	public static class HybridType extends PropagationBenchmark {
+		@Override
+		public String getName() {
+			return "XTA";
+		}
+
+		@Override
+		protected TypePropagation createPropagation(ProgramSnapshot program, CallGraphSnapshot<Void> cgCHA, ExceptionFlow exceptionFlow) {
+			return new HybridTypePropagation(program, cgCHA, exceptionFlow);
+		}
+	}
+
+	/**
+	 * The buffering of resolved call edges before they are written to the graph
+	 * (see CallEdgeBuffer and CallGraphConstruction), replayed from the CHA edges
+	 * in resolution order so that duplicate edges are buffered too
+	 */
+	public static class EdgeWriter extends Benchmark {
+		// (callsite, method, target method) triples
+		private int[] resolvedEdges;
+
+		@Override
+		public String getName() {
+			return "EdgeWriter";
+		}
+
+		@Override
+		public void setup(ProgramFixture fixture) {
+			ProgramSnapshot program = fixture.getProgram();
+			DispatchResolver dispatchResolver = new DispatchResolver(program);
+			Adjacency callsites = program.getCallsites();
+			int size = 0;
+			int[] edges = new int[48];
+			for(int method=0; method<program.getMethodCount(); method++){
+				for(int i=callsites.start(method); i<callsites.end(method); i++){
+					int callsite = callsites.target(i);
+					BitSet targets = new BitSet();
+					if(program.isStaticDispatch(callsite)){
+						int targetMethod = program.getInvokedFunction(callsite);
+						if(targetMethod != ProgramSnapshot.NONE){
+							targets.set(targetMethod);
+						}
+					} else if(program.isDynamicDispatch(callsite)){
+						targets = dispatchResolver.resolveDynamicDispatch(callsite, null);
+					}
+					for(int target = targets.nextSetBit(0); target >= 0; target = targets.nextSetBit(target+1)){
+						if(size + 3 > edges.length){
+							edges = Arrays.copyOf(edges, edges.length * 2);
+						}
+						edges[size++] = callsite;
+						edges[size++] = method;
+						edges[size++] = target;
+					}
+				}
+			}
+			resolvedEdges = Arrays.copyOf(edges, size);
+		}
+
+		@Override
+		public long run() {
+			CallEdgeBuffer callEdges = new CallEdgeBuffer(ClassHierarchyAnalysis.CALL, ClassHierarchyAnalysis.PER_CONTROL_FLOW);
+			for(int i=0; i<resolvedEdges.length; i+=3){
+				callEdges.add(resolvedEdges[i], resolvedEdges[i+1], resolvedEdges[i+2]);
+			}
+			long checksum = 0;
+			for(long key : callEdges.getCallEdges()){
+				checksum += key;
+			}
+			for(long key : callEdges.getPerControlFlowEdges()){
+				checksum += key;
+			}
+			return checksum;
+		}
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.ensoftcorp.open.cg.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.db.set.AtlasSet;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.analysis.FactBase;
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ExceptionFlowIndex;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.commons.analysis.SetDefinitions;
+import com.ensoftcorp.open.java.commons.analyzers.JavaProgramEntryPoints;
+
+/**
+ * Records the program in the current Atlas index as a program fixture, so that
+ * the analyses can be benchmarked against a real program without Atlas.
+ *
+ * Meant to be run from an Atlas shell, ex:
+ * FixtureRecorder.record("my-app", new File("/tmp/my-app.fixture"))
+ */
+public class FixtureRecorder {
+
+	private FixtureRecorder(){}
+
+	/**
+	 * Records the indexed program and saves it to the given file
+	 * @param name
+	 * @param file
+	 * @return the recorded fixture
+	 * @throws IOException
+	 */
+	public static ProgramFixture record(String name, File file) throws IOException {
+		// the snapshot the analyses run against (CHA runs first since it may add library summaries to the graph)
+		FactBase facts = FactBase.getInstance();
+		AtlasProgramSnapshot snapshot = facts.getSnapshot();
+		ProgramSnapshot program = snapshot.getProgram();
+
+		// the exception flow is recorded up front, since indexing it needs the graph
+		ExceptionFlowIndex exceptionFlow = facts.getExceptionFlow();
+		Adjacency.Builder throwingMethods = new Adjacency.Builder(program.getMethodCount());
+		for(int method=0; method<program.getMethodCount(); method++){
+			for(int throwingMethod : exceptionFlow.getThrowingMethods(method)){
+				throwingMethods.add(method, throwingMethod);
+			}
+		}
+
+		// the same root methods the analyses start from
+		AtlasSet<Node> rootMethods = JavaProgramEntryPoints.findMainMethods().eval().nodes();
+		if(rootMethods.isEmpty()){
+			rootMethods = SetDefinitions.app().nodesTaggedWithAll(XCSG.publicVisibility, XCSG.Method).eval().nodes();
+		}
+
+		ProgramFixture fixture = new ProgramFixture(name, program, throwingMethods.build(), snapshot.getMethodIds(rootMethods));
+		fixture.save(file);
+		return fixture;
+	}
+
+}
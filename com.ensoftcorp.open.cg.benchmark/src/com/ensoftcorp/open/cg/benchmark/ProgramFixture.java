@@ -0,0 +1,284 @@
+package com.ensoftcorp.open.cg.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.ExceptionFlow;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+
+/**
+ * The input of a benchmark: a program snapshot, the exception flow between its
+ * methods and the root methods the reachability based analyses start from.
+ *
+ * A program snapshot holds everything the call graph algorithms read from the
+ * Atlas graph, so a fixture is an in memory stand-in for the graph that can be
+ * benchmarked without an Atlas index. Fixtures are either generated (see SyntheticProgram)
+ * or recorded from an Atlas index (see FixtureRecorder) and saved to a file.
+ */
+public class ProgramFixture {
+
+	private static final int MAGIC = 0x43475046; // CGPF
+	private static final int VERSION = 1;
+
+	// the program builder relations an adjacency is read into
+	private static final int SUPERTYPES = 0;
+	private static final int CONTAINED_CALLSITES = 1;
+	private static final int ALLOCATION_TYPES = 2;
+	private static final int PARAMETER_TYPES = 3;
+	private static final int RETURN_TYPES = 4;
+	private static final int READ_FIELDS = 5;
+	private static final int WRITTEN_FIELDS = 6;
+	private static final int RECEIVER_TYPES = 7;
+	private static final int FIELD_TYPES = 8;
+	private static final int READING_METHODS = 9;
+
+	private final String name;
+	private final ProgramSnapshot program;
+	private final Adjacency throwingMethods;
+	private final Adjacency catchingMethods;
+	private final int[] rootMethods;
+
+	/**
+	 * @param name
+	 * @param program
+	 * @param throwingMethods method to the methods that throw an exception the method could catch
+	 * @param rootMethods
+	 */
+	public ProgramFixture(String name, ProgramSnapshot program, Adjacency throwingMethods, int[] rootMethods){
+		this.name = name;
+		this.program = program;
+		this.throwingMethods = throwingMethods;
+		this.catchingMethods = throwingMethods.reverse(program.getMethodCount());
+		this.rootMethods = rootMethods;
+	}
+
+	public String getName(){
+		return name;
+	}
+
+	public ProgramSnapshot getProgram(){
+		return program;
+	}
+
+	public int[] getRootMethods(){
+		return rootMethods;
+	}
+
+	/**
+	 * Returns the exception flow between the methods of the program
+	 * @return
+	 */
+	public ExceptionFlow getExceptionFlow(){
+		return new ExceptionFlow(){
+			@Override
+			public int[] getThrowingMethods(int method) {
+				return throwingMethods.toArray(method);
+			}
+
+			@Override
+			public int[] getCatchingMethods(int method) {
+				return catchingMethods.toArray(method);
+			}
+		};
+	}
+
+	/**
+	 * Saves the fixture to a file
+	 * @param file
+	 * @throws IOException
+	 */
+	public void save(File file) throws IOException {
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeUTF(name);
+			output.writeInt(program.getTypeCount());
+			output.writeInt(program.getMethodCount());
+			output.writeInt(program.getCallsiteCount());
+			output.writeInt(program.getFieldCount());
+
+			// types
+			for(int type=0; type<program.getTypeCount(); type++){
+				output.writeBoolean(program.isAbstractClass(type));
+			}
+			writeAdjacency(output, program.getSupertypes());
+
+			// methods
+			boolean[] staticInitializers = new boolean[program.getMethodCount()];
+			for(int type=0; type<program.getTypeCount(); type++){
+				int staticInitializer = program.getStaticInitializer(type);
+				if(staticInitializer != ProgramSnapshot.NONE){
+					staticInitializers[staticInitializer] = true;
+				}
+			}
+			for(int method=0; method<program.getMethodCount(); method++){
+				output.writeInt(program.getMethodFlags(method));
+				output.writeInt(program.getDeclaringType(method));
+				int signature = program.getSignature(method);
+				output.writeBoolean(signature != ProgramSnapshot.NONE);
+				if(signature != ProgramSnapshot.NONE){
+					output.writeUTF(program.getSignatureString(signature));
+				}
+				output.writeBoolean(staticInitializers[method]);
+			}
+			writeAdjacency(output, program.getContainedCallsites());
+			writeAdjacency(output, program.getAllocationTypes());
+			writeAdjacency(output, program.getParameterTypes());
+			writeAdjacency(output, program.getReturnTypes());
+			writeAdjacency(output, program.getReadFields());
+			writeAdjacency(output, program.getWrittenFields());
+
+			// callsites
+			for(int callsite=0; callsite<program.getCallsiteCount(); callsite++){
+				output.writeInt(program.getCallsiteFlags(callsite));
+				output.writeInt(program.getCallsiteMethod(callsite));
+				output.writeInt(program.getInvokedFunction(callsite));
+				output.writeInt(program.getInvokedSignature(callsite));
+			}
+			writeAdjacency(output, program.getReceiverTypes());
+
+			// fields
+			writeAdjacency(output, program.getFieldTypes());
+			writeAdjacency(output, program.getReadingMethods());
+
+			// exception flow and roots
+			writeAdjacency(output, throwingMethods);
+			output.writeInt(rootMethods.length);
+			for(int rootMethod : rootMethods){
+				output.writeInt(rootMethod);
+			}
+		}
+	}
+
+	/**
+	 * Loads a fixture saved to a file
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static ProgramFixture load(File file) throws IOException {
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(input.readInt() != MAGIC || input.readInt() != VERSION){
+				throw new IOException(file + " is not a program fixture");
+			}
+			String name = input.readUTF();
+			int types = input.readInt();
+			int methods = input.readInt();
+			int callsites = input.readInt();
+			int fields = input.readInt();
+			ProgramSnapshot.Builder builder = new ProgramSnapshot.Builder(types, methods, callsites, fields);
+
+			// types
+			for(int type=0; type<types; type++){
+				if(input.readBoolean()){
+					builder.setTypeFlags(type, ProgramSnapshot.TYPE_ABSTRACT_CLASS);
+				}
+			}
+			readAdjacency(input, builder, SUPERTYPES);
+
+			// methods
+			for(int method=0; method<methods; method++){
+				builder.setMethodFlags(method, input.readInt());
+				int declaringType = input.readInt();
+				if(declaringType != ProgramSnapshot.NONE){
+					builder.setDeclaringType(method, declaringType);
+				}
+				if(input.readBoolean()){
+					builder.setSignature(method, input.readUTF());
+				}
+				if(input.readBoolean()){
+					builder.setStaticInitializer(method);
+				}
+			}
+			readAdjacency(input, builder, CONTAINED_CALLSITES);
+			readAdjacency(input, builder, ALLOCATION_TYPES);
+			readAdjacency(input, builder, PARAMETER_TYPES);
+			readAdjacency(input, builder, RETURN_TYPES);
+			readAdjacency(input, builder, READ_FIELDS);
+			readAdjacency(input, builder, WRITTEN_FIELDS);
+
+			// callsites
+			for(int callsite=0; callsite<callsites; callsite++){
+				builder.setCallsiteFlags(callsite, input.readInt());
+				int method = input.readInt();
+				if(method != ProgramSnapshot.NONE){
+					builder.setCallsiteMethod(callsite, method);
+				}
+				builder.setInvokedFunction(callsite, input.readInt());
+				builder.setInvokedSignature(callsite, input.readInt());
+			}
+			readAdjacency(input, builder, RECEIVER_TYPES);
+
+			// fields
+			readAdjacency(input, builder, FIELD_TYPES);
+			readAdjacency(input, builder, READING_METHODS);
+
+			// exception flow and roots
+			Adjacency throwingMethods = readAdjacency(input);
+			int[] rootMethods = new int[input.readInt()];
+			for(int i=0; i<rootMethods.length; i++){
+				rootMethods[i] = input.readInt();
+			}
+			return new ProgramFixture(name, builder.build(), throwingMethods, rootMethods);
+		}
+	}
+
+	private static void writeAdjacency(DataOutputStream output, Adjacency adjacency) throws IOException {
+		output.writeInt(adjacency.rows());
+		for(int row=0; row<adjacency.rows(); row++){
+			output.writeInt(adjacency.size(row));
+			for(int i=adjacency.start(row); i<adjacency.end(row); i++){
+				output.writeInt(adjacency.target(i));
+			}
+		}
+	}
+
+	/**
+	 * Reads an adjacency
+	 */
+	private static Adjacency readAdjacency(DataInputStream input) throws IOException {
+		int rows = input.readInt();
+		Adjacency.Builder adjacency = new Adjacency.Builder(rows);
+		for(int row=0; row<rows; row++){
+			int targets = input.readInt();
+			for(int i=0; i<targets; i++){
+				adjacency.add(row, input.readInt());
+			}
+		}
+		return adjacency.build();
+	}
+
+	/**
+	 * Reads an adjacency into the given relation of the program builder
+	 */
+	private static void readAdjacency(DataInputStream input, ProgramSnapshot.Builder builder, int relation) throws IOException {
+		int rows = input.readInt();
+		for(int row=0; row<rows; row++){
+			int targets = input.readInt();
+			for(int i=0; i<targets; i++){
+				int target = input.readInt();
+				switch(relation){
+					case SUPERTYPES: builder.addSupertype(row, target); break;
+					case CONTAINED_CALLSITES: builder.addContainedCallsite(row, target); break;
+					case ALLOCATION_TYPES: builder.addAllocationType(row, target); break;
+					case PARAMETER_TYPES: builder.addParameterType(row, target); break;
+					case RETURN_TYPES: builder.addReturnType(row, target); break;
+					case READ_FIELDS: builder.addReadField(row, target); break;
+					case WRITTEN_FIELDS: builder.addWrittenField(row, target); break;
+					case RECEIVER_TYPES: builder.addReceiverType(row, target); break;
+					case FIELD_TYPES: builder.addFieldType(row, target); break;
+					case READING_METHODS: builder.addReadingMethod(row, target); break;
+					default: throw new IllegalArgumentException("Unknown relation " + relation);
+				}
+			}
+		}
+	}
+
+}
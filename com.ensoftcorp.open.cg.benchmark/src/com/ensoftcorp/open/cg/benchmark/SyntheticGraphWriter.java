@@ -0,0 +1,259 @@
+package com.ensoftcorp.open.cg.benchmark;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.query.Attr;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.cg.utils.LongHashSet;
+import com.ensoftcorp.open.java.commons.wishful.JavaStopGap;
+
+/**
+ * Writes a program fixture (typically a SyntheticProgram) to the Atlas graph
+ * as an XCSG shaped application, so the analyses can be run (and the index
+ * queried) against programs larger than the ones that can be indexed locally.
+ *
+ * The program is written as a project with a single package. Elements carry the
+ * tags, attributes and edges the analyses and AtlasProgramSnapshot read: types
+ * with Supertype edges, methods with parameters, return values and Overrides
+ * edges, callsites with InvokedFunction or InvokedSignature edges and a receiver
+ * object, instantiations, and fields read and written through interprocedural
+ * data flow edges. A fixture does not record the type that declares a field, so
+ * fields are contained by the package. The exception flow of the fixture is not
+ * written, since it would need the control flow of each method.
+ *
+ * Meant to be run from an Atlas shell, ex:
+ * SyntheticGraphWriter.write(new SyntheticProgram().generate())
+ */
+public class SyntheticGraphWriter {
+
+	private SyntheticGraphWriter(){}
+
+	/**
+	 * Writes the program of the fixture to the graph
+	 * @param fixture
+	 * @return the project node containing the program
+	 */
+	public static Node write(ProgramFixture fixture){
+		ProgramSnapshot program = fixture.getProgram();
+
+		Node project = Graph.U.createNode();
+		project.tag(XCSG.Project);
+		project.putAttr(XCSG.name, fixture.getName());
+		Node pkg = createNode(project, XCSG.Package, "synthetic");
+
+		// types
+		Node[] types = new Node[program.getTypeCount()];
+		for(int type=0; type<types.length; type++){
+			types[type] = createNode(pkg, XCSG.Java.Class, "T" + type);
+			types[type].tag(XCSG.Type);
+			types[type].tag(XCSG.Classifier);
+			if(program.isAbstractClass(type)){
+				types[type].tag(XCSG.Java.AbstractClass);
+			}
+		}
+		Adjacency supertypes = program.getSupertypes();
+		for(int type=0; type<types.length; type++){
+			for(int i=supertypes.start(type); i<supertypes.end(type); i++){
+				createEdge(types[type], types[supertypes.target(i)], XCSG.Supertype);
+			}
+		}
+
+		// methods
+		Node[] methods = new Node[program.getMethodCount()];
+		for(int method=0; method<methods.length; method++){
+			int type = program.getDeclaringType(method);
+			int signature = program.getSignature(method);
+			String signatureString = signature == ProgramSnapshot.NONE ? "m" + method + "()" : program.getSignatureString(signature);
+			Node methodNode = createNode(type == ProgramSnapshot.NONE ? pkg : types[type], XCSG.Method, signatureString.substring(0, signatureString.indexOf('(')));
+			methodNode.putAttr(JavaStopGap.SIGNATURE, signatureString);
+			if(program.hasMethodFlag(method, ProgramSnapshot.METHOD_ABSTRACT)){
+				methodNode.tag(XCSG.abstractMethod);
+			}
+			if(program.hasMethodFlag(method, ProgramSnapshot.METHOD_STATIC)){
+				methodNode.tag(Attr.Node.IS_STATIC);
+				methodNode.tag(XCSG.ClassMethod);
+			} else {
+				methodNode.tag(XCSG.InstanceMethod);
+			}
+			if(program.hasMethodFlag(method, ProgramSnapshot.METHOD_CONSTRUCTOR)){
+				methodNode.tag(XCSG.Constructor);
+			}
+			if(program.hasMethodFlag(method, ProgramSnapshot.METHOD_PUBLIC)){
+				methodNode.tag(XCSG.publicVisibility);
+			}
+			methods[method] = methodNode;
+		}
+		for(int type=0; type<types.length; type++){
+			int staticInitializer = program.getStaticInitializer(type);
+			if(staticInitializer != ProgramSnapshot.NONE){
+				methods[staticInitializer].putAttr(XCSG.name, "<clinit>");
+			}
+		}
+		writeParameters(program, methods, types);
+		writeOverrides(program, methods);
+
+		// callsites
+		Adjacency receiverTypes = program.getReceiverTypes();
+		for(int callsite=0; callsite<program.getCallsiteCount(); callsite++){
+			int method = program.getCallsiteMethod(callsite);
+			if(method == ProgramSnapshot.NONE){
+				continue;
+			}
+			Node callsiteNode = createNode(methods[method], XCSG.CallSite, "callsite" + callsite + "(...)");
+			if(program.isStaticDispatch(callsite)){
+				callsiteNode.tag(XCSG.StaticDispatchCallSite);
+				int invokedFunction = program.getInvokedFunction(callsite);
+				if(invokedFunction != ProgramSnapshot.NONE){
+					createEdge(callsiteNode, methods[invokedFunction], XCSG.InvokedFunction);
+				}
+			} else if(program.isDynamicDispatch(callsite)){
+				callsiteNode.tag(XCSG.DynamicDispatchCallSite);
+				int invokedSignature = program.getInvokedSignature(callsite);
+				if(invokedSignature != ProgramSnapshot.NONE){
+					createEdge(callsiteNode, methods[invokedSignature], XCSG.InvokedSignature);
+				}
+
+				// the receiver object flows to the this node passed to the callsite
+				Node thisNode = createNode(methods[method], XCSG.IdentityPass, "this.");
+				Node receiverObject = createNode(methods[method], XCSG.DataFlow_Node, "receiver");
+				createEdge(receiverObject, thisNode, XCSG.LocalDataFlow);
+				createEdge(thisNode, callsiteNode, XCSG.IdentityPassedTo);
+				for(int i=receiverTypes.start(callsite); i<receiverTypes.end(callsite); i++){
+					createEdge(receiverObject, types[receiverTypes.target(i)], XCSG.TypeOf);
+				}
+			}
+		}
+
+		// allocations
+		Adjacency allocationTypes = program.getAllocationTypes();
+		for(int method=0; method<methods.length; method++){
+			for(int i=allocationTypes.start(method); i<allocationTypes.end(method); i++){
+				int type = allocationTypes.target(i);
+				Node instantiation = createNode(methods[method], XCSG.Instantiation, "new T" + type);
+				instantiation.tag(XCSG.DataFlow_Node);
+				createEdge(instantiation, types[type], XCSG.TypeOf);
+			}
+		}
+
+		// fields
+		Node[] fields = new Node[program.getFieldCount()];
+		Adjacency fieldTypes = program.getFieldTypes();
+		for(int field=0; field<fields.length; field++){
+			fields[field] = createNode(pkg, XCSG.Field, "f" + field);
+			fields[field].tag(XCSG.DataFlow_Node);
+			for(int i=fieldTypes.start(field); i<fieldTypes.end(field); i++){
+				createEdge(fields[field], types[fieldTypes.target(i)], XCSG.TypeOf);
+			}
+		}
+		Adjacency readingMethods = program.getReadingMethods();
+		for(int field=0; field<fields.length; field++){
+			for(int i=readingMethods.start(field); i<readingMethods.end(field); i++){
+				Node read = createNode(methods[readingMethods.target(i)], XCSG.DataFlow_Node, "f" + field);
+				createEdge(fields[field], read, XCSG.InterproceduralDataFlow);
+			}
+		}
+		Adjacency writtenFields = program.getWrittenFields();
+		for(int method=0; method<methods.length; method++){
+			for(int i=writtenFields.start(method); i<writtenFields.end(method); i++){
+				int field = writtenFields.target(i);
+				Node write = createNode(methods[method], XCSG.Assignment, "f" + field + " =");
+				write.tag(XCSG.DataFlow_Node);
+				createEdge(write, fields[field], XCSG.InterproceduralDataFlow);
+			}
+		}
+
+		// the program changed, so the next analysis needs a new snapshot
+		AtlasProgramSnapshot.invalidate();
+		return project;
+	}
+
+	/**
+	 * Writes the parameters and return value of each method
+	 */
+	private static void writeParameters(ProgramSnapshot program, Node[] methods, Node[] types){
+		Adjacency parameterTypes = program.getParameterTypes();
+		Adjacency returnTypes = program.getReturnTypes();
+		for(int method=0; method<methods.length; method++){
+			for(int i=parameterTypes.start(method); i<parameterTypes.end(method); i++){
+				int parameterIndex = i - parameterTypes.start(method);
+				Node parameter = createNode(methods[method], XCSG.Parameter, "p" + parameterIndex);
+				parameter.putAttr(XCSG.parameterIndex, parameterIndex);
+				createEdge(parameter, types[parameterTypes.target(i)], XCSG.TypeOf);
+			}
+			for(int i=returnTypes.start(method); i<returnTypes.end(method); i++){
+				Node returnValue = createNode(methods[method], XCSG.ReturnValue, "return");
+				createEdge(returnValue, types[returnTypes.target(i)], XCSG.TypeOf);
+			}
+		}
+	}
+
+	/**
+	 * Writes an Overrides edge from each instance method to the method with the same
+	 * signature declared by the nearest supertypes of its declaring type
+	 */
+	private static void writeOverrides(ProgramSnapshot program, Node[] methods){
+		// (declaring type, signature) to method
+		Map<Long,Integer> declaredMethods = new HashMap<Long,Integer>();
+		for(int method=0; method<methods.length; method++){
+			int type = program.getDeclaringType(method);
+			int signature = program.getSignature(method);
+			if(type != ProgramSnapshot.NONE && signature != ProgramSnapshot.NONE){
+				declaredMethods.put(LongHashSet.key(type, signature), method);
+			}
+		}
+		Adjacency supertypes = program.getSupertypes();
+		for(int method=0; method<methods.length; method++){
+			int type = program.getDeclaringType(method);
+			int signature = program.getSignature(method);
+			if(type == ProgramSnapshot.NONE || signature == ProgramSnapshot.NONE
+					|| program.hasMethodFlag(method, ProgramSnapshot.METHOD_STATIC | ProgramSnapshot.METHOD_CONSTRUCTOR | ProgramSnapshot.METHOD_INITIALIZER)){
+				continue;
+			}
+			// walk up the supertypes until each path finds a method with the same signature
+			BitSet visited = new BitSet(program.getTypeCount());
+			ArrayList<Integer> stack = new ArrayList<Integer>();
+			for(int i=supertypes.start(type); i<supertypes.end(type); i++){
+				stack.add(supertypes.target(i));
+			}
+			while(!stack.isEmpty()){
+				int supertype = stack.remove(stack.size()-1);
+				if(visited.get(supertype)){
+					continue;
+				}
+				visited.set(supertype);
+				Integer overriddenMethod = declaredMethods.get(LongHashSet.key(supertype, signature));
+				if(overriddenMethod != null){
+					createEdge(methods[method], methods[overriddenMethod], XCSG.Overrides);
+				} else {
+					for(int i=supertypes.start(supertype); i<supertypes.end(supertype); i++){
+						stack.add(supertypes.target(i));
+					}
+				}
+			}
+		}
+	}
+
+	private static Node createNode(Node parent, String tag, String name){
+		Node node = Graph.U.createNode();
+		node.tag(tag);
+		node.putAttr(XCSG.name, name);
+		createEdge(parent, node, XCSG.Contains);
+		return node;
+	}
+
+	private static Edge createEdge(Node from, Node to, String tag){
+		Edge edge = Graph.U.createEdge(from, to);
+		edge.tag(tag);
+		return edge;
+	}
+
+}
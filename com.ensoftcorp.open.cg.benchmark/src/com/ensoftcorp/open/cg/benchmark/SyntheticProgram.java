@@ -0,0 +1,325 @@
+package com.ensoftcorp.open.cg.benchmark;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+
+/**
+ * Generates a random program fixture, the same seed and configuration always
+ * generate the same program.
+ *
+ * The types form a forest of complete inheritance trees with the configured
+ * depth and fan-out, the root type of each tree is abstract. Each type declares
+ * a constructor, a static method s() and virtual methods named m1(), m2()... so
+ * that a virtual method of a type is overridden by the methods of the same name
+ * in its subtypes. A callsite either calls the constructor of a random type (a
+ * static dispatch that allocates the type), the static method of a random type or
+ * a random virtual method on a random receiver type (a dynamic dispatch). Each type
+ * declares the configured number of fields, which methods read and write at random.
+ * The root methods are the first virtual methods of the first few types, each of
+ * which starts by allocating an object the way a program entry point would.
+ *
+ * The generated fixture can be benchmarked directly or written to the Atlas graph
+ * (see SyntheticGraphWriter) to run the analyses themselves.
+ */
+public class SyntheticProgram {
+
+	// the constructor and static method declared by each type precede its virtual methods
+	private static final int CONSTRUCTOR = 0;
+	private static final int STATIC_METHOD = 1;
+	private static final int FIRST_VIRTUAL_METHOD = 2;
+
+	private long seed = 0;
+	private int types = 1000;
+	private int hierarchyDepth = 4;
+	private int hierarchyFanOut = 4;
+	private int methodsPerType = 8;
+	private int callsitesPerMethod = 4;
+	private double virtualCallsiteRatio = 0.6;
+	private double allocationDensity = 0.2;
+	private int fieldsPerType = 1;
+	private double fieldReadDensity = 1.0;
+	private double fieldWriteDensity = 0.5;
+	private double exceptionFlowDensity = 0.0625;
+	private int rootMethods = 4;
+
+	/**
+	 * Returns a program with the default configuration scaled (by its number of types)
+	 * to approximately the given number of callsites
+	 * @param seed
+	 * @param callsites
+	 * @return
+	 */
+	public static SyntheticProgram withCallsites(long seed, int callsites){
+		SyntheticProgram program = new SyntheticProgram();
+		program.setSeed(seed);
+		program.setTypes(Math.max(1, callsites / (program.methodsPerType * program.callsitesPerMethod)));
+		return program;
+	}
+
+	public void setSeed(long seed){
+		this.seed = seed;
+	}
+
+	/**
+	 * @param types the number of types
+	 */
+	public void setTypes(int types){
+		if(types < 1){
+			throw new IllegalArgumentException("A synthetic program needs at least one type");
+		}
+		this.types = types;
+	}
+
+	/**
+	 * @param hierarchyDepth the depth of each inheritance tree (0 for types without supertypes)
+	 */
+	public void setHierarchyDepth(int hierarchyDepth){
+		if(hierarchyDepth < 0){
+			throw new IllegalArgumentException("Hierarchy depth must not be negative");
+		}
+		this.hierarchyDepth = hierarchyDepth;
+	}
+
+	/**
+	 * @param hierarchyFanOut the number of direct subtypes of each type that is not a leaf of its inheritance tree
+	 */
+	public void setHierarchyFanOut(int hierarchyFanOut){
+		if(hierarchyFanOut < 1){
+			throw new IllegalArgumentException("Hierarchy fan-out must be at least one");
+		}
+		this.hierarchyFanOut = hierarchyFanOut;
+	}
+
+	/**
+	 * @param methodsPerType the number of methods each type declares, including its constructor and static method
+	 */
+	public void setMethodsPerType(int methodsPerType){
+		if(methodsPerType <= FIRST_VIRTUAL_METHOD){
+			throw new IllegalArgumentException("Each type needs at least " + (FIRST_VIRTUAL_METHOD + 1) + " methods");
+		}
+		this.methodsPerType = methodsPerType;
+	}
+
+	/**
+	 * @param callsitesPerMethod the number of callsites in each method
+	 */
+	public void setCallsitesPerMethod(int callsitesPerMethod){
+		if(callsitesPerMethod < 0){
+			throw new IllegalArgumentException("Callsites per method must not be negative");
+		}
+		this.callsitesPerMethod = callsitesPerMethod;
+	}
+
+	/**
+	 * @param virtualCallsiteRatio the fraction of callsites that are dynamic dispatches
+	 */
+	public void setVirtualCallsiteRatio(double virtualCallsiteRatio){
+		checkFraction("Virtual callsite ratio", virtualCallsiteRatio);
+		this.virtualCallsiteRatio = virtualCallsiteRatio;
+	}
+
+	/**
+	 * @param allocationDensity the fraction of callsites that are constructor calls (allocations),
+	 * the callsites that are neither allocations nor dynamic dispatches call static methods
+	 */
+	public void setAllocationDensity(double allocationDensity){
+		checkFraction("Allocation density", allocationDensity);
+		this.allocationDensity = allocationDensity;
+	}
+
+	/**
+	 * @param fieldsPerType the number of fields each type declares
+	 */
+	public void setFieldsPerType(int fieldsPerType){
+		if(fieldsPerType < 0){
+			throw new IllegalArgumentException("Fields per type must not be negative");
+		}
+		this.fieldsPerType = fieldsPerType;
+	}
+
+	/**
+	 * @param fieldReadDensity the average number of fields each method reads
+	 */
+	public void setFieldReadDensity(double fieldReadDensity){
+		if(fieldReadDensity < 0){
+			throw new IllegalArgumentException("Field read density must not be negative");
+		}
+		this.fieldReadDensity = fieldReadDensity;
+	}
+
+	/**
+	 * @param fieldWriteDensity the average number of fields (of its declaring type) each method writes
+	 */
+	public void setFieldWriteDensity(double fieldWriteDensity){
+		if(fieldWriteDensity < 0){
+			throw new IllegalArgumentException("Field write density must not be negative");
+		}
+		this.fieldWriteDensity = fieldWriteDensity;
+	}
+
+	/**
+	 * @param exceptionFlowDensity the fraction of methods that catch an exception thrown by another method
+	 */
+	public void setExceptionFlowDensity(double exceptionFlowDensity){
+		checkFraction("Exception flow density", exceptionFlowDensity);
+		this.exceptionFlowDensity = exceptionFlowDensity;
+	}
+
+	/**
+	 * @param rootMethods the number of root methods (at most one per type)
+	 */
+	public void setRootMethods(int rootMethods){
+		if(rootMethods < 1){
+			throw new IllegalArgumentException("A synthetic program needs at least one root method");
+		}
+		this.rootMethods = rootMethods;
+	}
+
+	/**
+	 * Returns the name of the generated fixture, which identifies its configuration
+	 * @return
+	 */
+	public String getName(){
+		return "synthetic-t" + types + "-d" + hierarchyDepth + "-f" + hierarchyFanOut + "-m" + methodsPerType + "-c" + callsitesPerMethod
+				+ "-v" + virtualCallsiteRatio + "-a" + allocationDensity + "-fl" + fieldsPerType + "-r" + fieldReadDensity + "-w" + fieldWriteDensity
+				+ "-e" + exceptionFlowDensity + "-rm" + rootMethods + "-s" + seed;
+	}
+
+	/**
+	 * Generates the program
+	 * @return
+	 */
+	public ProgramFixture generate(){
+		if(virtualCallsiteRatio + allocationDensity > 1){
+			throw new IllegalArgumentException("The virtual callsite ratio and allocation density add up to more than all callsites");
+		}
+		long callsiteCount = (long) types * methodsPerType * callsitesPerMethod;
+		if(callsiteCount > Integer.MAX_VALUE){
+			throw new IllegalArgumentException(callsiteCount + " callsites is more than a program snapshot can hold");
+		}
+		Random random = new Random(seed);
+		int methods = types * methodsPerType;
+		int callsites = (int) callsiteCount;
+		int fields = types * fieldsPerType;
+		ProgramSnapshot.Builder builder = new ProgramSnapshot.Builder(types, methods, callsites, fields);
+		Adjacency.Builder throwingMethods = new Adjacency.Builder(methods);
+
+		int[] roots = new int[Math.min(types, rootMethods)];
+		BitSet rootSet = new BitSet(methods);
+		for(int i=0; i<roots.length; i++){
+			roots[i] = i * methodsPerType + FIRST_VIRTUAL_METHOD;
+			rootSet.set(roots[i]);
+		}
+
+		// types, numbered breadth first within each tree so a type's supertype precedes it
+		int treeSize = getTreeSize();
+		for(int type=0; type<types; type++){
+			int index = type % treeSize;
+			if(index == 0){
+				builder.setTypeFlags(type, ProgramSnapshot.TYPE_ABSTRACT_CLASS);
+			} else {
+				builder.addSupertype(type, type - index + (index - 1) / hierarchyFanOut);
+			}
+		}
+		for(int field=0; field<fields; field++){
+			builder.addFieldType(field, random.nextInt(types));
+		}
+
+		// methods
+		for(int method=0; method<methods; method++){
+			int type = method / methodsPerType;
+			int index = method % methodsPerType;
+			builder.setDeclaringType(method, type);
+			if(index == CONSTRUCTOR){
+				builder.setMethodFlags(method, ProgramSnapshot.METHOD_CONSTRUCTOR | ProgramSnapshot.METHOD_INITIALIZER | ProgramSnapshot.METHOD_PUBLIC);
+				builder.setSignature(method, "<init>()");
+			} else if(index == STATIC_METHOD){
+				builder.setMethodFlags(method, ProgramSnapshot.METHOD_STATIC | ProgramSnapshot.METHOD_PUBLIC);
+				builder.setSignature(method, "s()");
+			} else {
+				builder.setMethodFlags(method, ProgramSnapshot.METHOD_PUBLIC);
+				builder.setSignature(method, "m" + (index - STATIC_METHOD) + "(Object)");
+				builder.addParameterType(method, random.nextInt(types));
+				builder.addReturnType(method, random.nextInt(types));
+			}
+
+			// fields
+			if(fieldsPerType > 0){
+				for(int i=sample(random, fieldReadDensity); i>0; i--){
+					int readField = random.nextInt(fields);
+					builder.addReadField(method, readField);
+					builder.addReadingMethod(readField, method);
+				}
+				for(int i=sample(random, fieldWriteDensity); i>0; i--){
+					builder.addWrittenField(method, type * fieldsPerType + random.nextInt(fieldsPerType));
+				}
+			}
+
+			// exceptions thrown by a random method are caught by some methods
+			if(random.nextDouble() < exceptionFlowDensity){
+				throwingMethods.add(method, random.nextInt(methods));
+			}
+		}
+
+		// callsites
+		for(int callsite=0; callsite<callsites; callsite++){
+			int method = callsite / callsitesPerMethod;
+			builder.setCallsiteMethod(callsite, method);
+			builder.addContainedCallsite(method, callsite);
+			int type = random.nextInt(types);
+			double kind = random.nextDouble();
+			if((rootSet.get(method) && callsite % callsitesPerMethod == 0) || kind < allocationDensity){
+				// new T()
+				builder.setCallsiteFlags(callsite, ProgramSnapshot.CALLSITE_STATIC_DISPATCH);
+				builder.setInvokedFunction(callsite, type * methodsPerType + CONSTRUCTOR);
+				builder.addAllocationType(method, type);
+			} else if(kind < allocationDensity + virtualCallsiteRatio){
+				// receiver.mN(...)
+				builder.setCallsiteFlags(callsite, ProgramSnapshot.CALLSITE_DYNAMIC_DISPATCH);
+				builder.setInvokedSignature(callsite, type * methodsPerType + FIRST_VIRTUAL_METHOD + random.nextInt(methodsPerType - FIRST_VIRTUAL_METHOD));
+				builder.addReceiverType(callsite, type);
+			} else {
+				// T.s()
+				builder.setCallsiteFlags(callsite, ProgramSnapshot.CALLSITE_STATIC_DISPATCH);
+				builder.setInvokedFunction(callsite, type * methodsPerType + STATIC_METHOD);
+			}
+		}
+
+		return new ProgramFixture(getName(), builder.build(), throwingMethods.build(), roots);
+	}
+
+	/**
+	 * Returns the number of types in a complete inheritance tree
+	 * @return
+	 */
+	private int getTreeSize(){
+		long size = 1;
+		long level = 1;
+		for(int depth=0; depth<hierarchyDepth && size < types; depth++){
+			level *= hierarchyFanOut;
+			size += level;
+		}
+		return (int) Math.min(size, types);
+	}
+
+	/**
+	 * Returns a count whose expected value is the given density
+	 */
+	private static int sample(Random random, double density){
+		int count = (int) density;
+		if(random.nextDouble() < density - count){
+			count++;
+		}
+		return count;
+	}
+
+	private static void checkFraction(String name, double value){
+		if(value < 0 || value > 1){
+			throw new IllegalArgumentException(name + " must be between 0 and 1");
+		}
+	}
+
+}
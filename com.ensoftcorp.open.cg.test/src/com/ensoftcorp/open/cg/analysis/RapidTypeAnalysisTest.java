@@ -0,0 +1,157 @@
+package com.ensoftcorp.open.cg.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.DispatchResolver;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.RandomProgram;
+import com.ensoftcorp.open.cg.utils.CallEdgeBuffer;
+import com.ensoftcorp.open.cg.utils.LongHashSet;
+
+public class RapidTypeAnalysisTest {
+
+	@Test
+	public void testReachableCallsitesMatchRequeueingAllMethodsOnRandomPrograms() {
+		int revisits = 0;
+		for(long seed=0; seed<20; seed++){
+			ProgramSnapshot program = new RandomProgram(seed, 60).getProgram();
+			BitSet rootMethods = new BitSet();
+			for(int rootMethod : new RandomProgram(seed, 60).getRootMethods()){
+				rootMethods.set(rootMethod);
+			}
+			// nothing is allocated up front, so every type is added by a reachable method
+			CallEdgeBuffer callEdges = new CallEdgeBuffer(RapidTypeAnalysis.CALL, RapidTypeAnalysis.PER_CONTROL_FLOW);
+			AnalysisMetrics metrics = new AnalysisMetrics();
+			RapidTypeAnalysis.resolveReachableCallsites(program, rootMethods, new BitSet(), callEdges, metrics);
+
+			CallEdgeBuffer expectedCallEdges = new CallEdgeBuffer(RapidTypeAnalysis.CALL, RapidTypeAnalysis.PER_CONTROL_FLOW);
+			resolveByRequeueingAllMethods(program, rootMethods, new BitSet(), expectedCallEdges);
+			assertTrue("seed " + seed, toSet(callEdges.getCallEdges()).containsAll(toSet(expectedCallEdges.getCallEdges())));
+			
+			// a dispatch to a concrete method of an abstract class drops the method once every allocated
+			// subtype overrides it, so the dispatches resolved before those subtypes were allocated keep
+			// the edge to the invoked signature, which edges those are depends on the visiting order
+			Set<Long> perControlFlowEdges = toSet(callEdges.getPerControlFlowEdges());
+			Set<Long> expectedPerControlFlowEdges = toSet(expectedCallEdges.getPerControlFlowEdges());
+			assertTrue("seed " + seed, perControlFlowEdges.containsAll(expectedPerControlFlowEdges));
+			for(long perControlFlowEdge : perControlFlowEdges){
+				if(!expectedPerControlFlowEdges.contains(perControlFlowEdge)){
+					int callsite = LongHashSet.high(perControlFlowEdge);
+					assertEquals("seed " + seed, program.getInvokedSignature(callsite), LongHashSet.low(perControlFlowEdge));
+				}
+			}
+			revisits += metrics.getCounter(AnalysisMetrics.CALLSITES_REVISITED);
+		}
+		assertTrue(revisits > 0);
+	}
+
+	@Test
+	public void testLibraryAllocationsOnlyRevisitAffectedCallsites() {
+		// a chain of methods where method i is declared by type i+1, allocates its own type and
+		// calls method i+1 with a receiver declared as type i+2, so each allocation adds a type
+		// that one processed dispatch (the call into the allocating method) was waiting on
+		for(int methods : new int[]{ 100, 200, 400 }){
+			int types = methods + 2;
+			ProgramSnapshot.Builder builder = new ProgramSnapshot.Builder(types, methods, methods, 0);
+			for(int type=1; type<types; type++){
+				builder.addSupertype(type, 0);
+			}
+			for(int method=0; method<methods; method++){
+				builder.setDeclaringType(method, method + 1);
+				builder.setMethodFlags(method, ProgramSnapshot.METHOD_PUBLIC);
+				builder.setSignature(method, "m" + method + "()");
+				builder.addAllocationType(method, method + 1);
+				if(method + 1 < methods){
+					builder.setCallsiteMethod(method, method);
+					builder.addContainedCallsite(method, method);
+					builder.setCallsiteFlags(method, ProgramSnapshot.CALLSITE_DYNAMIC_DISPATCH);
+					builder.setInvokedSignature(method, method + 1);
+					builder.addReceiverType(method, method + 2);
+				}
+			}
+			ProgramSnapshot program = builder.build();
+			BitSet rootMethods = new BitSet();
+			rootMethods.set(0);
+
+			CallEdgeBuffer callEdges = new CallEdgeBuffer(RapidTypeAnalysis.CALL, RapidTypeAnalysis.PER_CONTROL_FLOW);
+			AnalysisMetrics metrics = new AnalysisMetrics();
+			RapidTypeAnalysis.resolveReachableCallsites(program, rootMethods, new BitSet(), callEdges, metrics);
+
+			// each method is visited once and each dispatch is resolved again at most once
+			assertEquals(methods - 1, callEdges.getCallEdges().length);
+			assertEquals(methods, metrics.getCounter(AnalysisMetrics.WORKLIST_ITERATIONS));
+			assertEquals(methods - 1, metrics.getCounter(AnalysisMetrics.CALLSITES_RESOLVED));
+			assertTrue(metrics.getCounter(AnalysisMetrics.CALLSITES_REVISITED) < methods);
+		}
+	}
+
+	/**
+	 * The reachable callsite resolution that requeues every processed method whenever a
+	 * reachable method allocates a type that was not allocated yet
+	 */
+	private static void resolveByRequeueingAllMethods(ProgramSnapshot program, BitSet rootMethods, BitSet allocatedTypes, CallEdgeBuffer resolvedCallEdges){
+		DispatchResolver dispatchResolver = new DispatchResolver(program);
+		Adjacency callsites = program.getCallsites();
+		Adjacency methodAllocationTypes = program.getAllocationTypes();
+		BitSet processedMethods = new BitSet(program.getMethodCount());
+		BitSet methodsToProcess = (BitSet) rootMethods.clone();
+		while(!methodsToProcess.isEmpty()){
+			int method = methodsToProcess.nextSetBit(0);
+			methodsToProcess.clear(method);
+			processedMethods.set(method);
+			boolean allocatedTypesChanged = false;
+			for(int i=methodAllocationTypes.start(method); i<methodAllocationTypes.end(method); i++){
+				if(!allocatedTypes.get(methodAllocationTypes.target(i))){
+					allocatedTypes.set(methodAllocationTypes.target(i));
+					allocatedTypesChanged = true;
+				}
+			}
+			if(allocatedTypesChanged){
+				methodsToProcess.or(processedMethods);
+				methodsToProcess.clear(method);
+			}
+			for(int i=callsites.start(method); i<callsites.end(method); i++){
+				int callsite = callsites.target(i);
+				BitSet resolvedDispatches = new BitSet();
+				if(program.isStaticDispatch(callsite)){
+					if(program.getInvokedFunction(callsite) != ProgramSnapshot.NONE){
+						resolvedDispatches.set(program.getInvokedFunction(callsite));
+					}
+				} else if(program.isDynamicDispatch(callsite)){
+					resolvedDispatches = dispatchResolver.resolveDynamicDispatch(callsite, allocatedTypes);
+				}
+				for(int target = resolvedDispatches.nextSetBit(0); target >= 0; target = resolvedDispatches.nextSetBit(target+1)){
+					resolvedCallEdges.add(callsite, method, target);
+					if(!processedMethods.get(target)){
+						methodsToProcess.set(target);
+					}
+					int type = program.getDeclaringType(target);
+					if(type != ProgramSnapshot.NONE){
+						int staticInitializer = program.getStaticInitializer(type);
+						if(staticInitializer != ProgramSnapshot.NONE && !processedMethods.get(staticInitializer)){
+							methodsToProcess.set(staticInitializer);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static Set<Long> toSet(long[] keys){
+		Set<Long> result = new HashSet<Long>();
+		for(long key : keys){
+			result.add(key);
+		}
+		return result;
+	}
+
+}
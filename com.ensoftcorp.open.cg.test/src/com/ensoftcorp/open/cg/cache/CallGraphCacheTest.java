@@ -0,0 +1,79 @@
+package com.ensoftcorp.open.cg.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CallGraphCacheTest {
+
+	private static final String[] TAGS = new String[]{ "MTA-CALL", "CHA-LIBRARY-CALL", "MTA-PER-CONTROL-FLOW", "CHA-LIBRARY-PER-CONTROL-FLOW" };
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("callgraphs").toFile();
+	}
+
+	@After
+	public void deleteDirectory(){
+		for(File file : directory.listFiles()){
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testSavedEdgesAreRestored() throws IOException {
+		Random random = new Random(0);
+		String[] keys = new String[1000];
+		for(int i=0; i<keys.length; i++){
+			keys[i] = "p.T" + i + "#m(" + (i % 2 == 0 ? "Object" : "\u00e9\u4e2d") + ")" + (i % 3 == 0 ? "@" + i : "");
+		}
+		int[] edges = new int[4 * 5000];
+		for(int edge=0; edge<edges.length / 4; edge++){
+			edges[edge*4] = random.nextInt(6);
+			edges[edge*4+1] = random.nextInt(keys.length);
+			edges[edge*4+2] = random.nextInt(keys.length);
+			edges[edge*4+3] = random.nextInt(1 << TAGS.length);
+		}
+		File cacheFile = new File(directory, "MethodTypeAnalysis.cg");
+		CallGraphCache.write(cacheFile, Long.MIN_VALUE + 42, TAGS, new CallGraphCache.CachedEdges(keys, edges));
+
+		CallGraphCache.CachedEdges restoredEdges = CallGraphCache.read(cacheFile, Long.MIN_VALUE + 42, TAGS);
+		assertArrayEquals(keys, restoredEdges.keys);
+		assertArrayEquals(edges, restoredEdges.edges);
+	}
+
+	@Test
+	public void testCacheOfAnotherIndexIsIgnored() throws IOException {
+		File cacheFile = new File(directory, "MethodTypeAnalysis.cg");
+		CallGraphCache.write(cacheFile, 1, TAGS, new CallGraphCache.CachedEdges(new String[]{ "a", "b" }, new int[]{ 0, 0, 1, 1 }));
+		assertNull(CallGraphCache.read(cacheFile, 2, TAGS));
+		assertNull(CallGraphCache.read(cacheFile, 1, new String[]{ "XTA-CALL", "CHA-LIBRARY-CALL", "XTA-PER-CONTROL-FLOW", "CHA-LIBRARY-PER-CONTROL-FLOW" }));
+	}
+
+	@Test
+	public void testCacheFileIsReplacedAfterItIsRead() throws IOException {
+		File cacheFile = new File(directory, "MethodTypeAnalysis.cg");
+		CallGraphCache.write(cacheFile, 1, TAGS, new CallGraphCache.CachedEdges(new String[]{ "a", "b" }, new int[]{ 0, 0, 1, 1 }));
+		CallGraphCache.read(cacheFile, 1, TAGS);
+
+		// the file is not held open or mapped once it is read
+		CallGraphCache.write(cacheFile, 2, TAGS, new CallGraphCache.CachedEdges(new String[]{ "c" }, new int[]{ 1, 0, 0, 3 }));
+		assertNull(CallGraphCache.read(cacheFile, 1, TAGS));
+		CallGraphCache.CachedEdges restoredEdges = CallGraphCache.read(cacheFile, 2, TAGS);
+		assertArrayEquals(new String[]{ "c" }, restoredEdges.keys);
+		assertArrayEquals(new int[]{ 1, 0, 0, 3 }, restoredEdges.edges);
+		assertArrayEquals(new String[]{ "MethodTypeAnalysis.cg" }, directory.list());
+	}
+
+}
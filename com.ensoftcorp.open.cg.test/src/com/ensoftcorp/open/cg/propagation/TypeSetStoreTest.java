@@ -0,0 +1,112 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ExceptionFlow;
+import com.ensoftcorp.open.cg.snapshot.RandomProgram;
+
+public class TypeSetStoreTest {
+
+	private static final int NONE = 0;
+	private static final int INTERNED = 1;
+	private static final int OFF_HEAP = 2;
+	private static final int SPILLED = 3;
+
+	@Test
+	public void testMethodTypeCallEdgesDoNotDependOnTheStore() {
+		for(long seed=0; seed<10; seed++){
+			RandomProgram program = new RandomProgram(seed, 60);
+			CallGraphSnapshot<Void> cgCHA = program.getClassHierarchyCallGraph();
+			BitSet expected = run(new MethodTypePropagation(program.getProgram(), cgCHA), NONE, program.getRootMethods());
+			assertTrue(expected.cardinality() > 0);
+			for(int store : new int[]{INTERNED, OFF_HEAP, SPILLED}){
+				BitSet callEdges = run(new MethodTypePropagation(program.getProgram(), cgCHA), store, program.getRootMethods());
+				assertEquals("seed " + seed + " store " + store, expected, callEdges);
+			}
+		}
+	}
+
+	@Test
+	public void testHybridTypeCallEdgesDoNotDependOnTheStore() {
+		for(long seed=0; seed<10; seed++){
+			RandomProgram program = new RandomProgram(seed, 60);
+			CallGraphSnapshot<Void> cgCHA = program.getClassHierarchyCallGraph();
+			ExceptionFlow exceptionFlow = program.getExceptionFlow(seed, cgCHA);
+			BitSet expected = run(new HybridTypePropagation(program.getProgram(), cgCHA, exceptionFlow), NONE, program.getRootMethods());
+			assertTrue(expected.cardinality() > 0);
+			for(int store : new int[]{INTERNED, OFF_HEAP, SPILLED}){
+				BitSet callEdges = run(new HybridTypePropagation(program.getProgram(), cgCHA, exceptionFlow), store, program.getRootMethods());
+				assertEquals("seed " + seed + " store " + store, expected, callEdges);
+			}
+		}
+	}
+
+	@Test
+	public void testRepeatedUnionIsACacheHit() {
+		InternedTypeSets store = new InternedTypeSets(3);
+		store.put(0, types(1, 2));
+		store.put(1, types(2, 3));
+		store.put(2, types(1, 2));
+		int handle1 = store.getHandle(0);
+		int handle2 = store.getHandle(1);
+		assertEquals(handle1, store.getHandle(2));
+
+		int union = store.union(handle1, handle2);
+		assertEquals(types(1, 2, 3), store.getSet(union));
+		assertEquals(0, store.getUnionCacheHits());
+
+		// the same pair (in either order) is answered from the cache with the same handle
+		assertEquals(union, store.union(handle1, handle2));
+		assertEquals(union, store.union(handle2, handle1));
+		assertEquals(2, store.getUnionCacheHits());
+
+		// unions with the empty set or the set itself are not cached
+		assertEquals(handle1, store.union(handle1, InternedTypeSets.EMPTY));
+		assertEquals(handle1, store.union(handle1, handle1));
+		assertEquals(2, store.getUnionCacheHits());
+	}
+
+	@Test
+	public void testPropagationReusesCachedUnions() {
+		long cacheHits = 0;
+		for(long seed=0; seed<10; seed++){
+			RandomProgram program = new RandomProgram(seed, 60);
+			MethodTypePropagation propagation = new MethodTypePropagation(program.getProgram(), program.getClassHierarchyCallGraph());
+			propagation.internTypeSets();
+			propagation.run(program.getRootMethods());
+			cacheHits += propagation.getTypeSetUnionCacheHits();
+			propagation.release();
+		}
+		assertTrue(cacheHits > 0);
+	}
+
+	private static BitSet run(TypePropagation propagation, int store, int[] rootMethods){
+		if(store == INTERNED){
+			propagation.internTypeSets();
+		} else if(store == OFF_HEAP){
+			propagation.storeTypeSetsOffHeap(Long.MAX_VALUE);
+		} else if(store == SPILLED){
+			// small enough that most sets are kept on the heap
+			propagation.storeTypeSetsOffHeap(256);
+		}
+		propagation.run(rootMethods);
+		BitSet callEdges = (BitSet) propagation.getCallEdges().clone();
+		propagation.release();
+		return callEdges;
+	}
+
+	private static BitSet types(int... types){
+		BitSet result = new BitSet();
+		for(int type : types){
+			result.set(type);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,166 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ExceptionFlowIndexTest {
+
+	// Throwable <- Exception <- IOException <- FileNotFoundException, Exception <- RuntimeException
+	private static final int THROWABLE = 0;
+	private static final int EXCEPTION = 1;
+	private static final int IO_EXCEPTION = 2;
+	private static final int FILE_NOT_FOUND_EXCEPTION = 3;
+	private static final int RUNTIME_EXCEPTION = 4;
+
+	@Test
+	public void testThrownTypeIsCaughtBySupertypesAndSubtypes() {
+		ProgramSnapshot program = createExceptionHierarchy(6);
+		// 0 throws an Exception and is called by each other method
+		CallGraphSnapshot.Builder<Void> callGraph = new CallGraphSnapshot.Builder<Void>(6, 0);
+		for(int method=1; method<6; method++){
+			callGraph.addCallEdge(method, 0, null);
+		}
+		Adjacency.Builder thrownTypes = new Adjacency.Builder(6);
+		thrownTypes.add(0, EXCEPTION);
+		Adjacency.Builder caughtTypes = new Adjacency.Builder(6);
+		caughtTypes.add(1, THROWABLE);
+		caughtTypes.add(2, EXCEPTION);
+		caughtTypes.add(3, IO_EXCEPTION); // ex: throw e, with e declared as an Exception, may land in catch(IOException)
+		caughtTypes.add(4, FILE_NOT_FOUND_EXCEPTION);
+		caughtTypes.add(5, RUNTIME_EXCEPTION);
+
+		ExceptionFlowIndex index = new ExceptionFlowIndex(program, callGraph.build(), thrownTypes.build(), caughtTypes.build());
+		assertArrayEquals(new int[]{1, 2, 3, 4, 5}, index.getCatchingMethods(0));
+		assertArrayEquals(new int[]{0}, index.getThrowingMethods(3));
+	}
+
+	@Test
+	public void testUnrelatedTypesAreNotCaught() {
+		ProgramSnapshot program = createExceptionHierarchy(2);
+		CallGraphSnapshot.Builder<Void> callGraph = new CallGraphSnapshot.Builder<Void>(2, 0);
+		callGraph.addCallEdge(1, 0, null);
+		Adjacency.Builder thrownTypes = new Adjacency.Builder(2);
+		thrownTypes.add(0, IO_EXCEPTION);
+		Adjacency.Builder caughtTypes = new Adjacency.Builder(2);
+		caughtTypes.add(1, RUNTIME_EXCEPTION);
+
+		ExceptionFlowIndex index = new ExceptionFlowIndex(program, callGraph.build(), thrownTypes.build(), caughtTypes.build());
+		assertArrayEquals(new int[0], index.getCatchingMethods(0));
+		assertArrayEquals(new int[0], index.getThrowingMethods(1));
+	}
+
+	@Test
+	public void testOnlyTransitiveCallersCatch() {
+		ProgramSnapshot program = createExceptionHierarchy(5);
+		// 3 -> 2 -> 1 -> 0 and 0 -> 4, each of 1 to 4 catches the IOException thrown by 0
+		CallGraphSnapshot.Builder<Void> callGraph = new CallGraphSnapshot.Builder<Void>(5, 0);
+		callGraph.addCallEdge(1, 0, null);
+		callGraph.addCallEdge(2, 1, null);
+		callGraph.addCallEdge(3, 2, null);
+		callGraph.addCallEdge(0, 4, null);
+		Adjacency.Builder thrownTypes = new Adjacency.Builder(5);
+		thrownTypes.add(0, IO_EXCEPTION);
+		Adjacency.Builder caughtTypes = new Adjacency.Builder(5);
+		for(int method=0; method<5; method++){
+			caughtTypes.add(method, IO_EXCEPTION);
+		}
+
+		ExceptionFlowIndex index = new ExceptionFlowIndex(program, callGraph.build(), thrownTypes.build(), caughtTypes.build());
+		// the thrower does not catch its own exception and a callee is not on the call stack
+		assertArrayEquals(new int[]{1, 2, 3}, index.getCatchingMethods(0));
+		assertArrayEquals(new int[0], index.getThrowingMethods(4));
+	}
+
+	@Test
+	public void testIndexMatchesThrowableAnalysisOnRandomPrograms() {
+		for(long seed=0; seed<20; seed++){
+			Random random = new Random(seed);
+			int types = 50;
+			int methods = 200;
+			ProgramSnapshot.Builder builder = new ProgramSnapshot.Builder(types, methods, 0, 0);
+			for(int type=1; type<types; type++){
+				builder.addSupertype(type, random.nextInt(type));
+				if(type > 2 && random.nextInt(5) == 0){
+					builder.addSupertype(type, random.nextInt(type));
+				}
+			}
+			ProgramSnapshot program = builder.build();
+			CallGraphSnapshot.Builder<Void> callGraphBuilder = new CallGraphSnapshot.Builder<Void>(methods, 0);
+			for(int i=0; i<methods * 2; i++){
+				callGraphBuilder.addCallEdge(random.nextInt(methods), random.nextInt(methods), null);
+			}
+			CallGraphSnapshot<Void> callGraph = callGraphBuilder.build();
+			Adjacency.Builder thrownTypesBuilder = new Adjacency.Builder(methods);
+			Adjacency.Builder caughtTypesBuilder = new Adjacency.Builder(methods);
+			for(int method=0; method<methods; method++){
+				if(random.nextInt(4) == 0){
+					thrownTypesBuilder.add(method, random.nextInt(types));
+				}
+				if(random.nextInt(4) == 0){
+					caughtTypesBuilder.add(method, random.nextInt(types));
+				}
+			}
+			Adjacency thrownTypes = thrownTypesBuilder.build();
+			Adjacency caughtTypes = caughtTypesBuilder.build();
+
+			ExceptionFlowIndex index = new ExceptionFlowIndex(program, callGraph, thrownTypes, caughtTypes);
+			int flows = 0;
+			for(int method=0; method<methods; method++){
+				int[] expected = findCatchForThrows(program, callGraph, thrownTypes, caughtTypes, method);
+				assertArrayEquals("seed " + seed + " method " + method, expected, index.getCatchingMethods(method));
+				flows += expected.length;
+			}
+			assertTrue(flows > 0);
+		}
+	}
+
+	/**
+	 * The exception flow ThrowableAnalysis finds for the throws of a method: each method
+	 * up the call stack (other than the throwing method) with a catch block for a type
+	 * that is assignable to or from a thrown type
+	 */
+	private static int[] findCatchForThrows(ProgramSnapshot program, CallGraphSnapshot<?> callGraph, Adjacency thrownTypes, Adjacency caughtTypes, int method){
+		TypeHierarchy hierarchy = program.getTypeHierarchy();
+		BitSet callStack = new BitSet();
+		Deque<Integer> worklist = new ArrayDeque<Integer>();
+		worklist.add(method);
+		while(!worklist.isEmpty()){
+			BitSet callers = callGraph.getCallers(worklist.remove());
+			for(int caller=callers.nextSetBit(0); caller>=0; caller=callers.nextSetBit(caller+1)){
+				if(!callStack.get(caller)){
+					callStack.set(caller);
+					worklist.add(caller);
+				}
+			}
+		}
+		callStack.clear(method);
+		BitSet catchingMethods = new BitSet();
+		for(int caller=callStack.nextSetBit(0); caller>=0; caller=callStack.nextSetBit(caller+1)){
+			for(int thrownType : thrownTypes.toArray(method)){
+				for(int caughtType : caughtTypes.toArray(caller)){
+					if(hierarchy.isSubtype(caughtType, thrownType) || hierarchy.isSubtype(thrownType, caughtType)){
+						catchingMethods.set(caller);
+					}
+				}
+			}
+		}
+		return catchingMethods.stream().toArray();
+	}
+
+	private static ProgramSnapshot createExceptionHierarchy(int methods){
+		ProgramSnapshot.Builder builder = new ProgramSnapshot.Builder(5, methods, 0, 0);
+		builder.addSupertype(EXCEPTION, THROWABLE);
+		builder.addSupertype(IO_EXCEPTION, EXCEPTION);
+		builder.addSupertype(FILE_NOT_FOUND_EXCEPTION, IO_EXCEPTION);
+		builder.addSupertype(RUNTIME_EXCEPTION, EXCEPTION);
+		return builder.build();
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.ensoftcorp.open.cg.analysis.ClassHierarchyAnalysis;
+import com.ensoftcorp.open.cg.utils.CallEdgeBuffer;
+import com.ensoftcorp.open.cg.utils.LongHashSet;
+
+public class ProgramDeltaTest {
+
+	@Test
+	public void testUnchangedProgramHasNoAffectedMethods() {
+		ProgramFingerprint previous = new RandomProgram(0, 60).getFingerprint();
+		ProgramFingerprint current = new RandomProgram(0, 60).getFingerprint();
+		ProgramDelta delta = current.compare(previous);
+		assertTrue(delta.isEmpty());
+		assertTrue(delta.getAffectedMethods().isEmpty());
+		assertEquals(previous.getProgramHash(), current.getProgramHash());
+	}
+
+	@Test
+	public void testIncrementalUpdateMatchesFullRebuild() {
+		int partialUpdates = 0;
+		for(long seed=0; seed<20; seed++){
+			RandomProgram previous = new RandomProgram(seed, 60);
+			RandomProgram current = new RandomProgram(seed, 60, seed, 2);
+			ProgramDelta delta = current.getFingerprint().compare(previous.getFingerprint());
+			BitSet affectedMethods = delta.getAffectedMethods();
+			if(affectedMethods.cardinality() < current.getProgram().getMethodCount()){
+				partialUpdates++;
+			}
+
+			// the incremental update keeps the previous edges of the unaffected methods (the ids of
+			// both programs are the same) and resolves the callsites of the affected methods again
+			CallEdgeBuffer previousCallEdges = resolve(previous.getProgram(), null);
+			CallEdgeBuffer updatedCallEdges = resolve(current.getProgram(), affectedMethods);
+			Set<Long> callEdges = toSet(updatedCallEdges.getCallEdges());
+			for(long key : previousCallEdges.getCallEdges()){
+				if(!affectedMethods.get(LongHashSet.high(key))){
+					callEdges.add(key);
+				}
+			}
+			Set<Long> perControlFlowEdges = toSet(updatedCallEdges.getPerControlFlowEdges());
+			for(long key : previousCallEdges.getPerControlFlowEdges()){
+				if(!affectedMethods.get(current.getProgram().getCallsiteMethod(LongHashSet.high(key)))){
+					perControlFlowEdges.add(key);
+				}
+			}
+
+			CallEdgeBuffer rebuiltCallEdges = resolve(current.getProgram(), null);
+			assertEquals("seed " + seed, toSet(rebuiltCallEdges.getCallEdges()), callEdges);
+			assertEquals("seed " + seed, toSet(rebuiltCallEdges.getPerControlFlowEdges()), perControlFlowEdges);
+		}
+		assertTrue(partialUpdates > 0);
+	}
+
+	private static CallEdgeBuffer resolve(ProgramSnapshot program, BitSet methods){
+		CallEdgeBuffer callEdges = new CallEdgeBuffer(ClassHierarchyAnalysis.CALL, ClassHierarchyAnalysis.PER_CONTROL_FLOW);
+		CallEdgeBuffer libraryCallEdges = new CallEdgeBuffer(ClassHierarchyAnalysis.LIBRARY_CALL, ClassHierarchyAnalysis.LIBRARY_PER_CONTROL_FLOW);
+		ClassHierarchyAnalysis.resolveCallsites(program, false, methods, callEdges, libraryCallEdges);
+		return callEdges;
+	}
+
+	private static Set<Long> toSet(long[] keys){
+		Set<Long> set = new HashSet<Long>();
+		for(long key : keys){
+			set.add(key);
+		}
+		return set;
+	}
+
+}
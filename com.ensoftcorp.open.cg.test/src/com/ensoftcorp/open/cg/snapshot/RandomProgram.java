@@ -0,0 +1,192 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.Random;
+
+import com.ensoftcorp.open.cg.analysis.ClassHierarchyAnalysis;
+import com.ensoftcorp.open.cg.utils.CallEdgeBuffer;
+import com.ensoftcorp.open.cg.utils.LongHashSet;
+
+/**
+ * Random programs for the tests that compare analysis results, the same seed
+ * always generates the same program. Each type declares a constructor, a static
+ * method and virtual methods m1(Object), m2(Object)... that override the methods
+ * of the same name in its supertypes. A changed program makes a percentage of the
+ * random choices of the program differently, but keeps the same ids.
+ */
+public class RandomProgram {
+
+	private static final int CONSTRUCTOR = 0;
+	private static final int STATIC_METHOD = 1;
+	private static final int FIRST_VIRTUAL_METHOD = 2;
+	private static final int METHODS_PER_TYPE = 5;
+	private static final int CALLSITES_PER_METHOD = 3;
+
+	private final Random random;
+	private final Random changes;
+	private final int changePercent;
+	private final ProgramSnapshot program;
+	private final int[] rootMethods;
+
+	public RandomProgram(long seed, int types){
+		this(seed, types, 0, 0);
+	}
+
+	/**
+	 * Creates a changed version of the program created from the seed
+	 * @param seed
+	 * @param types
+	 * @param changeSeed
+	 * @param changePercent the percentage of random choices that are changed
+	 */
+	public RandomProgram(long seed, int types, long changeSeed, int changePercent){
+		this.random = new Random(seed);
+		this.changes = new Random(changeSeed);
+		this.changePercent = changePercent;
+		int methods = types * METHODS_PER_TYPE;
+		int callsites = methods * CALLSITES_PER_METHOD;
+		int fields = types;
+		ProgramSnapshot.Builder builder = new ProgramSnapshot.Builder(types, methods, callsites, fields);
+		for(int type=0; type<types; type++){
+			if(type > 0){
+				builder.addSupertype(type, next(type));
+			}
+			if(next(5) == 0){
+				builder.setTypeFlags(type, ProgramSnapshot.TYPE_ABSTRACT_CLASS);
+			}
+		}
+		for(int field=0; field<fields; field++){
+			builder.addFieldType(field, next(types));
+		}
+		for(int method=0; method<methods; method++){
+			int type = method / METHODS_PER_TYPE;
+			int index = method % METHODS_PER_TYPE;
+			builder.setDeclaringType(method, type);
+			if(index == CONSTRUCTOR){
+				builder.setMethodFlags(method, ProgramSnapshot.METHOD_CONSTRUCTOR | ProgramSnapshot.METHOD_INITIALIZER | ProgramSnapshot.METHOD_PUBLIC);
+				builder.setSignature(method, "<init>()");
+			} else if(index == STATIC_METHOD){
+				builder.setMethodFlags(method, ProgramSnapshot.METHOD_STATIC | ProgramSnapshot.METHOD_PUBLIC);
+				builder.setSignature(method, "s()");
+			} else {
+				builder.setMethodFlags(method, ProgramSnapshot.METHOD_PUBLIC);
+				builder.setSignature(method, "m" + (index - STATIC_METHOD) + "(Object)");
+				builder.addParameterType(method, next(types));
+				builder.addReturnType(method, next(types));
+			}
+			if(next(2) == 0){
+				int readField = next(fields);
+				builder.addReadField(method, readField);
+				builder.addReadingMethod(readField, method);
+			}
+			if(next(3) == 0){
+				builder.addWrittenField(method, next(fields));
+			}
+		}
+		for(int callsite=0; callsite<callsites; callsite++){
+			int method = callsite / CALLSITES_PER_METHOD;
+			builder.setCallsiteMethod(callsite, method);
+			builder.addContainedCallsite(method, callsite);
+			int type = next(types);
+			int kind = next(5);
+			if(kind == 0){
+				// new T()
+				builder.setCallsiteFlags(callsite, ProgramSnapshot.CALLSITE_STATIC_DISPATCH);
+				builder.setInvokedFunction(callsite, type * METHODS_PER_TYPE + CONSTRUCTOR);
+				builder.addAllocationType(method, type);
+			} else if(kind == 1){
+				// T.s()
+				builder.setCallsiteFlags(callsite, ProgramSnapshot.CALLSITE_STATIC_DISPATCH);
+				builder.setInvokedFunction(callsite, type * METHODS_PER_TYPE + STATIC_METHOD);
+			} else {
+				// receiver.mN(...)
+				builder.setCallsiteFlags(callsite, ProgramSnapshot.CALLSITE_DYNAMIC_DISPATCH);
+				builder.setInvokedSignature(callsite, type * METHODS_PER_TYPE + FIRST_VIRTUAL_METHOD + next(METHODS_PER_TYPE - FIRST_VIRTUAL_METHOD));
+				builder.addReceiverType(callsite, type);
+			}
+		}
+		program = builder.build();
+		rootMethods = new int[]{ FIRST_VIRTUAL_METHOD, METHODS_PER_TYPE + FIRST_VIRTUAL_METHOD };
+	}
+
+	public ProgramSnapshot getProgram(){
+		return program;
+	}
+
+	public int[] getRootMethods(){
+		return rootMethods;
+	}
+
+	/**
+	 * Returns the fingerprint of the program, types and methods are keyed the way AtlasProgramSnapshot keys them
+	 * @return
+	 */
+	public ProgramFingerprint getFingerprint(){
+		String[] typeKeys = new String[program.getTypeCount()];
+		for(int type=0; type<typeKeys.length; type++){
+			typeKeys[type] = "T" + type;
+		}
+		String[] methodKeys = new String[program.getMethodCount()];
+		for(int method=0; method<methodKeys.length; method++){
+			methodKeys[method] = typeKeys[program.getDeclaringType(method)] + "#" + program.getSignatureString(program.getSignature(method));
+		}
+		String[] callsiteKeys = new String[program.getCallsiteCount()];
+		for(int callsite=0; callsite<callsiteKeys.length; callsite++){
+			callsiteKeys[callsite] = methodKeys[program.getCallsiteMethod(callsite)] + "@" + (callsite % CALLSITES_PER_METHOD);
+		}
+		return new ProgramFingerprint(program, typeKeys, methodKeys, callsiteKeys);
+	}
+
+	/**
+	 * Returns the next random choice, which is made differently for the given percentage of choices
+	 * @param bound
+	 * @return
+	 */
+	private int next(int bound){
+		int value = random.nextInt(bound);
+		if(changes.nextInt(100) < changePercent){
+			value = changes.nextInt(bound);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the CHA call graph of the program, resolved by ClassHierarchyAnalysis
+	 * @return
+	 */
+	public CallGraphSnapshot<Void> getClassHierarchyCallGraph(){
+		CallEdgeBuffer callEdges = new CallEdgeBuffer(ClassHierarchyAnalysis.CALL, ClassHierarchyAnalysis.PER_CONTROL_FLOW);
+		CallEdgeBuffer libraryCallEdges = new CallEdgeBuffer(ClassHierarchyAnalysis.LIBRARY_CALL, ClassHierarchyAnalysis.LIBRARY_PER_CONTROL_FLOW);
+		ClassHierarchyAnalysis.resolveCallsites(program, false, callEdges, libraryCallEdges);
+		CallGraphSnapshot.Builder<Void> builder = new CallGraphSnapshot.Builder<Void>(program.getMethodCount(), program.getCallsiteCount());
+		for(long key : callEdges.getCallEdges()){
+			builder.addCallEdge(LongHashSet.high(key), LongHashSet.low(key), null);
+		}
+		for(long key : callEdges.getPerControlFlowEdges()){
+			builder.addPerControlFlowEdge(LongHashSet.high(key), LongHashSet.low(key), null);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns the exception flow of random thrown and caught types over the given call graph
+	 * @param seed
+	 * @param callGraph
+	 * @return
+	 */
+	public ExceptionFlowIndex getExceptionFlow(long seed, CallGraphSnapshot<?> callGraph){
+		Random random = new Random(seed);
+		int methods = program.getMethodCount();
+		Adjacency.Builder thrownTypes = new Adjacency.Builder(methods);
+		Adjacency.Builder caughtTypes = new Adjacency.Builder(methods);
+		for(int method=0; method<methods; method++){
+			if(random.nextInt(4) == 0){
+				thrownTypes.add(method, random.nextInt(program.getTypeCount()));
+			}
+			if(random.nextInt(4) == 0){
+				caughtTypes.add(method, random.nextInt(program.getTypeCount()));
+			}
+		}
+		return new ExceptionFlowIndex(program, callGraph, thrownTypes.build(), caughtTypes.build());
+	}
+
+}
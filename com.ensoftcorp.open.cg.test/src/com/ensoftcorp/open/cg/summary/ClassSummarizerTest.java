@@ -0,0 +1,187 @@
+package com.ensoftcorp.open.cg.summary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+public class ClassSummarizerTest {
+
+	/**
+	 * Compiled to its own class file, which is read back and summarized
+	 */
+	static class Fixture {
+		static Runnable lambda(){
+			return () -> System.gc();
+		}
+
+		static Function<String,Integer> methodReference(){
+			return String::length;
+		}
+
+		static Object allocations(Object value){
+			List<Object> list = new ArrayList<Object>();
+			list.add(new StringBuilder().append(value));
+			list.add(new ArrayList<Object>());
+			// not allocations of a type instance
+			Object[] array = new Object[1];
+			array[0] = (String) value;
+			return value instanceof String ? array : list;
+		}
+	}
+
+	static class Base {
+		static void inheritedStatic(){}
+
+		void inherited(){}
+	}
+
+	static class Middle extends Base {}
+
+	/**
+	 * Calls methods that Sub and Middle only inherit from Base
+	 */
+	static class Sub extends Middle {
+		static void callsInheritedStatic(){
+			Sub.inheritedStatic();
+		}
+
+		@Override
+		void inherited(){
+			super.inherited();
+		}
+	}
+
+	@Test
+	public void testInheritedStaticCallIsOwnedByTheQualifyingType() throws IOException {
+		// the method is resolved from the owner's supertypes (see MethodIndex.resolveMethod)
+		ClassSummary summary = summarize(Sub.class);
+		List<ClassSummary.Invocation> invocations = getInvocations(summary, "callsInheritedStatic", Opcodes.INVOKESTATIC);
+		assertEquals(1, invocations.size());
+		assertEquals(Type.getInternalName(Sub.class), invocations.get(0).getOwner());
+		assertEquals("inheritedStatic", invocations.get(0).getName());
+		assertEquals("()V", invocations.get(0).getDescriptor());
+	}
+
+	@Test
+	public void testInheritedSuperCallIsOwnedByTheDirectSuperclass() throws IOException {
+		// Middle does not declare the method, it is resolved from Base (see MethodIndex.resolveMethod)
+		ClassSummary summary = summarize(Sub.class);
+		List<ClassSummary.Invocation> invocations = new ArrayList<ClassSummary.Invocation>();
+		for(ClassSummary.Invocation invocation : getInvocations(summary, "inherited", Opcodes.INVOKESPECIAL)){
+			if(invocation.getName().equals("inherited")){
+				invocations.add(invocation);
+			}
+		}
+		assertEquals(1, invocations.size());
+		assertEquals(Type.getInternalName(Middle.class), invocations.get(0).getOwner());
+		assertEquals("()V", invocations.get(0).getDescriptor());
+	}
+
+	@Test
+	public void testAllocationsAreSummarized() throws IOException {
+		ClassSummary summary = summarize(Fixture.class);
+		List<String> allocations = new ArrayList<String>(getMethod(summary, "allocations").getAllocations());
+		assertEquals(Arrays.asList("java/util/ArrayList", "java/lang/StringBuilder"), allocations);
+		assertTrue(getMethod(summary, "lambda").getAllocations().isEmpty());
+	}
+
+	@Test
+	public void testLambdaIsSummarizedAsInvocationOfItsBody() throws IOException {
+		ClassSummary summary = summarize(Fixture.class);
+		List<ClassSummary.Invocation> invocations = getInvocations(summary, "lambda", Opcodes.INVOKEDYNAMIC);
+		assertEquals(1, invocations.size());
+		ClassSummary.Invocation invocation = invocations.get(0);
+		assertEquals(Type.getInternalName(Fixture.class), invocation.getOwner());
+		assertTrue(invocation.getName().startsWith("lambda$"));
+		assertEquals("()V", invocation.getDescriptor());
+		assertEquals(Opcodes.H_INVOKESTATIC, invocation.getHandleKind());
+
+		// the lambda body is a method of the class and calls System.gc
+		List<ClassSummary.Invocation> bodyInvocations = getInvocations(summary, invocation.getName(), Opcodes.INVOKESTATIC);
+		assertEquals(1, bodyInvocations.size());
+		assertEquals("java/lang/System", bodyInvocations.get(0).getOwner());
+		assertEquals("gc", bodyInvocations.get(0).getName());
+	}
+
+	@Test
+	public void testMethodReferenceIsSummarizedAsInvocationOfTheReferencedMethod() throws IOException {
+		ClassSummary summary = summarize(Fixture.class);
+		List<ClassSummary.Invocation> invocations = getInvocations(summary, "methodReference", Opcodes.INVOKEDYNAMIC);
+		assertEquals(1, invocations.size());
+		ClassSummary.Invocation invocation = invocations.get(0);
+		assertEquals("java/lang/String", invocation.getOwner());
+		assertEquals("length", invocation.getName());
+		assertEquals("()I", invocation.getDescriptor());
+		assertEquals(Opcodes.H_INVOKEVIRTUAL, invocation.getHandleKind());
+	}
+
+	@Test
+	public void testOtherBootstrapMethodsAreNotSummarized() {
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "Concat", null, "java/lang/Object", null);
+		MethodVisitor method = writer.visitMethod(Opcodes.ACC_STATIC, "concat", "(Ljava/lang/String;)Ljava/lang/String;", null, null);
+		method.visitCode();
+		method.visitVarInsn(Opcodes.ALOAD, 0);
+		Handle bootstrapMethod = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/StringConcatFactory", "makeConcatWithConstants",
+				"(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;", false);
+		method.visitInvokeDynamicInsn("makeConcatWithConstants", "(Ljava/lang/String;)Ljava/lang/String;", bootstrapMethod, "\u0001!");
+		method.visitInsn(Opcodes.ARETURN);
+		method.visitMaxs(0, 0);
+		method.visitEnd();
+		writer.visitEnd();
+
+		ClassSummary summary = ClassSummarizer.summarize(writer.toByteArray());
+		assertEquals(0, getMethod(summary, "concat").getInvocations().size());
+	}
+
+	static ClassSummary summarize(Class<?> type) throws IOException {
+		InputStream input = type.getClassLoader().getResourceAsStream(Type.getInternalName(type) + ".class");
+		assertNotNull(input);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while((read = input.read(buffer)) != -1){
+				bytes.write(buffer, 0, read);
+			}
+			return ClassSummarizer.summarize(bytes.toByteArray());
+		} finally {
+			input.close();
+		}
+	}
+
+	static ClassSummary.Method getMethod(ClassSummary summary, String name){
+		for(ClassSummary.Method method : summary.getMethods()){
+			if(method.getName().equals(name)){
+				return method;
+			}
+		}
+		throw new AssertionError("No method named " + name);
+	}
+
+	private static List<ClassSummary.Invocation> getInvocations(ClassSummary summary, String methodName, int opcode){
+		List<ClassSummary.Invocation> invocations = new ArrayList<ClassSummary.Invocation>();
+		for(ClassSummary.Invocation invocation : getMethod(summary, methodName).getInvocations()){
+			if(invocation.getOpcode() == opcode){
+				invocations.add(invocation);
+			}
+		}
+		return invocations;
+	}
+
+}
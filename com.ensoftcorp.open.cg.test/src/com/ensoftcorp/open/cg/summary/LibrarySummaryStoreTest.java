@@ -0,0 +1,132 @@
+package com.ensoftcorp.open.cg.summary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LibrarySummaryStoreTest {
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("summaries").toFile();
+	}
+
+	@After
+	public void deleteDirectory(){
+		for(File file : directory.listFiles()){
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testStoredSummariesAreLoaded() throws IOException {
+		Map<String,ClassSummary> summaries = createSummaries();
+		Set<String> missingEntries = Collections.singleton("p/Missing.class");
+		int invocations = 0;
+		int allocations = 0;
+		Set<Integer> handleKinds = new HashSet<Integer>();
+		for(ClassSummary summary : summaries.values()){
+			for(ClassSummary.Method method : summary.getMethods()){
+				invocations += method.getInvocations().size();
+				allocations += method.getAllocations().size();
+				for(ClassSummary.Invocation invocation : method.getInvocations()){
+					handleKinds.add(invocation.getHandleKind());
+				}
+			}
+		}
+		assertTrue(invocations > 0 && allocations > 0 && handleKinds.size() > 1);
+		LibrarySummaryStore store = new LibrarySummaryStore(directory, Long.MAX_VALUE);
+		store.save("library", summaries, missingEntries);
+
+		LibrarySummaryStore.StoredLibrary library = store.load("library");
+		assertNotNull(library);
+		assertEquals(missingEntries, library.getMissingEntries());
+		assertEquals(summaries.keySet(), library.getSummaries().keySet());
+		for(Map.Entry<String,ClassSummary> entry : summaries.entrySet()){
+			assertEquals(entry.getKey(), describe(entry.getValue()), describe(library.getSummaries().get(entry.getKey())));
+		}
+		assertNull(store.load("other library"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedLibrariesAreEvicted() throws IOException {
+		Map<String,ClassSummary> summaries = createSummaries();
+		Set<String> missingEntries = Collections.emptySet();
+		new LibrarySummaryStore(directory, Long.MAX_VALUE).save("size", summaries, missingEntries);
+		long size = new File(directory, "size.lss").length();
+		new File(directory, "size.lss").delete();
+
+		// room for two libraries
+		LibrarySummaryStore store = new LibrarySummaryStore(directory, size * 2 + size / 2);
+		long now = System.currentTimeMillis();
+		store.save("a", summaries, missingEntries);
+		new File(directory, "a.lss").setLastModified(now - 30000);
+		store.save("b", summaries, missingEntries);
+		new File(directory, "b.lss").setLastModified(now - 20000);
+
+		// loading a makes b the least recently used library
+		assertNotNull(store.load("a"));
+		store.save("c", summaries, missingEntries);
+		assertNull(store.load("b"));
+		assertNotNull(store.load("a"));
+		assertNotNull(store.load("c"));
+	}
+
+	@Test
+	public void testSavedLibraryIsKeptWhenLargerThanTheStore() throws IOException {
+		Map<String,ClassSummary> summaries = createSummaries();
+		Set<String> missingEntries = Collections.emptySet();
+		LibrarySummaryStore store = new LibrarySummaryStore(directory, 1);
+		store.save("a", summaries, missingEntries);
+		new File(directory, "a.lss").setLastModified(System.currentTimeMillis() - 10000);
+		store.save("b", summaries, missingEntries);
+		assertNull(store.load("a"));
+		assertNotNull(store.load("b"));
+		assertEquals(1, directory.listFiles().length);
+	}
+
+	/**
+	 * Summaries with lambdas, method references and allocations (see ClassSummarizerTest)
+	 */
+	private static Map<String,ClassSummary> createSummaries() throws IOException {
+		Map<String,ClassSummary> summaries = new HashMap<String,ClassSummary>();
+		for(Class<?> type : new Class<?>[]{ ClassSummarizerTest.Fixture.class, ClassSummarizerTest.class, LibrarySummaryStore.class }){
+			ClassSummary summary = ClassSummarizerTest.summarize(type);
+			summaries.put(summary.getName() + ".class", summary);
+		}
+		return summaries;
+	}
+
+	private static List<String> describe(ClassSummary summary){
+		List<String> description = new ArrayList<String>();
+		description.add(summary.getName());
+		for(ClassSummary.Method method : summary.getMethods()){
+			description.add(method.getAccess() + " " + method.getName() + method.getDescriptor());
+			for(ClassSummary.Invocation invocation : method.getInvocations()){
+				description.add("  " + invocation.getOpcode() + " " + invocation.getHandleKind() + " " + invocation.getOwner() + "." + invocation.getName() + invocation.getDescriptor());
+			}
+			description.add("  new " + method.getAllocations());
+		}
+		return description;
+	}
+
+}
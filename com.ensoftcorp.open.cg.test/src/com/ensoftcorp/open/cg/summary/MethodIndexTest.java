@@ -0,0 +1,156 @@
+package com.ensoftcorp.open.cg.summary;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MethodIndexTest {
+
+	@Test
+	public void testDescriptorKeysUseQualifiedParameterAndReturnTypes() {
+		assertEquals("put(java.lang.Object,int[])void", MethodIndex.getKey("put", "(Ljava/lang/Object;[I)V"));
+		assertEquals("m(java.util.Map$Entry[][],long)java.lang.String", MethodIndex.getKey("m", "([[Ljava/util/Map$Entry;J)Ljava/lang/String;"));
+		assertEquals("m()int[][]", MethodIndex.getKey("m", "()[[I"));
+		assertEquals("m()void", MethodIndex.getKey("m", "()V"));
+	}
+
+	@Test
+	public void testOverloadsOnTypesWithTheSameSimpleNameHaveDifferentKeys() {
+		assertFalse(MethodIndex.getKey("m", "(Ljava/util/List;)V").equals(MethodIndex.getKey("m", "(Ljava/awt/List;)V")));
+		assertFalse(MethodIndex.getKey("m", "(Ljava/util/Map$Entry;)V").equals(MethodIndex.getKey("m", "(Lp/Foo$Entry;)V")));
+	}
+
+	@Test
+	public void testOverloadedMethodsResolveByDescriptor() {
+		TestResolver resolver = new TestResolver();
+		resolver.addMethod("A", "m()void");
+		resolver.addMethod("A", "m(int)void");
+		resolver.addMethod("A", "m(java.lang.String)void");
+		assertEquals("A.m()void", resolver.getMethod("A", "m", "()V"));
+		assertEquals("A.m(int)void", resolver.getMethod("A", "m", "(I)V"));
+		assertEquals("A.m(java.lang.String)void", resolver.resolveMethod("A", "m", "(Ljava/lang/String;)V"));
+		assertNull(resolver.getMethod("A", "m", "(J)V"));
+		assertEquals(3, resolver.resolveMethods("A", "m").size());
+	}
+
+	@Test
+	public void testCovariantBridgeMethodsResolveByReturnType() {
+		// class B implements Supplier { public String get() } compiles to get()String and the bridge get()Object
+		TestResolver resolver = new TestResolver();
+		resolver.addMethod("B", "get()java.lang.String");
+		resolver.addMethod("B", "get()java.lang.Object");
+		assertEquals("B.get()java.lang.String", resolver.getMethod("B", "get", "()Ljava/lang/String;"));
+		assertEquals("B.get()java.lang.Object", resolver.getMethod("B", "get", "()Ljava/lang/Object;"));
+		assertEquals("B.get()java.lang.Object", resolver.resolveMethod("B", "get", "()Ljava/lang/Object;"));
+	}
+
+	@Test
+	public void testAmbiguousDeclaringTypeDoesNotFallThroughToSupertypes() {
+		// the types of two methods of Sub are only partially known and erase to the same key
+		TestResolver resolver = new TestResolver();
+		resolver.addMethod("Base", "m()void");
+		resolver.addMethod("Sub", "m()void");
+		resolver.addMethod("Sub", "m()void#2");
+		resolver.addSupertype("Sub", "Base");
+		assertNull(resolver.getMethod("Sub", "m", "()V"));
+		assertNull(resolver.resolveMethod("Sub", "m", "()V"));
+		assertEquals("Base.m()void", resolver.resolveMethod("Base", "m", "()V"));
+		assertEquals(2, resolver.resolveMethods("Sub", "m").size());
+	}
+
+	@Test
+	public void testInheritedMethodsResolveSuperclassesBeforeSuperinterfaces() {
+		// Sub extends Middle implements I, Middle extends Base implements J, J extends K
+		TestResolver resolver = new TestResolver();
+		resolver.addSupertype("Sub", "I");
+		resolver.addSupertype("Sub", "Middle");
+		resolver.addSupertype("Middle", "J");
+		resolver.addSupertype("Middle", "Base");
+		resolver.addSupertype("J", "K");
+		resolver.addInterface("I");
+		resolver.addInterface("J");
+		resolver.addInterface("K");
+		assertEquals(Arrays.asList("Sub", "Middle", "Base", "I", "J", "K"), resolver.getResolutionOrder("Sub"));
+
+		resolver.addMethod("Base", "m()void");
+		resolver.addMethod("I", "m()void");
+		resolver.addMethod("I", "n()void");
+		resolver.addMethod("J", "n()void");
+		resolver.addMethod("K", "o()void");
+		resolver.addMethod("Middle", "p()void");
+		assertEquals("Base.m()void", resolver.resolveMethod("Sub", "m", "()V"));
+		assertEquals("I.n()void", resolver.resolveMethod("Sub", "n", "()V"));
+		assertEquals("K.o()void", resolver.resolveMethod("Sub", "o", "()V"));
+		assertEquals("Middle.p()void", resolver.resolveMethod("Sub", "p", "()V"));
+		assertNull(resolver.resolveMethod("Middle", "n", "(I)V"));
+		assertEquals(Arrays.asList("Base.m()void"), resolver.resolveMethods("Sub", "m"));
+	}
+
+	/**
+	 * Resolves methods named by their declaring type and key (ex: A.m()void), a suffix
+	 * starting with # tells apart methods of a type with the same key
+	 */
+	private static class TestResolver extends MethodResolver<String> {
+		private final Map<String,List<String>> methods = new HashMap<String,List<String>>();
+		private final Map<String,List<String>> supertypes = new HashMap<String,List<String>>();
+		private final Set<String> interfaces = new HashSet<String>();
+
+		void addMethod(String type, String key){
+			get(methods, type).add(type + "." + key);
+		}
+
+		void addSupertype(String type, String supertype){
+			get(supertypes, type).add(supertype);
+		}
+
+		void addInterface(String type){
+			interfaces.add(type);
+		}
+
+		@Override
+		protected Iterable<String> getDeclaredMethods(String type){
+			return get(methods, type);
+		}
+
+		@Override
+		protected String getName(String method){
+			return method.substring(method.indexOf('.') + 1, method.indexOf('('));
+		}
+
+		@Override
+		protected String getKey(String method){
+			String key = method.substring(method.indexOf('.') + 1);
+			return key.indexOf('#') < 0 ? key : key.substring(0, key.indexOf('#'));
+		}
+
+		@Override
+		protected Iterable<String> getSupertypes(String type){
+			return get(supertypes, type);
+		}
+
+		@Override
+		protected boolean isInterface(String type){
+			return interfaces.contains(type);
+		}
+
+		private static List<String> get(Map<String,List<String>> map, String type){
+			List<String> result = map.get(type);
+			if(result == null){
+				result = new ArrayList<String>();
+				map.put(type, result);
+			}
+			return result;
+		}
+	}
+
+}
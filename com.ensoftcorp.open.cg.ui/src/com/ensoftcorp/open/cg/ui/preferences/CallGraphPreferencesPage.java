@@ -2,6 +2,7 @@ package com.ensoftcorp.open.cg.ui.preferences;
 
 import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
+import org.eclipse.jface.preference.IntegerFieldEditor;
 import org.eclipse.jface.preference.IPreferenceStore;
 import org.eclipse.jface.util.IPropertyChangeListener;
 import org.eclipse.ui.IWorkbench;
@@ -33,6 +34,15 @@ public class CallGraphPreferencesPage extends FieldEditorPreferencePage implemen
 	private static final String INFER_LIBRARY_CALLBACK_ENTRY_POINTS_DESCRIPTION = "Infers entry points that may result from library callbacks";
 	private static final String REACHABILITY_RESTRICTIONS_DESCRIPTION = "Enforce reachability restrictions";
 	private static final String LIBRARY_CALL_GRAPH_CONSTRUCTION_DESCRIPTION = "Library call graph construction (beta)";
+	private static final String CHA_PARALLELISM_DESCRIPTION = "CHA worker threads";
+	private static final String ANALYSIS_PARALLELISM_DESCRIPTION = "Analyses run concurrently after CHA";
+	private static final String CHA_INCREMENTAL_CONSTRUCTION_DESCRIPTION = "Incrementally update CHA after index changes";
+	private static final String CHA_INCREMENTAL_VERIFICATION_DESCRIPTION = "Verify incremental CHA updates against a full rebuild";
+	private static final String CALL_GRAPH_CACHE_DESCRIPTION = "Cache call graphs on disk";
+	private static final String LIBRARY_SUMMARY_STORE_SIZE_DESCRIPTION = "Library summary store size in MB (0 disables)";
+	private static final String TYPE_SET_STORE_SIZE_DESCRIPTION = "Off heap type set store size in MB (0 disables)";
+	private static final String TYPE_SET_HASH_CONSING_DESCRIPTION = "Share identical type propagation type sets (hash-consing)";
+	private static final String ANALYSIS_METRICS_JSON_DESCRIPTION = "Write per phase analysis metrics as JSON with the stats";
 
 	private static boolean changeListenerAdded = false;
 
@@ -104,6 +114,23 @@ public class CallGraphPreferencesPage extends FieldEditorPreferencePage implemen
 		addField(new BooleanFieldEditor(CallGraphPreferences.INFER_LIBRARY_CALLBACK_ENTRY_POINTS, "&" + INFER_LIBRARY_CALLBACK_ENTRY_POINTS_DESCRIPTION, getFieldEditorParent()));
 		addField(new BooleanFieldEditor(CallGraphPreferences.REACHABILITY_RESTRICTIONS, "&" + REACHABILITY_RESTRICTIONS_DESCRIPTION, getFieldEditorParent()));
 		addField(new BooleanFieldEditor(CallGraphPreferences.LIBRARY_CALL_GRAPH_CONSTRUCTION, "&" + LIBRARY_CALL_GRAPH_CONSTRUCTION_DESCRIPTION, getFieldEditorParent()));
+		IntegerFieldEditor chaParallelism = new IntegerFieldEditor(CallGraphPreferences.CHA_PARALLELISM, "&" + CHA_PARALLELISM_DESCRIPTION, getFieldEditorParent());
+		chaParallelism.setValidRange(1, Runtime.getRuntime().availableProcessors());
+		addField(chaParallelism);
+		IntegerFieldEditor analysisParallelism = new IntegerFieldEditor(CallGraphPreferences.ANALYSIS_PARALLELISM, "&" + ANALYSIS_PARALLELISM_DESCRIPTION, getFieldEditorParent());
+		analysisParallelism.setValidRange(1, Runtime.getRuntime().availableProcessors());
+		addField(analysisParallelism);
+		IntegerFieldEditor librarySummaryStoreSize = new IntegerFieldEditor(CallGraphPreferences.LIBRARY_SUMMARY_STORE_SIZE, "&" + LIBRARY_SUMMARY_STORE_SIZE_DESCRIPTION, getFieldEditorParent());
+		librarySummaryStoreSize.setValidRange(0, 65536);
+		addField(librarySummaryStoreSize);
+		addField(new BooleanFieldEditor(CallGraphPreferences.CHA_INCREMENTAL_CONSTRUCTION, "&" + CHA_INCREMENTAL_CONSTRUCTION_DESCRIPTION, getFieldEditorParent()));
+		addField(new BooleanFieldEditor(CallGraphPreferences.CHA_INCREMENTAL_VERIFICATION, "&" + CHA_INCREMENTAL_VERIFICATION_DESCRIPTION, getFieldEditorParent()));
+		addField(new BooleanFieldEditor(CallGraphPreferences.CALL_GRAPH_CACHE, "&" + CALL_GRAPH_CACHE_DESCRIPTION, getFieldEditorParent()));
+		IntegerFieldEditor typeSetStoreSize = new IntegerFieldEditor(CallGraphPreferences.TYPE_SET_STORE_SIZE, "&" + TYPE_SET_STORE_SIZE_DESCRIPTION, getFieldEditorParent());
+		typeSetStoreSize.setValidRange(0, 65536);
+		addField(typeSetStoreSize);
+		addField(new BooleanFieldEditor(CallGraphPreferences.TYPE_SET_HASH_CONSING, "&" + TYPE_SET_HASH_CONSING_DESCRIPTION, getFieldEditorParent()));
+		addField(new BooleanFieldEditor(CallGraphPreferences.ANALYSIS_METRICS_JSON, "&" + ANALYSIS_METRICS_JSON_DESCRIPTION, getFieldEditorParent()));
 	}
 
 }
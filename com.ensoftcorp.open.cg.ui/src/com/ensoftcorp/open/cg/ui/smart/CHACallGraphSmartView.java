@@ -1,7 +1,5 @@
 package com.ensoftcorp.open.cg.ui.smart;
 
-import com.ensoftcorp.atlas.core.query.Q;
-import com.ensoftcorp.atlas.java.core.script.Common;
 import com.ensoftcorp.open.cg.analysis.CGAnalysis;
 import com.ensoftcorp.open.cg.analysis.ClassHierarchyAnalysis;
 import com.ensoftcorp.open.cg.preferences.CallGraphPreferences;
@@ -15,13 +13,13 @@ public class CHACallGraphSmartView extends CallGraphSmartView {
 	}
 
 	@Override
-	protected Q getCallGraph() {
+	protected CGAnalysis getCallGraphAnalysis() {
 		CGAnalysis cgAnalysis = ClassHierarchyAnalysis.getInstance();
 		if(!CallGraphPreferences.isClassHierarchyAnalysisEnabled()){
 			Log.warning(cgAnalysis.getName() + " has not been run. Smart View will not contain results.");
-			return Common.empty();
+			return null;
 		}
-		return cgAnalysis.getCallGraph();
+		return cgAnalysis;
 	}
 
 }
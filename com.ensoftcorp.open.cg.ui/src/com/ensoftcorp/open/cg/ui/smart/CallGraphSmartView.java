@@ -6,20 +6,22 @@ import com.ensoftcorp.atlas.core.query.Q;
 import com.ensoftcorp.atlas.core.script.FrontierStyledResult;
 import com.ensoftcorp.atlas.core.script.StyledResult;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.atlas.java.core.script.Common;
 import com.ensoftcorp.atlas.ui.scripts.selections.FilteringAtlasSmartViewScript;
 import com.ensoftcorp.atlas.ui.scripts.selections.IExplorableScript;
 import com.ensoftcorp.atlas.ui.scripts.selections.IResizableScript;
 import com.ensoftcorp.atlas.ui.scripts.util.SimpleScriptUtil;
 import com.ensoftcorp.atlas.ui.selection.event.FrontierEdgeExploreEvent;
 import com.ensoftcorp.atlas.ui.selection.event.IAtlasSelectionEvent;
+import com.ensoftcorp.open.cg.analysis.CGAnalysis;
 
 public abstract class CallGraphSmartView extends FilteringAtlasSmartViewScript implements IResizableScript, IExplorableScript {
 
 	/**
-	 * Returns a call graph for the given analysis
+	 * Returns the analysis whose call graph is shown or null if the analysis has not been run
 	 * @return
 	 */
-	protected abstract Q getCallGraph();
+	protected abstract CGAnalysis getCallGraphAnalysis();
 	
 	@Override
 	protected String[] getSupportedNodeTags() {
@@ -40,21 +42,23 @@ public abstract class CallGraphSmartView extends FilteringAtlasSmartViewScript i
 	public FrontierStyledResult evaluate(IAtlasSelectionEvent event, int reverse, int forward) {
 		Q filteredSelection = filter(event.getSelection());
 
-		Q cg = getCallGraph();
+		CGAnalysis cgAnalysis = getCallGraphAnalysis();
 		Highlighter h = new Highlighter();
+		if(cgAnalysis == null){
+			return new com.ensoftcorp.atlas.core.script.FrontierStyledResult(Common.empty(), Common.empty(), Common.empty(), new MarkupFromH(h));
+		}
+		
+		// neighborhoods are answered from the analysis' in memory call graph index, rather than
+		// evaluating the forward and reverse reachability of the selection on the whole call graph
 		
-		Q completeResult = cg.forward(filteredSelection).union(cg.reverse(filteredSelection));
-				
 		// compute what to show for current steps
-		Q f = filteredSelection.forwardStepOn(completeResult, forward);
-		Q r = filteredSelection.reverseStepOn(completeResult, reverse);
-		Q result = f.union(r);
+		Q result = cgAnalysis.getCallGraphNeighborhood(filteredSelection, reverse, forward);
 		
 		// compute what is on the frontier
-		Q frontierForward = filteredSelection.forwardStepOn(completeResult, forward+1);
+		Q frontierForward = cgAnalysis.getCallGraphNeighborhood(filteredSelection, 0, forward+1);
 		frontierForward = frontierForward.retainEdges().differenceEdges(result);
 		
-		Q frontierReverse = filteredSelection.reverseStepOn(completeResult, reverse+1);
+		Q frontierReverse = cgAnalysis.getCallGraphNeighborhood(filteredSelection, reverse+1, 0);
 		frontierReverse = frontierReverse.retainEdges().differenceEdges(result);
 
 		return new com.ensoftcorp.atlas.core.script.FrontierStyledResult(result, frontierReverse, frontierForward, new MarkupFromH(h));
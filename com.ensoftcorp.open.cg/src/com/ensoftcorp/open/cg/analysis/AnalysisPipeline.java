@@ -0,0 +1,111 @@
+package com.ensoftcorp.open.cg.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.ensoftcorp.open.cg.log.Log;
+
+/**
+ * Runs a set of call graph analyses in dependency order.
+ *
+ * RA and CHA do not depend on any other analysis and run first, in sequence.
+ * Every other analysis refines the CHA call graph, so once CHA completes the
+ * facts they share (see FactBase) are derived a single time and the remaining
+ * analyses are run, concurrently if the parallelism allows. Atlas is not safe to
+ * query while other threads create and tag edges, so only the snapshot phase of
+ * each analysis (see CGAnalysis.prepareAnalysis) runs concurrently, the graph
+ * reads and writes before and after it (including the call graph cache) all happen
+ * on the thread running the pipeline.
+ */
+public class AnalysisPipeline {
+
+	private final List<CGAnalysis> analyses = new ArrayList<CGAnalysis>();
+
+	/**
+	 * Adds an analysis to the pipeline
+	 * @param analysis
+	 */
+	public void add(CGAnalysis analysis){
+		if(!analyses.contains(analysis)){
+			analyses.add(analysis);
+		}
+	}
+
+	public boolean isEmpty(){
+		return analyses.isEmpty();
+	}
+
+	/**
+	 * Runs each analysis of the pipeline that has not run already
+	 * @param parallelism the number of analyses to run concurrently once CHA completes (1 runs them in sequence)
+	 */
+	public void run(int parallelism){
+		List<CGAnalysis> dependentAnalyses = new ArrayList<CGAnalysis>();
+		for(CGAnalysis analysis : analyses){
+			if(analysis instanceof ReachabilityAnalysis || analysis instanceof ClassHierarchyAnalysis){
+				analysis.run();
+			} else {
+				dependentAnalyses.add(analysis);
+			}
+		}
+		if(dependentAnalyses.isEmpty()){
+			return;
+		}
+
+		// runs CHA if it was not part of the pipeline and derives the shared facts before any dependent analysis starts
+		FactBase.getInstance();
+
+		parallelism = Math.min(parallelism, dependentAnalyses.size());
+		if(parallelism <= 1){
+			for(CGAnalysis analysis : dependentAnalyses){
+				analysis.run();
+			}
+			return;
+		}
+		// the graph is only read and written from this thread, just the snapshot phases of the analyses run concurrently
+		List<CGAnalysis> splitAnalyses = new ArrayList<CGAnalysis>();
+		List<CGAnalysis.SnapshotPhase> phases = new ArrayList<CGAnalysis.SnapshotPhase>();
+		for(CGAnalysis analysis : dependentAnalyses){
+			CGAnalysis.SnapshotPhase phase = analysis.startRun();
+			if(phase != null){
+				splitAnalyses.add(analysis);
+				phases.add(phase);
+			}
+		}
+		parallelism = Math.min(parallelism, phases.size());
+		if(parallelism == 0){
+			return;
+		}
+		Log.info("Running " + phases.size() + " call graph analyses on " + parallelism + " threads");
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for(CGAnalysis.SnapshotPhase phase : phases){
+				results.add(pool.submit(new Runnable(){
+					@Override
+					public void run(){
+						phase.run();
+					}
+				}));
+			}
+			for(int i=0; i<results.size(); i++){
+				try {
+					results.get(i).get();
+					splitAnalyses.get(i).finishRun(phases.get(i));
+				} catch (ExecutionException e){
+					Log.error("Error running " + splitAnalyses.get(i).getName() + ".", e.getCause());
+				}
+			}
+		} catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			Log.warning("Interrupted while running call graph analyses.", e);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+}
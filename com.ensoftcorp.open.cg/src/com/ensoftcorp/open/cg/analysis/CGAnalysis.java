@@ -1,14 +1,34 @@
 package com.ensoftcorp.open.cg.analysis;
 
 import java.text.DecimalFormat;
+import java.util.BitSet;
 
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.GraphElement;
+import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
+import com.ensoftcorp.atlas.core.db.set.AtlasSet;
 import com.ensoftcorp.atlas.core.query.Q;
 import com.ensoftcorp.atlas.core.query.Query;
+import com.ensoftcorp.atlas.core.script.Common;
+import com.ensoftcorp.open.cg.cache.CallGraphCache;
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
 import com.ensoftcorp.open.cg.log.Log;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
 
 public abstract class CGAnalysis {
 
 	private boolean hasRun = false;
+	
+	// the start of a run split by startRun and finishRun
+	private long runStart = 0;
+	
+	// the per phase timers and counters of the analysis
+	private final AnalysisMetrics metrics = new AnalysisMetrics();
+	
+	// an in memory index of the call graph, built on first use
+	private AtlasProgramSnapshot callGraphIndexSnapshot = null;
+	private CallGraphSnapshot<Edge> callGraphIndex = null;
 
 	protected CGAnalysis(){}
 	
@@ -41,7 +61,119 @@ public abstract class CGAnalysis {
 	 * @return
 	 */
 	public abstract String[] getPerControlFlowEdgeTags();
-
+	
+	/**
+	 * Returns the per phase timers and counters recorded while the call graph was
+	 * constructed (and while callsites were resolved on demand)
+	 * @return
+	 */
+	public AnalysisMetrics getMetrics(){
+		return metrics;
+	}
+	
+	/**
+	 * Returns an in memory index of the call edges and per control flow edges of the
+	 * call graph (over the ids of the current program snapshot) that answers callers,
+	 * callees and neighborhood queries in both directions without evaluating Atlas queries
+	 * 
+	 * The index is built from the call graph in the index the first time it is needed and 
+	 * is rebuilt once the call graph changes (a run completes or edges are resolved on demand)
+	 * or the program snapshot is replaced. It is discarded with the analysis instance.
+	 * @return
+	 */
+	public synchronized CallGraphSnapshot<Edge> getCallGraphIndex(){
+		AtlasProgramSnapshot snapshot = AtlasProgramSnapshot.getInstance();
+		if(callGraphIndex == null || callGraphIndexSnapshot != snapshot){
+			callGraphIndex = snapshot.getCallGraph(getCallGraph(), getPerControlFlowGraph());
+			callGraphIndexSnapshot = snapshot;
+		}
+		return callGraphIndex;
+	}
+	
+	/**
+	 * Discards the call graph index, it is rebuilt the next time it is needed
+	 */
+	protected synchronized void invalidateCallGraphIndex(){
+		callGraphIndex = null;
+		callGraphIndexSnapshot = null;
+	}
+	
+	/**
+	 * Returns the given methods and the call edges within the given number of steps
+	 * from the methods to their callers (reverse) and to their callees (forward),
+	 * answered from the call graph index
+	 * @param methods
+	 * @param reverse
+	 * @param forward
+	 * @return
+	 */
+	public Q getCallGraphNeighborhood(Q methods, int reverse, int forward){
+		AtlasProgramSnapshot snapshot = AtlasProgramSnapshot.getInstance();
+		CallGraphSnapshot<Edge> index = getCallGraphIndex();
+		BitSet methodIds = new BitSet();
+		for(int method : snapshot.getMethodIds(methods.eval().nodes())){
+			methodIds.set(method);
+		}
+		AtlasSet<GraphElement> neighborhood = new AtlasHashSet<GraphElement>();
+		BitSet slots = index.getCallEdges(methodIds, forward, true);
+		slots.or(index.getCallEdges(methodIds, reverse, false));
+		for(int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot+1)){
+			Edge callEdge = index.getCallEdge(slot);
+			neighborhood.add(callEdge);
+			neighborhood.add(callEdge.from());
+			neighborhood.add(callEdge.to());
+		}
+		return methods.union(Common.toQ(neighborhood));
+	}
+	
+	/**
+	 * Returns true if the call graph produced by the algorithm can be saved to
+	 * and restored from the on disk call graph cache
+	 * @return
+	 */
+	public boolean isCacheable(){
+		return true;
+	}
+	
+	/**
+	 * Returns true if the analysis can resolve the callees and callers of a set
+	 * of methods on demand, without constructing the whole program call graph
+	 * (see resolveCallees and resolveCallers)
+	 * @return
+	 */
+	public boolean isDemandDriven(){
+		return false;
+	}
+	
+	/**
+	 * Returns the call graph edges from the given methods to the methods they call
+	 * 
+	 * If the analysis is not demand driven the whole program call graph is 
+	 * constructed first (if it hasn't been constructed already)
+	 * @param methods
+	 * @return
+	 */
+	public Q resolveCallees(Q methods){
+		if(!hasRun()){
+			run();
+		}
+		return getCallGraph().forwardStep(methods);
+	}
+	
+	/**
+	 * Returns the call graph edges from the methods that call the given methods
+	 * 
+	 * If the analysis is not demand driven the whole program call graph is 
+	 * constructed first (if it hasn't been constructed already)
+	 * @param methods
+	 * @return
+	 */
+	public Q resolveCallers(Q methods){
+		if(!hasRun()){
+			run();
+		}
+		return getCallGraph().reverseStep(methods);
+	}
 	
 	/**
 	 * Returns true if the call graph construction has completed
@@ -52,11 +184,11 @@ public abstract class CGAnalysis {
 	}
 	
 	/**
-	 * Runs the call graph construction (if it hasn't been run already)
-	 * and returns the time in milliseconds to complete the analysis
+	 * Runs the call graph construction (if it hasn't been run already,
+	 * restoring it from the call graph cache when possible) and returns the time in milliseconds to complete the analysis
 	 * @return
 	 */
-	public double run(){
+	public synchronized double run(){
 		if(hasRun()){
 			Log.info(getClass().getSimpleName() + " Call Graph construction has already completed.");
 			return 0;
@@ -64,13 +196,11 @@ public abstract class CGAnalysis {
 			try {
 				Log.info("Starting " + getClass().getSimpleName() + " call graph construction");
 				long start = System.nanoTime();
-				runAnalysis();
-				long stop = System.nanoTime();
-				double time = (stop - start)/1000.0/1000.0;
-				DecimalFormat decimalFormat = new DecimalFormat("#.##");
-				Log.info("Finished " + getClass().getSimpleName() + " call graph construction in " + decimalFormat.format(time) + "ms");
-				hasRun = true;
-				return time;
+				if(!restore()){
+					runAnalysis();
+					save();
+				}
+				return complete(start);
 			} catch (Exception e){
 				Log.error("Error constructing call graph.", e);
 				hasRun = false;
@@ -79,9 +209,119 @@ public abstract class CGAnalysis {
 		}
 	}
 	
+	/**
+	 * Starts the call graph construction from the calling thread (see AnalysisPipeline),
+	 * restoring it from the call graph cache when possible and otherwise preparing the
+	 * analysis. If the analysis has a snapshot phase it is returned, and the construction
+	 * completes once the phase has run and finishRun is called from the calling thread.
+	 * @return the snapshot phase left to run or null if the construction completed (or failed)
+	 */
+	synchronized SnapshotPhase startRun(){
+		if(hasRun()){
+			Log.info(getClass().getSimpleName() + " Call Graph construction has already completed.");
+			return null;
+		}
+		try {
+			Log.info("Starting " + getClass().getSimpleName() + " call graph construction");
+			runStart = System.nanoTime();
+			if(restore()){
+				complete(runStart);
+				return null;
+			}
+			SnapshotPhase phase = prepareAnalysis();
+			if(phase == null){
+				runAnalysis();
+				save();
+				complete(runStart);
+			}
+			return phase;
+		} catch (Exception e){
+			Log.error("Error constructing call graph.", e);
+			hasRun = false;
+			return null;
+		}
+	}
+	
+	/**
+	 * Completes a call graph construction started by startRun once its snapshot phase has run
+	 * @param phase
+	 */
+	synchronized void finishRun(SnapshotPhase phase){
+		try {
+			phase.finish();
+			save();
+			complete(runStart);
+		} catch (Exception e){
+			Log.error("Error constructing call graph.", e);
+			hasRun = false;
+		}
+	}
+	
+	private boolean restore(){
+		try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.CACHE_RESTORE)){
+			if(CallGraphCache.restore(this)){
+				restoredFromCache();
+				return true;
+			}
+			return false;
+		}
+	}
+	
+	private void save(){
+		try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.CACHE_SAVE)){
+			CallGraphCache.save(this);
+		}
+	}
+	
+	private double complete(long start){
+		invalidateCallGraphIndex();
+		long stop = System.nanoTime();
+		metrics.addTime(AnalysisMetrics.TOTAL, stop - start);
+		double time = (stop - start)/1000.0/1000.0;
+		DecimalFormat decimalFormat = new DecimalFormat("#.##");
+		Log.info("Finished " + getClass().getSimpleName() + " call graph construction in " + decimalFormat.format(time) + "ms");
+		Log.debug(getClass().getSimpleName() + " metrics: " + metrics);
+		hasRun = true;
+		return time;
+	}
+	
 	/**
 	 * Runs the call graph construction algorithm
 	 */
 	protected abstract void runAnalysis();
 	
+	/**
+	 * Called once the call graph of the analysis is restored from the call graph cache
+	 * instead of running the analysis
+	 */
+	protected void restoredFromCache(){}
+	
+	/**
+	 * Reads the inputs of the analysis from the graph and returns the part of the analysis
+	 * that only reads the program snapshot and the facts shared by the analyses (see FactBase),
+	 * so that it can run concurrently with other analyses. Analyses that cannot be split this
+	 * way return null and are run with runAnalysis.
+	 * @return
+	 */
+	protected SnapshotPhase prepareAnalysis(){
+		return null;
+	}
+	
+	/**
+	 * The part of an analysis that does not touch the graph (see prepareAnalysis)
+	 */
+	protected interface SnapshotPhase {
+		
+		/**
+		 * Runs the analysis against the program snapshot, must not read or write the graph
+		 */
+		public void run();
+		
+		/**
+		 * Writes the results of the analysis to the graph, called from the thread that prepared the analysis
+		 */
+		public void finish();
+		
+	}
+	
 }
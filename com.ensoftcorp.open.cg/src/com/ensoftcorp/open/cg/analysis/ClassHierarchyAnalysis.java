@@ -1,29 +1,39 @@
 package com.ensoftcorp.open.cg.analysis;
 
 import java.io.File;
-
-import org.objectweb.asm.tree.ClassNode;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import com.ensoftcorp.atlas.core.db.graph.Edge;
 import com.ensoftcorp.atlas.core.db.graph.Graph;
 import com.ensoftcorp.atlas.core.db.graph.GraphElement.NodeDirection;
 import com.ensoftcorp.atlas.core.db.graph.Node;
-import com.ensoftcorp.atlas.core.db.set.AtlasSet;
 import com.ensoftcorp.atlas.core.index.common.SourceCorrespondence;
 import com.ensoftcorp.atlas.core.indexing.IndexingUtil;
-import com.ensoftcorp.atlas.core.query.Q;
 import com.ensoftcorp.atlas.core.query.Query;
 import com.ensoftcorp.atlas.core.script.Common;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
 import com.ensoftcorp.open.cg.log.Log;
 import com.ensoftcorp.open.cg.preferences.CallGraphPreferences;
-import com.ensoftcorp.open.cg.summary.MethodSummary;
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.DispatchKinds;
+import com.ensoftcorp.open.cg.snapshot.DispatchResolver;
+import com.ensoftcorp.open.cg.snapshot.ProgramDelta;
+import com.ensoftcorp.open.cg.snapshot.ProgramFingerprint;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.cg.summary.LibrarySummarizer;
+import com.ensoftcorp.open.cg.summary.LibrarySummaryStore;
+import com.ensoftcorp.open.cg.utils.CallEdgeBuffer;
 import com.ensoftcorp.open.cg.utils.CallGraphConstruction;
 import com.ensoftcorp.open.commons.utilities.CodeMapChangeListener;
 import com.ensoftcorp.open.commons.utilities.WorkspaceUtils;
-import com.ensoftcorp.open.java.commons.analysis.CommonQueries;
-import com.ensoftcorp.open.java.commons.bytecode.BytecodeUtils;
-import com.ensoftcorp.open.java.commons.bytecode.JarInspector;
 
 /**
  * This analysis builds a call graph using Class Hierarchy Analysis (CHA).
@@ -37,7 +47,7 @@ import com.ensoftcorp.open.java.commons.bytecode.JarInspector;
  * 
  * @author Ben Holland
  */
-public class ClassHierarchyAnalysis extends CGAnalysis {
+public class ClassHierarchyAnalysis extends DemandDrivenAnalysis {
 
 	public static final String CALL = "CHA-CALL"; 
 	public static final String PER_CONTROL_FLOW = "CHA-PER-CONTROL-FLOW"; 
@@ -52,6 +62,16 @@ public class ClassHierarchyAnalysis extends CGAnalysis {
 	
 	private static CodeMapChangeListener codeMapChangeListener = null;
 	
+	// the state of the last incremental run, kept across index changes
+	private static ProgramFingerprint previousFingerprint = null;
+	private static long previousCallEdgeCount = 0;
+	
+	// true if the call graph was updated from the call graph of the previous run
+	private boolean incrementalUpdate = false;
+	
+	// the dispatch kinds of the call edges of the call graph index
+	private DispatchKinds<Edge> dispatchKinds = null;
+	
 	public static ClassHierarchyAnalysis getInstance() {
 		if (instance == null || (codeMapChangeListener != null && codeMapChangeListener.hasIndexChanged())) {
 			instance = new ClassHierarchyAnalysis();
@@ -65,143 +85,425 @@ public class ClassHierarchyAnalysis extends CGAnalysis {
 		return instance;
 	}
 	
-	private Q typeHierarchy;
-	private Q typeOfEdges;
-	private Q invokedFunctionEdges;
-	private Q identityPassedToEdges;
-	private Q dataFlowEdges;
-	private Graph methodSignatureGraph;
-	private AtlasSet<Node> methods;
-	
 	@Override
 	protected void runAnalysis() {
+		AnalysisMetrics metrics = getMetrics();
 		
 		if(CallGraphPreferences.isLibraryCallGraphConstructionEnabled()){
-			// add callsite summaries for each library method
-			for(Node library : Query.universe().nodes(XCSG.Library).eval().nodes()){
-				Log.info("Generating call graph for: " + library.getAttr(XCSG.name));
-				try {
-					File libraryFile = null;
-					SourceCorrespondence sc = (SourceCorrespondence) library.getAttr(XCSG.sourceCorrespondence);
-					if(sc != null){
-						libraryFile = WorkspaceUtils.getFile(sc.sourceFile);
-					}
-					
-					if(libraryFile == null || !libraryFile.exists()){
-						throw new RuntimeException("Could not locate library file for " + library.getAttr(XCSG.name).toString());
-					}
-					
-//					if(libraryFile.getName().endsWith("rt.jar")){
-//						continue; // TODO: remove after debugging
-//					}
-					
-					// get the entry for each type in the library
-					JarInspector jarInspector = new JarInspector(libraryFile);
-					for(Node type : Common.toQ(library).contained().nodes(XCSG.Java.AbstractClass, XCSG.Java.Class).eval().nodes()){
-						Node pkg = Common.toQ(type).parent().nodes(XCSG.Package).eval().nodes().one();
-						if(pkg != null){
-							String entry = pkg.getAttr(XCSG.name).toString().replace(".", "/") + "/" + type.getAttr(XCSG.name).toString() + ".class";
-							byte[] classBytes = jarInspector.extractEntry(entry);
-							if(classBytes != null){
-								ClassNode classNode = BytecodeUtils.getClassNode(jarInspector.extractEntry(entry));
-								MethodSummary.summarizeCallsites(classNode, type);
+			long summarizationStart = System.nanoTime();
+			// add callsite summaries for each library method, class files are summarized
+			// on the CHA worker threads (unless their summaries are already stored) while 
+			// the summaries are written from this thread
+			LibrarySummarizer librarySummarizer = new LibrarySummarizer(CallGraphPreferences.getClassHierarchyAnalysisParallelism(), LibrarySummaryStore.open());
+			try {
+				for(Node library : Query.universe().nodes(XCSG.Library).eval().nodes()){
+					Log.info("Generating call graph for: " + library.getAttr(XCSG.name));
+					try {
+						File libraryFile = null;
+						SourceCorrespondence sc = (SourceCorrespondence) library.getAttr(XCSG.sourceCorrespondence);
+						if(sc != null){
+							libraryFile = WorkspaceUtils.getFile(sc.sourceFile);
+						}
+						
+						if(libraryFile == null || !libraryFile.exists()){
+							throw new RuntimeException("Could not locate library file for " + library.getAttr(XCSG.name).toString());
+						}
+						
+						// get the entry for each type in the library
+						Map<String,Node> types = new HashMap<String,Node>();
+						for(Node type : Common.toQ(library).contained().nodes(XCSG.Java.AbstractClass, XCSG.Java.Class).eval().nodes()){
+							Node pkg = Common.toQ(type).parent().nodes(XCSG.Package).eval().nodes().one();
+							if(pkg != null){
+								String entry = pkg.getAttr(XCSG.name).toString().replace(".", "/") + "/" + type.getAttr(XCSG.name).toString() + ".class";
+								types.put(entry, type);
 							} else {
-								Log.warning("Could not locate " + entry);
+								Log.warning("Type " + type.getAttr(XCSG.name)+ " has no package.");
 							}
-						} else {
-							Log.warning("Type " + type.getAttr(XCSG.name)+ " has no package.");
 						}
+						
+						// summarize the entries in a single pass over the library
+						for(String entry : librarySummarizer.summarize(libraryFile, types)){
+							Log.warning("Could not locate " + entry);
+						}
+					} catch (Exception e){
+						Log.warning("Could not summarize callsites in library: " + library.getAttr(XCSG.name) + "\n" + library.toString(), e);
 					}
-				} catch (Exception e){
-					Log.warning("Could not summarize callsites in library: " + library.getAttr(XCSG.name) + "\n" + library.toString(), e);
 				}
+			} finally {
+				librarySummarizer.shutdown();
+			}
+			metrics.addTime(AnalysisMetrics.LIBRARY_SUMMARIZATION, System.nanoTime() - summarizationStart);
+		}
+		
+		// library summarization may have added callsites to the graph, so resolve against a fresh snapshot
+		if(CallGraphPreferences.isLibraryCallGraphConstructionEnabled()){
+			AtlasProgramSnapshot.invalidate();
+		}
+		AtlasProgramSnapshot snapshot;
+		try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.PROGRAM_SNAPSHOT)){
+			snapshot = AtlasProgramSnapshot.getInstance();
+		}
+		ProgramSnapshot program = snapshot.getProgram();
+		DispatchResolver dispatchResolver = new DispatchResolver(program);
+		boolean libraryCallGraphConstruction = CallGraphPreferences.isLibraryCallGraphConstructionEnabled();
+		
+		// library callsite summaries are regenerated on every run, so incremental construction 
+		// is only available when library call graph construction is disabled
+		boolean incremental = CallGraphPreferences.isClassHierarchyAnalysisIncrementalConstructionEnabled() && !libraryCallGraphConstruction;
+		ProgramFingerprint fingerprint = null;
+		BitSet methodsToResolve = null; // all methods
+		if(incremental){
+			fingerprint = snapshot.getFingerprint();
+			methodsToResolve = getIncrementalUpdate(snapshot, fingerprint);
+		}
+		
+		// callsites that were already resolved on demand against this snapshot have their edges in the graph,
+		// unless the incremental update retracts them
+		BitSet resolvedCallsites = methodsToResolve == null ? getResolvedCallsites(snapshot) : null;
+		
+		// resolving the callsites of one method does not depend on any other method, so the methods
+		// can be split across workers that only read from the snapshot
+		ResolvedCallEdges resolvedCallEdges;
+		long resolutionStart = System.nanoTime();
+		int parallelism = CallGraphPreferences.getClassHierarchyAnalysisParallelism();
+		if(parallelism > 1){
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				resolvedCallEdges = pool.invoke(new CallsiteResolutionTask(snapshot, dispatchResolver, libraryCallGraphConstruction, methodsToResolve, resolvedCallsites, 0, program.getMethodCount()));
+			} finally {
+				pool.shutdown();
 			}
+		} else {
+			resolvedCallEdges = resolveCallsites(snapshot, dispatchResolver, libraryCallGraphConstruction, methodsToResolve, resolvedCallsites, 0, program.getMethodCount());
+		}
+		metrics.addTime(AnalysisMetrics.CALLSITE_RESOLUTION, System.nanoTime() - resolutionStart);
+		metrics.add(AnalysisMetrics.CALLSITES_RESOLVED, resolvedCallEdges.callsites);
+		
+		// the resolved edges are created in a single pass from this thread once every callsite is resolved
+		try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.EDGE_CREATION)){
+			int edges = resolvedCallEdges.callEdges.createEdges(CallGraphConstruction.CALL_EDGE_NAME);
+			edges += resolvedCallEdges.libraryCallEdges.createEdges(CallGraphConstruction.CALL_EDGE_NAME);
+			metrics.add(AnalysisMetrics.EDGES_CREATED, edges);
+		}
+		
+		incrementalUpdate = methodsToResolve != null;
+		if(incrementalUpdate && CallGraphPreferences.isClassHierarchyAnalysisIncrementalVerificationEnabled()){
+			verifyIncrementalUpdate(snapshot, dispatchResolver, libraryCallGraphConstruction);
+		}
+		recordIncrementalState(fingerprint);
+	}
+	
+	@Override
+	protected void restoredFromCache() {
+		// the restored call graph is the call graph of the current program, so the next run can update it
+		boolean incremental = CallGraphPreferences.isClassHierarchyAnalysisIncrementalConstructionEnabled() && !CallGraphPreferences.isLibraryCallGraphConstructionEnabled();
+		recordIncrementalState(incremental ? AtlasProgramSnapshot.getInstance().getFingerprint() : null);
+	}
+	
+	/**
+	 * Returns true if the call graph was incrementally updated from the call graph of a previous
+	 * run instead of rebuilt, the edges that were kept still carry the tags of the analyses that
+	 * refined the previous call graph
+	 * @return
+	 */
+	public boolean isIncrementalUpdate(){
+		return incrementalUpdate;
+	}
+	
+	/**
+	 * Records the fingerprint of the program the call graph was built for, the next run
+	 * updates the call graph incrementally from it
+	 * @param fingerprint null if the next run must rebuild the call graph
+	 */
+	private static void recordIncrementalState(ProgramFingerprint fingerprint){
+		previousFingerprint = fingerprint;
+		previousCallEdgeCount = fingerprint == null ? 0 : Query.universe().edges(CALL).eval().edges().size();
+	}
+	
+	/**
+	 * Returns the dispatch kind (static, constructor or virtual) of each call edge
+	 * of the call graph index (see getCallGraphIndex), the call edges are classified
+	 * once per index so the analyses refining the CHA call graph do not each
+	 * classify them again
+	 * @return
+	 */
+	public synchronized DispatchKinds<Edge> getDispatchKinds(){
+		CallGraphSnapshot<Edge> callGraphIndex = getCallGraphIndex();
+		if(dispatchKinds == null || dispatchKinds.getCallGraph() != callGraphIndex){
+			dispatchKinds = new DispatchKinds<Edge>(AtlasProgramSnapshot.getInstance().getProgram(), callGraphIndex);
+		}
+		return dispatchKinds;
+	}
+	
+	/**
+	 * Compares the program to the program of the previous run and retracts the call
+	 * edges of the methods whose callsites must be resolved again
+	 * @param snapshot
+	 * @param fingerprint
+	 * @return the methods to resolve or null if every method must be resolved
+	 */
+	private static BitSet getIncrementalUpdate(AtlasProgramSnapshot snapshot, ProgramFingerprint fingerprint){
+		if(previousFingerprint == null){
+			return null;
 		}
 		
-		typeHierarchy = Query.universe().edges(XCSG.Supertype);
-		typeOfEdges = Query.universe().edges(XCSG.TypeOf);
-		invokedFunctionEdges = Query.universe().edges(XCSG.InvokedFunction);
-		identityPassedToEdges = Query.universe().edges(XCSG.IdentityPassedTo);
-		dataFlowEdges = Query.universe().edges(XCSG.DataFlow_Edge);
-		methodSignatureGraph = Query.universe().edges(XCSG.InvokedSignature).eval();
-		methods = Query.universe().nodes(XCSG.Method).eval().nodes();
+		// if the index was rebuilt from scratch the previous call graph is gone
+		if(previousCallEdgeCount > 0 && Query.universe().edges(CALL).eval().edges().isEmpty()){
+			Log.info("The previous CHA call graph is no longer in the index, rebuilding the call graph.");
+			return null;
+		}
+		
+		ProgramDelta delta = fingerprint.compare(previousFingerprint);
+		BitSet affectedMethods = delta.getAffectedMethods();
+		Log.info("Incrementally updating CHA (" + delta.getChangedTypes().cardinality() + " changed types, " 
+				+ delta.getChangedMethods().cardinality() + " changed methods, " + delta.getRemovedTypeCount() + " removed types, " 
+				+ delta.getRemovedMethodCount() + " removed methods), resolving " + affectedMethods.cardinality() 
+				+ " of " + snapshot.getProgram().getMethodCount() + " methods.");
+		retractCallEdges(snapshot, affectedMethods);
+		return affectedMethods;
+	}
+	
+	/**
+	 * Deletes the call edges from the given methods and the per control flow edges from their callsites
+	 * @param snapshot
+	 * @param methods
+	 */
+	private static void retractCallEdges(AtlasProgramSnapshot snapshot, BitSet methods){
+		Graph callGraph = Query.universe().edges(CALL, LIBRARY_CALL).eval();
+		Graph perControlFlowGraph = Query.universe().edges(PER_CONTROL_FLOW, LIBRARY_PER_CONTROL_FLOW).eval();
+		Adjacency callsites = snapshot.getProgram().getCallsites();
+		ArrayList<Edge> retractedEdges = new ArrayList<Edge>();
+		for(int method = methods.nextSetBit(0); method >= 0; method = methods.nextSetBit(method+1)){
+			for(Edge callEdge : callGraph.edges(snapshot.getMethod(method), NodeDirection.OUT)){
+				retractedEdges.add(callEdge);
+			}
+			for(int i=callsites.start(method); i<callsites.end(method); i++){
+				for(Edge perControlFlowEdge : perControlFlowGraph.edges(snapshot.getCallsite(callsites.target(i)), NodeDirection.OUT)){
+					retractedEdges.add(perControlFlowEdge);
+				}
+			}
+		}
+		for(Edge retractedEdge : retractedEdges){
+			Graph.U.delete(retractedEdge);
+		}
+	}
+	
+	/**
+	 * Resolves every callsite and compares the result to the incrementally updated call graph,
+	 * if they differ the call graph is replaced by the full rebuild
+	 * @param snapshot
+	 * @param dispatchResolver
+	 * @param libraryCallGraphConstruction
+	 */
+	private static void verifyIncrementalUpdate(AtlasProgramSnapshot snapshot, DispatchResolver dispatchResolver, boolean libraryCallGraphConstruction){
+		int methods = snapshot.getProgram().getMethodCount();
+		ResolvedCallEdges rebuiltCallEdges = resolveCallsites(snapshot, dispatchResolver, libraryCallGraphConstruction, null, null, 0, methods);
+		int differences = rebuiltCallEdges.callEdges.countDifferences() + rebuiltCallEdges.libraryCallEdges.countDifferences();
+		if(differences == 0){
+			Log.info("Verified incremental CHA update against a full rebuild.");
+		} else {
+			Log.warning("Incremental CHA update differs from a full rebuild by " + differences + " edges, replacing it with the full rebuild.");
+			BitSet allMethods = new BitSet(methods);
+			allMethods.set(0, methods);
+			retractCallEdges(snapshot, allMethods);
+			rebuiltCallEdges.callEdges.createEdges(CallGraphConstruction.CALL_EDGE_NAME);
+			rebuiltCallEdges.libraryCallEdges.createEdges(CallGraphConstruction.CALL_EDGE_NAME);
+		}
+	}
+	
+	/**
+	 * Resolves every callsite of the program, this is the resolution a run performs
+	 * (against the current program snapshot) before the resolved edges are created
+	 * @param program
+	 * @param libraryCallGraphConstruction
+	 * @param callEdges collects the call edges
+	 * @param libraryCallEdges collects the library call edges (edges to abstract methods)
+	 * @return the number of callsites resolved
+	 */
+	public static int resolveCallsites(ProgramSnapshot program, boolean libraryCallGraphConstruction, CallEdgeBuffer callEdges, CallEdgeBuffer libraryCallEdges){
+		return resolveCallsites(program, libraryCallGraphConstruction, null, callEdges, libraryCallEdges);
+	}
+	
+	/**
+	 * Resolves the callsites of the given methods, this is the resolution an incremental
+	 * update performs for the methods affected by a program change (see ProgramDelta)
+	 * @param program
+	 * @param libraryCallGraphConstruction
+	 * @param methods if not null only these methods are resolved
+	 * @param callEdges collects the call edges
+	 * @param libraryCallEdges collects the library call edges (edges to abstract methods)
+	 * @return the number of callsites resolved
+	 */
+	public static int resolveCallsites(ProgramSnapshot program, boolean libraryCallGraphConstruction, BitSet methods, CallEdgeBuffer callEdges, CallEdgeBuffer libraryCallEdges){
+		return resolveCallsites(program, new DispatchResolver(program), libraryCallGraphConstruction, methods, null, 0, program.getMethodCount(), callEdges, libraryCallEdges);
+	}
+	
+	/**
+	 * Resolves the callsites of the methods in the given range of method ids
+	 * @param snapshot
+	 * @param dispatchResolver
+	 * @param libraryCallGraphConstruction
+	 * @param methods if not null only these methods are resolved
+	 * @param resolvedCallsites if not null these callsites are skipped
+	 * @param fromMethod the first method id (inclusive)
+	 * @param toMethod the last method id (exclusive)
+	 * @return
+	 */
+	private static ResolvedCallEdges resolveCallsites(AtlasProgramSnapshot snapshot, DispatchResolver dispatchResolver, boolean libraryCallGraphConstruction, BitSet methods, BitSet resolvedCallsites, int fromMethod, int toMethod){
+		ResolvedCallEdges resolvedCallEdges = new ResolvedCallEdges(snapshot);
+		resolvedCallEdges.callsites = resolveCallsites(snapshot.getProgram(), dispatchResolver, libraryCallGraphConstruction, methods, resolvedCallsites, fromMethod, toMethod, resolvedCallEdges.callEdges, resolvedCallEdges.libraryCallEdges);
+		return resolvedCallEdges;
+	}
+	
+	/**
+	 * Resolves the callsites of the methods in the given range of method ids into the given buffers
+	 * @param program
+	 * @param dispatchResolver
+	 * @param libraryCallGraphConstruction
+	 * @param methods if not null only these methods are resolved
+	 * @param resolvedCallsites if not null these callsites are skipped
+	 * @param fromMethod the first method id (inclusive)
+	 * @param toMethod the last method id (exclusive)
+	 * @param callEdges
+	 * @param libraryCallEdges
+	 * @return the number of callsites resolved
+	 */
+	private static int resolveCallsites(ProgramSnapshot program, DispatchResolver dispatchResolver, boolean libraryCallGraphConstruction, BitSet methods, BitSet resolvedCallsites, int fromMethod, int toMethod, CallEdgeBuffer callEdges, CallEdgeBuffer libraryCallEdges){
+		Adjacency callsites = program.getCallsites();
+		int resolved = 0;
 		
 		// for each method
-		for(Node method : methods){
+		for(int method=fromMethod; method<toMethod; method++){
+			if(methods != null && !methods.get(method)){
+				continue;
+			}
 			// for each callsite
-			AtlasSet<Node> callsites = CommonQueries.localDeclarations(Query.universe(), Common.toQ(method)).nodes(XCSG.CallSite).eval().nodes();
-			for(Node callsite : callsites){
-				if(callsite.taggedWith(XCSG.StaticDispatchCallSite)){
-					// static dispatches (calls to constructors or methods marked as static) can be resolved immediately
-					Node targetMethod = invokedFunctionEdges.successors(Common.toQ(callsite)).eval().nodes().one();
-					CallGraphConstruction.createCallEdge(callsite, method, targetMethod, CALL, PER_CONTROL_FLOW);
-				} else if(callsite.taggedWith(XCSG.DynamicDispatchCallSite)){
-					// dynamic dispatches require additional analysis to be resolved
+			for(int i=callsites.start(method); i<callsites.end(method); i++){
+				int callsite = callsites.target(i);
+				if(resolvedCallsites == null || !resolvedCallsites.get(callsite)){
+					resolveCallsite(program, dispatchResolver, libraryCallGraphConstruction, method, callsite, callEdges, libraryCallEdges);
+					resolved++;
+				}
+			}
+		}
+		
+		return resolved;
+	}
+	
+	@Override
+	protected Adjacency getCallsites(ProgramSnapshot program){
+		return program.getCallsites();
+	}
+	
+	@Override
+	protected void resolveCallsite(ProgramSnapshot program, DispatchResolver dispatchResolver, int method, int callsite, CallEdgeBuffer callEdges, CallEdgeBuffer libraryCallEdges){
+		resolveCallsite(program, dispatchResolver, CallGraphPreferences.isLibraryCallGraphConstructionEnabled(), method, callsite, callEdges, libraryCallEdges);
+	}
+	
+	/**
+	 * Resolves a callsite of the given method
+	 * @param program
+	 * @param dispatchResolver
+	 * @param libraryCallGraphConstruction
+	 * @param method
+	 * @param callsite
+	 * @param callEdges
+	 * @param libraryCallEdges
+	 */
+	private static void resolveCallsite(ProgramSnapshot program, DispatchResolver dispatchResolver, boolean libraryCallGraphConstruction, int method, int callsite, CallEdgeBuffer callEdges, CallEdgeBuffer libraryCallEdges){
+		if(program.isStaticDispatch(callsite)){
+			// static dispatches (calls to constructors or methods marked as static) can be resolved immediately
+			int targetMethod = program.getInvokedFunction(callsite);
+			if(targetMethod != ProgramSnapshot.NONE){
+				callEdges.add(callsite, method, targetMethod);
+			}
+		} else if(program.isDynamicDispatch(callsite)){
+			// dynamic dispatches require additional analysis to be resolved
+			// Atlas' InvokedSignature edge gives us the nearest method definition to the declared type
+			// of the receiver object, subtypes of the declared type can override it
+			int methodSignature = program.getInvokedSignature(callsite);
+			if(methodSignature == ProgramSnapshot.NONE){
+				return;
+			}
+			BitSet resolvedDispatches = dispatchResolver.resolveDynamicDispatch(callsite, null);
+			
+			// add a call edge to each resolved concrete dispatch
+			for(int resolvedDispatch = resolvedDispatches.nextSetBit(0); resolvedDispatch >= 0; resolvedDispatch = resolvedDispatches.nextSetBit(resolvedDispatch+1)){
+				callEdges.add(callsite, method, resolvedDispatch);
+			}
+			
+			// if library call graph construction is enabled then we will consider adding a special edge type
+			// in the case that the method signature was abstract since we may not have been able to resolve any
+			// dispatch targets (in the case the method is not implemented in the library)
+			// of course the application could override any non-final methods anyway but we can't say anything
+			// about that at this time
+			if(libraryCallGraphConstruction){
+				if(program.hasMethodFlag(methodSignature, ProgramSnapshot.METHOD_ABSTRACT)){
+					libraryCallEdges.add(callsite, method, methodSignature);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The call edges and library call edges resolved for a range of methods
+	 */
+	private static class ResolvedCallEdges {
+		private final CallEdgeBuffer callEdges;
+		private final CallEdgeBuffer libraryCallEdges;
+		private int callsites = 0;
+		
+		private ResolvedCallEdges(AtlasProgramSnapshot snapshot){
+			callEdges = new CallEdgeBuffer(snapshot, CALL, PER_CONTROL_FLOW);
+			libraryCallEdges = new CallEdgeBuffer(snapshot, LIBRARY_CALL, LIBRARY_PER_CONTROL_FLOW);
+		}
+		
+		private ResolvedCallEdges addAll(ResolvedCallEdges resolvedCallEdges){
+			callEdges.addAll(resolvedCallEdges.callEdges);
+			libraryCallEdges.addAll(resolvedCallEdges.libraryCallEdges);
+			callsites += resolvedCallEdges.callsites;
+			return this;
+		}
+	}
+	
+	/**
+	 * Recursively splits a range of method ids until it is small enough to resolve directly
+	 */
+	private static class CallsiteResolutionTask extends RecursiveTask<ResolvedCallEdges> {
 
-					// first get the declared type of the receiver object
-					Q thisNode = identityPassedToEdges.predecessors(Common.toQ(callsite));
-					Q receiverObject = dataFlowEdges.predecessors(thisNode);
-					Q declaredType = typeOfEdges.successors(receiverObject);
-					
-					// since the dispatch was called on the "declared" type there must be at least one signature
-					// (abstract or concrete) in the descendant path (the direct path from Object to the declared path)
-					// the nearest method definition is the method definition closest to the declared type (including
-					// the declared type itself) while traversing from declared type to Object on the descendant path
-					// but an easier way to get this is to use Atlas' InvokedSignature edge to get the nearest method definition
-					Edge methodSignatureEdge = methodSignatureGraph.edges(callsite, NodeDirection.OUT).one();
-					Node methodSignature = methodSignatureEdge.to();
-					Q resolvedDispatches = Common.toQ(methodSignature);
-					
-					// subtypes of the declared type can override the nearest target method definition, 
-					// so make sure to include all the subtype method definitions
-					Q declaredSubtypeHierarchy = typeHierarchy.reverse(declaredType);
+		private static final long serialVersionUID = 1L;
+		
+		private static final int METHODS_PER_TASK = 512;
 
-					// next perform a reachability analysis (RA) withing the set of subtypes
-					Q reachableMethods = Common.toQ(ReachabilityAnalysis.getReachableMethods(callsite, declaredSubtypeHierarchy));
-					resolvedDispatches = resolvedDispatches.union(reachableMethods);
-					
-					// if a method is abstract, then its children must override it, so we can just remove all abstract
-					// methods from the graph (this might come into play if nearest matching method definition was abstract)
-					// note: its possible for a method to be re-abstracted by a subtype after its been made concrete
-					resolvedDispatches = resolvedDispatches.difference(Query.universe().nodes(XCSG.abstractMethod));
-					
-					// lastly, if the method signature is concrete and the type of the method signature is abstract 
-					// and all subtypes override the method signature then the method signature can never be called
-					// directly, so remove it from the result
-					boolean abstractMethodSignature = methodSignature.taggedWith(XCSG.abstractMethod);
-					if(!abstractMethodSignature){
-						Q methodSignatureType = Common.toQ(methodSignature).parent();
-						boolean abstractMethodSignatureType = methodSignatureType.eval().nodes().one().taggedWith(XCSG.Java.AbstractClass);
-						if(abstractMethodSignatureType){
-							Q resolvedDispatchConcreteSubTypes = resolvedDispatches.difference(Common.toQ(methodSignature)).parent()
-									.difference(Query.universe().nodes(XCSG.Java.AbstractClass));
-							if(!resolvedDispatchConcreteSubTypes.eval().nodes().isEmpty()){
-								// there are concrete subtypes
-								if(declaredSubtypeHierarchy.difference(methodSignatureType, resolvedDispatchConcreteSubTypes).eval().nodes().isEmpty()){
-									// all subtypes override method signature, method signature implementation can never be called
-									resolvedDispatches = resolvedDispatches.difference(Common.toQ(methodSignature));
-								}
-							}
-						}
-					}
-					
-					// add a call edge to each resolved concrete dispatch
-					for(Node resolvedDispatch : resolvedDispatches.eval().nodes()){
-						CallGraphConstruction.createCallEdge(callsite, method, resolvedDispatch, CALL, PER_CONTROL_FLOW);
-					}
-					
-					// if library call graph construction is enabled then we will consider adding a special edge type
-					// in the case that the method signature was abstract since we may not have been able to resolve any
-					// dispatch targets (in the case the method is not implemented in the library)
-					// of course the application could override any non-final methods anyway but we can't say anything
-					// about that at this time
-					if(CallGraphPreferences.isLibraryCallGraphConstructionEnabled()){
-						if(methodSignature.taggedWith(XCSG.abstractMethod)){
-							CallGraphConstruction.createCallEdge(callsite, method, methodSignature, LIBRARY_CALL, LIBRARY_PER_CONTROL_FLOW);
-						}
-					}
-				}
+		private final AtlasProgramSnapshot snapshot;
+		private final DispatchResolver dispatchResolver;
+		private final boolean libraryCallGraphConstruction;
+		private final BitSet methods;
+		private final BitSet resolvedCallsites;
+		private final int fromMethod;
+		private final int toMethod;
+		
+		private CallsiteResolutionTask(AtlasProgramSnapshot snapshot, DispatchResolver dispatchResolver, boolean libraryCallGraphConstruction, BitSet methods, BitSet resolvedCallsites, int fromMethod, int toMethod){
+			this.snapshot = snapshot;
+			this.dispatchResolver = dispatchResolver;
+			this.libraryCallGraphConstruction = libraryCallGraphConstruction;
+			this.methods = methods;
+			this.resolvedCallsites = resolvedCallsites;
+			this.fromMethod = fromMethod;
+			this.toMethod = toMethod;
+		}
+		
+		@Override
+		protected ResolvedCallEdges compute() {
+			if(toMethod - fromMethod <= METHODS_PER_TASK){
+				return resolveCallsites(snapshot, dispatchResolver, libraryCallGraphConstruction, methods, resolvedCallsites, fromMethod, toMethod);
 			}
+			int middle = (fromMethod + toMethod) >>> 1;
+			CallsiteResolutionTask left = new CallsiteResolutionTask(snapshot, dispatchResolver, libraryCallGraphConstruction, methods, resolvedCallsites, fromMethod, middle);
+			CallsiteResolutionTask right = new CallsiteResolutionTask(snapshot, dispatchResolver, libraryCallGraphConstruction, methods, resolvedCallsites, middle, toMethod);
+			left.fork();
+			ResolvedCallEdges rightResult = right.compute();
+			return left.join().addAll(rightResult);
 		}
 	}
 	
@@ -0,0 +1,206 @@
+package com.ensoftcorp.open.cg.analysis;
+
+import java.util.BitSet;
+
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
+import com.ensoftcorp.open.cg.log.Log;
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.DispatchResolver;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.cg.utils.CallEdgeBuffer;
+import com.ensoftcorp.open.cg.utils.CallGraphConstruction;
+
+/**
+ * A call graph analysis that resolves each callsite independently of every
+ * other callsite, so the callees or callers of a few methods can be resolved
+ * on demand by resolving only the callsites that could be involved.
+ *
+ * The callsites resolved on demand are memoized (for the program snapshot they
+ * were resolved against) and their edges are created in the graph right away,
+ * so a callsite is only resolved once across queries and a later whole program
+ * run can skip the callsites that were already resolved (see getResolvedCallsites).
+ *
+ * Note: library callsite summaries are only added by a whole program run, so
+ * on demand queries only see the library callsites summarized by an earlier run.
+ *
+ * The analysis' call edge and per control flow edge tags are expected to hold the
+ * call tags followed by the library call tags.
+ */
+public abstract class DemandDrivenAnalysis extends CGAnalysis {
+
+	private AtlasProgramSnapshot resolvedSnapshot = null;
+	private BitSet resolvedCallsites = null;
+
+	// indexes of the resolved snapshot, built the first time they are needed
+	private Adjacency callsiteMethods = null;
+	private Adjacency invokedMethodCallsites = null;
+	private Adjacency signatureCallsites = null;
+
+	protected DemandDrivenAnalysis(){}
+
+	/**
+	 * Returns the callsites of each method that the analysis resolves
+	 * @param program
+	 * @return
+	 */
+	protected abstract Adjacency getCallsites(ProgramSnapshot program);
+
+	/**
+	 * Resolves the callsite of the given method and adds the resolved edges to the buffers
+	 * @param program
+	 * @param dispatchResolver
+	 * @param method
+	 * @param callsite
+	 * @param callEdges
+	 * @param libraryCallEdges
+	 */
+	protected abstract void resolveCallsite(ProgramSnapshot program, DispatchResolver dispatchResolver, int method, int callsite, CallEdgeBuffer callEdges, CallEdgeBuffer libraryCallEdges);
+
+	@Override
+	public boolean isDemandDriven(){
+		return true;
+	}
+
+	/**
+	 * Returns the call graph edges from the given methods to the methods they call
+	 *
+	 * If the whole program call graph has not been constructed only the callsites
+	 * of the given methods are resolved
+	 * @param methods
+	 * @return
+	 */
+	@Override
+	public synchronized Q resolveCallees(Q methods){
+		if(hasRun()){
+			return super.resolveCallees(methods);
+		}
+		AtlasProgramSnapshot snapshot = AtlasProgramSnapshot.getInstance();
+		ProgramSnapshot program = snapshot.getProgram();
+		Adjacency callsites = getCallsites(program);
+		BitSet callsitesToResolve = new BitSet(program.getCallsiteCount());
+		for(int method : snapshot.getMethodIds(methods.eval().nodes())){
+			for(int i=callsites.start(method); i<callsites.end(method); i++){
+				callsitesToResolve.set(callsites.target(i));
+			}
+		}
+		resolveCallsites(snapshot, callsitesToResolve);
+		return getCallGraph().forwardStep(methods);
+	}
+
+	/**
+	 * Returns the call graph edges from the methods that call the given methods
+	 *
+	 * If the whole program call graph has not been constructed only the callsites
+	 * that could resolve to the given methods are resolved, which are the static
+	 * dispatches to the methods and the dynamic dispatches to methods with the same
+	 * signature
+	 * @param methods
+	 * @return
+	 */
+	@Override
+	public synchronized Q resolveCallers(Q methods){
+		if(hasRun()){
+			return super.resolveCallers(methods);
+		}
+		AtlasProgramSnapshot snapshot = AtlasProgramSnapshot.getInstance();
+		ProgramSnapshot program = snapshot.getProgram();
+		getResolvedCallsites(snapshot);
+		if(invokedMethodCallsites == null){
+			indexInvokedMethods(program);
+		}
+		BitSet callsitesToResolve = new BitSet(program.getCallsiteCount());
+		for(int method : snapshot.getMethodIds(methods.eval().nodes())){
+			for(int i=invokedMethodCallsites.start(method); i<invokedMethodCallsites.end(method); i++){
+				callsitesToResolve.set(invokedMethodCallsites.target(i));
+			}
+			int signature = program.getSignature(method);
+			if(signature != ProgramSnapshot.NONE){
+				for(int i=signatureCallsites.start(signature); i<signatureCallsites.end(signature); i++){
+					callsitesToResolve.set(signatureCallsites.target(i));
+				}
+			}
+		}
+		resolveCallsites(snapshot, callsitesToResolve);
+		return getCallGraph().reverseStep(methods);
+	}
+
+	/**
+	 * Returns the callsites that were resolved on demand against the given snapshot,
+	 * the memoized callsites are forgotten if the snapshot has been replaced
+	 * @param snapshot
+	 * @return
+	 */
+	protected synchronized BitSet getResolvedCallsites(AtlasProgramSnapshot snapshot){
+		if(resolvedSnapshot != snapshot){
+			resolvedSnapshot = snapshot;
+			resolvedCallsites = new BitSet(snapshot.getProgram().getCallsiteCount());
+			callsiteMethods = null;
+			invokedMethodCallsites = null;
+			signatureCallsites = null;
+		}
+		return resolvedCallsites;
+	}
+
+	/**
+	 * Resolves the given callsites (in each method that resolves them) that have not been resolved yet
+	 * @param snapshot
+	 * @param callsitesToResolve
+	 */
+	private void resolveCallsites(AtlasProgramSnapshot snapshot, BitSet callsitesToResolve){
+		callsitesToResolve.andNot(getResolvedCallsites(snapshot));
+		if(callsitesToResolve.isEmpty()){
+			return;
+		}
+		ProgramSnapshot program = snapshot.getProgram();
+		if(callsiteMethods == null){
+			callsiteMethods = getCallsites(program).reverse(program.getCallsiteCount());
+		}
+		DispatchResolver dispatchResolver = new DispatchResolver(program);
+		CallEdgeBuffer callEdges = new CallEdgeBuffer(snapshot, getCallEdgeTags()[0], getPerControlFlowEdgeTags()[0]);
+		CallEdgeBuffer libraryCallEdges = new CallEdgeBuffer(snapshot, getCallEdgeTags()[1], getPerControlFlowEdgeTags()[1]);
+		for(int callsite = callsitesToResolve.nextSetBit(0); callsite >= 0; callsite = callsitesToResolve.nextSetBit(callsite+1)){
+			for(int i=callsiteMethods.start(callsite); i<callsiteMethods.end(callsite); i++){
+				resolveCallsite(program, dispatchResolver, callsiteMethods.target(i), callsite, callEdges, libraryCallEdges);
+			}
+		}
+		resolvedCallsites.or(callsitesToResolve);
+		int edges = callEdges.createEdges(CallGraphConstruction.CALL_EDGE_NAME);
+		edges += libraryCallEdges.createEdges(CallGraphConstruction.CALL_EDGE_NAME);
+		getMetrics().add(AnalysisMetrics.CALLSITES_RESOLVED_ON_DEMAND, callsitesToResolve.cardinality());
+		getMetrics().add(AnalysisMetrics.EDGES_CREATED, edges);
+		invalidateCallGraphIndex();
+		Log.info("Resolved " + callsitesToResolve.cardinality() + " " + getClass().getSimpleName() + " callsites on demand.");
+	}
+
+	/**
+	 * Indexes the callsites by the method they invoke (the invoked function of static dispatches
+	 * and the invoked signature of dynamic dispatches) and by the signature of that method
+	 * @param program
+	 */
+	private void indexInvokedMethods(ProgramSnapshot program){
+		Adjacency.Builder invokedMethodCallsites = new Adjacency.Builder(program.getMethodCount());
+		Adjacency.Builder signatureCallsites = new Adjacency.Builder(program.getSignatureCount());
+		for(int callsite=0; callsite<program.getCallsiteCount(); callsite++){
+			if(program.isStaticDispatch(callsite)){
+				int invokedFunction = program.getInvokedFunction(callsite);
+				if(invokedFunction != ProgramSnapshot.NONE){
+					invokedMethodCallsites.add(invokedFunction, callsite);
+				}
+			} else if(program.isDynamicDispatch(callsite)){
+				int invokedSignature = program.getInvokedSignature(callsite);
+				if(invokedSignature != ProgramSnapshot.NONE){
+					invokedMethodCallsites.add(invokedSignature, callsite);
+					int signature = program.getSignature(invokedSignature);
+					if(signature != ProgramSnapshot.NONE){
+						signatureCallsites.add(signature, callsite);
+					}
+				}
+			}
+		}
+		this.invokedMethodCallsites = invokedMethodCallsites.build();
+		this.signatureCallsites = signatureCallsites.build();
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.ensoftcorp.open.cg.analysis;
+
+import java.text.DecimalFormat;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
+import com.ensoftcorp.atlas.core.db.set.AtlasSet;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
+import com.ensoftcorp.open.cg.log.Log;
+import com.ensoftcorp.open.cg.preferences.CallGraphPreferences;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.DispatchKinds;
+import com.ensoftcorp.open.cg.snapshot.ExceptionFlowIndex;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.java.commons.analysis.SetDefinitions;
+import com.ensoftcorp.open.java.commons.analyzers.JavaProgramEntryPoints;
+
+/**
+ * The facts that the analyses refining the CHA call graph have in common, derived
+ * once and shared by each analysis until the index, the CHA call graph or the
+ * library call graph construction preference changes.
+ *
+ * The fact base holds the program snapshot (which already indexes the allocations,
+ * field reads and field writes of each method), a snapshot of the CHA call graph,
+ * the root methods of the program, the dispatch kinds of the CHA call edges and
+ * (once an analysis needs it) the exception flow between methods.
+ */
+public class FactBase {
+
+	private static FactBase instance = null;
+
+	/**
+	 * Returns the fact base of the current index, running CHA and deriving the facts if necessary
+	 * @return
+	 */
+	public static synchronized FactBase getInstance(){
+		ClassHierarchyAnalysis cha = ClassHierarchyAnalysis.getInstance();
+
+		// CHA may add library callsite summaries to the graph, so it runs before the program is snapshot
+		if(!cha.hasRun()){
+			cha.run();
+		}
+
+		AtlasProgramSnapshot snapshot = AtlasProgramSnapshot.getInstance();
+		boolean libraryCallGraphConstruction = CallGraphPreferences.isLibraryCallGraphConstructionEnabled();
+		if(instance == null || instance.snapshot != snapshot || instance.cha != cha || instance.libraryCallGraphConstruction != libraryCallGraphConstruction){
+			instance = new FactBase(snapshot, cha, libraryCallGraphConstruction);
+			Log.debug("Fact base metrics: " + instance.metrics);
+		}
+		return instance;
+	}
+
+	private final AtlasProgramSnapshot snapshot;
+	private final ClassHierarchyAnalysis cha;
+	private final boolean libraryCallGraphConstruction;
+	private final AnalysisMetrics metrics = new AnalysisMetrics();
+
+	private final DispatchKinds<Edge> dispatchKinds;
+	private final int[] rootMethods;
+	private ExceptionFlowIndex exceptionFlow = null;
+
+	private FactBase(AtlasProgramSnapshot snapshot, ClassHierarchyAnalysis cha, boolean libraryCallGraphConstruction){
+		this.snapshot = snapshot;
+		this.cha = cha;
+		this.libraryCallGraphConstruction = libraryCallGraphConstruction;
+		try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.PROGRAM_SNAPSHOT)){
+			// the dispatch kinds emitted by CHA are indexed by (and keep) a snapshot of the CHA call graph
+			this.dispatchKinds = cha.getDispatchKinds();
+		}
+		try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.ROOT_DISCOVERY)){
+			this.rootMethods = snapshot.getMethodIds(findRootMethods(libraryCallGraphConstruction));
+		}
+		metrics.add(AnalysisMetrics.ROOT_METHODS, rootMethods.length);
+	}
+
+	/**
+	 * Locates the root method set
+	 * @param libraryCallGraphConstruction
+	 * @return
+	 */
+	private static AtlasSet<Node> findRootMethods(boolean libraryCallGraphConstruction){
+		AtlasSet<Node> rootMethods = new AtlasHashSet<Node>();
+		AtlasSet<Node> mainMethods = JavaProgramEntryPoints.findMainMethods().eval().nodes();
+		if(libraryCallGraphConstruction || mainMethods.isEmpty()){
+			if(!libraryCallGraphConstruction && mainMethods.isEmpty()){
+				Log.warning("Application does not contain a main method, building a call graph using library assumptions.");
+			}
+			// if we are building a call graph for a library there is no main method...
+			// a nice balance is to start with all public methods in the library
+			rootMethods.addAll(SetDefinitions.app().nodesTaggedWithAll(XCSG.publicVisibility, XCSG.Method).eval().nodes());
+		} else {
+			// under normal circumstances this algorithm would be given a single main method
+			// but end users don't tend to think about this so consider any valid main method
+			// as a program entry point
+			if(mainMethods.size() > 1){
+				Log.warning("Application contains multiple main methods. The call graph may contain unexpected conservative edges as a result.");
+			}
+			rootMethods.addAll(mainMethods);
+		}
+		return rootMethods;
+	}
+
+	public AtlasProgramSnapshot getSnapshot(){
+		return snapshot;
+	}
+
+	public ProgramSnapshot getProgram(){
+		return snapshot.getProgram();
+	}
+
+	/**
+	 * Returns the snapshot of the CHA call graph the facts were derived from
+	 * @return
+	 */
+	public CallGraphSnapshot<Edge> getClassHierarchyCallGraph(){
+		return dispatchKinds.getCallGraph();
+	}
+
+	/**
+	 * Returns the ids of the root methods, callers must not modify the array
+	 * @return
+	 */
+	public int[] getRootMethods(){
+		return rootMethods;
+	}
+
+	/**
+	 * Returns the dispatch kinds of the CHA call edges, indexed by the slots of the CHA call graph
+	 * @return
+	 */
+	public DispatchKinds<Edge> getDispatchKinds(){
+		return dispatchKinds;
+	}
+
+	/**
+	 * Returns the exception flow between the methods of the program along the CHA call graph,
+	 * indexing it on first use
+	 * @return
+	 */
+	public synchronized ExceptionFlowIndex getExceptionFlow(){
+		if(exceptionFlow == null){
+			long start = System.nanoTime();
+			exceptionFlow = new ExceptionFlowIndex(snapshot.getProgram(), getClassHierarchyCallGraph(), snapshot.getThrownTypes(), snapshot.getCaughtTypes());
+			double time = (System.nanoTime() - start)/1000.0/1000.0;
+			DecimalFormat decimalFormat = new DecimalFormat("#.##");
+			Log.info("Built exception flow index (" + exceptionFlow.getFlowCount() + " flows) in " + decimalFormat.format(time) + "ms");
+		}
+		return exceptionFlow;
+	}
+
+	/**
+	 * Returns the time spent deriving the facts
+	 * @return
+	 */
+	public AnalysisMetrics getMetrics(){
+		return metrics;
+	}
+
+}
@@ -1,10 +1,10 @@
 package com.ensoftcorp.open.cg.analysis;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 import com.ensoftcorp.atlas.core.db.graph.Edge;
-import com.ensoftcorp.atlas.core.db.graph.Graph;
-import com.ensoftcorp.atlas.core.db.graph.GraphElement.NodeDirection;
 import com.ensoftcorp.atlas.core.db.graph.Node;
-import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
 import com.ensoftcorp.atlas.core.db.set.AtlasSet;
 import com.ensoftcorp.atlas.core.indexing.IndexingUtil;
 import com.ensoftcorp.atlas.core.query.Attr;
@@ -12,11 +12,17 @@ import com.ensoftcorp.atlas.core.query.Q;
 import com.ensoftcorp.atlas.core.query.Query;
 import com.ensoftcorp.atlas.core.script.Common;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
 import com.ensoftcorp.open.cg.log.Log;
 import com.ensoftcorp.open.cg.preferences.CallGraphPreferences;
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.DispatchResolver;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.TypeHierarchy;
+import com.ensoftcorp.open.cg.utils.CallEdgeBuffer;
 import com.ensoftcorp.open.cg.utils.CallGraphConstruction;
 import com.ensoftcorp.open.commons.utilities.CodeMapChangeListener;
-import com.ensoftcorp.open.java.commons.analysis.CommonQueries;
 import com.ensoftcorp.open.java.commons.analysis.SetDefinitions;
 import com.ensoftcorp.open.java.commons.analyzers.JavaProgramEntryPoints;
 
@@ -62,6 +68,7 @@ public class RapidTypeAnalysis extends CGAnalysis {
 		// for library calls, RTA uses CHA library call edges because assuming every that every type could be allocated
 		// outside of the method and passed into the library is just an expensive way to end back up at CHA
 		ClassHierarchyAnalysis cha = ClassHierarchyAnalysis.getInstance();
+		AnalysisMetrics metrics = getMetrics();
 		
 		// RTA depends on CHA so run the analysis if it hasn't been run already
 		if(!cha.hasRun()){
@@ -75,6 +82,7 @@ public class RapidTypeAnalysis extends CGAnalysis {
 		Q typeOfEdges = Query.universe().edges(XCSG.TypeOf);
 		
 		// locate all the entry point methods
+		long rootDiscoveryStart = System.nanoTime();
 		Q rootMethods = Common.empty();
 		
 		// add the main methods as root methods
@@ -106,6 +114,7 @@ public class RapidTypeAnalysis extends CGAnalysis {
 			Q appCallbackMethods = overridesEdges.predecessors(libraryMethods).intersection(SetDefinitions.app());
 			rootMethods = rootMethods.union(rootMethods, appCallbackMethods);
 		}
+		metrics.addTime(AnalysisMetrics.ROOT_DISCOVERY, System.nanoTime() - rootDiscoveryStart);
 		
 		// recover the types of entry point methods
 		Q rootMethodParameterTypes = typeOfEdges.successors(rootMethods.children().nodes(XCSG.Parameter));
@@ -114,6 +123,17 @@ public class RapidTypeAnalysis extends CGAnalysis {
 		// which is to say we assume all application methods are entry points
 		Q allocations = SetDefinitions.app().nodes(XCSG.Instantiation);
 		Q allocationTypes = rootMethodParameterTypes.union(typeOfEdges.successors(allocations));
+		
+		// library allocations (recovered by the library callsite summaries) are only considered if
+		// the allocating library method is reachable, with reachability the allocations are added
+		// as the library methods are visited, otherwise every application method is a root so the
+		// library methods reachable from the application in the CHA call graph may allocate
+		if(CallGraphPreferences.isLibraryCallGraphConstructionEnabled() && !CallGraphPreferences.isReachabilityEnabled()){
+			Q applicationMethods = SetDefinitions.app().nodes(XCSG.Method);
+			Q reachableLibraryMethods = cgCHA.forward(applicationMethods).nodes(XCSG.Method).intersection(SetDefinitions.libraries());
+			Q libraryAllocations = reachableLibraryMethods.children().nodes(XCSG.Instantiation);
+			allocationTypes = allocationTypes.union(typeOfEdges.successors(libraryAllocations));
+		}
 
 		Q feasibleMethods = allocationTypes.children().nodes(XCSG.Method);
 		Q constructors = Query.universe().nodes(XCSG.Constructor);
@@ -124,107 +144,29 @@ public class RapidTypeAnalysis extends CGAnalysis {
 		Q infeasibleMethods = Query.universe().nodes(XCSG.Method).difference(feasibleMethods);
 		
 		if(CallGraphPreferences.isReachabilityEnabled()){
-			Q typeHierarchy = Query.universe().edges(XCSG.Supertype);
-			Q invokedFunctionEdges = Query.universe().edges(XCSG.InvokedFunction);
-			Q identityPassedToEdges = Query.universe().edges(XCSG.IdentityPassedTo);
-			Q dataFlowEdges = Query.universe().edges(XCSG.DataFlow_Edge);
-			Graph methodSignatureGraph = Query.universe().edges(XCSG.InvokedSignature).eval();
+			// the worklist runs against a primitive-indexed snapshot of the program
+			AtlasProgramSnapshot snapshot;
+			try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.PROGRAM_SNAPSHOT)){
+				snapshot = AtlasProgramSnapshot.getInstance();
+			}
+			ProgramSnapshot program = snapshot.getProgram();
+			BitSet allocatedTypes = snapshot.getTypeIds(allocationTypes.eval().nodes());
+			BitSet rootMethodIds = new BitSet(program.getMethodCount());
+			for(int rootMethod : snapshot.getMethodIds(rootMethods.eval().nodes())){
+				rootMethodIds.set(rootMethod);
+			}
+			metrics.add(AnalysisMetrics.ROOT_METHODS, rootMethodIds.cardinality());
 			
-			// iteratively build the call graph one method at a time (visiting each method once)
-			// starting from the entry point methods (this adds a restriction of reachability to the
-			// final call graph)
-			AtlasSet<Node> processedMethods = new AtlasHashSet<Node>();
-			AtlasSet<Node> methodsToProcess = new AtlasHashSet<Node>();
-			methodsToProcess.addAll(rootMethods.eval().nodes());
-			while(!methodsToProcess.isEmpty()){
-				Node methodToProcess = methodsToProcess.one();
-				methodsToProcess.remove(methodToProcess);
-				processedMethods.add(methodToProcess);
-
-				// process each callsite in the method
-				AtlasSet<Node> callsites = CommonQueries.localDeclarations(Common.toQ(methodToProcess)).nodes(XCSG.CallSite).eval().nodes();
-				for(Node callsite : callsites){
-					if(callsite.taggedWith(XCSG.StaticDispatchCallSite)){
-						// static dispatches (calls to constructors or methods marked as static) can be resolved immediately
-						Node targetMethod = invokedFunctionEdges.successors(Common.toQ(callsite)).eval().nodes().one();
-						CallGraphConstruction.tagExistingCallEdge(cgCHA, pcfCHA, callsite, methodToProcess, targetMethod, CALL, PER_CONTROL_FLOW);
-						
-						// add the called method to the list of methods process
-						if(!processedMethods.contains(targetMethod)){
-							methodsToProcess.add(targetMethod);
-						}
-						
-						// add the called method types static initializer to the methods to process
-						Node staticInitializer = Common.toQ(targetMethod).parent().children().nodes(XCSG.Method).method("<clinit>").eval().nodes().one();
-						if(staticInitializer != null && !processedMethods.contains(staticInitializer)){
-							methodsToProcess.add(staticInitializer);
-						}
-					} else if(callsite.taggedWith(XCSG.DynamicDispatchCallSite)){
-						// dynamic dispatches require additional analysis to be resolved
-						// first get the declared type of the receiver object
-						Q thisNode = identityPassedToEdges.predecessors(Common.toQ(callsite));
-						Q receiverObject = dataFlowEdges.predecessors(thisNode);
-						Q declaredType = typeOfEdges.successors(receiverObject);
-						
-						// since the dispatch was called on the "declared" type there must be at least one signature
-						// (abstract or concrete) in the descendant path (the direct path from Object to the declared path)
-						// the nearest method definition is the method definition closest to the declared type (including
-						// the declared type itself) while traversing from declared type to Object on the descendant path
-						// but an easier way to get this is to use Atlas' InvokedSignature edge to get the nearest method definition
-						Node methodSignature = methodSignatureGraph.edges(callsite, NodeDirection.OUT).one().to();
-						Q resolvedDispatches = Common.toQ(methodSignature);
-						
-						// subtypes of the declared type can override the nearest target method definition, 
-						// so make sure to include all the subtype method definitions
-						// futher restrict those types by the allocated types
-						Q restrictedTypes = typeHierarchy.reverse(declaredType).intersection(allocationTypes);
-						
-						// next perform a reachability analysis (RA) within the set of subtypes
-						Q reachableMethods = Common.toQ(ReachabilityAnalysis.getReachableMethods(callsite, restrictedTypes));
-						resolvedDispatches = resolvedDispatches.union(reachableMethods);
-
-						// if a method is abstract, then its children must override it, so we can just remove all abstract
-						// methods from the graph (this might come into play if nearest matching method definition was abstract)
-						// note: its possible for a method to be re-abstracted by a subtype after its been made concrete
-						resolvedDispatches = resolvedDispatches.difference(Query.universe().nodes(XCSG.abstractMethod));
-						
-						// lastly, if the method signature is concrete and the type of the method signature is abstract 
-						// and all subtypes override the method signature then the method signature can never be called
-						// directly, so remove it from the result
-						boolean abstractMethodSignature = methodSignature.taggedWith(XCSG.abstractMethod);
-						if(!abstractMethodSignature){
-							Q methodSignatureType = Common.toQ(methodSignature).parent();
-							boolean abstractMethodSignatureType = methodSignatureType.eval().nodes().one().taggedWith(XCSG.Java.AbstractClass);
-							if(abstractMethodSignatureType){
-								Q resolvedDispatchConcreteSubTypes = resolvedDispatches.difference(Common.toQ(methodSignature)).parent()
-										.difference(Query.universe().nodes(XCSG.Java.AbstractClass));
-								if(!resolvedDispatchConcreteSubTypes.eval().nodes().isEmpty()){
-									// there are concrete subtypes
-									if(restrictedTypes.difference(methodSignatureType, resolvedDispatchConcreteSubTypes).eval().nodes().isEmpty()){
-										// all subtypes override method signature, method signature implementation can never be called
-										resolvedDispatches = resolvedDispatches.difference(Common.toQ(methodSignature));
-									}
-								}
-							}
-						}
-						
-						// add a call edge to each resolved concrete dispatch
-						for(Node resolvedDispatch : resolvedDispatches.eval().nodes()){
-							CallGraphConstruction.tagExistingCallEdge(cgCHA, pcfCHA, callsite, methodToProcess, resolvedDispatch, CALL, PER_CONTROL_FLOW);
-							
-							// add the called method to the list of methods process
-							if(!processedMethods.contains(resolvedDispatch)){
-								methodsToProcess.add(resolvedDispatch);
-							}
-							
-							// add the called method types static initializer to the methods to process
-							Node staticInitializer = Common.toQ(resolvedDispatch).parent().children().nodes(XCSG.Method).method("<clinit>").eval().nodes().one();
-							if(staticInitializer != null && !processedMethods.contains(staticInitializer)){
-								methodsToProcess.add(staticInitializer);
-							}
-						}
-					}
+			// the resolved call edges are tagged in the CHA call graph once the worklist is exhausted
+			CallEdgeBuffer resolvedCallEdges = new CallEdgeBuffer(snapshot, CALL, PER_CONTROL_FLOW);
+			resolveReachableCallsites(program, rootMethodIds, allocatedTypes, resolvedCallEdges, metrics);
+			
+			// tag the resolved call edges in the CHA call graph
+			try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.EDGE_TAGGING)){
+				if(cha.isIncrementalUpdate()){
+					CallGraphConstruction.untagEdges(CALL, PER_CONTROL_FLOW);
 				}
+				metrics.add(AnalysisMetrics.EDGES_TAGGED, resolvedCallEdges.tagEdges(snapshot.getCallGraph(cgCHA, pcfCHA)));
 			}
 		} else {
 			// if we are not considering reachability from an entry point method, we can assume
@@ -235,6 +177,11 @@ public class RapidTypeAnalysis extends CGAnalysis {
 			Q rta = cgCHA.difference(infeasibleMethods);
 			Q pcfRTA = pcfCHA.difference(infeasibleMethods);
 			
+			// the CHA edges kept by an incremental update still carry the tags of the previous run
+			if(cha.isIncrementalUpdate()){
+				CallGraphConstruction.untagEdges(CALL, PER_CONTROL_FLOW);
+			}
+			
 			// just tag each edge in the RTA call graph with "RTA" to distinguish it
 			// from the CHA call graph
 			for(Edge rtaEdge : rta.eval().edges()){
@@ -248,6 +195,138 @@ public class RapidTypeAnalysis extends CGAnalysis {
 		}
 	}
 
+	/**
+	 * Resolves the callsites of the methods reachable from the root methods, dynamic dispatches
+	 * are restricted to the allocated types, this is the resolution a run performs (against the
+	 * current program snapshot) when reachability is enabled
+	 * @param program
+	 * @param rootMethods the entry point methods
+	 * @param allocatedTypes the types allocated outside of the library methods, the allocation
+	 * types of the reachable methods are added to the set
+	 * @param resolvedCallEdges collects the call edges
+	 * @param metrics records the callsite resolution time, worklist iterations and resolved callsites
+	 */
+	public static void resolveReachableCallsites(ProgramSnapshot program, BitSet rootMethods, BitSet allocatedTypes, CallEdgeBuffer resolvedCallEdges, AnalysisMetrics metrics){
+		DispatchResolver dispatchResolver = new DispatchResolver(program);
+		TypeHierarchy typeHierarchy = program.getTypeHierarchy();
+		Adjacency callsites = program.getCallsites();
+		Adjacency methodAllocationTypes = program.getAllocationTypes();
+		Adjacency receiverTypes = program.getReceiverTypes();
+		
+		// the processed dynamic dispatches indexed by the declared types of their receivers, a newly
+		// allocated type can only resolve more targets for the dispatches on one of its supertypes
+		int[][] receiverTypeCallsites = new int[program.getTypeCount()][];
+		int[] receiverTypeCallsiteCounts = new int[program.getTypeCount()];
+		int[] callsiteMethods = new int[program.getCallsiteCount()];
+		
+		// iteratively build the call graph one method at a time (visiting each method once)
+		// starting from the entry point methods (this adds a restriction of reachability to the
+		// final call graph)
+		BitSet processedMethods = new BitSet(program.getMethodCount());
+		BitSet methodsToProcess = (BitSet) rootMethods.clone();
+		BitSet callsitesToRevisit = new BitSet(program.getCallsiteCount());
+		long resolutionStart = System.nanoTime();
+		int iterations = 0;
+		int resolved = 0;
+		int revisited = 0;
+		while(!methodsToProcess.isEmpty()){
+			int methodToProcess = methodsToProcess.nextSetBit(0);
+			methodsToProcess.clear(methodToProcess);
+			processedMethods.set(methodToProcess);
+			iterations++;
+
+			// a reachable method may allocate types that were not yet considered (the application's
+			// allocations are all considered up front, so these are allocations in library methods)
+			// the new types may resolve more targets for the dispatches that were already processed
+			// on a supertype of the new type, so just those dispatches are resolved again
+			for(int i=methodAllocationTypes.start(methodToProcess); i<methodAllocationTypes.end(methodToProcess); i++){
+				int allocationType = methodAllocationTypes.target(i);
+				if(!allocatedTypes.get(allocationType)){
+					allocatedTypes.set(allocationType);
+					BitSet supertypes = typeHierarchy.getSupertypes(allocationType);
+					for(int supertype = supertypes.nextSetBit(0); supertype >= 0; supertype = supertypes.nextSetBit(supertype+1)){
+						for(int j=0; j<receiverTypeCallsiteCounts[supertype]; j++){
+							callsitesToRevisit.set(receiverTypeCallsites[supertype][j]);
+						}
+					}
+				}
+			}
+			for(int callsite = callsitesToRevisit.nextSetBit(0); callsite >= 0; callsite = callsitesToRevisit.nextSetBit(callsite+1)){
+				BitSet resolvedDispatches = dispatchResolver.resolveDynamicDispatch(callsite, allocatedTypes);
+				addResolvedDispatches(program, callsite, callsiteMethods[callsite], resolvedDispatches, processedMethods, methodsToProcess, resolvedCallEdges);
+				revisited++;
+			}
+			callsitesToRevisit.clear();
+
+			// process each callsite in the method
+			for(int i=callsites.start(methodToProcess); i<callsites.end(methodToProcess); i++){
+				int callsite = callsites.target(i);
+				BitSet resolvedDispatches;
+				if(program.isStaticDispatch(callsite)){
+					// static dispatches (calls to constructors or methods marked as static) can be resolved immediately
+					resolvedDispatches = new BitSet(program.getMethodCount());
+					int targetMethod = program.getInvokedFunction(callsite);
+					if(targetMethod != ProgramSnapshot.NONE){
+						resolvedDispatches.set(targetMethod);
+					}
+				} else if(program.isDynamicDispatch(callsite)){
+					// dynamic dispatches require additional analysis to be resolved
+					// subtypes of the declared type of the receiver object can override the nearest
+					// target method definition, futher restrict those types by the allocated types
+					resolvedDispatches = dispatchResolver.resolveDynamicDispatch(callsite, allocatedTypes);
+					
+					// remember the dispatch in case a later allocation adds a subtype of its receiver
+					callsiteMethods[callsite] = methodToProcess;
+					for(int j=receiverTypes.start(callsite); j<receiverTypes.end(callsite); j++){
+						int receiverType = receiverTypes.target(j);
+						int count = receiverTypeCallsiteCounts[receiverType];
+						if(receiverTypeCallsites[receiverType] == null){
+							receiverTypeCallsites[receiverType] = new int[4];
+						} else if(count == receiverTypeCallsites[receiverType].length){
+							receiverTypeCallsites[receiverType] = Arrays.copyOf(receiverTypeCallsites[receiverType], count * 2);
+						}
+						receiverTypeCallsites[receiverType][count] = callsite;
+						receiverTypeCallsiteCounts[receiverType] = count + 1;
+					}
+				} else {
+					continue;
+				}
+				resolved++;
+				addResolvedDispatches(program, callsite, methodToProcess, resolvedDispatches, processedMethods, methodsToProcess, resolvedCallEdges);
+			}
+		}
+		
+		metrics.addTime(AnalysisMetrics.CALLSITE_RESOLUTION, System.nanoTime() - resolutionStart);
+		metrics.add(AnalysisMetrics.WORKLIST_ITERATIONS, iterations);
+		metrics.add(AnalysisMetrics.CALLSITES_RESOLVED, resolved);
+		metrics.add(AnalysisMetrics.CALLSITES_REVISITED, revisited);
+	}
+	
+	/**
+	 * Records the call edges of the resolved dispatches of a callsite and adds the called
+	 * methods (and the static initializers of their types) that have not been processed yet
+	 * to the methods to process
+	 */
+	private static void addResolvedDispatches(ProgramSnapshot program, int callsite, int method, BitSet resolvedDispatches, BitSet processedMethods, BitSet methodsToProcess, CallEdgeBuffer resolvedCallEdges){
+		for(int resolvedDispatch = resolvedDispatches.nextSetBit(0); resolvedDispatch >= 0; resolvedDispatch = resolvedDispatches.nextSetBit(resolvedDispatch+1)){
+			resolvedCallEdges.add(callsite, method, resolvedDispatch);
+			
+			// add the called method to the list of methods process
+			if(!processedMethods.get(resolvedDispatch)){
+				methodsToProcess.set(resolvedDispatch);
+			}
+			
+			// add the called method types static initializer to the methods to process
+			int resolvedDispatchType = program.getDeclaringType(resolvedDispatch);
+			if(resolvedDispatchType != ProgramSnapshot.NONE){
+				int staticInitializer = program.getStaticInitializer(resolvedDispatchType);
+				if(staticInitializer != ProgramSnapshot.NONE && !processedMethods.get(staticInitializer)){
+					methodsToProcess.set(staticInitializer);
+				}
+			}
+		}
+	}
+
 	@Override
 	public String[] getCallEdgeTags() {
 		return new String[]{CALL, ClassHierarchyAnalysis.LIBRARY_CALL};
@@ -1,5 +1,7 @@
 package com.ensoftcorp.open.cg.analysis;
 
+import java.util.BitSet;
+
 import com.ensoftcorp.atlas.core.db.graph.Node;
 import com.ensoftcorp.atlas.core.db.set.AtlasHashSet;
 import com.ensoftcorp.atlas.core.db.set.AtlasSet;
@@ -10,10 +12,15 @@ import com.ensoftcorp.atlas.core.query.Query;
 import com.ensoftcorp.atlas.core.script.Common;
 import com.ensoftcorp.atlas.core.script.CommonQueries;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
 import com.ensoftcorp.open.cg.preferences.CallGraphPreferences;
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.DispatchResolver;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.cg.utils.CallEdgeBuffer;
 import com.ensoftcorp.open.cg.utils.CallGraphConstruction;
 import com.ensoftcorp.open.commons.utilities.CodeMapChangeListener;
-import com.ensoftcorp.open.java.commons.wishful.JavaStopGap;
 
 /**
  * This is about the simplest call graph we can make (dumber than a CHA).
@@ -27,7 +34,7 @@ import com.ensoftcorp.open.java.commons.wishful.JavaStopGap;
  * 
  * @author Ben Holland
  */
-public class ReachabilityAnalysis extends CGAnalysis {
+public class ReachabilityAnalysis extends DemandDrivenAnalysis {
 
 	public static final String CALL = "RA-CALL"; 
 	public static final String PER_CONTROL_FLOW = "RA-PER-CONTROL-FLOW"; 
@@ -57,41 +64,111 @@ public class ReachabilityAnalysis extends CGAnalysis {
 	
 	@Override
 	protected void runAnalysis() {
-		Q declarations = Query.universe().edges(XCSG.Contains);
-		Q invokedFunctionEdges = Query.universe().edges(XCSG.InvokedFunction);
-		Q allTypes = Query.universe().nodes(XCSG.Type);
+		AnalysisMetrics metrics = getMetrics();
+		AtlasProgramSnapshot snapshot;
+		try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.PROGRAM_SNAPSHOT)){
+			snapshot = AtlasProgramSnapshot.getInstance();
+		}
+		ProgramSnapshot program = snapshot.getProgram();
+		
+		// callsites that were already resolved on demand against this snapshot have their edges in the graph
+		BitSet resolvedCallsites = getResolvedCallsites(snapshot);
+		
+		// resolved edges are buffered and created in a single pass once every callsite is resolved
+		CallEdgeBuffer callEdges = new CallEdgeBuffer(snapshot, CALL, PER_CONTROL_FLOW);
+		CallEdgeBuffer libraryCallEdges = new CallEdgeBuffer(snapshot, LIBRARY_CALL, LIBRARY_PER_CONTROL_FLOW);
+		
+		long resolutionStart = System.nanoTime();
+		int resolved = resolveCallsites(program, CallGraphPreferences.isLibraryCallGraphConstructionEnabled(), resolvedCallsites, callEdges, libraryCallEdges);
+		metrics.addTime(AnalysisMetrics.CALLSITE_RESOLUTION, System.nanoTime() - resolutionStart);
+		metrics.add(AnalysisMetrics.CALLSITES_RESOLVED, resolved);
+		
+		try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.EDGE_CREATION)){
+			int edges = callEdges.createEdges(CallGraphConstruction.CALL_EDGE_NAME);
+			edges += libraryCallEdges.createEdges(CallGraphConstruction.CALL_EDGE_NAME);
+			metrics.add(AnalysisMetrics.EDGES_CREATED, edges);
+		}
+	}
+	
+	@Override
+	protected Adjacency getCallsites(ProgramSnapshot program){
+		return program.getContainedCallsites();
+	}
+	
+	@Override
+	protected void resolveCallsite(ProgramSnapshot program, DispatchResolver dispatchResolver, int method, int callsite, CallEdgeBuffer callEdges, CallEdgeBuffer libraryCallEdges){
+		resolveCallsite(program, dispatchResolver, CallGraphPreferences.isLibraryCallGraphConstructionEnabled(), method, callsite, callEdges, libraryCallEdges);
+	}
+	
+	/**
+	 * Resolves every callsite of the program, this is the resolution a run performs
+	 * (against the current program snapshot) before the resolved edges are created
+	 * @param program
+	 * @param libraryCallGraphConstruction
+	 * @param resolvedCallsites if not null these callsites are skipped
+	 * @param callEdges collects the call edges
+	 * @param libraryCallEdges collects the library call edges (edges to abstract methods)
+	 * @return the number of callsites resolved
+	 */
+	public static int resolveCallsites(ProgramSnapshot program, boolean libraryCallGraphConstruction, BitSet resolvedCallsites, CallEdgeBuffer callEdges, CallEdgeBuffer libraryCallEdges){
+		DispatchResolver dispatchResolver = new DispatchResolver(program);
+		Adjacency containedCallsites = program.getContainedCallsites();
+		int resolved = 0;
 		
 		// for each method
-		AtlasSet<Node> methods = Query.universe().nodes(XCSG.Method).eval().nodes();
-		for(Node method : methods){
+		for(int method=0; method<program.getMethodCount(); method++){
 			// for each callsite
-			AtlasSet<Node> callsites = declarations.forward(Common.toQ(method)).nodes(XCSG.CallSite).eval().nodes();
-			for(Node callsite : callsites){
-				if(callsite.taggedWith(XCSG.StaticDispatchCallSite)){
-					// static dispatches (calls to constructors or methods marked as static) can be resolved immediately
-					Node targetMethod = invokedFunctionEdges.successors(Common.toQ(callsite)).eval().nodes().one();
-					CallGraphConstruction.createCallEdge(callsite, method, targetMethod, CALL, PER_CONTROL_FLOW);
-				} else if(callsite.taggedWith(XCSG.DynamicDispatchCallSite)){
-					// dynamic dispatches require additional analysis to be resolved
-					
-					// in RA we just say if the method signature being called matches a method then add a call edge
-					AtlasSet<Node> reachableMethods = getReachableMethods(callsite, allTypes);
-					
-					// create a call edge from the method to each matching method
-					for(Node reachableMethod : reachableMethods){
-						// dispatches cannot happen to abstract methods
-						if(reachableMethod.taggedWith(XCSG.abstractMethod)){
-							if(CallGraphPreferences.isLibraryCallGraphConstructionEnabled()){
-								// if library call graph construction is enabled then we will consider adding a special edge type
-								// in the case that the method signature was abstract since we may not have been able to resolve any
-								// dispatch targets (in the case the method is not implemented in the library) and since we cannot know 
-								// that the application won't re-implement the method anyway (unless it was marked final)
-								CallGraphConstruction.createCallEdge(callsite, method, reachableMethod, LIBRARY_CALL, LIBRARY_PER_CONTROL_FLOW);
-							}
-						} else {
-							CallGraphConstruction.createCallEdge(callsite, method, reachableMethod, CALL, PER_CONTROL_FLOW);
-						}
+			for(int i=containedCallsites.start(method); i<containedCallsites.end(method); i++){
+				int callsite = containedCallsites.target(i);
+				if(resolvedCallsites == null || !resolvedCallsites.get(callsite)){
+					resolveCallsite(program, dispatchResolver, libraryCallGraphConstruction, method, callsite, callEdges, libraryCallEdges);
+					resolved++;
+				}
+			}
+		}
+		return resolved;
+	}
+	
+	/**
+	 * Resolves a callsite of the given method
+	 * @param program
+	 * @param dispatchResolver
+	 * @param libraryCallGraphConstruction
+	 * @param method
+	 * @param callsite
+	 * @param callEdges
+	 * @param libraryCallEdges
+	 */
+	private static void resolveCallsite(ProgramSnapshot program, DispatchResolver dispatchResolver, boolean libraryCallGraphConstruction, int method, int callsite, CallEdgeBuffer callEdges, CallEdgeBuffer libraryCallEdges){
+		if(program.isStaticDispatch(callsite)){
+			// static dispatches (calls to constructors or methods marked as static) can be resolved immediately
+			int targetMethod = program.getInvokedFunction(callsite);
+			if(targetMethod != ProgramSnapshot.NONE){
+				callEdges.add(callsite, method, targetMethod);
+			}
+		} else if(program.isDynamicDispatch(callsite)){
+			// dynamic dispatches require additional analysis to be resolved
+			int methodSignature = program.getInvokedSignature(callsite);
+			if(methodSignature == ProgramSnapshot.NONE){
+				return;
+			}
+			
+			// in RA we just say if the method signature being called matches a method then add a call edge
+			BitSet reachableMethods = dispatchResolver.getReachableMethods(methodSignature, null);
+			
+			// create a call edge from the method to each matching method
+			for(int reachableMethod = reachableMethods.nextSetBit(0); reachableMethod >= 0; reachableMethod = reachableMethods.nextSetBit(reachableMethod+1)){
+				// dispatches cannot happen to abstract methods
+				if(program.hasMethodFlag(reachableMethod, ProgramSnapshot.METHOD_ABSTRACT)){
+					if(libraryCallGraphConstruction){
+						// if library call graph construction is enabled then we will consider adding a special edge type
+						// in the case that the method signature was abstract since we may not have been able to resolve any
+						// dispatch targets (in the case the method is not implemented in the library) and since we cannot know 
+						// that the application won't re-implement the method anyway (unless it was marked final)
+						libraryCallEdges.add(callsite, method, reachableMethod);
 					}
+				} else {
+					callEdges.add(callsite, method, reachableMethod);
 				}
 			}
 		}
@@ -101,24 +178,29 @@ public class ReachabilityAnalysis extends CGAnalysis {
 	 * Returns a set of reachable methods (methods with the matching signature of the callsite)
 	 * Note: This method specifically includes abstract methods
 	 * 
+	 * Matching is answered by the signature index of the current program snapshot.
+	 * 
 	 * @param callsite
 	 * @return
 	 */
 	public static AtlasSet<Node> getReachableMethods(Node callsite, Q typesToSearch){
-		Q methodSignatureEdges = Query.universe().edges(XCSG.InvokedSignature);
-		Node methodSignature = methodSignatureEdges.successors(Common.toQ(callsite)).eval().nodes().one();
-		String signature = (String) methodSignature.getAttr(JavaStopGap.SIGNATURE);
-		if(signature == null){
-			return new AtlasHashSet<Node>();
-		} else {
-			Q matchingMethods = Query.universe().selectNode(JavaStopGap.SIGNATURE, signature);
-			
-			Q containsEdges = Query.universe().edges(XCSG.Contains);
-			Q candidateMethods = containsEdges.forwardStep(typesToSearch).nodes(XCSG.Method)
-					.difference(Query.universe().nodes(XCSG.Constructor, Attr.Node.IS_STATIC));
-			
-			return new AtlasHashSet<Node>(matchingMethods.intersection(candidateMethods).eval().nodes());
+		AtlasSet<Node> result = new AtlasHashSet<Node>();
+		AtlasProgramSnapshot snapshot = AtlasProgramSnapshot.getInstance();
+		ProgramSnapshot program = snapshot.getProgram();
+		int callsiteId = snapshot.getCallsiteId(callsite);
+		if(callsiteId == ProgramSnapshot.NONE){
+			return result;
+		}
+		int methodSignature = program.getInvokedSignature(callsiteId);
+		if(methodSignature == ProgramSnapshot.NONE){
+			return result;
 		}
+		BitSet types = snapshot.getTypeIds(typesToSearch.eval().nodes());
+		BitSet reachableMethods = new DispatchResolver(program).getReachableMethods(methodSignature, types);
+		for(int reachableMethod = reachableMethods.nextSetBit(0); reachableMethod >= 0; reachableMethod = reachableMethods.nextSetBit(reachableMethod+1)){
+			result.add(snapshot.getMethod(reachableMethod));
+		}
+		return result;
 	}
 	
 	/**
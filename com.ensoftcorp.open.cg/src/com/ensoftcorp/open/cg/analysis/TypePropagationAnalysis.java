@@ -0,0 +1,92 @@
+package com.ensoftcorp.open.cg.analysis;
+
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
+import com.ensoftcorp.open.cg.preferences.CallGraphPreferences;
+import com.ensoftcorp.open.cg.propagation.TypePropagation;
+import com.ensoftcorp.open.cg.utils.CallGraphConstruction;
+
+/**
+ * A call graph analysis that refines the CHA call graph by propagating types
+ * over the program snapshot (see TypePropagation).
+ *
+ * The inputs of the propagation are read from the facts shared by the analyses
+ * (see FactBase) and the selected call edges are tagged in the CHA call graph
+ * afterwards, the propagation itself only reads the snapshot so it is the snapshot
+ * phase of the analysis (see AnalysisPipeline).
+ *
+ * The analysis' call edge and per control flow edge tags are expected to hold the
+ * tags of the refined call graph followed by the CHA library call tags.
+ */
+public abstract class TypePropagationAnalysis extends CGAnalysis {
+
+	protected TypePropagationAnalysis(){}
+
+	/**
+	 * Creates the type propagation of the analysis from the shared facts
+	 * @param facts
+	 * @param metrics
+	 * @return
+	 */
+	protected abstract TypePropagation createPropagation(FactBase facts, AnalysisMetrics metrics);
+
+	@Override
+	protected void runAnalysis() {
+		SnapshotPhase phase = prepareAnalysis();
+		phase.run();
+		phase.finish();
+	}
+
+	@Override
+	protected SnapshotPhase prepareAnalysis() {
+		AnalysisMetrics metrics = getMetrics();
+
+		// the analysis runs against the program snapshot, CHA call graph and root methods shared by the analyses
+		FactBase facts;
+		try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.FACT_BASE)){
+			facts = FactBase.getInstance();
+		}
+		int[] rootMethodIds = facts.getRootMethods();
+		metrics.add(AnalysisMetrics.ROOT_METHODS, rootMethodIds.length);
+
+		TypePropagation propagation = createPropagation(facts, metrics);
+		propagation.setDispatchKinds(facts.getDispatchKinds());
+		if(CallGraphPreferences.getTypeSetStoreSize() > 0){
+			propagation.storeTypeSetsOffHeap(CallGraphPreferences.getTypeSetStoreSize() * 1024L * 1024L);
+		} else if(CallGraphPreferences.isTypeSetHashConsingEnabled()){
+			propagation.internTypeSets();
+		}
+
+		return new SnapshotPhase(){
+			@Override
+			public void run() {
+				try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.TYPE_PROPAGATION)){
+					propagation.run(rootMethodIds);
+				}
+				metrics.add(AnalysisMetrics.WORKLIST_ITERATIONS, propagation.getIterations());
+				metrics.max(AnalysisMetrics.PEAK_TYPE_SET_SIZE, propagation.getPeakTypeSetSize());
+				metrics.max(AnalysisMetrics.OFF_HEAP_TYPE_SET_BYTES, propagation.getOffHeapTypeSetBytes());
+				metrics.add(AnalysisMetrics.SPILLED_TYPE_SETS, propagation.getSpilledTypeSetCount());
+				metrics.add(AnalysisMetrics.INTERNED_TYPE_SETS, propagation.getInternedTypeSetCount());
+				metrics.add(AnalysisMetrics.SHARED_TYPE_SET_UNIONS, propagation.getSharedTypeSetUnionCount());
+				metrics.add(AnalysisMetrics.TYPE_SET_UNION_CACHE_HITS, propagation.getTypeSetUnionCacheHits());
+
+				// only the selected call edges are needed from here on
+				propagation.release();
+			}
+
+			@Override
+			public void finish() {
+				// just tag each edge in the refined call graph to distinguish it from the CHA call graph
+				try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.EDGE_TAGGING)){
+					// the CHA edges kept by an incremental update still carry the tags of the previous run
+					if(ClassHierarchyAnalysis.getInstance().isIncrementalUpdate()){
+						CallGraphConstruction.untagEdges(getCallEdgeTags()[0], getPerControlFlowEdgeTags()[0]);
+					}
+					metrics.add(AnalysisMetrics.EDGES_TAGGED, CallGraphConstruction.tagCallEdges(facts.getProgram(), facts.getClassHierarchyCallGraph(),
+							propagation.getCallEdges(), getCallEdgeTags()[0], getPerControlFlowEdgeTags()[0]));
+				}
+			}
+		};
+	}
+
+}
@@ -12,6 +12,7 @@ import com.ensoftcorp.atlas.core.query.Q;
 import com.ensoftcorp.atlas.core.query.Query;
 import com.ensoftcorp.atlas.core.script.Common;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.common.AnalysisMetrics;
 import com.ensoftcorp.open.commons.utilities.CodeMapChangeListener;
 import com.ensoftcorp.open.pointsto.common.PointsToAnalysis;
 import com.ensoftcorp.open.pointsto.preferences.PointsToPreferences;
@@ -74,6 +75,8 @@ public class ZeroControlFlowAnalysis extends CGAnalysis {
 			cha.run();
 		}
 
+		int created = 0;
+		int tagged = 0;
 		// the points-to analysis just infers data flow edges
 		// but the call edges are really just a summary of the 
 		// data flow edges, so we can extract the call relationships
@@ -98,12 +101,14 @@ public class ZeroControlFlowAnalysis extends CGAnalysis {
 					if(callsiteGE != null){
 						Edge perCFEdge = Graph.U.createEdge(callsiteGE, target.eval().nodes().one());
 						perCFEdge.tag(PER_CONTROL_FLOW); // this is an edge from the callsite to the target method
+						created++;
 					}
 				}
 				// infer per method call summary edges
 				Q caller = Query.universe().edges(XCSG.Contains).predecessors(callsiteCFNode);
 				for(Edge callEdge : Query.universe().edgesTaggedWithAll(XCSG.Call).betweenStep(caller, target).eval().edges()){
 					callEdge.tag(CALL);
+					tagged++;
 				}
 			}
 		}
@@ -124,14 +129,27 @@ public class ZeroControlFlowAnalysis extends CGAnalysis {
 			if(isStaticDispatch || calledMethod.taggedWith(XCSG.Constructor) || calledMethod.getAttr(XCSG.name).equals("<init>")){
 				if(reachableMethods.contains(callingMethod)){
 					callEdge.tag(CALL);
+					tagged++;
 					Q callsites = declarations.forward(Common.toQ(callingMethod)).nodes(XCSG.CallSite);
 					Q cfNodes = Query.universe().edges(XCSG.Contains).predecessors(callsites);
 					for(Edge perControlFlowEdge : perControlFlowEdges.betweenStep(cfNodes, Common.toQ(calledMethod)).eval().edges()){
 						perControlFlowEdge.tag(PER_CONTROL_FLOW);
+						tagged++;
 					}
 				}
 			}
 		}
+		getMetrics().add(AnalysisMetrics.EDGES_CREATED, created);
+		getMetrics().add(AnalysisMetrics.EDGES_TAGGED, tagged);
+	}
+	
+	/**
+	 * 0-CFA depends on the points-to results and tags edges from control flow nodes,
+	 * neither of which the call graph cache can restore
+	 */
+	@Override
+	public boolean isCacheable(){
+		return false;
 	}
 	
 	@Override
@@ -0,0 +1,407 @@
+package com.ensoftcorp.open.cg.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.GraphElement.NodeDirection;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.index.common.SourceCorrespondence;
+import com.ensoftcorp.atlas.core.query.Query;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.Activator;
+import com.ensoftcorp.open.cg.analysis.CGAnalysis;
+import com.ensoftcorp.open.cg.analysis.ClassHierarchyAnalysis;
+import com.ensoftcorp.open.cg.analysis.ReachabilityAnalysis;
+import com.ensoftcorp.open.cg.log.Log;
+import com.ensoftcorp.open.cg.preferences.CallGraphPreferences;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ProgramFingerprint;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.cg.utils.CallGraphConstruction;
+import com.ensoftcorp.open.cg.utils.Encoding;
+import com.ensoftcorp.open.commons.analysis.SetDefinitions;
+import com.ensoftcorp.open.commons.utilities.WorkspaceUtils;
+
+/**
+ * Saves the call edges and per control flow edges of an analysis to disk and
+ * restores them into a later index of the same program, so that the analysis
+ * does not have to be run again after a restart.
+ *
+ * Each analysis has one cache file in the plugin's state location. The file is
+ * keyed by a fingerprint of the indexed projects and libraries (their source and
+ * library files), the program facts of the snapshot and the preferences that
+ * change the results of the analyses, and is ignored if the fingerprint does not
+ * match. Edge endpoints are stored as varint indexes into a table of the stable
+ * method and callsite keys of a ProgramFingerprint, since graph elements do not
+ * keep their identity between indexes.
+ *
+ * Call edges are created by CHA and RA and tagged by the analyses derived from
+ * them, so each saved edge records which analysis created it. When an edge is
+ * restored the matching edge of the creating analysis is tagged, and a new edge
+ * is only created if no such edge exists.
+ */
+public class CallGraphCache {
+
+	private static final int MAGIC = 0x43474331; // CGC1
+	private static final int VERSION = 1;
+	private static final String CACHE_DIRECTORY = "callgraphs";
+
+	// edge kinds
+	private static final int CALL_EDGE = 0;
+	private static final int PER_CONTROL_FLOW_EDGE = 1;
+
+	// the analysis that created an edge
+	private static final int CREATED_BY_SELF = 0;
+	private static final int CREATED_BY_CHA = 1;
+	private static final int CREATED_BY_RA = 2;
+
+	private CallGraphCache(){
+		// exists only to defeat instantiation
+	}
+
+	/**
+	 * Returns true if the results of the analysis should be cached
+	 * @param analysis
+	 * @return
+	 */
+	public static boolean isEnabled(CGAnalysis analysis){
+		// library callsite summaries are added to the graph by CHA and cannot be restored
+		return CallGraphPreferences.isCallGraphCacheEnabled()
+				&& !CallGraphPreferences.isLibraryCallGraphConstructionEnabled()
+				&& analysis.isCacheable();
+	}
+
+	/**
+	 * Restores the call graph of the analysis if a cache file matching the current index exists
+	 * @param analysis
+	 * @return true if the call graph was restored
+	 */
+	public static boolean restore(CGAnalysis analysis){
+		if(!isEnabled(analysis)){
+			return false;
+		}
+		File cacheFile = getCacheFile(analysis);
+		if(cacheFile == null || !cacheFile.exists()){
+			return false;
+		}
+		try {
+			AtlasProgramSnapshot snapshot = AtlasProgramSnapshot.getInstance();
+			ProgramFingerprint fingerprint = snapshot.getFingerprint();
+			Long indexFingerprint = getIndexFingerprint(analysis, fingerprint);
+			if(indexFingerprint == null){
+				return false;
+			}
+
+			String[] tags = getTags(analysis);
+			CachedEdges cachedEdges = read(cacheFile, indexFingerprint, tags);
+			if(cachedEdges == null){
+				return false;
+			}
+			String[] keys = cachedEdges.keys;
+			int[] edges = cachedEdges.edges;
+
+			// resolve every endpoint before changing the graph
+			Node[] sources = new Node[edges.length / 4];
+			Node[] targets = new Node[edges.length / 4];
+			for(int edge=0; edge<sources.length; edge++){
+				int kind = edges[edge*4] & 1;
+				int source = kind == CALL_EDGE ? fingerprint.getMethodId(keys[edges[edge*4+1]]) : fingerprint.getCallsiteId(keys[edges[edge*4+1]]);
+				int target = fingerprint.getMethodId(keys[edges[edge*4+2]]);
+				if(source == ProgramSnapshot.NONE || target == ProgramSnapshot.NONE){
+					Log.info("Cached " + analysis.getName() + " call graph does not match the current index.");
+					return false;
+				}
+				sources[edge] = kind == CALL_EDGE ? snapshot.getMethod(source) : snapshot.getCallsite(source);
+				targets[edge] = snapshot.getMethod(target);
+			}
+
+			// edges created by another analysis are restored by tagging that analysis' edges
+			Graph[] creatorGraphs = new Graph[3];
+			creatorGraphs[CREATED_BY_SELF] = Query.universe().edges(tags).eval();
+			for(int edge=0; edge<sources.length; edge++){
+				int creator = edges[edge*4] >>> 1;
+				if(creatorGraphs[creator] == null){
+					CGAnalysis creatorAnalysis = creator == CREATED_BY_CHA ? ClassHierarchyAnalysis.getInstance() : ReachabilityAnalysis.getInstance();
+					if(!creatorAnalysis.hasRun()){
+						creatorAnalysis.run();
+					}
+					creatorGraphs[creator] = Query.universe().edges(getTags(creatorAnalysis)).eval();
+				}
+			}
+			for(int edge=0; edge<sources.length; edge++){
+				int kind = edges[edge*4] & 1;
+				Edge restoredEdge = null;
+				for(Edge existingEdge : creatorGraphs[edges[edge*4] >>> 1].edges(sources[edge], NodeDirection.OUT)){
+					if(existingEdge.to().equals(targets[edge])){
+						restoredEdge = existingEdge;
+						break;
+					}
+				}
+				if(restoredEdge == null){
+					restoredEdge = Graph.U.createEdge(sources[edge], targets[edge]);
+					if(kind == CALL_EDGE){
+						restoredEdge.attr().put(XCSG.name, CallGraphConstruction.CALL_EDGE_NAME);
+					}
+				}
+				int tagMask = edges[edge*4+3];
+				for(int tag=0; tag<tags.length; tag++){
+					if((tagMask & (1 << tag)) != 0){
+						restoredEdge.tag(tags[tag]);
+					}
+				}
+			}
+			Log.info("Restored " + sources.length + " " + analysis.getName() + " call graph edges from " + cacheFile.getName());
+			return true;
+		} catch (Exception e){
+			Log.warning("Could not restore cached " + analysis.getName() + " call graph.", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Saves the call graph of the analysis to its cache file
+	 * @param analysis
+	 * @return true if the call graph was saved
+	 */
+	public static boolean save(CGAnalysis analysis){
+		if(!isEnabled(analysis)){
+			return false;
+		}
+		File cacheFile = getCacheFile(analysis);
+		if(cacheFile == null){
+			return false;
+		}
+		try {
+			AtlasProgramSnapshot snapshot = AtlasProgramSnapshot.getInstance();
+			ProgramFingerprint fingerprint = snapshot.getFingerprint();
+			Long indexFingerprint = getIndexFingerprint(analysis, fingerprint);
+			if(indexFingerprint == null){
+				return false;
+			}
+
+			String[] tags = getTags(analysis);
+			Map<String,Integer> keys = new LinkedHashMap<String,Integer>();
+			ArrayList<int[]> edges = new ArrayList<int[]>();
+			for(Edge callEdge : analysis.getCallGraph().eval().edges()){
+				int source = snapshot.getMethodId(callEdge.from());
+				int target = snapshot.getMethodId(callEdge.to());
+				String sourceKey = source == ProgramSnapshot.NONE ? null : fingerprint.getMethodKey(source);
+				String targetKey = target == ProgramSnapshot.NONE ? null : fingerprint.getMethodKey(target);
+				if(!addEdge(analysis, keys, edges, tags, callEdge, CALL_EDGE, sourceKey, targetKey)){
+					return false;
+				}
+			}
+			for(Edge perControlFlowEdge : analysis.getPerControlFlowGraph().eval().edges()){
+				int source = snapshot.getCallsiteId(perControlFlowEdge.from());
+				int target = snapshot.getMethodId(perControlFlowEdge.to());
+				String sourceKey = source == ProgramSnapshot.NONE ? null : fingerprint.getCallsiteKey(source);
+				String targetKey = target == ProgramSnapshot.NONE ? null : fingerprint.getMethodKey(target);
+				if(!addEdge(analysis, keys, edges, tags, perControlFlowEdge, PER_CONTROL_FLOW_EDGE, sourceKey, targetKey)){
+					return false;
+				}
+			}
+
+			int[] edgeValues = new int[edges.size() * 4];
+			for(int edge=0; edge<edges.size(); edge++){
+				System.arraycopy(edges.get(edge), 0, edgeValues, edge * 4, 4);
+			}
+			write(cacheFile, indexFingerprint, tags, new CachedEdges(keys.keySet().toArray(new String[keys.size()]), edgeValues));
+			Log.info("Saved " + edges.size() + " " + analysis.getName() + " call graph edges to " + cacheFile.getName());
+			return true;
+		} catch (Exception e){
+			Log.warning("Could not save " + analysis.getName() + " call graph.", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Reads the edges of a cache file
+	 * @param cacheFile
+	 * @param indexFingerprint the fingerprint of the current index
+	 * @param tags the tags of the analysis
+	 * @return the edges or null if the file was saved for another index or set of tags
+	 * @throws IOException
+	 */
+	static CachedEdges read(File cacheFile, long indexFingerprint, String[] tags) throws IOException {
+		ByteBuffer buffer = Encoding.readFile(cacheFile);
+		if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != indexFingerprint){
+			return null;
+		}
+		int tagCount = Encoding.readVarInt(buffer);
+		if(tagCount != tags.length){
+			return null;
+		}
+		for(int i=0; i<tagCount; i++){
+			if(!tags[i].equals(Encoding.readString(buffer))){
+				return null;
+			}
+		}
+		String[] keys = new String[Encoding.readVarInt(buffer)];
+		for(int i=0; i<keys.length; i++){
+			keys[i] = Encoding.readString(buffer);
+		}
+		int[] edges = new int[Encoding.readVarInt(buffer) * 4];
+		for(int i=0; i<edges.length; i++){
+			edges[i] = Encoding.readVarInt(buffer);
+		}
+		return new CachedEdges(keys, edges);
+	}
+
+	/**
+	 * Writes the edges to a cache file, replacing the file once it is written
+	 * @param cacheFile
+	 * @param indexFingerprint the fingerprint of the current index
+	 * @param tags the tags of the analysis
+	 * @param cachedEdges
+	 * @throws IOException
+	 */
+	static void write(File cacheFile, long indexFingerprint, String[] tags, CachedEdges cachedEdges) throws IOException {
+		cacheFile.getParentFile().mkdirs();
+		File temporaryFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(indexFingerprint);
+			Encoding.writeVarInt(output, tags.length);
+			for(String tag : tags){
+				Encoding.writeString(output, tag);
+			}
+			Encoding.writeVarInt(output, cachedEdges.keys.length);
+			for(String key : cachedEdges.keys){
+				Encoding.writeString(output, key);
+			}
+			Encoding.writeVarInt(output, cachedEdges.edges.length / 4);
+			for(int value : cachedEdges.edges){
+				Encoding.writeVarInt(output, value);
+			}
+		}
+		Encoding.replaceFile(temporaryFile, cacheFile);
+	}
+
+	/**
+	 * The contents of a cache file
+	 */
+	static class CachedEdges {
+		// the stable method and callsite keys of the edge endpoints
+		final String[] keys;
+
+		// each edge is a header (kind and creator), the source and target key and a tag mask
+		final int[] edges;
+
+		CachedEdges(String[] keys, int[] edges){
+			this.keys = keys;
+			this.edges = edges;
+		}
+	}
+
+	private static boolean addEdge(CGAnalysis analysis, Map<String,Integer> keys, ArrayList<int[]> edges, String[] tags, Edge edge, int kind, String sourceKey, String targetKey){
+		if(sourceKey == null || targetKey == null){
+			Log.info(analysis.getName() + " call graph has an edge between elements without a stable key and will not be cached.");
+			return false;
+		}
+		int tagMask = 0;
+		for(int tag=0; tag<tags.length; tag++){
+			if(edge.taggedWith(tags[tag])){
+				tagMask |= 1 << tag;
+			}
+		}
+		edges.add(new int[]{ kind | (getCreator(analysis, edge) << 1), getKey(keys, sourceKey), getKey(keys, targetKey), tagMask });
+		return true;
+	}
+
+	private static int getKey(Map<String,Integer> keys, String key){
+		Integer index = keys.get(key);
+		if(index == null){
+			index = keys.size();
+			keys.put(key, index);
+		}
+		return index;
+	}
+
+	private static int getCreator(CGAnalysis analysis, Edge edge){
+		if(analysis instanceof ClassHierarchyAnalysis || analysis instanceof ReachabilityAnalysis){
+			return CREATED_BY_SELF;
+		}
+		for(String tag : getTags(ClassHierarchyAnalysis.getInstance())){
+			if(edge.taggedWith(tag)){
+				return CREATED_BY_CHA;
+			}
+		}
+		for(String tag : getTags(ReachabilityAnalysis.getInstance())){
+			if(edge.taggedWith(tag)){
+				return CREATED_BY_RA;
+			}
+		}
+		return CREATED_BY_SELF;
+	}
+
+	/**
+	 * Returns the call edge and per control flow edge tags of the analysis
+	 */
+	private static String[] getTags(CGAnalysis analysis){
+		Set<String> tags = new LinkedHashSet<String>();
+		for(String tag : analysis.getCallEdgeTags()){
+			tags.add(tag);
+		}
+		for(String tag : analysis.getPerControlFlowEdgeTags()){
+			tags.add(tag);
+		}
+		return tags.toArray(new String[tags.size()]);
+	}
+
+	private static File getCacheFile(CGAnalysis analysis){
+		Activator plugin = Activator.getDefault();
+		if(plugin == null || plugin.getStateLocation() == null){
+			return null;
+		}
+		File directory = new File(plugin.getStateLocation().toFile(), CACHE_DIRECTORY);
+		return new File(directory, analysis.getClass().getSimpleName() + ".cg");
+	}
+
+	/**
+	 * Fingerprints the indexed projects and libraries (by the location, size and modification
+	 * time of their files), the program facts of the snapshot and the preferences that change
+	 * the results of the analysis
+	 * @return the fingerprint or null if the files of the index could not be located
+	 */
+	private static Long getIndexFingerprint(CGAnalysis analysis, ProgramFingerprint fingerprint){
+		long indexFingerprint = Encoding.mix(VERSION);
+		indexFingerprint = Encoding.mix(indexFingerprint + Encoding.hash(analysis.getClass().getName()));
+		indexFingerprint = Encoding.mix(indexFingerprint + (CallGraphPreferences.isReachabilityEnabled() ? 1 : 0));
+		indexFingerprint = Encoding.mix(indexFingerprint + (CallGraphPreferences.isLibraryCallbackEntryPointsInferenceEnabled() ? 1 : 0));
+		indexFingerprint = Encoding.mix(indexFingerprint + fingerprint.getProgramHash());
+
+		for(Node project : Query.universe().nodes(XCSG.Project).eval().nodes()){
+			indexFingerprint += Encoding.mix(Encoding.hash(String.valueOf(project.getAttr(XCSG.name))));
+		}
+		Set<String> files = new HashSet<String>();
+		try {
+			for(Node node : Query.universe().nodes(XCSG.Library).union(SetDefinitions.app().nodes(XCSG.Type)).eval().nodes()){
+				Object sourceCorrespondence = node.getAttr(XCSG.sourceCorrespondence);
+				if(sourceCorrespondence instanceof SourceCorrespondence && ((SourceCorrespondence) sourceCorrespondence).sourceFile != null){
+					File file = WorkspaceUtils.getFile(((SourceCorrespondence) sourceCorrespondence).sourceFile);
+					if(file != null && files.add(file.getAbsolutePath())){
+						indexFingerprint += Encoding.mix(Encoding.hash(file.getAbsolutePath()) + 31 * file.length() + file.lastModified());
+					}
+				}
+			}
+		} catch (Exception e){
+			Log.warning("Could not fingerprint the indexed files.", e);
+			return null;
+		}
+		return Encoding.mix(indexFingerprint + files.size());
+	}
+
+}
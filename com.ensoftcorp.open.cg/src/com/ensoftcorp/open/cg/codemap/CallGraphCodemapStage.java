@@ -2,6 +2,7 @@ package com.ensoftcorp.open.cg.codemap;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 
+import com.ensoftcorp.open.cg.analysis.AnalysisPipeline;
 import com.ensoftcorp.open.cg.analysis.ClassHierarchyAnalysis;
 import com.ensoftcorp.open.cg.analysis.ClassicHybridTypeAnalysis;
 import com.ensoftcorp.open.cg.analysis.ExceptionTypeAnalysis;
@@ -36,53 +37,41 @@ public class CallGraphCodemapStage extends PrioritizedCodemapStage {
 
 	@Override
 	public boolean performIndexing(IProgressMonitor monitor) {
-		boolean runIndexer = false;
+		// the enabled analyses share a single CHA pass and fact base, and the type propagation
+		// of the analyses that refine the CHA call graph may run concurrently (see AnalysisPipeline)
+		AnalysisPipeline pipeline = new AnalysisPipeline();
 		if(CallGraphPreferences.isReachabilityAnalysisEnabled()){
-			runIndexer = true;
-			ReachabilityAnalysis ra = ReachabilityAnalysis.getInstance();
-			ra.run();
+			pipeline.add(ReachabilityAnalysis.getInstance());
 		}
 		if(CallGraphPreferences.isClassHierarchyAnalysisEnabled()){
-			runIndexer = true;
-			ClassHierarchyAnalysis cha = ClassHierarchyAnalysis.getInstance();
-			cha.run();
+			pipeline.add(ClassHierarchyAnalysis.getInstance());
 		}
 		if(CallGraphPreferences.isRapidTypeAnalysisEnabled()){
-			runIndexer = true;
-			RapidTypeAnalysis rta = RapidTypeAnalysis.getInstance();
-			rta.run();
+			pipeline.add(RapidTypeAnalysis.getInstance());
 		}
 		if(CallGraphPreferences.isMethodTypeAnalysisEnabled()){
-			runIndexer = true;
-			MethodTypeAnalysis mta = MethodTypeAnalysis.getInstance();
-			mta.run();
+			pipeline.add(MethodTypeAnalysis.getInstance());
 		}
 		if(CallGraphPreferences.isFieldTypeAnalysisEnabled()){
-			runIndexer = true;
-			FieldTypeAnalysis fta = FieldTypeAnalysis.getInstance();
-			fta.run();
+			pipeline.add(FieldTypeAnalysis.getInstance());
 		}
 		if(CallGraphPreferences.isExceptionTypeAnalysisEnabled()){
-			runIndexer = true;
-			ExceptionTypeAnalysis eta = ExceptionTypeAnalysis.getInstance();
-			eta.run();
+			pipeline.add(ExceptionTypeAnalysis.getInstance());
 		}
 		if(CallGraphPreferences.isClassicHybridTypeAnalysisEnabled()){
-			runIndexer = true;
-			ClassicHybridTypeAnalysis xta = ClassicHybridTypeAnalysis.getInstance();
-			xta.run();
+			pipeline.add(ClassicHybridTypeAnalysis.getInstance());
 		}
 		if(CallGraphPreferences.isHybridTypeAnalysisEnabled()){
-			runIndexer = true;
-			HybridTypeAnalysis xta2 = HybridTypeAnalysis.getInstance();
-			xta2.run();
+			pipeline.add(HybridTypeAnalysis.getInstance());
 		}
 		if(CallGraphPreferences.isZeroCFAEnabled()){
-			runIndexer = true;
-			ZeroControlFlowAnalysis zeroCFA = ZeroControlFlowAnalysis.getInstance();
-			zeroCFA.run();
+			pipeline.add(ZeroControlFlowAnalysis.getInstance());
 		}
-		return runIndexer;
+		if(pipeline.isEmpty()){
+			return false;
+		}
+		pipeline.run(CallGraphPreferences.getAnalysisParallelism());
+		return true;
 	}
 
 }
@@ -0,0 +1,207 @@
+package com.ensoftcorp.open.cg.common;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per phase timers and counters recorded by a call graph analysis (see CGAnalysis.getMetrics).
+ *
+ * Phases and counters are named, and are reported in the order they were first
+ * recorded. A phase that is timed more than once accumulates its elapsed time. The
+ * names analyses share are defined as constants so the metrics of different
+ * analyses can be compared.
+ *
+ * Analyses are expected to count in local variables inside of hot loops and
+ * record the totals once a phase completes.
+ */
+public class AnalysisMetrics {
+
+	// phases
+	public static final String TOTAL = "total";
+	public static final String CACHE_RESTORE = "cache restore";
+	public static final String CACHE_SAVE = "cache save";
+	public static final String LIBRARY_SUMMARIZATION = "library summarization";
+	public static final String PROGRAM_SNAPSHOT = "program snapshot";
+	public static final String FACT_BASE = "fact base";
+	public static final String ROOT_DISCOVERY = "root discovery";
+	public static final String EXCEPTION_FLOW_INDEX = "exception flow index";
+	public static final String CALLSITE_RESOLUTION = "callsite resolution";
+	public static final String TYPE_PROPAGATION = "type propagation";
+	public static final String EDGE_CREATION = "edge creation";
+	public static final String EDGE_TAGGING = "edge tagging";
+
+	// counters
+	public static final String ROOT_METHODS = "root methods";
+	public static final String WORKLIST_ITERATIONS = "worklist iterations";
+	public static final String CALLSITES_RESOLVED = "callsites resolved";
+	public static final String CALLSITES_REVISITED = "callsites revisited";
+	public static final String CALLSITES_RESOLVED_ON_DEMAND = "callsites resolved on demand";
+	public static final String EDGES_CREATED = "edges created";
+	public static final String EDGES_TAGGED = "edges tagged";
+	public static final String PEAK_TYPE_SET_SIZE = "peak type set size";
+	public static final String OFF_HEAP_TYPE_SET_BYTES = "off heap type set bytes";
+	public static final String SPILLED_TYPE_SETS = "spilled type sets";
+	public static final String INTERNED_TYPE_SETS = "interned type sets";
+	public static final String SHARED_TYPE_SET_UNIONS = "shared type set unions";
+	public static final String TYPE_SET_UNION_CACHE_HITS = "type set union cache hits";
+
+	private final Map<String,Long> phases = new LinkedHashMap<String,Long>();
+	private final Map<String,Long> counters = new LinkedHashMap<String,Long>();
+
+	/**
+	 * Starts timing a phase, the elapsed time is recorded when the timer is closed
+	 * ex: try(AnalysisMetrics.Timer timer = metrics.startTimer(AnalysisMetrics.ROOT_DISCOVERY)){ ... }
+	 * @param phase
+	 * @return
+	 */
+	public Timer startTimer(String phase){
+		return new Timer(phase);
+	}
+
+	/**
+	 * Adds the elapsed time to the phase
+	 * @param phase
+	 * @param nanoseconds
+	 */
+	public synchronized void addTime(String phase, long nanoseconds){
+		Long time = phases.get(phase);
+		phases.put(phase, time == null ? nanoseconds : time + nanoseconds);
+	}
+
+	/**
+	 * Adds to the counter
+	 * @param counter
+	 * @param amount
+	 */
+	public synchronized void add(String counter, long amount){
+		Long count = counters.get(counter);
+		counters.put(counter, count == null ? amount : count + amount);
+	}
+
+	/**
+	 * Raises the counter to the value if the value is larger (used for peaks)
+	 * @param counter
+	 * @param value
+	 */
+	public synchronized void max(String counter, long value){
+		Long count = counters.get(counter);
+		if(count == null || value > count){
+			counters.put(counter, value);
+		}
+	}
+
+	/**
+	 * Returns the time in milliseconds spent in each phase
+	 * @return
+	 */
+	public synchronized Map<String,Double> getPhases(){
+		Map<String,Double> result = new LinkedHashMap<String,Double>();
+		for(Map.Entry<String,Long> phase : phases.entrySet()){
+			result.put(phase.getKey(), phase.getValue()/1000.0/1000.0);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the value of each counter
+	 * @return
+	 */
+	public synchronized Map<String,Long> getCounters(){
+		return new LinkedHashMap<String,Long>(counters);
+	}
+
+	/**
+	 * Returns the time in milliseconds spent in the phase (0 if the phase was not recorded)
+	 * @param phase
+	 * @return
+	 */
+	public synchronized double getPhase(String phase){
+		Long time = phases.get(phase);
+		return time == null ? 0 : time/1000.0/1000.0;
+	}
+
+	/**
+	 * Returns the value of the counter (0 if the counter was not recorded)
+	 * @param counter
+	 * @return
+	 */
+	public synchronized long getCounter(String counter){
+		Long count = counters.get(counter);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Returns the metrics as a JSON object with a "phases" object (milliseconds) and a "counters" object
+	 * @return
+	 */
+	public synchronized String toJSON(){
+		StringBuilder json = new StringBuilder("{\"phases\":{");
+		boolean first = true;
+		for(Map.Entry<String,Double> phase : getPhases().entrySet()){
+			if(!first){
+				json.append(",");
+			}
+			json.append(quote(phase.getKey())).append(":").append(String.format(Locale.ROOT, "%.3f", phase.getValue()));
+			first = false;
+		}
+		json.append("},\"counters\":{");
+		first = true;
+		for(Map.Entry<String,Long> counter : counters.entrySet()){
+			if(!first){
+				json.append(",");
+			}
+			json.append(quote(counter.getKey())).append(":").append(counter.getValue());
+			first = false;
+		}
+		return json.append("}}").toString();
+	}
+
+	@Override
+	public synchronized String toString(){
+		StringBuilder result = new StringBuilder();
+		for(Map.Entry<String,Double> phase : getPhases().entrySet()){
+			result.append(result.length() == 0 ? "" : ", ").append(phase.getKey()).append(": ").append(String.format(Locale.ROOT, "%.2fms", phase.getValue()));
+		}
+		for(Map.Entry<String,Long> counter : counters.entrySet()){
+			result.append(result.length() == 0 ? "" : ", ").append(counter.getKey()).append(": ").append(counter.getValue());
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Quotes a name as a JSON string
+	 */
+	static String quote(String name){
+		StringBuilder quoted = new StringBuilder("\"");
+		for(char c : name.toCharArray()){
+			if(c == '"' || c == '\\'){
+				quoted.append('\\').append(c);
+			} else if(c < 0x20){
+				quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append("\"").toString();
+	}
+
+	/**
+	 * Times a phase until it is closed
+	 */
+	public class Timer implements AutoCloseable {
+		private final String phase;
+		private final long start;
+
+		private Timer(String phase){
+			this.phase = phase;
+			this.start = System.nanoTime();
+		}
+
+		@Override
+		public void close(){
+			addTime(phase, System.nanoTime() - start);
+		}
+	}
+
+}
@@ -22,6 +22,9 @@ import com.ensoftcorp.open.cg.analysis.MethodTypeAnalysis;
 import com.ensoftcorp.open.cg.analysis.RapidTypeAnalysis;
 import com.ensoftcorp.open.cg.analysis.ReachabilityAnalysis;
 import com.ensoftcorp.open.cg.analysis.ZeroControlFlowAnalysis;
+import com.ensoftcorp.open.cg.preferences.CallGraphPreferences;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
 
 public class Stats {
 
@@ -57,6 +60,33 @@ public class Stats {
 		dumpStats(zcfa, fw);
 		
 		fw.close();
+		
+		if(CallGraphPreferences.isAnalysisMetricsJSONEnabled()){
+			String name = outputFile.getName();
+			int extension = name.lastIndexOf('.');
+			name = (extension > 0 ? name.substring(0, extension) : name) + "-metrics.json";
+			dumpMetrics(new File(outputFile.getAbsoluteFile().getParentFile(), name));
+		}
+	}
+	
+	/**
+	 * Writes the per phase metrics of each analysis as a JSON object keyed by the analysis name
+	 * @param outputFile
+	 * @throws IOException
+	 */
+	public static void dumpMetrics(File outputFile) throws IOException {
+		CGAnalysis[] analyses = new CGAnalysis[]{ ReachabilityAnalysis.getInstance(), ClassHierarchyAnalysis.getInstance(), 
+				RapidTypeAnalysis.getInstance(), FieldTypeAnalysis.getInstance(), MethodTypeAnalysis.getInstance(), 
+				ExceptionTypeAnalysis.getInstance(), ClassicHybridTypeAnalysis.getInstance(), HybridTypeAnalysis.getInstance(), 
+				ZeroControlFlowAnalysis.getInstance() };
+		FileWriter fw = new FileWriter(outputFile);
+		fw.write("{\n");
+		for(int i=0; i<analyses.length; i++){
+			fw.write("\t" + AnalysisMetrics.quote(analyses[i].getClass().getSimpleName()) + ":" + analyses[i].getMetrics().toJSON());
+			fw.write(i < analyses.length - 1 ? ",\n" : "\n");
+		}
+		fw.write("}\n");
+		fw.close();
 	}
 	
 	// how many nodes/edges in call graph 
@@ -87,10 +117,21 @@ public class Stats {
 		return Common.toQ(callsites).nodes(XCSG.DynamicDispatchCallSite).eval().nodes();
 	}
 	
+	/**
+	 * Returns the number of methods the callsite resolves to, answered from the analysis' call graph index
+	 */
+	private static long getDispatches(Node callsite, CGAnalysis cga){
+		int callsiteId = AtlasProgramSnapshot.getInstance().getCallsiteId(callsite);
+		if(callsiteId == ProgramSnapshot.NONE){
+			return cga.getPerControlFlowGraph().successors(Common.toQ(callsite)).eval().nodes().size();
+		}
+		return cga.getCallGraphIndex().getPerControlFlowTargets(callsiteId).cardinality();
+	}
+	
 	private static Long getMaxDynamicDispatchesPerCallsite(AtlasSet<Node> callsites, CGAnalysis cga){
 		long max = Long.MIN_VALUE;
 		for(Node callsite : getDynamicDispatches(callsites)){
-			long dispatches = cga.getPerControlFlowGraph().successors(Common.toQ(callsite)).eval().nodes().size();
+			long dispatches = getDispatches(callsite, cga);
 			if(dispatches > max){
 				max = dispatches;
 			}
@@ -101,7 +142,7 @@ public class Stats {
 	private static Long getMinDynamicDispatchesPerCallsite(AtlasSet<Node> callsites, CGAnalysis cga){
 		long min = Long.MAX_VALUE;
 		for(Node callsite : getDynamicDispatches(callsites)){
-			long dispatches = cga.getPerControlFlowGraph().successors(Common.toQ(callsite)).eval().nodes().size();
+			long dispatches = getDispatches(callsite, cga);
 			if(dispatches < min){
 				min = dispatches;
 			}
@@ -113,7 +154,7 @@ public class Stats {
 		double average = 0;
 		callsites = getDynamicDispatches(callsites);
 		for(Node callsite : callsites){
-			long dispatches = cga.getPerControlFlowGraph().successors(Common.toQ(callsite)).eval().nodes().size();
+			long dispatches = getDispatches(callsite, cga);
 			average += dispatches;
 		}
 		return ((double) average / (double) callsites.size());
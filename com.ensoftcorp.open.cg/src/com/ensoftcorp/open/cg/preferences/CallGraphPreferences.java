@@ -338,6 +338,213 @@ public class CallGraphPreferences extends AbstractPreferenceInitializer {
 		loadPreferences();
 	}
 	
+	/**
+	 * The number of worker threads used to resolve CHA callsites (1 resolves sequentially)
+	 */
+	public static final String CHA_PARALLELISM = "CHA_PARALLELISM";
+	public static final Integer CHA_PARALLELISM_DEFAULT = 1;
+	private static int chaParallelismValue = CHA_PARALLELISM_DEFAULT;
+
+	public static int getClassHierarchyAnalysisParallelism(){
+		if(!initialized){
+			loadPreferences();
+		}
+		return chaParallelismValue;
+	}
+	
+	/**
+	 * Configures the number of CHA worker threads
+	 */
+	public static void setClassHierarchyAnalysisParallelism(int parallelism){
+		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(CHA_PARALLELISM, Math.max(1, parallelism));
+		loadPreferences();
+	}
+	
+	/**
+	 * The number of analyses run concurrently once CHA completes (1 runs the analyses in sequence)
+	 */
+	public static final String ANALYSIS_PARALLELISM = "ANALYSIS_PARALLELISM";
+	public static final Integer ANALYSIS_PARALLELISM_DEFAULT = 1;
+	private static int analysisParallelismValue = ANALYSIS_PARALLELISM_DEFAULT;
+
+	public static int getAnalysisParallelism(){
+		if(!initialized){
+			loadPreferences();
+		}
+		return analysisParallelismValue;
+	}
+	
+	/**
+	 * Configures the number of analyses run concurrently
+	 */
+	public static void setAnalysisParallelism(int parallelism){
+		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(ANALYSIS_PARALLELISM, Math.max(1, parallelism));
+		loadPreferences();
+	}
+	
+	/**
+	 * Enable/disable incremental CHA construction (only the methods affected by an index change are re-resolved)
+	 */
+	public static final String CHA_INCREMENTAL_CONSTRUCTION = "CHA_INCREMENTAL_CONSTRUCTION";
+	public static final Boolean CHA_INCREMENTAL_CONSTRUCTION_DEFAULT = false;
+	private static boolean chaIncrementalConstructionValue = CHA_INCREMENTAL_CONSTRUCTION_DEFAULT;
+
+	public static boolean isClassHierarchyAnalysisIncrementalConstructionEnabled(){
+		if(!initialized){
+			loadPreferences();
+		}
+		return chaIncrementalConstructionValue;
+	}
+	
+	/**
+	 * Configures incremental CHA construction
+	 */
+	public static void enableClassHierarchyAnalysisIncrementalConstruction(boolean enabled){
+		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(CHA_INCREMENTAL_CONSTRUCTION, enabled);
+		loadPreferences();
+	}
+	
+	/**
+	 * Enable/disable checking incremental CHA updates against a full rebuild
+	 */
+	public static final String CHA_INCREMENTAL_VERIFICATION = "CHA_INCREMENTAL_VERIFICATION";
+	public static final Boolean CHA_INCREMENTAL_VERIFICATION_DEFAULT = false;
+	private static boolean chaIncrementalVerificationValue = CHA_INCREMENTAL_VERIFICATION_DEFAULT;
+
+	public static boolean isClassHierarchyAnalysisIncrementalVerificationEnabled(){
+		if(!initialized){
+			loadPreferences();
+		}
+		return chaIncrementalVerificationValue;
+	}
+	
+	/**
+	 * Configures verification of incremental CHA updates
+	 */
+	public static void enableClassHierarchyAnalysisIncrementalVerification(boolean enabled){
+		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(CHA_INCREMENTAL_VERIFICATION, enabled);
+		loadPreferences();
+	}
+	
+	/**
+	 * Enable/disable saving call graphs to disk and restoring them when the index has not changed
+	 */
+	public static final String CALL_GRAPH_CACHE = "CALL_GRAPH_CACHE";
+	public static final Boolean CALL_GRAPH_CACHE_DEFAULT = false;
+	private static boolean callGraphCacheValue = CALL_GRAPH_CACHE_DEFAULT;
+
+	public static boolean isCallGraphCacheEnabled(){
+		if(!initialized){
+			loadPreferences();
+		}
+		return callGraphCacheValue;
+	}
+	
+	/**
+	 * Configures the on disk call graph cache
+	 */
+	public static void enableCallGraphCache(boolean enabled){
+		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(CALL_GRAPH_CACHE, enabled);
+		loadPreferences();
+	}
+	
+	/**
+	 * The maximum size in megabytes of the off heap store of each type propagation analysis' types sets (0 disables the store)
+	 */
+	public static final String TYPE_SET_STORE_SIZE = "TYPE_SET_STORE_SIZE";
+	public static final Integer TYPE_SET_STORE_SIZE_DEFAULT = 0;
+	private static int typeSetStoreSizeValue = TYPE_SET_STORE_SIZE_DEFAULT;
+
+	public static int getTypeSetStoreSize(){
+		if(!initialized){
+			loadPreferences();
+		}
+		return typeSetStoreSizeValue;
+	}
+	
+	/**
+	 * Configures the maximum size in megabytes of the off heap store of the types sets
+	 */
+	public static void setTypeSetStoreSize(int size){
+		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(TYPE_SET_STORE_SIZE, Math.max(0, size));
+		loadPreferences();
+	}
+	
+	/**
+	 * Enable/disable hash-consing the types sets of the type propagation analyses (when the types sets are not stored off heap)
+	 */
+	public static final String TYPE_SET_HASH_CONSING = "TYPE_SET_HASH_CONSING";
+	public static final Boolean TYPE_SET_HASH_CONSING_DEFAULT = false;
+	private static boolean typeSetHashConsingValue = TYPE_SET_HASH_CONSING_DEFAULT;
+
+	public static boolean isTypeSetHashConsingEnabled(){
+		if(!initialized){
+			loadPreferences();
+		}
+		return typeSetHashConsingValue;
+	}
+	
+	/**
+	 * Configures hash-consing the types sets of the type propagation analyses
+	 */
+	public static void enableTypeSetHashConsing(boolean enabled){
+		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(TYPE_SET_HASH_CONSING, enabled);
+		loadPreferences();
+	}
+	
+	/**
+	 * The maximum size in megabytes of the stored library summaries (0 disables the store)
+	 */
+	public static final String LIBRARY_SUMMARY_STORE_SIZE = "LIBRARY_SUMMARY_STORE_SIZE";
+	public static final Integer LIBRARY_SUMMARY_STORE_SIZE_DEFAULT = 256;
+	private static int librarySummaryStoreSizeValue = LIBRARY_SUMMARY_STORE_SIZE_DEFAULT;
+
+	public static int getLibrarySummaryStoreSize(){
+		if(!initialized){
+			loadPreferences();
+		}
+		return librarySummaryStoreSizeValue;
+	}
+	
+	/**
+	 * Configures the maximum size in megabytes of the stored library summaries
+	 */
+	public static void setLibrarySummaryStoreSize(int size){
+		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(LIBRARY_SUMMARY_STORE_SIZE, Math.max(0, size));
+		loadPreferences();
+	}
+	
+	/**
+	 * Enable/disable writing the per phase metrics of each analysis as JSON next to the stats CSV
+	 */
+	public static final String ANALYSIS_METRICS_JSON = "ANALYSIS_METRICS_JSON";
+	public static final Boolean ANALYSIS_METRICS_JSON_DEFAULT = false;
+	private static boolean analysisMetricsJSONValue = ANALYSIS_METRICS_JSON_DEFAULT;
+
+	public static boolean isAnalysisMetricsJSONEnabled(){
+		if(!initialized){
+			loadPreferences();
+		}
+		return analysisMetricsJSONValue;
+	}
+	
+	/**
+	 * Configures writing the per phase metrics of each analysis as JSON
+	 */
+	public static void enableAnalysisMetricsJSON(boolean enabled){
+		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
+		preferences.setValue(ANALYSIS_METRICS_JSON, enabled);
+		loadPreferences();
+	}
+	
 	@Override
 	public void initializeDefaultPreferences() {
 		IPreferenceStore preferences = Activator.getDefault().getPreferenceStore();
@@ -357,6 +564,15 @@ public class CallGraphPreferences extends AbstractPreferenceInitializer {
 		preferences.setDefault(INFER_LIBRARY_CALLBACK_ENTRY_POINTS, INFER_LIBRARY_CALLBACK_ENTRY_POINTS_DEFAULT);
 		preferences.setDefault(LIBRARY_CALL_GRAPH_CONSTRUCTION, LIBRARY_CALL_GRAPH_CONSTRUCTION_DEFAULT);
 		preferences.setDefault(REACHABILITY_RESTRICTIONS, REACHABILITY_RESTRICTIONS_DEFAULT);
+		preferences.setDefault(CHA_PARALLELISM, CHA_PARALLELISM_DEFAULT);
+		preferences.setDefault(ANALYSIS_PARALLELISM, ANALYSIS_PARALLELISM_DEFAULT);
+		preferences.setDefault(CHA_INCREMENTAL_CONSTRUCTION, CHA_INCREMENTAL_CONSTRUCTION_DEFAULT);
+		preferences.setDefault(CHA_INCREMENTAL_VERIFICATION, CHA_INCREMENTAL_VERIFICATION_DEFAULT);
+		preferences.setDefault(CALL_GRAPH_CACHE, CALL_GRAPH_CACHE_DEFAULT);
+		preferences.setDefault(TYPE_SET_STORE_SIZE, TYPE_SET_STORE_SIZE_DEFAULT);
+		preferences.setDefault(TYPE_SET_HASH_CONSING, TYPE_SET_HASH_CONSING_DEFAULT);
+		preferences.setDefault(LIBRARY_SUMMARY_STORE_SIZE, LIBRARY_SUMMARY_STORE_SIZE_DEFAULT);
+		preferences.setDefault(ANALYSIS_METRICS_JSON, ANALYSIS_METRICS_JSON_DEFAULT);
 	}
 	
 	/**
@@ -380,6 +596,15 @@ public class CallGraphPreferences extends AbstractPreferenceInitializer {
 		preferences.setValue(INFER_LIBRARY_CALLBACK_ENTRY_POINTS, INFER_LIBRARY_CALLBACK_ENTRY_POINTS_DEFAULT);
 		preferences.setValue(LIBRARY_CALL_GRAPH_CONSTRUCTION, LIBRARY_CALL_GRAPH_CONSTRUCTION_DEFAULT);
 		preferences.setValue(REACHABILITY_RESTRICTIONS, REACHABILITY_RESTRICTIONS_DEFAULT);
+		preferences.setValue(CHA_PARALLELISM, CHA_PARALLELISM_DEFAULT);
+		preferences.setValue(ANALYSIS_PARALLELISM, ANALYSIS_PARALLELISM_DEFAULT);
+		preferences.setValue(CHA_INCREMENTAL_CONSTRUCTION, CHA_INCREMENTAL_CONSTRUCTION_DEFAULT);
+		preferences.setValue(CHA_INCREMENTAL_VERIFICATION, CHA_INCREMENTAL_VERIFICATION_DEFAULT);
+		preferences.setValue(CALL_GRAPH_CACHE, CALL_GRAPH_CACHE_DEFAULT);
+		preferences.setValue(TYPE_SET_STORE_SIZE, TYPE_SET_STORE_SIZE_DEFAULT);
+		preferences.setValue(TYPE_SET_HASH_CONSING, TYPE_SET_HASH_CONSING_DEFAULT);
+		preferences.setValue(LIBRARY_SUMMARY_STORE_SIZE, LIBRARY_SUMMARY_STORE_SIZE_DEFAULT);
+		preferences.setValue(ANALYSIS_METRICS_JSON, ANALYSIS_METRICS_JSON_DEFAULT);
 		
 		loadPreferences();
 	}
@@ -405,6 +630,15 @@ public class CallGraphPreferences extends AbstractPreferenceInitializer {
 			inferLibraryCallbackEntryPointsValue = preferences.getBoolean(INFER_LIBRARY_CALLBACK_ENTRY_POINTS);
 			libraryCallGraphConstructionAlgorithmValue = preferences.getBoolean(LIBRARY_CALL_GRAPH_CONSTRUCTION);
 			reachabilityRestrictionsValue = preferences.getBoolean(REACHABILITY_RESTRICTIONS);
+			chaParallelismValue = Math.max(1, preferences.getInt(CHA_PARALLELISM));
+			analysisParallelismValue = Math.max(1, preferences.getInt(ANALYSIS_PARALLELISM));
+			chaIncrementalConstructionValue = preferences.getBoolean(CHA_INCREMENTAL_CONSTRUCTION);
+			chaIncrementalVerificationValue = preferences.getBoolean(CHA_INCREMENTAL_VERIFICATION);
+			callGraphCacheValue = preferences.getBoolean(CALL_GRAPH_CACHE);
+			typeSetStoreSizeValue = Math.max(0, preferences.getInt(TYPE_SET_STORE_SIZE));
+			typeSetHashConsingValue = preferences.getBoolean(TYPE_SET_HASH_CONSING);
+			librarySummaryStoreSizeValue = Math.max(0, preferences.getInt(LIBRARY_SUMMARY_STORE_SIZE));
+			analysisMetricsJSONValue = preferences.getBoolean(ANALYSIS_METRICS_JSON);
 		} catch (Exception e){
 			Log.warning("Error accessing call graph preferences, using defaults...", e);
 		}
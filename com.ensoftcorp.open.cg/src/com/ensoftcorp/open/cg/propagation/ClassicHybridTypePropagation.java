@@ -0,0 +1,74 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.util.BitSet;
+
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+
+/**
+ * The classic Hybrid Type Analysis (XTA) worklist over a ProgramSnapshot,
+ * which combines the parameter and return type propagation of MTA with
+ * the field type propagation of FTA, uses difference propagation so that only
+ * newly added types are pushed along call edges, fields and exception flows
+ */
+public class ClassicHybridTypePropagation extends TypePropagation {
+
+	public ClassicHybridTypePropagation(ProgramSnapshot program, CallGraphSnapshot<?> cgCHA) {
+		super(program, cgCHA, true);
+	}
+
+	@Override
+	protected void processMethod(int method) {
+		// note even if the allocation set is not empty here, this may be the first time
+		// we've reached this method because information could have been propagated from
+		// a field first
+		BitSet allocationTypes = getMethodTypes(method);
+		BitSet delta;
+		if(allocationTypes.isEmpty()){
+			// we should consider the allocation types instantiated directly in the method
+			allocationTypes.or(getAllocationTypes(method));
+			
+			// we should also include the allocation types of each parent method (in the current call graph)
+			// but we should only allow compatible parent allocation types which could be passed through the method's parameter types or subtypes
+			BitSet parameterTypeHierarchy = getParameterTypeHierarchy(method);
+			// a method is only initialized again if it is still empty, so the reverse call graph
+			// closure is kept and extended by the call edges selected since the last initialization
+			BitSet parentMethods = getCachedParentMethods(method);
+			BitSet parentAllocationTypes = getMethodTypes(parentMethods);
+			parentAllocationTypes.and(parameterTypeHierarchy);
+			allocationTypes.or(parentAllocationTypes);
+			
+			// MTA also considers the return types of methods that are called from the given method
+			allocationTypes.or(getCalleeReturnTypes(method));
+			
+			// in FTA fields read and written by the method or the method's parents carry allocation types
+			BitSet reachableMethods = parentMethods;
+			reachableMethods.set(method);
+			addReadFieldTypes(reachableMethods, allocationTypes);
+			propagateWrittenFieldTypes(reachableMethods, allocationTypes);
+			
+			// all of the types are new to the method
+			delta = allocationTypes;
+		} else {
+			// only the types propagated to the method since it was last processed are new
+			delta = takeMethodDelta(method);
+		}
+		if(!allocationTypes.isEmpty()){
+			// the method will not be initialized again
+			releaseParentMethods(method);
+		}
+		
+		propagateExceptionTypes(method, allocationTypes, delta);
+		
+		resolveCallEdges(method, allocationTypes, delta);
+	}
+	
+	/**
+	 * The classic analysis does not consider exception flows
+	 * @param method
+	 * @param allocationTypes
+	 * @param delta
+	 */
+	protected void propagateExceptionTypes(int method, BitSet allocationTypes, BitSet delta){}
+
+}
@@ -0,0 +1,42 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.util.BitSet;
+
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ExceptionFlow;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+
+/**
+ * The Exception Type Analysis (ETA) worklist over a ProgramSnapshot
+ */
+public class ExceptionTypePropagation extends TypePropagation {
+
+	private final ExceptionFlow exceptionFlow;
+	
+	public ExceptionTypePropagation(ProgramSnapshot program, CallGraphSnapshot<?> cgCHA, ExceptionFlow exceptionFlow) {
+		super(program, cgCHA);
+		this.exceptionFlow = exceptionFlow;
+	}
+
+	@Override
+	protected void processMethod(int method) {
+		BitSet allocationTypes = getMethodTypes(method);
+		if(allocationTypes.isEmpty()){
+			// we should consider the allocation types instantiated directly in the method
+			allocationTypes.or(getAllocationTypes(method));
+			
+			// we should also include the allocation types of each parent method (in the current ETA call graph)
+			BitSet parentMethods = getParentMethods(method);
+			for(int parentMethod = parentMethods.nextSetBit(0); parentMethod >= 0; parentMethod = parentMethods.nextSetBit(parentMethod+1)){
+				allocationTypes.or(getMethodTypes(parentMethod));
+			}
+		}
+		
+		// for ETA we should inherit all allocation types from methods that throw an exception that
+		// could be caught by this method and propagate to methods that could catch an exception
+		propagateExceptionTypes(exceptionFlow, method, allocationTypes);
+		
+		resolveCallEdges(method, allocationTypes);
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.util.BitSet;
+
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+
+/**
+ * The Field Type Analysis (FTA) worklist over a ProgramSnapshot, uses difference
+ * propagation so that only newly added types are pushed along call edges and fields
+ */
+public class FieldTypePropagation extends TypePropagation {
+
+	public FieldTypePropagation(ProgramSnapshot program, CallGraphSnapshot<?> cgCHA) {
+		super(program, cgCHA, true);
+	}
+
+	@Override
+	protected void processMethod(int method) {
+		// note even if the allocation set is not empty here, this may be the first time
+		// we've reached this method because information could have been propagated from
+		// a field first
+		BitSet allocationTypes = getMethodTypes(method);
+		BitSet delta;
+		if(allocationTypes.isEmpty()){
+			// we should consider the allocation types instantiated directly in the method
+			allocationTypes.or(getAllocationTypes(method));
+			
+			// for RTA and RTA derivatives we should also include the allocation types of each parent method (in the current FTA call graph)
+			BitSet parentMethods = getParentMethods(method);
+			allocationTypes.or(getMethodTypes(parentMethods));
+			
+			// in FTA fields read and written by the method or the method's parents carry allocation types
+			BitSet reachableMethods = parentMethods;
+			reachableMethods.set(method);
+			addReadFieldTypes(reachableMethods, allocationTypes);
+			propagateWrittenFieldTypes(reachableMethods, allocationTypes);
+			
+			// all of the types are new to the method
+			delta = allocationTypes;
+		} else {
+			// only the types propagated to the method since it was last processed are new
+			delta = takeMethodDelta(method);
+		}
+		
+		resolveCallEdges(method, allocationTypes, delta);
+	}
+
+}
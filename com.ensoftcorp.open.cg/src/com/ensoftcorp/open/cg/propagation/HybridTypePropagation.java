@@ -0,0 +1,27 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.util.BitSet;
+
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ExceptionFlow;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+
+/**
+ * The Hybrid Type Analysis (XTA) worklist over a ProgramSnapshot, which
+ * extends the classic analysis with the exception type propagation of ETA
+ */
+public class HybridTypePropagation extends ClassicHybridTypePropagation {
+
+	private final ExceptionFlow exceptionFlow;
+	
+	public HybridTypePropagation(ProgramSnapshot program, CallGraphSnapshot<?> cgCHA, ExceptionFlow exceptionFlow) {
+		super(program, cgCHA);
+		this.exceptionFlow = exceptionFlow;
+	}
+
+	@Override
+	protected void propagateExceptionTypes(int method, BitSet allocationTypes, BitSet delta) {
+		propagateExceptionTypes(exceptionFlow, method, allocationTypes, delta);
+	}
+
+}
@@ -0,0 +1,79 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.util.BitSet;
+
+/**
+ * A first in first out worklist of dense int ids in the range [0, capacity)
+ * that holds each id at most once. Membership is tracked with an "in queue"
+ * bitset, so adding an id that is already waiting is a constant time no-op.
+ * An id may be added again once it has been removed.
+ */
+public class IntWorklist {
+
+	private final int capacity;
+	private final BitSet inQueue;
+	private int[] queue;
+	private int head = 0;
+	private int size = 0;
+
+	public IntWorklist(int capacity){
+		this.capacity = capacity;
+		this.inQueue = new BitSet(capacity);
+		this.queue = new int[Math.max(1, Math.min(capacity, 16))];
+	}
+
+	/**
+	 * Adds the id to the end of the worklist if it is not already waiting
+	 * @param id
+	 * @return true if the id was added
+	 */
+	public boolean add(int id){
+		if(id < 0 || id >= capacity){
+			throw new IndexOutOfBoundsException("Id " + id + " is not in the range [0, " + capacity + ")");
+		}
+		if(inQueue.get(id)){
+			return false;
+		}
+		if(size == queue.length){
+			// unroll the ring into a larger array
+			int[] grown = new int[Math.min(capacity, queue.length * 2)];
+			for(int i=0; i<size; i++){
+				grown[i] = queue[(head + i) % queue.length];
+			}
+			queue = grown;
+			head = 0;
+		}
+		queue[(head + size) % queue.length] = id;
+		size++;
+		inQueue.set(id);
+		return true;
+	}
+
+	/**
+	 * Removes and returns the id at the front of the worklist
+	 * @return
+	 */
+	public int remove(){
+		if(size == 0){
+			throw new IllegalStateException("Worklist is empty");
+		}
+		int id = queue[head];
+		head = (head + 1) % queue.length;
+		size--;
+		inQueue.clear(id);
+		return id;
+	}
+
+	public boolean contains(int id){
+		return inQueue.get(id);
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	public int size(){
+		return size;
+	}
+
+}
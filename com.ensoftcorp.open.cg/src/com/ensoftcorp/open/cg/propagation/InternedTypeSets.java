@@ -0,0 +1,173 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash-consed types sets, every distinct set is kept once as an immutable bitset
+ * and each id only holds an int handle to its set.
+ *
+ * Methods that see the same types (for example every method in a layer of the
+ * program) share a single set. Unions of two interned sets are interned as well
+ * and cached by the pair of handles, so repeating a union of the same sets is a
+ * table lookup that returns the same handle. The union cache has a fixed number
+ * of slots and a union evicts the union cached in its slot.
+ *
+ * A store is not safe to use from multiple threads.
+ */
+public class InternedTypeSets implements TypeSetStore {
+
+	public static final int EMPTY = 0;
+
+	// the number of slots of the union cache is a power of two between these bounds
+	private static final int MIN_CACHED_UNIONS = 1 << 10;
+	private static final int MAX_CACHED_UNIONS = 1 << 20;
+
+	private final int[] handles;
+
+	// the distinct sets by handle, the sets are never modified
+	private List<BitSet> sets = new ArrayList<BitSet>();
+	private int[] cardinalities = new int[16];
+	private Map<BitSet,Integer> internedSets = new HashMap<BitSet,Integer>();
+
+	// direct mapped cache from a pair of handles (lower handle in the high bits) to the handle
+	// of their union, a key of 0 marks an empty slot since the empty set is never cached
+	private long[] unionKeys;
+	private int[] unionValues;
+	private long unionCacheHits = 0;
+
+	/**
+	 * Creates a store with every set empty
+	 * @param ids the number of sets
+	 */
+	public InternedTypeSets(int ids){
+		this.handles = new int[ids];
+		int slots = MIN_CACHED_UNIONS;
+		while(slots < MAX_CACHED_UNIONS && slots < ids * 2){
+			slots *= 2;
+		}
+		this.unionKeys = new long[slots];
+		this.unionValues = new int[slots];
+		BitSet empty = new BitSet(0);
+		sets.add(empty);
+		internedSets.put(empty, EMPTY);
+	}
+
+	@Override
+	public int cardinality(int id){
+		return cardinalities[handles[id]];
+	}
+
+	@Override
+	public BitSet get(int id){
+		return (BitSet) sets.get(handles[id]).clone();
+	}
+
+	@Override
+	public void put(int id, BitSet set){
+		handles[id] = intern(set);
+	}
+
+	@Override
+	public void release(){
+		sets = null;
+		internedSets = null;
+		unionKeys = null;
+		unionValues = null;
+	}
+
+	/**
+	 * Returns the handle of the set of the given id
+	 * @param id
+	 * @return
+	 */
+	public int getHandle(int id){
+		return handles[id];
+	}
+
+	/**
+	 * Returns the interned set of the handle, callers must not modify the set
+	 * @param handle
+	 * @return
+	 */
+	public BitSet getSet(int handle){
+		return sets.get(handle);
+	}
+
+	/**
+	 * Returns the handle of the given set, interning a copy of the set if it is new
+	 * @param set
+	 * @return
+	 */
+	private int intern(BitSet set){
+		if(set.isEmpty()){
+			return EMPTY;
+		}
+		Integer handle = internedSets.get(set);
+		if(handle == null){
+			BitSet copy = (BitSet) set.clone();
+			handle = sets.size();
+			sets.add(copy);
+			if(handle == cardinalities.length){
+				cardinalities = Arrays.copyOf(cardinalities, handle * 2);
+			}
+			cardinalities[handle] = copy.cardinality();
+			internedSets.put(copy, handle);
+		}
+		return handle;
+	}
+
+	/**
+	 * Returns the handle of the union of the sets of the given handles, a repeated
+	 * union of the same pair of sets is answered from the union cache
+	 * @param handle1
+	 * @param handle2
+	 * @return
+	 */
+	public int union(int handle1, int handle2){
+		if(handle1 == handle2 || handle2 == EMPTY){
+			return handle1;
+		}
+		if(handle1 == EMPTY){
+			return handle2;
+		}
+		long key = handle1 < handle2 ? ((long) handle1 << 32) | handle2 : ((long) handle2 << 32) | handle1;
+		int slot = (int) mix(key) & (unionKeys.length - 1);
+		if(unionKeys[slot] == key){
+			unionCacheHits++;
+			return unionValues[slot];
+		}
+		BitSet union = (BitSet) sets.get(handle1).clone();
+		union.or(sets.get(handle2));
+		int handle = intern(union);
+		unionKeys[slot] = key;
+		unionValues[slot] = handle;
+		return handle;
+	}
+
+	/**
+	 * Returns the number of unions answered from the union cache
+	 * @return
+	 */
+	public long getUnionCacheHits(){
+		return unionCacheHits;
+	}
+
+	/**
+	 * Returns the number of distinct sets (including the empty set)
+	 * @return
+	 */
+	public int getSetCount(){
+		return sets.size();
+	}
+
+	private static long mix(long key){
+		key *= 0x9E3779B97F4A7C15L;
+		return key ^ (key >>> 32);
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.util.BitSet;
+
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+
+/**
+ * The Method Type Analysis (MTA) worklist over a ProgramSnapshot
+ */
+public class MethodTypePropagation extends TypePropagation {
+
+	public MethodTypePropagation(ProgramSnapshot program, CallGraphSnapshot<?> cgCHA) {
+		super(program, cgCHA);
+	}
+
+	@Override
+	protected void processMethod(int method) {
+		// our goal is to first build a set of feasible allocation types that could reach this method
+		// we should consider the allocation types instantiated directly in the method
+		BitSet allocationTypes = getAllocationTypes(method);
+		
+		// we should also include the allocation types of each parent method (in the current MTA call graph)
+		// but we should only allow compatible parent allocation types which could be passed through the method's parameter types or subtypes
+		BitSet parameterTypeHierarchy = getParameterTypeHierarchy(method);
+		BitSet parentAllocationTypes = getMethodTypes(getParentMethods(method));
+		// remove the parent allocation types that could not be passed through the method's parameters
+		parentAllocationTypes.and(parameterTypeHierarchy);
+		allocationTypes.or(parentAllocationTypes);
+		
+		// finally MTA considers the return types of methods that are called from the given method
+		allocationTypes.or(getCalleeReturnTypes(method));
+		
+		resolveCallEdges(method, allocationTypes);
+	}
+
+}
@@ -0,0 +1,228 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Type sets over dense ids (methods and fields) kept outside of the Java heap in
+ * direct buffers, up to a memory budget.
+ *
+ * Each set is encoded as a sorted array of type ids or as the words of a bitset,
+ * whichever is smaller, in a block of a power of two size. When a set grows out
+ * of its block the block is returned to a free list for its size and reused by
+ * the next set that needs a block of that size. Sets that do not fit within the
+ * budget are kept on the heap instead.
+ *
+ * A store is not safe to use from multiple threads. The buffers are reclaimed
+ * once the store is released and no longer referenced.
+ */
+public class OffHeapTypeSets implements TypeSetStore {
+
+	private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+	private static final int MIN_BLOCK_SHIFT = 4;
+	private static final int MAX_BLOCK_SHIFT = 26; // a block is at most a chunk
+	private static final long NO_BLOCK = -1;
+
+	// block headers, the remaining bits of a header are the length of the encoding
+	private static final int SORTED = 0;
+	private static final int WORDS = 1;
+
+	private final long budget;
+	private final int chunkSize;
+	private List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+	private int chunkPosition = 0;
+
+	// the block (chunk index and offset) of each set, its size class and cardinality
+	private final long[] blocks;
+	private final byte[] blockShifts;
+	private final int[] cardinalities;
+
+	// freed blocks by size class
+	private final long[][] freeBlocks = new long[MAX_BLOCK_SHIFT + 1][];
+	private final int[] freeBlockCounts = new int[MAX_BLOCK_SHIFT + 1];
+
+	// sets that did not fit within the budget
+	private final BitSet[] spilledSets;
+	private int spilledSetCount = 0;
+
+	private boolean released = false;
+
+	/**
+	 * Creates an empty store
+	 * @param ids the number of sets (every set is initially empty)
+	 * @param budget the maximum number of bytes to allocate outside of the heap
+	 */
+	public OffHeapTypeSets(int ids, long budget){
+		this.budget = budget;
+		this.chunkSize = (int) Math.min(CHUNK_SIZE, budget);
+		this.blocks = new long[ids];
+		Arrays.fill(blocks, NO_BLOCK);
+		this.blockShifts = new byte[ids];
+		this.cardinalities = new int[ids];
+		this.spilledSets = new BitSet[ids];
+	}
+
+	@Override
+	public int cardinality(int id){
+		return cardinalities[id];
+	}
+
+	@Override
+	public BitSet get(int id){
+		checkReleased();
+		if(spilledSets[id] != null){
+			return (BitSet) spilledSets[id].clone();
+		}
+		long block = blocks[id];
+		if(block == NO_BLOCK){
+			return new BitSet();
+		}
+		ByteBuffer chunk = chunks.get((int) (block >>> 32));
+		int offset = (int) block;
+		int header = chunk.getInt(offset);
+		int length = header >>> 1;
+		if((header & 1) == WORDS){
+			long[] words = new long[length];
+			for(int i=0; i<length; i++){
+				words[i] = chunk.getLong(offset + 4 + i*8);
+			}
+			return BitSet.valueOf(words);
+		} else {
+			BitSet set = new BitSet();
+			for(int i=0; i<length; i++){
+				set.set(chunk.getInt(offset + 4 + i*4));
+			}
+			return set;
+		}
+	}
+
+	@Override
+	public void put(int id, BitSet set){
+		checkReleased();
+		int cardinality = set.cardinality();
+		cardinalities[id] = cardinality;
+		if(spilledSets[id] != null){
+			spilledSets[id] = (BitSet) set.clone();
+			return;
+		}
+		if(cardinality == 0){
+			free(id);
+			return;
+		}
+
+		// the smaller of the sorted type ids and the bitset words
+		int words = (set.length() + 63) / 64;
+		long sortedBytes = 4 + 4L * cardinality;
+		long wordBytes = 4 + 8L * words;
+		int encoding = sortedBytes <= wordBytes ? SORTED : WORDS;
+		long bytes = Math.min(sortedBytes, wordBytes);
+		int shift = MIN_BLOCK_SHIFT;
+		while((1L << shift) < bytes){
+			shift++;
+		}
+
+		if(blocks[id] == NO_BLOCK || blockShifts[id] != shift){
+			free(id);
+			long block = shift <= MAX_BLOCK_SHIFT ? allocate(shift) : NO_BLOCK;
+			if(block == NO_BLOCK){
+				spilledSetCount++;
+				spilledSets[id] = (BitSet) set.clone();
+				return;
+			}
+			blocks[id] = block;
+			blockShifts[id] = (byte) shift;
+		}
+
+		ByteBuffer chunk = chunks.get((int) (blocks[id] >>> 32));
+		int offset = (int) blocks[id];
+		if(encoding == WORDS){
+			chunk.putInt(offset, (words << 1) | WORDS);
+			long[] setWords = set.toLongArray();
+			for(int i=0; i<words; i++){
+				chunk.putLong(offset + 4 + i*8, setWords[i]);
+			}
+		} else {
+			chunk.putInt(offset, (cardinality << 1) | SORTED);
+			int position = offset + 4;
+			for(int type=set.nextSetBit(0); type>=0; type=set.nextSetBit(type+1)){
+				chunk.putInt(position, type);
+				position += 4;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of bytes allocated outside of the heap
+	 * @return
+	 */
+	public long getAllocatedBytes(){
+		return (long) chunks.size() * chunkSize;
+	}
+
+	/**
+	 * Returns the number of sets kept on the heap because they did not fit within the budget
+	 * @return
+	 */
+	public int getSpilledSetCount(){
+		return spilledSetCount;
+	}
+
+	@Override
+	public void release(){
+		released = true;
+		chunks = null;
+		Arrays.fill(spilledSets, null);
+	}
+
+	private void checkReleased(){
+		if(released){
+			throw new IllegalStateException("Off heap type set store was released");
+		}
+	}
+
+	/**
+	 * Returns the block of the set to the free list of its size class
+	 */
+	private void free(int id){
+		long block = blocks[id];
+		if(block == NO_BLOCK){
+			return;
+		}
+		int shift = blockShifts[id];
+		if(freeBlocks[shift] == null){
+			freeBlocks[shift] = new long[16];
+		} else if(freeBlockCounts[shift] == freeBlocks[shift].length){
+			freeBlocks[shift] = Arrays.copyOf(freeBlocks[shift], freeBlockCounts[shift] * 2);
+		}
+		freeBlocks[shift][freeBlockCounts[shift]++] = block;
+		blocks[id] = NO_BLOCK;
+	}
+
+	/**
+	 * Allocates a block of the given size class
+	 * @return the block or NO_BLOCK if the budget does not allow it
+	 */
+	private long allocate(int shift){
+		if(freeBlockCounts[shift] > 0){
+			return freeBlocks[shift][--freeBlockCounts[shift]];
+		}
+		int size = 1 << shift;
+		if(size > chunkSize){
+			return NO_BLOCK;
+		}
+		if(chunks.isEmpty() || chunkPosition + size > chunkSize){
+			if(getAllocatedBytes() + chunkSize > budget){
+				return NO_BLOCK;
+			}
+			chunks.add(ByteBuffer.allocateDirect(chunkSize));
+			chunkPosition = 0;
+		}
+		long block = ((long) (chunks.size() - 1) << 32) | chunkPosition;
+		chunkPosition += size;
+		return block;
+	}
+
+}
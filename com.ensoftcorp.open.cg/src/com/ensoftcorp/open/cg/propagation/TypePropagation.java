@@ -0,0 +1,795 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.DispatchKinds;
+import com.ensoftcorp.open.cg.snapshot.ExceptionFlow;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.TypeHierarchy;
+
+/**
+ * The common worklist machinery of the type propagation analyses discussed in
+ * the paper: Scalable Propagation-Based Call Graph Construction Algorithms
+ * by Frank Tip and Jens Palsberg.
+ *
+ * Each analysis starts from the CHA call graph and selects the CHA call edges
+ * that are feasible given the allocation types that could reach a method.
+ * Allocation type sets are kept as bitsets over the type ids of a ProgramSnapshot
+ * and the selected call edges as a bitset over the slots of the CHA call graph.
+ * Optionally the types sets are kept in a TypeSetStore, off heap (see OffHeapTypeSets)
+ * or hash-consed (see InternedTypeSets), and only loaded onto the heap while the
+ * work item using them is processed.
+ * 
+ * With difference propagation enabled the types added to each method and field
+ * since it was last processed are recorded as a delta, and only the delta is
+ * pushed along call edges and field reads that have already been pushed the
+ * full set of types (or a method's exceptions). The result is the same as pushing
+ * the full sets.
+ *
+ * Reference: http://web.cs.ucla.edu/~palsberg/paper/oopsla00.pdf
+ */
+public abstract class TypePropagation {
+
+	protected final ProgramSnapshot program;
+	protected final CallGraphSnapshot<?> cgCHA;
+
+	// the dispatch kind of each CHA call edge slot, classified when run unless the
+	// classification emitted by CHA was provided
+	private DispatchKinds<?> dispatchKinds = null;
+
+	// the CHA call edge slots selected by this analysis
+	private final BitSet callEdges;
+
+	// the selected call edge slots that have been pushed the full types set of the calling method
+	private final BitSet pushedCallEdges;
+
+	// the methods that have pushed their full types set to the methods catching their exceptions
+	private final BitSet pushedExceptionFlows;
+
+	// the selected call edge slots in the order they were selected
+	private int[] selectedCallEdges = new int[16];
+	private int selectedCallEdgeCount = 0;
+
+	// reverse call graph closures kept for methods that may need them again, and the
+	// number of selected call edges at the time each closure was computed
+	private final BitSet[] parentClosures;
+	private final int[] parentClosureEpochs;
+
+	private final BitSet[] methodTypes;
+	private final BitSet[] fieldTypes;
+
+	// with a types set store the method and field types sets are only kept on the heap while
+	// a work item is processed, the ids (encoded as work items) of the sets on the heap
+	private TypeSetStore typeSetStore = null;
+	private int[] heapTypeSets = new int[16];
+	private int heapTypeSetCount = 0;
+
+	// with a hash-consed store, the handles of the sets already read by the current union
+	private final BitSet unionHandles = new BitSet();
+	private long sharedTypeSetUnions = 0;
+
+	// the types added to each method and field since it was last processed
+	private final boolean differencePropagation;
+	private final BitSet[] methodDeltas;
+	private final BitSet[] fieldDeltas;
+
+	// in FTA and its derivatives the worklist could contain methods or fields,
+	// fields are encoded as work items following the method ids
+	private final IntWorklist worklist;
+
+	// the number of work items processed by run
+	private long iterations = 0;
+
+	protected TypePropagation(ProgramSnapshot program, CallGraphSnapshot<?> cgCHA){
+		this(program, cgCHA, false);
+	}
+
+	protected TypePropagation(ProgramSnapshot program, CallGraphSnapshot<?> cgCHA, boolean differencePropagation){
+		this.program = program;
+		this.cgCHA = cgCHA;
+		this.callEdges = new BitSet(cgCHA.getCallEdgeCount());
+		this.pushedCallEdges = new BitSet(cgCHA.getCallEdgeCount());
+		this.pushedExceptionFlows = new BitSet(program.getMethodCount());
+		this.parentClosures = new BitSet[program.getMethodCount()];
+		this.parentClosureEpochs = new int[program.getMethodCount()];
+		this.methodTypes = new BitSet[program.getMethodCount()];
+		this.fieldTypes = new BitSet[program.getFieldCount()];
+		this.differencePropagation = differencePropagation;
+		this.methodDeltas = differencePropagation ? new BitSet[program.getMethodCount()] : null;
+		this.fieldDeltas = differencePropagation ? new BitSet[program.getFieldCount()] : null;
+		this.worklist = new IntWorklist(program.getMethodCount() + program.getFieldCount());
+	}
+
+	/**
+	 * Uses the dispatch kinds of the CHA call edges emitted by CHA (see
+	 * ClassHierarchyAnalysis.getDispatchKinds) instead of classifying the call
+	 * edges when run. The dispatch kinds must be indexed by the CHA call graph of
+	 * this analysis. Must be called before run.
+	 * @param dispatchKinds
+	 */
+	public void setDispatchKinds(DispatchKinds<?> dispatchKinds){
+		if(dispatchKinds.getCallGraph() != cgCHA){
+			throw new IllegalArgumentException("Dispatch kinds are not indexed by the CHA call graph of the analysis");
+		}
+		this.dispatchKinds = dispatchKinds;
+	}
+
+	/**
+	 * Keeps the method and field types sets outside of the heap between work items, up to the
+	 * given budget (sets that do not fit are kept on the heap). The store should be released
+	 * once the types sets are no longer needed. Must be called before run.
+	 * @param budget the maximum number of bytes to allocate outside of the heap
+	 */
+	public void storeTypeSetsOffHeap(long budget){
+		setTypeSetStore(new OffHeapTypeSets(methodTypes.length + fieldTypes.length, budget));
+	}
+
+	/**
+	 * Keeps a single copy of each distinct method and field types set between work items and
+	 * caches the unions of the stored sets, so methods and fields with the same types share a
+	 * set and a union only reads a shared set once. The store should be released once the
+	 * types sets are no longer needed. Must be called before run.
+	 */
+	public void internTypeSets(){
+		setTypeSetStore(new InternedTypeSets(methodTypes.length + fieldTypes.length));
+	}
+
+	private void setTypeSetStore(TypeSetStore typeSetStore){
+		if(iterations > 0){
+			throw new IllegalStateException("Types sets must be stored before the propagation is run");
+		}
+		this.typeSetStore = typeSetStore;
+	}
+
+	/**
+	 * Returns the number of bytes allocated outside of the heap for the types sets
+	 * @return
+	 */
+	public long getOffHeapTypeSetBytes(){
+		return typeSetStore instanceof OffHeapTypeSets ? ((OffHeapTypeSets) typeSetStore).getAllocatedBytes() : 0;
+	}
+
+	/**
+	 * Returns the number of types sets kept on the heap because they did not fit within the off heap budget
+	 * @return
+	 */
+	public int getSpilledTypeSetCount(){
+		return typeSetStore instanceof OffHeapTypeSets ? ((OffHeapTypeSets) typeSetStore).getSpilledSetCount() : 0;
+	}
+
+	/**
+	 * Returns the number of distinct types sets kept by the hash-consed store
+	 * @return
+	 */
+	public int getInternedTypeSetCount(){
+		return typeSetStore instanceof InternedTypeSets ? ((InternedTypeSets) typeSetStore).getSetCount() : 0;
+	}
+
+	/**
+	 * Returns the number of types sets a union did not read again because the hash-consed
+	 * store shares the set with a method or field already in the union
+	 * @return
+	 */
+	public long getSharedTypeSetUnionCount(){
+		return sharedTypeSetUnions;
+	}
+
+	/**
+	 * Returns the number of unions of types sets answered from the union cache of the hash-consed store
+	 * @return
+	 */
+	public long getTypeSetUnionCacheHits(){
+		return typeSetStore instanceof InternedTypeSets ? ((InternedTypeSets) typeSetStore).getUnionCacheHits() : 0;
+	}
+
+	/**
+	 * Releases the store of the types sets (if any), the types sets are no
+	 * longer available but the selected call edges are
+	 */
+	public void release(){
+		if(typeSetStore != null){
+			typeSetStore.release();
+			typeSetStore = null;
+			Arrays.fill(methodTypes, null);
+			Arrays.fill(fieldTypes, null);
+			heapTypeSetCount = 0;
+		}
+	}
+
+	/**
+	 * Iterates until the worklist is empty
+	 * @param rootMethods
+	 */
+	public void run(int[] rootMethods){
+		if(dispatchKinds == null){
+			dispatchKinds = new DispatchKinds<>(program, cgCHA);
+		}
+		for(int rootMethod : rootMethods){
+			worklist.add(rootMethod);
+		}
+		while(!worklist.isEmpty()){
+			int workitem = worklist.remove();
+			iterations++;
+			if(workitem < methodTypes.length){
+				processMethod(workitem);
+			} else {
+				processField(workitem - methodTypes.length);
+			}
+			if(typeSetStore != null){
+				storeHeapTypeSets();
+			}
+		}
+	}
+
+	/**
+	 * Writes the types sets used by the last work item back to the store,
+	 * types sets only grow so a set whose size did not change was not modified
+	 */
+	private void storeHeapTypeSets(){
+		for(int i=0; i<heapTypeSetCount; i++){
+			int id = heapTypeSets[i];
+			BitSet[] sets = id < methodTypes.length ? methodTypes : fieldTypes;
+			int index = id < methodTypes.length ? id : id - methodTypes.length;
+			BitSet types = sets[index];
+			if(types.cardinality() != typeSetStore.cardinality(id)){
+				typeSetStore.put(id, types);
+			}
+			sets[index] = null;
+		}
+		heapTypeSetCount = 0;
+	}
+
+	/**
+	 * Returns the number of work items (methods and fields) processed by run
+	 * @return
+	 */
+	public long getIterations(){
+		return iterations;
+	}
+
+	/**
+	 * Returns the size of the largest method or field types set, types sets only
+	 * grow so after run this is the peak size reached during the propagation
+	 * @return
+	 */
+	public int getPeakTypeSetSize(){
+		int peak = 0;
+		for(int method=0; method<methodTypes.length; method++){
+			BitSet types = methodTypes[method];
+			peak = Math.max(peak, types != null ? types.cardinality() : typeSetStore != null ? typeSetStore.cardinality(method) : 0);
+		}
+		for(int field=0; field<fieldTypes.length; field++){
+			BitSet types = fieldTypes[field];
+			peak = Math.max(peak, types != null ? types.cardinality() : typeSetStore != null ? typeSetStore.cardinality(methodTypes.length + field) : 0);
+		}
+		return peak;
+	}
+
+	/**
+	 * Returns the slots of the CHA call edges selected by the analysis
+	 * @return
+	 */
+	public BitSet getCallEdges(){
+		return callEdges;
+	}
+
+	/**
+	 * Gets or creates the types set for a method
+	 * Returns a reference to the types set so that updates to the
+	 * set will also update the set of the method.
+	 * @param method
+	 * @return
+	 */
+	public BitSet getMethodTypes(int method){
+		BitSet types = methodTypes[method];
+		if(types == null){
+			types = loadTypes(method);
+			methodTypes[method] = types;
+		}
+		return types;
+	}
+
+	/**
+	 * Gets or creates the types set for a field
+	 * Returns a reference to the types set so that updates to the
+	 * set will also update the set of the field.
+	 * @param field
+	 * @return
+	 */
+	public BitSet getFieldTypes(int field){
+		BitSet types = fieldTypes[field];
+		if(types == null){
+			types = loadTypes(methodTypes.length + field);
+			fieldTypes[field] = types;
+		}
+		return types;
+	}
+
+	/**
+	 * Returns the union of the types sets of the given methods
+	 * @param methods
+	 * @return a new bitset that the caller is free to modify
+	 */
+	protected BitSet getMethodTypes(BitSet methods){
+		return union(methodTypes, 0, methods);
+	}
+
+	/**
+	 * Returns the union of the types sets of the given methods or fields, the
+	 * sets that are not on the heap are read from the store without loading them
+	 * and with a hash-consed store the union of each distinct set is taken (and
+	 * cached) by handle
+	 * @param sets the method or field types sets
+	 * @param offset the offset of the ids of the sets in the store
+	 * @param indexes the methods or fields
+	 * @return
+	 */
+	private BitSet union(BitSet[] sets, int offset, BitSet indexes){
+		BitSet union = new BitSet(program.getTypeCount());
+		InternedTypeSets internedTypeSets = typeSetStore instanceof InternedTypeSets ? (InternedTypeSets) typeSetStore : null;
+		int unionHandle = InternedTypeSets.EMPTY;
+		for(int index = indexes.nextSetBit(0); index >= 0; index = indexes.nextSetBit(index+1)){
+			BitSet types = sets[index];
+			if(types != null){
+				// the heap set may have changed since it was stored
+				union.or(types);
+			} else if(internedTypeSets != null){
+				int handle = internedTypeSets.getHandle(offset + index);
+				if(handle == InternedTypeSets.EMPTY){
+					continue;
+				}
+				if(unionHandles.get(handle)){
+					sharedTypeSetUnions++;
+				} else {
+					unionHandles.set(handle);
+					unionHandle = internedTypeSets.union(unionHandle, handle);
+				}
+			} else if(typeSetStore != null && typeSetStore.cardinality(offset + index) > 0){
+				union.or(typeSetStore.get(offset + index));
+			}
+		}
+		unionHandles.clear();
+		if(unionHandle != InternedTypeSets.EMPTY){
+			union.or(internedTypeSets.getSet(unionHandle));
+		}
+		return union;
+	}
+
+	/**
+	 * Creates the heap types set of a method or field (encoded as a work item),
+	 * loading it from the store if there is one
+	 * @param id
+	 * @return
+	 */
+	private BitSet loadTypes(int id){
+		if(typeSetStore == null){
+			return new BitSet(program.getTypeCount());
+		}
+		if(heapTypeSetCount == heapTypeSets.length){
+			heapTypeSets = Arrays.copyOf(heapTypeSets, heapTypeSetCount * 2);
+		}
+		heapTypeSets[heapTypeSetCount++] = id;
+		return typeSetStore.get(id);
+	}
+
+	/**
+	 * Returns the types added to the method since the delta was last taken and
+	 * starts a new (empty) delta for the method
+	 * Only available with difference propagation enabled.
+	 * @param method
+	 * @return
+	 */
+	protected BitSet takeMethodDelta(int method){
+		return take(methodDeltas, method);
+	}
+
+	/**
+	 * Returns the types added to the field since the delta was last taken and
+	 * starts a new (empty) delta for the field
+	 * Only available with difference propagation enabled.
+	 * @param field
+	 * @return
+	 */
+	protected BitSet takeFieldDelta(int field){
+		return take(fieldDeltas, field);
+	}
+
+	/**
+	 * Adds the types to the types set of the method (recording the added types in the method's delta)
+	 * and enqueues the method if its types set changed
+	 * @param method
+	 * @param types
+	 * @return true if the types set changed
+	 */
+	protected boolean addMethodTypes(int method, BitSet types){
+		BitSet newTypes = difference(types, getMethodTypes(method));
+		if(newTypes == null){
+			return false;
+		}
+		methodTypes[method].or(newTypes);
+		if(differencePropagation){
+			record(methodDeltas, method, newTypes);
+		}
+		enqueueMethod(method);
+		return true;
+	}
+
+	/**
+	 * Adds the types to the types set of the field (recording the added types in the field's delta)
+	 * and enqueues the field if its types set changed
+	 * @param field
+	 * @param types
+	 * @return true if the types set changed
+	 */
+	protected boolean addFieldTypes(int field, BitSet types){
+		BitSet newTypes = difference(types, getFieldTypes(field));
+		if(newTypes == null){
+			return false;
+		}
+		fieldTypes[field].or(newTypes);
+		if(differencePropagation){
+			record(fieldDeltas, field, newTypes);
+		}
+		enqueueField(field);
+		return true;
+	}
+
+	/**
+	 * Processes a method dequeued from the worklist
+	 * @param method
+	 */
+	protected abstract void processMethod(int method);
+
+	/**
+	 * Processes a field dequeued from the worklist
+	 * new allocation types were propagated to a field, which means methods that
+	 * read from the field may get new allocation types
+	 * @param field
+	 */
+	protected void processField(int field){
+		// every reading method was pushed the full types set of the field the last
+		// time the field was processed, so only the new types need to be pushed
+		BitSet types = differencePropagation ? takeFieldDelta(field) : getFieldTypes(field);
+		Adjacency readingMethods = program.getReadingMethods();
+		for(int i=readingMethods.start(field); i<readingMethods.end(field); i++){
+			addMethodTypes(readingMethods.target(i), types);
+		}
+	}
+
+	protected void enqueueMethod(int method){
+		worklist.add(method);
+	}
+
+	protected void enqueueField(int field){
+		worklist.add(methodTypes.length + field);
+	}
+
+	/**
+	 * Returns the types instantiated by allocations that are contained (declared) within the method
+	 * @param method
+	 * @return
+	 */
+	protected BitSet getAllocationTypes(int method){
+		return toBitSet(program.getAllocationTypes(), method, program.getTypeCount());
+	}
+
+	/**
+	 * Returns the types (and subtypes) that could be passed through the method's parameters
+	 * @param method
+	 * @return
+	 */
+	protected BitSet getParameterTypeHierarchy(int method){
+		return program.getSubtypeHierarchy(program.getParameterTypes(), method);
+	}
+
+	/**
+	 * Returns the declared return types of the methods that are called from the given method
+	 * note that the declared return type does not involve resolving dynamic dispatches (so this could be the
+	 * return type of any method resolved by a CHA analysis since all are statically typed to the same type)
+	 * @param method
+	 * @return
+	 */
+	protected BitSet getCalleeReturnTypes(int method){
+		BitSet returnTypes = new BitSet(program.getTypeCount());
+		Adjacency outgoing = cgCHA.getOutgoingCallEdges();
+		Adjacency methodReturnTypes = program.getReturnTypes();
+		for(int i=outgoing.start(method); i<outgoing.end(method); i++){
+			int calledMethod = cgCHA.getTarget(outgoing.target(i));
+			for(int j=methodReturnTypes.start(calledMethod); j<methodReturnTypes.end(calledMethod); j++){
+				returnTypes.set(methodReturnTypes.target(j));
+			}
+		}
+		return returnTypes;
+	}
+
+	/**
+	 * Returns the methods in the reverse call graph (of the selected call edges) of the method
+	 * note: parent methods does not include the origin method
+	 * @param method
+	 * @return
+	 */
+	protected BitSet getParentMethods(int method){
+		BitSet parentMethods = new BitSet(program.getMethodCount());
+		Adjacency incoming = cgCHA.getIncomingCallEdges();
+		int[] stack = new int[16];
+		int size = 0;
+		stack[size++] = method;
+		while(size > 0){
+			int calledMethod = stack[--size];
+			for(int i=incoming.start(calledMethod); i<incoming.end(calledMethod); i++){
+				int slot = incoming.target(i);
+				if(callEdges.get(slot)){
+					int callingMethod = cgCHA.getCaller(slot);
+					if(!parentMethods.get(callingMethod)){
+						parentMethods.set(callingMethod);
+						if(size == stack.length){
+							stack = Arrays.copyOf(stack, size * 2);
+						}
+						stack[size++] = callingMethod;
+					}
+				}
+			}
+		}
+		parentMethods.clear(method);
+		return parentMethods;
+	}
+
+	/**
+	 * Returns the methods in the reverse call graph (of the selected call edges) of the method,
+	 * same as getParentMethods, but keeps the result so that the next request for the parent 
+	 * methods of the method only has to traverse from the call edges selected in the meantime
+	 * until the closure is released
+	 * note: parent methods does not include the origin method
+	 * @param method
+	 * @return a new bitset that the caller is free to modify
+	 */
+	protected BitSet getCachedParentMethods(int method){
+		BitSet parentMethods = parentClosures[method];
+		if(parentMethods == null){
+			parentMethods = getParentMethods(method);
+		} else {
+			// a method can only have become a parent through a newly selected call edge
+			// whose target was already the method or one of its parents
+			int[] stack = new int[16];
+			int size = 0;
+			for(int i=parentClosureEpochs[method]; i<selectedCallEdgeCount; i++){
+				int slot = selectedCallEdges[i];
+				int calledMethod = cgCHA.getTarget(slot);
+				if(calledMethod == method || parentMethods.get(calledMethod)){
+					int callingMethod = cgCHA.getCaller(slot);
+					if(callingMethod != method && !parentMethods.get(callingMethod)){
+						parentMethods.set(callingMethod);
+						if(size == stack.length){
+							stack = Arrays.copyOf(stack, size * 2);
+						}
+						stack[size++] = callingMethod;
+					}
+				}
+			}
+			// the parents of the new parent methods may be reached through any selected call edge
+			Adjacency incoming = cgCHA.getIncomingCallEdges();
+			while(size > 0){
+				int calledMethod = stack[--size];
+				for(int i=incoming.start(calledMethod); i<incoming.end(calledMethod); i++){
+					int slot = incoming.target(i);
+					if(callEdges.get(slot)){
+						int callingMethod = cgCHA.getCaller(slot);
+						if(callingMethod != method && !parentMethods.get(callingMethod)){
+							parentMethods.set(callingMethod);
+							if(size == stack.length){
+								stack = Arrays.copyOf(stack, size * 2);
+							}
+							stack[size++] = callingMethod;
+						}
+					}
+				}
+			}
+		}
+		parentClosures[method] = parentMethods;
+		parentClosureEpochs[method] = selectedCallEdgeCount;
+		return (BitSet) parentMethods.clone();
+	}
+
+	/**
+	 * Releases the reverse call graph closure kept for the method
+	 * @param method
+	 */
+	protected void releaseParentMethods(int method){
+		parentClosures[method] = null;
+	}
+
+	/**
+	 * Any method in the given methods that reads from a field can have a reference to the
+	 * allocations that occur in any another method that writes to that field
+	 * @param methods
+	 * @param types the types to add the field types to
+	 */
+	protected void addReadFieldTypes(BitSet methods, BitSet types){
+		BitSet readFields = new BitSet(program.getFieldCount());
+		Adjacency methodReadFields = program.getReadFields();
+		for(int method = methods.nextSetBit(0); method >= 0; method = methods.nextSetBit(method+1)){
+			for(int i=methodReadFields.start(method); i<methodReadFields.end(method); i++){
+				readFields.set(methodReadFields.target(i));
+			}
+		}
+		types.or(union(fieldTypes, methodTypes.length, readFields));
+	}
+
+	/**
+	 * If the given methods write to a field then all the compatible allocated types available to the method
+	 * can be propagated to the field
+	 * @param methods
+	 * @param types
+	 */
+	protected void propagateWrittenFieldTypes(BitSet methods, BitSet types){
+		BitSet writtenFields = new BitSet(program.getFieldCount());
+		Adjacency methodWrittenFields = program.getWrittenFields();
+		for(int method = methods.nextSetBit(0); method >= 0; method = methods.nextSetBit(method+1)){
+			for(int i=methodWrittenFields.start(method); i<methodWrittenFields.end(method); i++){
+				writtenFields.set(methodWrittenFields.target(i));
+			}
+		}
+		for(int writtenField = writtenFields.nextSetBit(0); writtenField >= 0; writtenField = writtenFields.nextSetBit(writtenField+1)){
+			BitSet compatibleTypes = program.getSubtypeHierarchy(program.getFieldTypes(), writtenField);
+			compatibleTypes.and(types);
+			addFieldTypes(writtenField, compatibleTypes);
+		}
+	}
+
+	/**
+	 * Inherits all allocation types from methods that throw an exception that could be caught
+	 * by this method and propagates the method's types to all methods that could potentially
+	 * catch an exception thrown by this method
+	 * @param exceptionFlow
+	 * @param method
+	 * @param types
+	 */
+	protected void propagateExceptionTypes(ExceptionFlow exceptionFlow, int method, BitSet types){
+		propagateExceptionTypes(exceptionFlow, method, types, types);
+	}
+
+	/**
+	 * Inherits all allocation types from methods that throw an exception that could be caught
+	 * by this method and propagates the method's types to all methods that could potentially
+	 * catch an exception thrown by this method, once the catching methods have been propagated 
+	 * the full types set of the method only the delta is propagated
+	 * @param exceptionFlow
+	 * @param method
+	 * @param types the full types set of the method
+	 * @param delta the types added to the method since it was last processed (inherited types are added to the delta)
+	 */
+	protected void propagateExceptionTypes(ExceptionFlow exceptionFlow, int method, BitSet types, BitSet delta){
+		for(int throwingMethod : exceptionFlow.getThrowingMethods(method)){
+			BitSet newTypes = difference(getMethodTypes(throwingMethod), types);
+			if(newTypes != null){
+				types.or(newTypes);
+				delta.or(newTypes);
+			}
+		}
+		BitSet propagatedTypes = pushedExceptionFlows.get(method) ? delta : types;
+		pushedExceptionFlows.set(method);
+		for(int catchingMethod : exceptionFlow.getCatchingMethods(method)){
+			addMethodTypes(catchingMethod, propagatedTypes);
+		}
+	}
+
+	/**
+	 * Selects each CHA call edge from the method whose target method's type is
+	 * compatible with the feasibly allocated types that would reach this method
+	 * @param method
+	 * @param types
+	 */
+	protected void resolveCallEdges(int method, BitSet types){
+		resolveCallEdges(method, types, types);
+	}
+
+	/**
+	 * Selects each CHA call edge from the method whose target method's type is
+	 * compatible with the feasibly allocated types that would reach this method
+	 * and pushes only the delta along call edges that were already pushed the full types
+	 * @param method
+	 * @param types the full types set of the method
+	 * @param delta the types added to the method since the last time its call edges were resolved
+	 */
+	protected void resolveCallEdges(int method, BitSet types, BitSet delta){
+		Adjacency outgoing = cgCHA.getOutgoingCallEdges();
+		TypeHierarchy typeHierarchy = program.getTypeHierarchy();
+		for(int i=outgoing.start(method); i<outgoing.end(method); i++){
+			int slot = outgoing.target(i);
+			if(dispatchKinds.isStaticDispatch(slot)){
+				updateCallGraph(method, types, delta, slot);
+			} else {
+				// the call edge is a dynamic dispatch, need to resolve possible dispatches
+				// a dispatch is possible if the type declaring the method is one of the
+				// allocated types (or the parent of an allocated type)
+				// note: we should consider the supertype hierarchy of the allocation types
+				// because methods can be inherited from parent types, equivalently the subtype
+				// closure of the declaring type must contain one of the allocated types
+				int typeDeclaringCalledMethod = program.getDeclaringType(cgCHA.getTarget(slot));
+				if(typeDeclaringCalledMethod != ProgramSnapshot.NONE && typeHierarchy.intersectsSubtypes(typeDeclaringCalledMethod, types)){
+					updateCallGraph(method, types, delta, slot);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the call graph and worklist for methods
+	 * @param method
+	 * @param types
+	 * @param delta
+	 * @param slot
+	 */
+	protected void updateCallGraph(int method, BitSet types, BitSet delta, int slot){
+		int calledMethod = cgCHA.getTarget(slot);
+		int callEdge = getCallEdge(method, calledMethod);
+		if(callEdge == ProgramSnapshot.NONE){
+			callEdges.set(slot);
+			if(selectedCallEdgeCount == selectedCallEdges.length){
+				selectedCallEdges = Arrays.copyOf(selectedCallEdges, selectedCallEdgeCount * 2);
+			}
+			selectedCallEdges[selectedCallEdgeCount++] = slot;
+			enqueueMethod(calledMethod);
+		} else if(pushedCallEdges.get(callEdge)){
+			addMethodTypes(calledMethod, delta);
+		} else {
+			pushedCallEdges.set(callEdge);
+			addMethodTypes(calledMethod, types);
+		}
+	}
+
+	/**
+	 * Returns the selected call edge slot from the calling method to the called method or NONE
+	 * @param callingMethod
+	 * @param calledMethod
+	 * @return
+	 */
+	private int getCallEdge(int callingMethod, int calledMethod){
+		Adjacency outgoing = cgCHA.getOutgoingCallEdges();
+		for(int i=outgoing.start(callingMethod); i<outgoing.end(callingMethod); i++){
+			int slot = outgoing.target(i);
+			if(callEdges.get(slot) && cgCHA.getTarget(slot) == calledMethod){
+				return slot;
+			}
+		}
+		return ProgramSnapshot.NONE;
+	}
+
+	/**
+	 * Returns the types that are not in the given set or null if there are none
+	 */
+	private static BitSet difference(BitSet types, BitSet to){
+		if(types.isEmpty()){
+			return null;
+		}
+		BitSet newTypes = (BitSet) types.clone();
+		newTypes.andNot(to);
+		return newTypes.isEmpty() ? null : newTypes;
+	}
+
+	private static BitSet take(BitSet[] deltas, int id){
+		BitSet delta = deltas[id];
+		deltas[id] = null;
+		return delta != null ? delta : new BitSet();
+	}
+
+	private static void record(BitSet[] deltas, int id, BitSet newTypes){
+		if(deltas[id] == null){
+			deltas[id] = newTypes;
+		} else {
+			deltas[id].or(newTypes);
+		}
+	}
+
+	private static BitSet toBitSet(Adjacency adjacency, int row, int size){
+		BitSet result = new BitSet(size);
+		for(int i=adjacency.start(row); i<adjacency.end(row); i++){
+			result.set(adjacency.target(i));
+		}
+		return result;
+	}
+
+}
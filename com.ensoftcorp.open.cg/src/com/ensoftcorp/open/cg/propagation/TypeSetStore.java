@@ -0,0 +1,37 @@
+package com.ensoftcorp.open.cg.propagation;
+
+import java.util.BitSet;
+
+/**
+ * Keeps the method and field types sets of a TypePropagation between work
+ * items, keyed by dense ids (fields are encoded following the method ids).
+ */
+public interface TypeSetStore {
+
+	/**
+	 * Returns the number of types in the set
+	 * @param id
+	 * @return
+	 */
+	public int cardinality(int id);
+
+	/**
+	 * Returns a copy of the set
+	 * @param id
+	 * @return a new bitset that the caller is free to modify
+	 */
+	public BitSet get(int id);
+
+	/**
+	 * Replaces the set, the store does not keep a reference to the given bitset
+	 * @param id
+	 * @param set
+	 */
+	public void put(int id, BitSet set);
+
+	/**
+	 * Drops the stored sets, the store can no longer be used
+	 */
+	public void release();
+
+}
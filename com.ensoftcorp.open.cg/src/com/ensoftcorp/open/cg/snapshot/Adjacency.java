@@ -0,0 +1,193 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.Arrays;
+
+/**
+ * An immutable compressed sparse row (CSR) adjacency structure over dense
+ * integer ids. The targets of row r are stored contiguously in the index
+ * range [start(r), end(r)).
+ *
+ * Typical iteration:
+ * <pre>
+ * for(int i=adjacency.start(row); i&lt;adjacency.end(row); i++){
+ *     int target = adjacency.target(i);
+ * }
+ * </pre>
+ */
+public class Adjacency {
+
+	private static final int[] EMPTY = new int[0];
+
+	private final int[] offsets;
+	private final int[] targets;
+
+	private Adjacency(int[] offsets, int[] targets){
+		this.offsets = offsets;
+		this.targets = targets;
+	}
+
+	/**
+	 * Returns the number of rows
+	 * @return
+	 */
+	public int rows(){
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Returns the total number of entries
+	 * @return
+	 */
+	public int size(){
+		return targets.length;
+	}
+
+	/**
+	 * Returns the first index of the given row
+	 * @param row
+	 * @return
+	 */
+	public int start(int row){
+		return offsets[row];
+	}
+
+	/**
+	 * Returns the index after the last index of the given row
+	 * @param row
+	 * @return
+	 */
+	public int end(int row){
+		return offsets[row+1];
+	}
+
+	/**
+	 * Returns the number of entries in the given row
+	 * @param row
+	 * @return
+	 */
+	public int size(int row){
+		return offsets[row+1] - offsets[row];
+	}
+
+	/**
+	 * Returns the target stored at the given index
+	 * @param index
+	 * @return
+	 */
+	public int target(int index){
+		return targets[index];
+	}
+
+	/**
+	 * Returns true if the given row contains the given target
+	 * @param row
+	 * @param target
+	 * @return
+	 */
+	public boolean contains(int row, int target){
+		for(int i=offsets[row]; i<offsets[row+1]; i++){
+			if(targets[i] == target){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a copy of the targets of the given row
+	 * @param row
+	 * @return
+	 */
+	public int[] toArray(int row){
+		if(offsets[row] == offsets[row+1]){
+			return EMPTY;
+		}
+		return Arrays.copyOfRange(targets, offsets[row], offsets[row+1]);
+	}
+
+	/**
+	 * Returns a new adjacency with every (row, target) pair reversed
+	 * @param rows the number of rows of the reversed adjacency (the target id space)
+	 * @return
+	 */
+	public Adjacency reverse(int rows){
+		Builder builder = new Builder(rows);
+		for(int row=0; row<rows(); row++){
+			for(int i=offsets[row]; i<offsets[row+1]; i++){
+				builder.add(targets[i], row);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Accumulates (row, target) pairs and packs them into an Adjacency.
+	 * Pairs are kept in insertion order within each row, duplicates are
+	 * removed when the adjacency is built.
+	 */
+	public static class Builder {
+
+		private final int rows;
+		private int[] sources = new int[16];
+		private int[] targets = new int[16];
+		private int size = 0;
+
+		public Builder(int rows){
+			this.rows = rows;
+		}
+
+		public void add(int row, int target){
+			if(row < 0 || row >= rows){
+				throw new IllegalArgumentException("Row " + row + " is out of bounds [0," + rows + ")");
+			}
+			if(size == sources.length){
+				sources = Arrays.copyOf(sources, size * 2);
+				targets = Arrays.copyOf(targets, size * 2);
+			}
+			sources[size] = row;
+			targets[size] = target;
+			size++;
+		}
+
+		public Adjacency build(){
+			// counting sort by row, which keeps the insertion order within a row
+			int[] offsets = new int[rows + 1];
+			for(int i=0; i<size; i++){
+				offsets[sources[i] + 1]++;
+			}
+			for(int row=0; row<rows; row++){
+				offsets[row + 1] += offsets[row];
+			}
+			int[] positions = Arrays.copyOf(offsets, rows);
+			int[] sorted = new int[size];
+			for(int i=0; i<size; i++){
+				sorted[positions[sources[i]]++] = targets[i];
+			}
+
+			// remove duplicate targets within each row, lastRow[target] records
+			// the last row the target was seen in (offset by one so zero means never)
+			int maxTarget = -1;
+			for(int i=0; i<size; i++){
+				if(targets[i] < 0){
+					throw new IllegalArgumentException("Target " + targets[i] + " is negative");
+				}
+				maxTarget = Math.max(maxTarget, targets[i]);
+			}
+			int[] lastRow = new int[maxTarget + 1];
+			int[] packedOffsets = new int[rows + 1];
+			int packedSize = 0;
+			for(int row=0; row<rows; row++){
+				for(int i=offsets[row]; i<offsets[row+1]; i++){
+					int target = sorted[i];
+					if(lastRow[target] != row + 1){
+						lastRow[target] = row + 1;
+						sorted[packedSize++] = target;
+					}
+				}
+				packedOffsets[row + 1] = packedSize;
+			}
+			return new Adjacency(packedOffsets, packedSize == sorted.length ? sorted : Arrays.copyOf(sorted, packedSize));
+		}
+	}
+
+}
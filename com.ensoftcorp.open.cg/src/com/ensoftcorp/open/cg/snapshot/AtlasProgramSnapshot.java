@@ -0,0 +1,543 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.db.graph.GraphElement.NodeDirection;
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.db.set.AtlasSet;
+import com.ensoftcorp.atlas.core.index.common.SourceCorrespondence;
+import com.ensoftcorp.atlas.core.indexing.IndexingUtil;
+import com.ensoftcorp.atlas.core.query.Attr;
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.atlas.core.query.Query;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.log.Log;
+import com.ensoftcorp.open.commons.utilities.CodeMapChangeListener;
+import com.ensoftcorp.open.java.commons.wishful.JavaStopGap;
+
+/**
+ * Builds a ProgramSnapshot from the Atlas graph and maps between snapshot ids
+ * and graph elements.
+ *
+ * The snapshot is built with a single evaluation of each relevant edge subgraph
+ * (Supertype, TypeOf, InvokedSignature, InvokedFunction, IdentityPassedTo,
+ * Contains and DataFlow) instead of evaluating a query per node, and is shared
+ * by all of the analyses until the index changes.
+ */
+public class AtlasProgramSnapshot {
+
+	private static AtlasProgramSnapshot instance = null;
+
+	private static CodeMapChangeListener codeMapChangeListener = null;
+
+	/**
+	 * Returns the snapshot of the current index, building it if necessary
+	 * @return
+	 */
+	public static synchronized AtlasProgramSnapshot getInstance() {
+		if (instance == null || (codeMapChangeListener != null && codeMapChangeListener.hasIndexChanged())) {
+			instance = new AtlasProgramSnapshot();
+			if(codeMapChangeListener == null){
+				codeMapChangeListener = new CodeMapChangeListener();
+				IndexingUtil.addListener(codeMapChangeListener);
+			} else {
+				codeMapChangeListener.reset();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Discards the current snapshot so that the next call to getInstance() rebuilds it.
+	 * This must be called after an analysis adds program elements to the graph
+	 * (for example library callsite summaries).
+	 */
+	public static synchronized void invalidate(){
+		instance = null;
+	}
+
+	private final ProgramSnapshot program;
+
+	private final Node[] types;
+	private final Node[] methods;
+	private final Node[] callsites;
+	private final Node[] fields;
+
+	private final Map<Node,Integer> typeIds;
+	private final Map<Node,Integer> methodIds;
+	private final Map<Node,Integer> callsiteIds;
+	private final Map<Node,Integer> fieldIds;
+
+	private ProgramFingerprint fingerprint = null;
+	private Adjacency thrownTypes = null;
+	private Adjacency caughtTypes = null;
+
+	private AtlasProgramSnapshot(){
+		long start = System.nanoTime();
+
+		Q universe = Query.universe();
+		types = toArray(universe.nodes(XCSG.Type).eval().nodes());
+		methods = toArray(universe.nodes(XCSG.Method).eval().nodes());
+		callsites = toArray(universe.nodes(XCSG.CallSite).eval().nodes());
+		fields = toArray(universe.nodes(XCSG.Field).eval().nodes());
+		typeIds = index(types);
+		methodIds = index(methods);
+		callsiteIds = index(callsites);
+		fieldIds = index(fields);
+
+		// evaluate each subgraph once, the per node lookups below are then just index lookups
+		Graph supertypeGraph = universe.edges(XCSG.Supertype).eval();
+		Graph typeOfGraph = universe.edges(XCSG.TypeOf).eval();
+		Graph containsGraph = universe.edges(XCSG.Contains).eval();
+		Graph dataFlowGraph = universe.edges(XCSG.DataFlow_Edge).eval();
+		Graph invokedFunctionGraph = universe.edges(XCSG.InvokedFunction).eval();
+		Graph invokedSignatureGraph = universe.edges(XCSG.InvokedSignature).eval();
+		Graph identityPassedToGraph = universe.edges(XCSG.IdentityPassedTo).eval();
+
+		ProgramSnapshot.Builder builder = new ProgramSnapshot.Builder(types.length, methods.length, callsites.length, fields.length);
+
+		// types
+		for(int type=0; type<types.length; type++){
+			if(types[type].taggedWith(XCSG.Java.AbstractClass)){
+				builder.setTypeFlags(type, ProgramSnapshot.TYPE_ABSTRACT_CLASS);
+			}
+			for(Edge supertypeEdge : supertypeGraph.edges(types[type], NodeDirection.OUT)){
+				int supertype = getTypeId(supertypeEdge.to());
+				if(supertype != ProgramSnapshot.NONE){
+					builder.addSupertype(type, supertype);
+				}
+			}
+		}
+
+		// methods
+		for(int method=0; method<methods.length; method++){
+			Node methodNode = methods[method];
+			int flags = 0;
+			if(methodNode.taggedWith(XCSG.abstractMethod)){
+				flags |= ProgramSnapshot.METHOD_ABSTRACT;
+			}
+			if(methodNode.taggedWith(Attr.Node.IS_STATIC)){
+				flags |= ProgramSnapshot.METHOD_STATIC;
+			}
+			if(methodNode.taggedWith(XCSG.Constructor)){
+				flags |= ProgramSnapshot.METHOD_CONSTRUCTOR;
+			}
+			if(methodNode.taggedWith(XCSG.publicVisibility)){
+				flags |= ProgramSnapshot.METHOD_PUBLIC;
+			}
+			Object name = methodNode.getAttr(XCSG.name);
+			if("<init>".equals(name)){
+				flags |= ProgramSnapshot.METHOD_INITIALIZER;
+			} else if("<clinit>".equals(name)){
+				builder.setStaticInitializer(method);
+			}
+			builder.setMethodFlags(method, flags);
+			builder.setSignature(method, (String) methodNode.getAttr(JavaStopGap.SIGNATURE));
+
+			for(Edge containsEdge : containsGraph.edges(methodNode, NodeDirection.IN)){
+				int type = getTypeId(containsEdge.from());
+				if(type != ProgramSnapshot.NONE){
+					builder.setDeclaringType(method, type);
+				}
+			}
+
+			for(Edge containsEdge : containsGraph.edges(methodNode, NodeDirection.OUT)){
+				Node child = containsEdge.to();
+				if(child.taggedWith(XCSG.Parameter)){
+					for(int type : getTypeOf(typeOfGraph, child)){
+						builder.addParameterType(method, type);
+					}
+				} else if(child.taggedWith(XCSG.ReturnValue)){
+					for(int type : getTypeOf(typeOfGraph, child)){
+						builder.addReturnType(method, type);
+					}
+				}
+			}
+
+			// walk the declarations of the method, declarations that are nested in a type
+			// or method declared inside of this method are contained but are not local
+			ArrayList<Node> stack = new ArrayList<Node>();
+			ArrayList<Boolean> localStack = new ArrayList<Boolean>();
+			stack.add(methodNode);
+			localStack.add(true);
+			while(!stack.isEmpty()){
+				Node declaration = stack.remove(stack.size()-1);
+				boolean local = localStack.remove(localStack.size()-1);
+
+				if(declaration.taggedWith(XCSG.CallSite)){
+					int callsite = getCallsiteId(declaration);
+					if(callsite != ProgramSnapshot.NONE){
+						builder.addContainedCallsite(method, callsite);
+						if(local){
+							builder.setCallsiteMethod(callsite, method);
+						}
+					}
+				}
+
+				if(declaration.taggedWith(XCSG.Instantiation)){
+					for(int type : getTypeOf(typeOfGraph, declaration)){
+						builder.addAllocationType(method, type);
+					}
+				}
+
+				for(Edge dataFlowEdge : dataFlowGraph.edges(declaration, NodeDirection.IN)){
+					int field = getFieldId(dataFlowEdge.from());
+					if(field != ProgramSnapshot.NONE){
+						builder.addReadField(method, field);
+					}
+				}
+				for(Edge dataFlowEdge : dataFlowGraph.edges(declaration, NodeDirection.OUT)){
+					int field = getFieldId(dataFlowEdge.to());
+					if(field != ProgramSnapshot.NONE){
+						builder.addWrittenField(method, field);
+					}
+				}
+
+				for(Edge containsEdge : containsGraph.edges(declaration, NodeDirection.OUT)){
+					Node child = containsEdge.to();
+					stack.add(child);
+					localStack.add(local && !child.taggedWith(XCSG.Type) && !child.taggedWith(XCSG.Method));
+				}
+			}
+		}
+
+		// callsites
+		for(int callsite=0; callsite<callsites.length; callsite++){
+			Node callsiteNode = callsites[callsite];
+			int flags = 0;
+			if(callsiteNode.taggedWith(XCSG.StaticDispatchCallSite)){
+				flags |= ProgramSnapshot.CALLSITE_STATIC_DISPATCH;
+			}
+			if(callsiteNode.taggedWith(XCSG.DynamicDispatchCallSite)){
+				flags |= ProgramSnapshot.CALLSITE_DYNAMIC_DISPATCH;
+			}
+			builder.setCallsiteFlags(callsite, flags);
+
+			Edge invokedFunctionEdge = invokedFunctionGraph.edges(callsiteNode, NodeDirection.OUT).one();
+			if(invokedFunctionEdge != null){
+				builder.setInvokedFunction(callsite, getMethodId(invokedFunctionEdge.to()));
+			}
+			Edge invokedSignatureEdge = invokedSignatureGraph.edges(callsiteNode, NodeDirection.OUT).one();
+			if(invokedSignatureEdge != null){
+				builder.setInvokedSignature(callsite, getMethodId(invokedSignatureEdge.to()));
+			}
+
+			// the declared type of the receiver object
+			for(Edge identityPassedToEdge : identityPassedToGraph.edges(callsiteNode, NodeDirection.IN)){
+				for(Edge dataFlowEdge : dataFlowGraph.edges(identityPassedToEdge.from(), NodeDirection.IN)){
+					for(int type : getTypeOf(typeOfGraph, dataFlowEdge.from())){
+						builder.addReceiverType(callsite, type);
+					}
+				}
+			}
+		}
+
+		// fields
+		for(int field=0; field<fields.length; field++){
+			for(int type : getTypeOf(typeOfGraph, fields[field])){
+				builder.addFieldType(field, type);
+			}
+			for(Edge dataFlowEdge : dataFlowGraph.edges(fields[field], NodeDirection.OUT)){
+				int method = getContainingMethod(containsGraph, dataFlowEdge.to());
+				if(method != ProgramSnapshot.NONE){
+					builder.addReadingMethod(field, method);
+				}
+			}
+		}
+
+		program = builder.build();
+
+		double time = (System.nanoTime() - start)/1000.0/1000.0;
+		DecimalFormat decimalFormat = new DecimalFormat("#.##");
+		Log.info("Built program snapshot (" + types.length + " types, " + methods.length + " methods, "
+				+ callsites.length + " callsites, " + fields.length + " fields) in " + decimalFormat.format(time) + "ms");
+	}
+
+	/**
+	 * Returns the primitive-indexed program snapshot
+	 * @return
+	 */
+	public ProgramSnapshot getProgram(){
+		return program;
+	}
+
+	public Node getType(int type){
+		return types[type];
+	}
+
+	public Node getMethod(int method){
+		return methods[method];
+	}
+
+	public Node getCallsite(int callsite){
+		return callsites[callsite];
+	}
+
+	public Node getField(int field){
+		return fields[field];
+	}
+
+	public int getTypeId(Node type){
+		return getId(typeIds, type);
+	}
+
+	public int getMethodId(Node method){
+		return getId(methodIds, method);
+	}
+
+	public int getCallsiteId(Node callsite){
+		return getId(callsiteIds, callsite);
+	}
+
+	public int getFieldId(Node field){
+		return getId(fieldIds, field);
+	}
+
+	/**
+	 * Returns the ids of the methods in the given set (non-methods are ignored)
+	 * @param methods
+	 * @return
+	 */
+	public int[] getMethodIds(AtlasSet<Node> methods){
+		int[] ids = new int[(int) methods.size()];
+		int size = 0;
+		for(Node method : methods){
+			int id = getMethodId(method);
+			if(id != ProgramSnapshot.NONE){
+				ids[size++] = id;
+			}
+		}
+		return size == ids.length ? ids : Arrays.copyOf(ids, size);
+	}
+
+	/**
+	 * Returns the ids of the types in the given set (non-types are ignored)
+	 * @param types
+	 * @return
+	 */
+	public BitSet getTypeIds(AtlasSet<Node> types){
+		BitSet ids = new BitSet(this.types.length);
+		for(Node type : types){
+			int id = getTypeId(type);
+			if(id != ProgramSnapshot.NONE){
+				ids.set(id);
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Builds a primitive-indexed snapshot of a constructed call graph. Each slot
+	 * of the returned snapshot carries the graph edge it was built from.
+	 *
+	 * @param callGraph the method to method call edges
+	 * @param perControlFlowGraph the callsite to method per control flow edges
+	 * @return
+	 */
+	public CallGraphSnapshot<Edge> getCallGraph(Q callGraph, Q perControlFlowGraph){
+		CallGraphSnapshot.Builder<Edge> builder = new CallGraphSnapshot.Builder<Edge>(methods.length, callsites.length);
+		for(Edge callEdge : callGraph.eval().edges()){
+			int caller = getMethodId(callEdge.from());
+			int target = getMethodId(callEdge.to());
+			if(caller != ProgramSnapshot.NONE && target != ProgramSnapshot.NONE){
+				builder.addCallEdge(caller, target, callEdge);
+			}
+		}
+		for(Edge perControlFlowEdge : perControlFlowGraph.eval().edges()){
+			int callsite = getCallsiteId(perControlFlowEdge.from());
+			int target = getMethodId(perControlFlowEdge.to());
+			if(callsite != ProgramSnapshot.NONE && target != ProgramSnapshot.NONE){
+				builder.addPerControlFlowEdge(callsite, target, perControlFlowEdge);
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Returns the fingerprint of the snapshot, computing it on first use
+	 * 
+	 * Types are keyed by the names of their enclosing declarations (project or
+	 * library, package and outer types) and methods by the key of their declaring
+	 * type and their signature. Callsites are keyed by the key of their method and
+	 * their position among the method's local callsites ordered by source offset.
+	 * @return
+	 */
+	public synchronized ProgramFingerprint getFingerprint(){
+		if(fingerprint == null){
+			Graph containsGraph = Query.universe().edges(XCSG.Contains).eval();
+			String[] typeKeys = new String[types.length];
+			for(int type=0; type<types.length; type++){
+				StringBuilder key = new StringBuilder();
+				Node parent = types[type];
+				while(parent != null){
+					key.insert(0, "/" + parent.getAttr(XCSG.name));
+					Edge containsEdge = containsGraph.edges(parent, NodeDirection.IN).one();
+					parent = containsEdge == null ? null : containsEdge.from();
+				}
+				typeKeys[type] = key.toString();
+			}
+			String[] methodKeys = new String[methods.length];
+			for(int method=0; method<methods.length; method++){
+				int type = program.getDeclaringType(method);
+				Object signature = methods[method].getAttr(JavaStopGap.SIGNATURE);
+				if(signature == null){
+					signature = methods[method].getAttr(XCSG.name);
+				}
+				methodKeys[method] = (type == ProgramSnapshot.NONE ? "" : typeKeys[type]) + "#" + signature;
+			}
+			String[] callsiteKeys = new String[callsites.length];
+			Adjacency methodCallsites = program.getCallsites();
+			for(int method=0; method<methods.length; method++){
+				Integer[] localCallsites = new Integer[methodCallsites.size(method)];
+				for(int i=0; i<localCallsites.length; i++){
+					localCallsites[i] = methodCallsites.target(methodCallsites.start(method) + i);
+				}
+				Arrays.sort(localCallsites, new Comparator<Integer>(){
+					@Override
+					public int compare(Integer a, Integer b) {
+						int result = Integer.compare(getSourceOffset(callsites[a]), getSourceOffset(callsites[b]));
+						if(result == 0){
+							result = String.valueOf(callsites[a].getAttr(XCSG.name)).compareTo(String.valueOf(callsites[b].getAttr(XCSG.name)));
+						}
+						return result;
+					}
+				});
+				for(int i=0; i<localCallsites.length; i++){
+					callsiteKeys[localCallsites[i]] = methodKeys[method] + "@" + i;
+				}
+			}
+			fingerprint = new ProgramFingerprint(program, typeKeys, methodKeys, callsiteKeys);
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Returns the types of the values thrown by each method, read from the graph on first use
+	 * 
+	 * The types a method throws are the types of the thrown values it contains (or of the
+	 * values flowing into them when a value has no declared type).
+	 * @return
+	 */
+	public synchronized Adjacency getThrownTypes(){
+		if(thrownTypes == null){
+			thrownTypes = getValueTypes(XCSG.ThrownValue);
+		}
+		return thrownTypes;
+	}
+
+	/**
+	 * Returns the types caught by the catch blocks of each method, read from the graph on first use
+	 * 
+	 * The types a method catches are the types of its caught values (or of the values
+	 * flowing into them when a value has no declared type).
+	 * @return
+	 */
+	public synchronized Adjacency getCaughtTypes(){
+		if(caughtTypes == null){
+			caughtTypes = getValueTypes(XCSG.CaughtValue);
+		}
+		return caughtTypes;
+	}
+
+	private Adjacency getValueTypes(String valueTag){
+		Q universe = Query.universe();
+		Graph typeOfGraph = universe.edges(XCSG.TypeOf).eval();
+		Graph containsGraph = universe.edges(XCSG.Contains).eval();
+		Graph dataFlowGraph = universe.edges(XCSG.DataFlow_Edge).eval();
+		return getValueTypes(universe.nodes(valueTag).eval().nodes(), typeOfGraph, containsGraph, dataFlowGraph);
+	}
+
+	/**
+	 * Returns the types of the given values indexed by their containing methods
+	 */
+	private Adjacency getValueTypes(AtlasSet<Node> values, Graph typeOfGraph, Graph containsGraph, Graph dataFlowGraph){
+		Adjacency.Builder builder = new Adjacency.Builder(methods.length);
+		for(Node value : values){
+			int method = getContainingMethod(containsGraph, value);
+			if(method == ProgramSnapshot.NONE){
+				continue;
+			}
+			int[] types = getTypeOf(typeOfGraph, value);
+			if(types.length > 0){
+				for(int type : types){
+					builder.add(method, type);
+				}
+			} else {
+				for(Edge dataFlowEdge : dataFlowGraph.edges(value, NodeDirection.IN)){
+					for(int type : getTypeOf(typeOfGraph, dataFlowEdge.from())){
+						builder.add(method, type);
+					}
+				}
+			}
+		}
+		return builder.build();
+	}
+
+	private static int getSourceOffset(Node node){
+		Object sourceCorrespondence = node.getAttr(XCSG.sourceCorrespondence);
+		if(sourceCorrespondence instanceof SourceCorrespondence){
+			return ((SourceCorrespondence) sourceCorrespondence).offset;
+		}
+		return -1;
+	}
+
+	private int[] getTypeOf(Graph typeOfGraph, Node node){
+		AtlasSet<Edge> typeOfEdges = typeOfGraph.edges(node, NodeDirection.OUT);
+		int[] result = new int[(int) typeOfEdges.size()];
+		int size = 0;
+		for(Edge typeOfEdge : typeOfEdges){
+			int type = getTypeId(typeOfEdge.to());
+			if(type != ProgramSnapshot.NONE){
+				result[size++] = type;
+			}
+		}
+		return size == result.length ? result : Arrays.copyOf(result, size);
+	}
+
+	/**
+	 * Returns the nearest method containing the given node
+	 */
+	private int getContainingMethod(Graph containsGraph, Node node){
+		Node parent = node;
+		while(parent != null){
+			int method = getMethodId(parent);
+			if(method != ProgramSnapshot.NONE){
+				return method;
+			}
+			Edge containsEdge = containsGraph.edges(parent, NodeDirection.IN).one();
+			parent = containsEdge == null ? null : containsEdge.from();
+		}
+		return ProgramSnapshot.NONE;
+	}
+
+	private static Node[] toArray(AtlasSet<Node> nodes){
+		Node[] result = new Node[(int) nodes.size()];
+		int index = 0;
+		for(Node node : nodes){
+			result[index++] = node;
+		}
+		return result;
+	}
+
+	private static Map<Node,Integer> index(Node[] nodes){
+		Map<Node,Integer> ids = new HashMap<Node,Integer>(nodes.length * 2);
+		for(int id=0; id<nodes.length; id++){
+			ids.put(nodes[id], id);
+		}
+		return ids;
+	}
+
+	private static int getId(Map<Node,Integer> ids, Node node){
+		Integer id = ids.get(node);
+		return id == null ? ProgramSnapshot.NONE : id;
+	}
+
+}
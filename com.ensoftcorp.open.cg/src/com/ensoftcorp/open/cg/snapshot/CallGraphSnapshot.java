@@ -0,0 +1,296 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A read-only, primitive-indexed snapshot of a constructed call graph over the
+ * method and callsite ids of a ProgramSnapshot.
+ *
+ * Each call edge (method to method) and each per control flow edge (callsite to
+ * method) is assigned a dense slot id. A slot may carry an opaque handle (such
+ * as the graph edge it was built from) so that analyses working on slot ids can
+ * write their results back to the original edges.
+ *
+ * @param <E> the type of the edge handles
+ */
+public class CallGraphSnapshot<E> {
+
+	private final int[] callers;
+	private final int[] targets;
+	private final Object[] callEdges;
+	private final Adjacency outgoing;
+	private final Adjacency incoming;
+
+	private final int[] callsites;
+	private final int[] perControlFlowTargets;
+	private final Object[] perControlFlowEdges;
+	private final Adjacency perControlFlow;
+	private final Adjacency incomingPerControlFlow;
+
+	private CallGraphSnapshot(Builder<E> builder){
+		this.callers = Arrays.copyOf(builder.callers, builder.callEdgeCount);
+		this.targets = Arrays.copyOf(builder.targets, builder.callEdgeCount);
+		this.callEdges = Arrays.copyOf(builder.callEdges, builder.callEdgeCount);
+		Adjacency.Builder outgoing = new Adjacency.Builder(builder.methods);
+		Adjacency.Builder incoming = new Adjacency.Builder(builder.methods);
+		for(int slot=0; slot<callers.length; slot++){
+			outgoing.add(callers[slot], slot);
+			incoming.add(targets[slot], slot);
+		}
+		this.outgoing = outgoing.build();
+		this.incoming = incoming.build();
+
+		this.callsites = Arrays.copyOf(builder.callsites, builder.perControlFlowEdgeCount);
+		this.perControlFlowTargets = Arrays.copyOf(builder.perControlFlowTargets, builder.perControlFlowEdgeCount);
+		this.perControlFlowEdges = Arrays.copyOf(builder.perControlFlowEdges, builder.perControlFlowEdgeCount);
+		Adjacency.Builder perControlFlow = new Adjacency.Builder(builder.callsiteCount);
+		Adjacency.Builder incomingPerControlFlow = new Adjacency.Builder(builder.methods);
+		for(int slot=0; slot<callsites.length; slot++){
+			perControlFlow.add(callsites[slot], slot);
+			incomingPerControlFlow.add(perControlFlowTargets[slot], slot);
+		}
+		this.perControlFlow = perControlFlow.build();
+		this.incomingPerControlFlow = incomingPerControlFlow.build();
+	}
+
+	/**
+	 * Returns the number of call edges
+	 * @return
+	 */
+	public int getCallEdgeCount(){
+		return callers.length;
+	}
+
+	public int getCaller(int slot){
+		return callers[slot];
+	}
+
+	public int getTarget(int slot){
+		return targets[slot];
+	}
+
+	/**
+	 * Returns the handle of the call edge in the given slot
+	 * @param slot
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public E getCallEdge(int slot){
+		return (E) callEdges[slot];
+	}
+
+	/**
+	 * Method to the slots of its outgoing call edges
+	 * @return
+	 */
+	public Adjacency getOutgoingCallEdges(){
+		return outgoing;
+	}
+
+	/**
+	 * Method to the slots of its incoming call edges
+	 * @return
+	 */
+	public Adjacency getIncomingCallEdges(){
+		return incoming;
+	}
+
+	/**
+	 * Returns the number of per control flow edges
+	 * @return
+	 */
+	public int getPerControlFlowEdgeCount(){
+		return callsites.length;
+	}
+
+	public int getPerControlFlowCallsite(int slot){
+		return callsites[slot];
+	}
+
+	public int getPerControlFlowTarget(int slot){
+		return perControlFlowTargets[slot];
+	}
+
+	/**
+	 * Returns the handle of the per control flow edge in the given slot
+	 * @param slot
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	public E getPerControlFlowEdge(int slot){
+		return (E) perControlFlowEdges[slot];
+	}
+
+	/**
+	 * Callsite to the slots of its per control flow edges
+	 * @return
+	 */
+	public Adjacency getPerControlFlowEdges(){
+		return perControlFlow;
+	}
+
+	/**
+	 * Method to the slots of its incoming per control flow edges
+	 * @return
+	 */
+	public Adjacency getIncomingPerControlFlowEdges(){
+		return incomingPerControlFlow;
+	}
+
+	/**
+	 * Returns the methods called by the given method
+	 * @param method
+	 * @return
+	 */
+	public BitSet getCallees(int method){
+		BitSet callees = new BitSet();
+		for(int i=outgoing.start(method); i<outgoing.end(method); i++){
+			callees.set(targets[outgoing.target(i)]);
+		}
+		return callees;
+	}
+
+	/**
+	 * Returns the methods that call the given method
+	 * @param method
+	 * @return
+	 */
+	public BitSet getCallers(int method){
+		BitSet callers = new BitSet();
+		for(int i=incoming.start(method); i<incoming.end(method); i++){
+			callers.set(this.callers[incoming.target(i)]);
+		}
+		return callers;
+	}
+
+	/**
+	 * Returns the methods the given callsite resolves to
+	 * @param callsite
+	 * @return
+	 */
+	public BitSet getPerControlFlowTargets(int callsite){
+		BitSet perControlFlowTargets = new BitSet();
+		for(int i=perControlFlow.start(callsite); i<perControlFlow.end(callsite); i++){
+			perControlFlowTargets.set(this.perControlFlowTargets[perControlFlow.target(i)]);
+		}
+		return perControlFlowTargets;
+	}
+
+	/**
+	 * Returns the callsites that resolve to the given method
+	 * @param method
+	 * @return
+	 */
+	public BitSet getPerControlFlowCallsites(int method){
+		BitSet perControlFlowCallsites = new BitSet();
+		for(int i=incomingPerControlFlow.start(method); i<incomingPerControlFlow.end(method); i++){
+			perControlFlowCallsites.set(callsites[incomingPerControlFlow.target(i)]);
+		}
+		return perControlFlowCallsites;
+	}
+
+	/**
+	 * Returns the slots of the call edges reachable from the given methods in at most the given
+	 * number of steps, following call edges forward (to callees) or in reverse (to callers)
+	 * @param methods
+	 * @param steps
+	 * @param forward
+	 * @return
+	 */
+	public BitSet getCallEdges(BitSet methods, int steps, boolean forward){
+		Adjacency adjacency = forward ? outgoing : incoming;
+		int[] next = forward ? targets : callers;
+		BitSet slots = new BitSet();
+		BitSet visited = (BitSet) methods.clone();
+		BitSet frontier = (BitSet) methods.clone();
+		for(int step=0; step<steps && !frontier.isEmpty(); step++){
+			BitSet nextFrontier = new BitSet();
+			for(int method = frontier.nextSetBit(0); method >= 0; method = frontier.nextSetBit(method+1)){
+				if(method >= adjacency.rows()){
+					continue;
+				}
+				for(int i=adjacency.start(method); i<adjacency.end(method); i++){
+					int slot = adjacency.target(i);
+					slots.set(slot);
+					if(!visited.get(next[slot])){
+						visited.set(next[slot]);
+						nextFrontier.set(next[slot]);
+					}
+				}
+			}
+			frontier = nextFrontier;
+		}
+		return slots;
+	}
+
+	/**
+	 * Returns true if there is a per control flow edge from the callsite to the target method
+	 * @param callsite
+	 * @param target
+	 * @return
+	 */
+	public boolean hasPerControlFlowEdge(int callsite, int target){
+		for(int i=perControlFlow.start(callsite); i<perControlFlow.end(callsite); i++){
+			if(perControlFlowTargets[perControlFlow.target(i)] == target){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Collects the edges of a call graph
+	 *
+	 * @param <E> the type of the edge handles
+	 */
+	public static class Builder<E> {
+
+		private final int methods;
+		private final int callsiteCount;
+
+		private int callEdgeCount = 0;
+		private int[] callers = new int[16];
+		private int[] targets = new int[16];
+		private Object[] callEdges = new Object[16];
+
+		private int perControlFlowEdgeCount = 0;
+		private int[] callsites = new int[16];
+		private int[] perControlFlowTargets = new int[16];
+		private Object[] perControlFlowEdges = new Object[16];
+
+		public Builder(int methods, int callsites){
+			this.methods = methods;
+			this.callsiteCount = callsites;
+		}
+
+		public void addCallEdge(int caller, int target, E edge){
+			if(callEdgeCount == callers.length){
+				callers = Arrays.copyOf(callers, callEdgeCount * 2);
+				targets = Arrays.copyOf(targets, callEdgeCount * 2);
+				callEdges = Arrays.copyOf(callEdges, callEdgeCount * 2);
+			}
+			callers[callEdgeCount] = caller;
+			targets[callEdgeCount] = target;
+			callEdges[callEdgeCount] = edge;
+			callEdgeCount++;
+		}
+
+		public void addPerControlFlowEdge(int callsite, int target, E edge){
+			if(perControlFlowEdgeCount == callsites.length){
+				callsites = Arrays.copyOf(callsites, perControlFlowEdgeCount * 2);
+				perControlFlowTargets = Arrays.copyOf(perControlFlowTargets, perControlFlowEdgeCount * 2);
+				perControlFlowEdges = Arrays.copyOf(perControlFlowEdges, perControlFlowEdgeCount * 2);
+			}
+			callsites[perControlFlowEdgeCount] = callsite;
+			perControlFlowTargets[perControlFlowEdgeCount] = target;
+			perControlFlowEdges[perControlFlowEdgeCount] = edge;
+			perControlFlowEdgeCount++;
+		}
+
+		public CallGraphSnapshot<E> build(){
+			return new CallGraphSnapshot<E>(this);
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.BitSet;
+
+/**
+ * The kind of dispatch (static, constructor or virtual) of each call edge of a
+ * CallGraphSnapshot, indexed by call edge slot.
+ *
+ * A call edge is a constructor call if the called method is a constructor (or
+ * initializer) and a static dispatch if the calling method contains a static
+ * dispatch callsite resolved to the called method, otherwise it is a virtual
+ * (dynamic) dispatch.
+ *
+ * @param <E> the type of the edge handles of the call graph
+ */
+public class DispatchKinds<E> {
+
+	public static final byte VIRTUAL = 0;
+	public static final byte STATIC = 1;
+	public static final byte CONSTRUCTOR = 2;
+
+	private final CallGraphSnapshot<E> callGraph;
+	private final byte[] kinds;
+
+	/**
+	 * Classifies each call edge of the call graph in a single pass over its per control flow edges
+	 * @param program
+	 * @param callGraph
+	 */
+	public DispatchKinds(ProgramSnapshot program, CallGraphSnapshot<E> callGraph){
+		this.callGraph = callGraph;
+		this.kinds = new byte[callGraph.getCallEdgeCount()];
+		Adjacency containedCallsites = program.getContainedCallsites();
+		Adjacency outgoing = callGraph.getOutgoingCallEdges();
+		Adjacency perControlFlow = callGraph.getPerControlFlowEdges();
+		BitSet staticTargets = new BitSet(program.getMethodCount());
+		for(int method=0; method<program.getMethodCount(); method++){
+			if(outgoing.size(method) == 0){
+				continue;
+			}
+			// the methods the static dispatch callsites of the method resolved to
+			staticTargets.clear();
+			for(int i=containedCallsites.start(method); i<containedCallsites.end(method); i++){
+				int callsite = containedCallsites.target(i);
+				if(program.isStaticDispatch(callsite)){
+					for(int j=perControlFlow.start(callsite); j<perControlFlow.end(callsite); j++){
+						staticTargets.set(callGraph.getPerControlFlowTarget(perControlFlow.target(j)));
+					}
+				}
+			}
+			for(int i=outgoing.start(method); i<outgoing.end(method); i++){
+				int slot = outgoing.target(i);
+				int calledMethod = callGraph.getTarget(slot);
+				if(program.hasMethodFlag(calledMethod, ProgramSnapshot.METHOD_CONSTRUCTOR | ProgramSnapshot.METHOD_INITIALIZER)){
+					kinds[slot] = CONSTRUCTOR;
+				} else if(staticTargets.get(calledMethod)){
+					kinds[slot] = STATIC;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the call graph the dispatch kinds are indexed by
+	 * @return
+	 */
+	public CallGraphSnapshot<E> getCallGraph(){
+		return callGraph;
+	}
+
+	/**
+	 * Returns the dispatch kind (VIRTUAL, STATIC or CONSTRUCTOR) of the call edge in the given slot
+	 * @param slot
+	 * @return
+	 */
+	public byte getKind(int slot){
+		return kinds[slot];
+	}
+
+	/**
+	 * Returns true if the call edge in the given slot does not need to be resolved
+	 * against the receiver types (a static dispatch or constructor call)
+	 * @param slot
+	 * @return
+	 */
+	public boolean isStaticDispatch(int slot){
+		return kinds[slot] != VIRTUAL;
+	}
+
+	/**
+	 * Returns the number of call edges of the given dispatch kind
+	 * @param kind
+	 * @return
+	 */
+	public int getCount(byte kind){
+		int count = 0;
+		for(byte k : kinds){
+			if(k == kind){
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
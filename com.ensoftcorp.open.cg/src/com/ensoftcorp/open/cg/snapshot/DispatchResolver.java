@@ -0,0 +1,114 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.BitSet;
+
+/**
+ * Resolves the possible targets of dynamic dispatches against a ProgramSnapshot.
+ * This is the snapshot equivalent of the dispatch resolution performed by CHA
+ * (and by RTA when the subtypes are restricted to the allocated types).
+ */
+public class DispatchResolver {
+
+	private final ProgramSnapshot program;
+
+	public DispatchResolver(ProgramSnapshot program){
+		this.program = program;
+	}
+
+	public ProgramSnapshot getProgram(){
+		return program;
+	}
+
+	/**
+	 * Returns the concrete methods a dynamic dispatch callsite may resolve to
+	 *
+	 * @param callsite the dynamic dispatch callsite
+	 * @param allowedTypes if not null the subtypes of the declared receiver type are restricted to these types
+	 * @return the resolved method ids
+	 */
+	public BitSet resolveDynamicDispatch(int callsite, BitSet allowedTypes){
+		BitSet resolvedDispatches = new BitSet(program.getMethodCount());
+		int methodSignature = program.getInvokedSignature(callsite);
+		if(methodSignature == ProgramSnapshot.NONE){
+			return resolvedDispatches;
+		}
+
+		// since the dispatch was called on the "declared" type there must be at least one signature
+		// (abstract or concrete) in the descendant path, Atlas' InvokedSignature edge gives us the
+		// nearest method definition
+		resolvedDispatches.set(methodSignature);
+
+		// subtypes of the declared type can override the nearest target method definition,
+		// so make sure to include all the subtype method definitions
+		BitSet declaredSubtypeHierarchy = program.getSubtypeHierarchy(program.getReceiverTypes(), callsite);
+		if(allowedTypes != null){
+			declaredSubtypeHierarchy.and(allowedTypes);
+		}
+
+		// next perform a reachability analysis (RA) within the set of subtypes
+		resolvedDispatches.or(getReachableMethods(methodSignature, declaredSubtypeHierarchy));
+
+		// if a method is abstract, then its children must override it, so we can just remove all abstract
+		// methods from the result (this might come into play if nearest matching method definition was abstract)
+		for(int method = resolvedDispatches.nextSetBit(0); method >= 0; method = resolvedDispatches.nextSetBit(method+1)){
+			if(program.hasMethodFlag(method, ProgramSnapshot.METHOD_ABSTRACT)){
+				resolvedDispatches.clear(method);
+			}
+		}
+
+		// lastly, if the method signature is concrete and the type of the method signature is abstract
+		// and all subtypes override the method signature then the method signature can never be called
+		// directly, so remove it from the result
+		if(!program.hasMethodFlag(methodSignature, ProgramSnapshot.METHOD_ABSTRACT)){
+			int methodSignatureType = program.getDeclaringType(methodSignature);
+			if(methodSignatureType != ProgramSnapshot.NONE && program.isAbstractClass(methodSignatureType)){
+				BitSet resolvedDispatchConcreteSubTypes = new BitSet(program.getTypeCount());
+				for(int method = resolvedDispatches.nextSetBit(0); method >= 0; method = resolvedDispatches.nextSetBit(method+1)){
+					int type = program.getDeclaringType(method);
+					if(method != methodSignature && type != ProgramSnapshot.NONE && !program.isAbstractClass(type)){
+						resolvedDispatchConcreteSubTypes.set(type);
+					}
+				}
+				if(!resolvedDispatchConcreteSubTypes.isEmpty()){
+					// there are concrete subtypes
+					BitSet remainingTypes = (BitSet) declaredSubtypeHierarchy.clone();
+					remainingTypes.clear(methodSignatureType);
+					remainingTypes.andNot(resolvedDispatchConcreteSubTypes);
+					if(remainingTypes.isEmpty()){
+						// all subtypes override method signature, method signature implementation can never be called
+						resolvedDispatches.clear(methodSignature);
+					}
+				}
+			}
+		}
+
+		return resolvedDispatches;
+	}
+
+	/**
+	 * Returns the methods declared by the given types that match the signature of the
+	 * given method (excluding constructors and static methods).
+	 * Note: This method specifically includes abstract methods
+	 *
+	 * @param methodSignature the method whose signature should be matched
+	 * @param typesToSearch if null the methods of every type are matched
+	 * @return
+	 */
+	public BitSet getReachableMethods(int methodSignature, BitSet typesToSearch){
+		BitSet result = new BitSet(program.getMethodCount());
+		int signature = program.getSignature(methodSignature);
+		if(signature == ProgramSnapshot.NONE){
+			return result;
+		}
+		// the signature index only holds virtual methods, so just intersect with the searched types
+		Adjacency signatureMethods = program.getSignatureMethods();
+		for(int i=signatureMethods.start(signature); i<signatureMethods.end(signature); i++){
+			int method = signatureMethods.target(i);
+			if(typesToSearch == null || typesToSearch.get(program.getDeclaringType(method))){
+				result.set(method);
+			}
+		}
+		return result;
+	}
+
+}
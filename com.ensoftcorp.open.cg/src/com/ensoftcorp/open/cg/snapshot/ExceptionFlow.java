@@ -0,0 +1,25 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+/**
+ * Answers which methods exceptions may flow between, in terms of the method ids
+ * of a ProgramSnapshot.
+ */
+public interface ExceptionFlow {
+
+	/**
+	 * Returns the methods (other than the given method) that throw an exception
+	 * that could be caught by the given method
+	 * @param method
+	 * @return
+	 */
+	public int[] getThrowingMethods(int method);
+
+	/**
+	 * Returns the methods (other than the given method) that could catch an
+	 * exception thrown by the given method
+	 * @param method
+	 * @return
+	 */
+	public int[] getCatchingMethods(int method);
+
+}
@@ -0,0 +1,111 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Precomputed exception flow between the methods of a ProgramSnapshot.
+ *
+ * Each method is summarized by the types of the values it throws and the types
+ * its catch blocks catch. An exception thrown by one method may be caught by a
+ * transitive caller of the method (in the given call graph) that catches the
+ * thrown type, one of its supertypes or one of its subtypes (the thrown type is
+ * the static type of the thrown value, so at runtime the exception may be an
+ * instance of any subtype). This is the flow ThrowableAnalysis answers by walking
+ * up the call graph from each throw, but the throwing and catching methods of
+ * every method are matched once when the index is built, so each lookup is just
+ * an array access instead of a query over the control flow of the method.
+ */
+public class ExceptionFlowIndex implements ExceptionFlow {
+
+	private final Adjacency catchingMethods;
+	private final Adjacency throwingMethods;
+
+	/**
+	 * Matches the thrown types of each method against the caught types of its transitive callers
+	 * @param program
+	 * @param callGraph the call graph exceptions propagate back up
+	 * @param thrownTypes method to the types of the values it throws
+	 * @param caughtTypes method to the types its catch blocks catch
+	 */
+	public ExceptionFlowIndex(ProgramSnapshot program, CallGraphSnapshot<?> callGraph, Adjacency thrownTypes, Adjacency caughtTypes){
+		int methodCount = program.getMethodCount();
+		int typeCount = program.getTypeCount();
+
+		// the methods catching each type
+		Adjacency catchers = caughtTypes.reverse(typeCount);
+		TypeHierarchy hierarchy = program.getTypeHierarchy();
+		Adjacency incoming = callGraph.getIncomingCallEdges();
+		Adjacency.Builder builder = new Adjacency.Builder(methodCount);
+		BitSet candidates = new BitSet(methodCount);
+		BitSet catching = new BitSet(methodCount);
+		int[] visited = new int[methodCount];
+		Arrays.fill(visited, -1);
+		int[] stack = new int[16];
+		for(int method=0; method<methodCount; method++){
+			if(thrownTypes.size(method) == 0){
+				continue;
+			}
+
+			// the methods with a catch block for a thrown type, one of its supertypes or one of its subtypes
+			int[] thrown = thrownTypes.toArray(method);
+			BitSet catchableTypes = hierarchy.getSupertypes(thrown);
+			catchableTypes.or(hierarchy.getSubtypes(thrown));
+			candidates.clear();
+			for(int type=catchableTypes.nextSetBit(0); type>=0; type=catchableTypes.nextSetBit(type+1)){
+				for(int i=catchers.start(type); i<catchers.end(type); i++){
+					candidates.set(catchers.target(i));
+				}
+			}
+			candidates.clear(method); // only worried about exceptions that propagate back up the stack
+			int remaining = candidates.cardinality();
+
+			// an exception can only be caught by a method on the call stack, so walk the callers until every candidate is found
+			catching.clear();
+			int size = 0;
+			stack[size++] = method;
+			visited[method] = method;
+			while(size > 0 && remaining > 0){
+				int calledMethod = stack[--size];
+				for(int i=incoming.start(calledMethod); i<incoming.end(calledMethod); i++){
+					int callingMethod = callGraph.getCaller(incoming.target(i));
+					if(visited[callingMethod] != method){
+						visited[callingMethod] = method;
+						if(candidates.get(callingMethod)){
+							catching.set(callingMethod);
+							remaining--;
+						}
+						if(size == stack.length){
+							stack = Arrays.copyOf(stack, size * 2);
+						}
+						stack[size++] = callingMethod;
+					}
+				}
+			}
+			for(int catchingMethod=catching.nextSetBit(0); catchingMethod>=0; catchingMethod=catching.nextSetBit(catchingMethod+1)){
+				builder.add(method, catchingMethod);
+			}
+		}
+		this.catchingMethods = builder.build();
+		this.throwingMethods = catchingMethods.reverse(methodCount);
+	}
+
+	@Override
+	public int[] getThrowingMethods(int method) {
+		return throwingMethods.toArray(method);
+	}
+
+	@Override
+	public int[] getCatchingMethods(int method) {
+		return catchingMethods.toArray(method);
+	}
+
+	/**
+	 * Returns the number of (throwing method, catching method) pairs in the index
+	 * @return
+	 */
+	public int getFlowCount(){
+		return catchingMethods.size();
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.BitSet;
+
+/**
+ * The differences between two snapshots of a program (see ProgramFingerprint)
+ * in terms of the ids of the current snapshot.
+ */
+public class ProgramDelta {
+
+	private final ProgramSnapshot program;
+	private final BitSet changedTypes;
+	private final BitSet changedMethods;
+	private final BitSet changedSignatures;
+	private final int removedTypes;
+	private final int removedMethods;
+
+	ProgramDelta(ProgramSnapshot program, BitSet changedTypes, BitSet changedMethods, BitSet changedSignatures, int removedTypes, int removedMethods){
+		this.program = program;
+		this.changedTypes = changedTypes;
+		this.changedMethods = changedMethods;
+		this.changedSignatures = changedSignatures;
+		this.removedTypes = removedTypes;
+		this.removedMethods = removedMethods;
+	}
+
+	/**
+	 * Types that were added, changed their flags or supertypes, or lost a subtype
+	 * @return
+	 */
+	public BitSet getChangedTypes(){
+		return changedTypes;
+	}
+
+	/**
+	 * Methods that were added or changed their flags or callsites
+	 * @return
+	 */
+	public BitSet getChangedMethods(){
+		return changedMethods;
+	}
+
+	/**
+	 * Signatures of methods that were added, changed or removed
+	 * @return
+	 */
+	public BitSet getChangedSignatures(){
+		return changedSignatures;
+	}
+
+	public int getRemovedTypeCount(){
+		return removedTypes;
+	}
+
+	public int getRemovedMethodCount(){
+		return removedMethods;
+	}
+
+	public boolean isEmpty(){
+		return changedTypes.isEmpty() && changedMethods.isEmpty() && changedSignatures.isEmpty()
+				&& removedTypes == 0 && removedMethods == 0;
+	}
+
+	/**
+	 * Returns the methods whose callsites must be resolved again, which are the changed
+	 * methods and the methods with a callsite whose resolution could have changed.
+	 *
+	 * A static dispatch is affected if its target changed. A dynamic dispatch is affected
+	 * if a method with the invoked signature was added, changed or removed, if the type
+	 * declaring the invoked signature changed, or if the subtype hierarchy of a declared
+	 * receiver type contains a changed type.
+	 *
+	 * @return
+	 */
+	public BitSet getAffectedMethods(){
+		BitSet affectedMethods = (BitSet) changedMethods.clone();
+		TypeHierarchy typeHierarchy = program.getTypeHierarchy();
+		Adjacency callsites = program.getCallsites();
+		Adjacency receiverTypes = program.getReceiverTypes();
+		for(int method=0; method<program.getMethodCount(); method++){
+			if(affectedMethods.get(method)){
+				continue;
+			}
+			for(int i=callsites.start(method); i<callsites.end(method); i++){
+				int callsite = callsites.target(i);
+				if(isAffected(typeHierarchy, receiverTypes, callsite)){
+					affectedMethods.set(method);
+					break;
+				}
+			}
+		}
+		return affectedMethods;
+	}
+
+	private boolean isAffected(TypeHierarchy typeHierarchy, Adjacency receiverTypes, int callsite){
+		if(program.isStaticDispatch(callsite)){
+			int targetMethod = program.getInvokedFunction(callsite);
+			return targetMethod != ProgramSnapshot.NONE && changedMethods.get(targetMethod);
+		} else if(program.isDynamicDispatch(callsite)){
+			int methodSignature = program.getInvokedSignature(callsite);
+			if(methodSignature == ProgramSnapshot.NONE){
+				return false;
+			}
+			int signature = program.getSignature(methodSignature);
+			if(signature != ProgramSnapshot.NONE && changedSignatures.get(signature)){
+				return true;
+			}
+			int methodSignatureType = program.getDeclaringType(methodSignature);
+			if(methodSignatureType != ProgramSnapshot.NONE && changedTypes.get(methodSignatureType)){
+				return true;
+			}
+			for(int i=receiverTypes.start(callsite); i<receiverTypes.end(callsite); i++){
+				if(typeHierarchy.intersectsSubtypes(receiverTypes.target(i), changedTypes)){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,244 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.ensoftcorp.open.cg.utils.Encoding;
+
+/**
+ * Fingerprints the facts of a ProgramSnapshot that call graph resolution depends
+ * on, keyed by identifiers that are stable across index changes, so that two
+ * snapshots of the same program can be compared to find what changed.
+ *
+ * Types are keyed by their qualified name (see AtlasProgramSnapshot) and methods
+ * by the key of their declaring type and their signature. For each type the
+ * fingerprint covers its flags and direct supertypes, and for each method its
+ * flags and the facts of its local callsites (dispatch kind, invoked function,
+ * invoked signature and receiver types). Elements that share a key are always
+ * treated as changed. Callsites are keyed by the key of their method and their
+ * position among the method's local callsites.
+ *
+ * Note: A fingerprint keeps a reference to the snapshot it was computed from.
+ */
+public class ProgramFingerprint {
+
+	private final ProgramSnapshot program;
+	private final String[] typeKeys;
+	private final String[] methodKeys;
+	private final String[] callsiteKeys;
+	private final Map<String,Integer> typeIds;
+	private final Map<String,Integer> methodIds;
+	private final Map<String,Integer> callsiteIds;
+	private final Map<String,Integer> signatureIds;
+	private final Set<String> duplicateKeys;
+	private final long[] typeFingerprints;
+	private final long[] methodFingerprints;
+
+	/**
+	 * @param program
+	 * @param typeKeys the stable key of each type id
+	 * @param methodKeys the stable key of each method id
+	 * @param callsiteKeys the stable key of each callsite id (null if the callsite has no stable key)
+	 */
+	public ProgramFingerprint(ProgramSnapshot program, String[] typeKeys, String[] methodKeys, String[] callsiteKeys){
+		this.program = program;
+		this.typeKeys = typeKeys;
+		this.methodKeys = methodKeys;
+		this.callsiteKeys = callsiteKeys;
+		this.duplicateKeys = new HashSet<String>();
+		this.typeIds = index(typeKeys, duplicateKeys);
+		this.methodIds = index(methodKeys, duplicateKeys);
+		this.callsiteIds = index(callsiteKeys, duplicateKeys);
+		this.signatureIds = new HashMap<String,Integer>();
+		for(int signature=0; signature<program.getSignatureCount(); signature++){
+			signatureIds.put(program.getSignatureString(signature), signature);
+		}
+
+		this.typeFingerprints = new long[program.getTypeCount()];
+		Adjacency supertypes = program.getSupertypes();
+		for(int type=0; type<typeFingerprints.length; type++){
+			long fingerprint = Encoding.mix(program.isAbstractClass(type) ? 1 : 0);
+			for(int i=supertypes.start(type); i<supertypes.end(type); i++){
+				// order insensitive
+				fingerprint += Encoding.hash(typeKeys[supertypes.target(i)]);
+			}
+			typeFingerprints[type] = fingerprint;
+		}
+
+		this.methodFingerprints = new long[program.getMethodCount()];
+		Adjacency callsites = program.getCallsites();
+		Adjacency receiverTypes = program.getReceiverTypes();
+		for(int method=0; method<methodFingerprints.length; method++){
+			long fingerprint = Encoding.mix(program.getMethodFlags(method));
+			for(int i=callsites.start(method); i<callsites.end(method); i++){
+				int callsite = callsites.target(i);
+				long callsiteFingerprint = Encoding.mix(program.getCallsiteFlags(callsite));
+				callsiteFingerprint = Encoding.mix(callsiteFingerprint + Encoding.hash(getMethodKeyOrNull(program.getInvokedFunction(callsite))));
+				callsiteFingerprint = Encoding.mix(callsiteFingerprint + Encoding.hash(getMethodKeyOrNull(program.getInvokedSignature(callsite))));
+				for(int j=receiverTypes.start(callsite); j<receiverTypes.end(callsite); j++){
+					callsiteFingerprint += Encoding.hash(typeKeys[receiverTypes.target(j)]);
+				}
+				// order insensitive
+				fingerprint += Encoding.mix(callsiteFingerprint);
+			}
+			methodFingerprints[method] = fingerprint;
+		}
+	}
+
+	public ProgramSnapshot getProgram(){
+		return program;
+	}
+
+	/**
+	 * Returns the stable key of the method or null if the key is not unique
+	 * @param method
+	 * @return
+	 */
+	public String getMethodKey(int method){
+		return unique(methodKeys[method]);
+	}
+
+	/**
+	 * Returns the stable key of the callsite or null if the callsite has no unique key
+	 * @param callsite
+	 * @return
+	 */
+	public String getCallsiteKey(int callsite){
+		return unique(callsiteKeys[callsite]);
+	}
+
+	/**
+	 * Returns the method with the given stable key or NONE
+	 * @param key
+	 * @return
+	 */
+	public int getMethodId(String key){
+		return getId(methodIds, key);
+	}
+
+	/**
+	 * Returns the callsite with the given stable key or NONE
+	 * @param key
+	 * @return
+	 */
+	public int getCallsiteId(String key){
+		return getId(callsiteIds, key);
+	}
+
+	/**
+	 * Returns a hash of every fingerprinted fact of the program, two snapshots with 
+	 * the same hash are (almost certainly) the same program
+	 * @return
+	 */
+	public long getProgramHash(){
+		long programHash = Encoding.mix(typeKeys.length) + Encoding.mix(methodKeys.length);
+		for(int type=0; type<typeKeys.length; type++){
+			programHash += Encoding.mix(Encoding.hash(typeKeys[type]) + typeFingerprints[type]);
+		}
+		for(int method=0; method<methodKeys.length; method++){
+			programHash += Encoding.mix(Encoding.hash(methodKeys[method]) ^ methodFingerprints[method]);
+		}
+		return programHash;
+	}
+
+	/**
+	 * Compares this (current) fingerprint to the fingerprint of a previous snapshot
+	 * @param previous
+	 * @return the changes in terms of the ids of this fingerprint's snapshot
+	 */
+	public ProgramDelta compare(ProgramFingerprint previous){
+		BitSet changedTypes = new BitSet(typeKeys.length);
+		BitSet changedMethods = new BitSet(methodKeys.length);
+		BitSet changedSignatures = new BitSet(program.getSignatureCount());
+		int removedTypes = 0;
+		int removedMethods = 0;
+
+		// added and changed types
+		for(int type=0; type<typeKeys.length; type++){
+			Integer previousType = previous.typeIds.get(typeKeys[type]);
+			if(previousType == null || isDuplicate(typeKeys[type], previous)
+					|| previous.typeFingerprints[previousType] != typeFingerprints[type]){
+				changedTypes.set(type);
+			}
+		}
+
+		// a changed or removed type may no longer be a subtype of its previous supertypes,
+		// so the previous supertypes that still exist are treated as changed as well
+		Adjacency previousSupertypes = previous.program.getSupertypes();
+		for(int previousType=0; previousType<previous.typeKeys.length; previousType++){
+			String key = previous.typeKeys[previousType];
+			Integer type = typeIds.get(key);
+			if(type == null){
+				removedTypes++;
+			}
+			if(type == null || changedTypes.get(type)){
+				for(int i=previousSupertypes.start(previousType); i<previousSupertypes.end(previousType); i++){
+					Integer supertype = typeIds.get(previous.typeKeys[previousSupertypes.target(i)]);
+					if(supertype != null){
+						changedTypes.set(supertype);
+					}
+				}
+			}
+		}
+
+		// added and changed methods
+		for(int method=0; method<methodKeys.length; method++){
+			Integer previousMethod = previous.methodIds.get(methodKeys[method]);
+			if(previousMethod == null || isDuplicate(methodKeys[method], previous)
+					|| previous.methodFingerprints[previousMethod] != methodFingerprints[method]){
+				changedMethods.set(method);
+				int signature = program.getSignature(method);
+				if(signature != ProgramSnapshot.NONE){
+					changedSignatures.set(signature);
+				}
+			}
+		}
+
+		// removed methods
+		for(int previousMethod=0; previousMethod<previous.methodKeys.length; previousMethod++){
+			if(!methodIds.containsKey(previous.methodKeys[previousMethod])){
+				removedMethods++;
+				int previousSignature = previous.program.getSignature(previousMethod);
+				if(previousSignature != ProgramSnapshot.NONE){
+					Integer signature = signatureIds.get(previous.program.getSignatureString(previousSignature));
+					if(signature != null){
+						changedSignatures.set(signature);
+					}
+				}
+			}
+		}
+
+		return new ProgramDelta(program, changedTypes, changedMethods, changedSignatures, removedTypes, removedMethods);
+	}
+
+	private boolean isDuplicate(String key, ProgramFingerprint previous){
+		return duplicateKeys.contains(key) || previous.duplicateKeys.contains(key);
+	}
+
+	private String getMethodKeyOrNull(int method){
+		return method == ProgramSnapshot.NONE ? null : methodKeys[method];
+	}
+
+	private String unique(String key){
+		return key == null || duplicateKeys.contains(key) ? null : key;
+	}
+
+	private int getId(Map<String,Integer> ids, String key){
+		Integer id = ids.get(key);
+		return id == null || duplicateKeys.contains(key) ? ProgramSnapshot.NONE : id;
+	}
+
+	private static Map<String,Integer> index(String[] keys, Set<String> duplicateKeys){
+		Map<String,Integer> ids = new HashMap<String,Integer>();
+		for(int id=0; id<keys.length; id++){
+			if(keys[id] != null && ids.put(keys[id], id) != null){
+				duplicateKeys.add(keys[id]);
+			}
+		}
+		return ids;
+	}
+
+}
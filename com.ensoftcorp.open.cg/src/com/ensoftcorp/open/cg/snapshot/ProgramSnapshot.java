@@ -0,0 +1,558 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A read-only, primitive-indexed snapshot of the parts of the program graph
+ * that the call graph construction algorithms query over and over again.
+ *
+ * Types, methods, callsites and fields are interned into dense integer ids
+ * (each kind has its own id space starting at 0) and the relationships between
+ * them are stored as CSR adjacency arrays. Nothing in this class depends on
+ * Atlas, see AtlasProgramSnapshot for the mapping to and from graph elements.
+ */
+public class ProgramSnapshot {
+
+	/**
+	 * Sentinel for a missing id
+	 */
+	public static final int NONE = -1;
+
+	// type flags
+	public static final int TYPE_ABSTRACT_CLASS = 1;
+
+	// method flags
+	public static final int METHOD_ABSTRACT = 1;
+	public static final int METHOD_STATIC = 1 << 1;
+	public static final int METHOD_CONSTRUCTOR = 1 << 2;
+	public static final int METHOD_INITIALIZER = 1 << 3; // methods named <init>
+	public static final int METHOD_PUBLIC = 1 << 4;
+
+	// callsite flags
+	public static final int CALLSITE_STATIC_DISPATCH = 1;
+	public static final int CALLSITE_DYNAMIC_DISPATCH = 1 << 1;
+
+	// types
+	private final int[] typeFlags;
+	private final int[] typeStaticInitializer;
+	private final Adjacency supertypes;
+	private final Adjacency subtypes;
+	private final TypeHierarchy typeHierarchy;
+	private final Adjacency typeMethods;
+
+	// methods
+	private final int[] methodFlags;
+	private final int[] methodDeclaringType;
+	private final int[] methodSignature;
+	private final String[] signatures;
+	private final Adjacency signatureMethods;
+	private final Adjacency methodCallsites;
+	private final Adjacency methodContainedCallsites;
+	private final Adjacency methodAllocationTypes;
+	private final Adjacency methodParameterTypes;
+	private final Adjacency methodReturnTypes;
+	private final Adjacency methodReadFields;
+	private final Adjacency methodWrittenFields;
+
+	// callsites
+	private final int[] callsiteFlags;
+	private final int[] callsiteMethod;
+	private final int[] callsiteInvokedFunction;
+	private final int[] callsiteInvokedSignature;
+	private final Adjacency callsiteReceiverTypes;
+
+	// fields
+	private final Adjacency fieldTypes;
+	private final Adjacency fieldReadingMethods;
+
+	private ProgramSnapshot(Builder builder){
+		this.typeFlags = builder.typeFlags;
+		this.supertypes = builder.supertypes.build();
+		this.subtypes = supertypes.reverse(builder.typeFlags.length);
+		this.typeHierarchy = new TypeHierarchy(supertypes, subtypes);
+
+		this.methodFlags = builder.methodFlags;
+		this.methodDeclaringType = builder.methodDeclaringType;
+		this.methodSignature = builder.methodSignature;
+		this.signatures = builder.signatures.keySet().toArray(new String[builder.signatures.size()]);
+		for(Map.Entry<String,Integer> entry : builder.signatures.entrySet()){
+			signatures[entry.getValue()] = entry.getKey();
+		}
+		Adjacency.Builder typeMethods = new Adjacency.Builder(typeFlags.length);
+		this.typeStaticInitializer = new int[typeFlags.length];
+		Arrays.fill(typeStaticInitializer, NONE);
+		for(int method=0; method<methodFlags.length; method++){
+			int type = methodDeclaringType[method];
+			if(type != NONE){
+				typeMethods.add(type, method);
+				if(builder.methodStaticInitializer.get(method) && typeStaticInitializer[type] == NONE){
+					typeStaticInitializer[type] = method;
+				}
+			}
+		}
+		this.typeMethods = typeMethods.build();
+
+		// index the virtual methods (non-static, non-constructor) of each signature, visiting
+		// the types in order keeps the methods of each signature grouped by declaring type
+		Adjacency.Builder signatureMethods = new Adjacency.Builder(signatures.length);
+		for(int type=0; type<typeFlags.length; type++){
+			for(int i=this.typeMethods.start(type); i<this.typeMethods.end(type); i++){
+				int method = this.typeMethods.target(i);
+				if(methodSignature[method] != NONE && (methodFlags[method] & (METHOD_CONSTRUCTOR | METHOD_STATIC)) == 0){
+					signatureMethods.add(methodSignature[method], method);
+				}
+			}
+		}
+		this.signatureMethods = signatureMethods.build();
+		this.methodContainedCallsites = builder.methodContainedCallsites.build();
+		this.methodAllocationTypes = builder.methodAllocationTypes.build();
+		this.methodParameterTypes = builder.methodParameterTypes.build();
+		this.methodReturnTypes = builder.methodReturnTypes.build();
+		this.methodReadFields = builder.methodReadFields.build();
+		this.methodWrittenFields = builder.methodWrittenFields.build();
+
+		this.callsiteFlags = builder.callsiteFlags;
+		this.callsiteMethod = builder.callsiteMethod;
+		this.callsiteInvokedFunction = builder.callsiteInvokedFunction;
+		this.callsiteInvokedSignature = builder.callsiteInvokedSignature;
+		this.callsiteReceiverTypes = builder.callsiteReceiverTypes.build();
+		Adjacency.Builder methodCallsites = new Adjacency.Builder(methodFlags.length);
+		for(int callsite=0; callsite<callsiteFlags.length; callsite++){
+			if(callsiteMethod[callsite] != NONE){
+				methodCallsites.add(callsiteMethod[callsite], callsite);
+			}
+		}
+		this.methodCallsites = methodCallsites.build();
+
+		this.fieldTypes = builder.fieldTypes.build();
+		this.fieldReadingMethods = builder.fieldReadingMethods.build();
+	}
+
+	public int getTypeCount(){
+		return typeFlags.length;
+	}
+
+	public int getMethodCount(){
+		return methodFlags.length;
+	}
+
+	public int getCallsiteCount(){
+		return callsiteFlags.length;
+	}
+
+	public int getFieldCount(){
+		return fieldTypes.rows();
+	}
+
+	/**
+	 * Returns true if the type is an abstract class
+	 * @param type
+	 * @return
+	 */
+	public boolean isAbstractClass(int type){
+		return (typeFlags[type] & TYPE_ABSTRACT_CLASS) != 0;
+	}
+
+	/**
+	 * Returns the static initializer (&lt;clinit&gt;) of the type or NONE
+	 * @param type
+	 * @return
+	 */
+	public int getStaticInitializer(int type){
+		return typeStaticInitializer[type];
+	}
+
+	/**
+	 * Type to direct supertype (Supertype edges)
+	 * @return
+	 */
+	public Adjacency getSupertypes(){
+		return supertypes;
+	}
+
+	/**
+	 * Type to direct subtype (reversed Supertype edges)
+	 * @return
+	 */
+	public Adjacency getSubtypes(){
+		return subtypes;
+	}
+
+	/**
+	 * Type to the methods it declares (Contains edges)
+	 * @return
+	 */
+	public Adjacency getTypeMethods(){
+		return typeMethods;
+	}
+
+	public boolean hasMethodFlag(int method, int flag){
+		return (methodFlags[method] & flag) != 0;
+	}
+
+	public int getMethodFlags(int method){
+		return methodFlags[method];
+	}
+
+	/**
+	 * Returns the type declaring the method or NONE
+	 * @param method
+	 * @return
+	 */
+	public int getDeclaringType(int method){
+		return methodDeclaringType[method];
+	}
+
+	/**
+	 * Returns the interned signature id of the method or NONE if the method has no signature
+	 * @param method
+	 * @return
+	 */
+	public int getSignature(int method){
+		return methodSignature[method];
+	}
+
+	/**
+	 * Returns the signature string for an interned signature id
+	 * @param signature
+	 * @return
+	 */
+	public String getSignatureString(int signature){
+		return signatures[signature];
+	}
+
+	/**
+	 * Signature to the non-static, non-constructor methods with that signature,
+	 * grouped by declaring type
+	 * @return
+	 */
+	public Adjacency getSignatureMethods(){
+		return signatureMethods;
+	}
+
+	/**
+	 * Returns the number of interned signatures
+	 * @return
+	 */
+	public int getSignatureCount(){
+		return signatures.length;
+	}
+
+	/**
+	 * Method to the callsites it declares locally (excluding callsites of nested types and methods)
+	 * @return
+	 */
+	public Adjacency getCallsites(){
+		return methodCallsites;
+	}
+
+	/**
+	 * Method to every callsite it transitively contains
+	 * @return
+	 */
+	public Adjacency getContainedCallsites(){
+		return methodContainedCallsites;
+	}
+
+	/**
+	 * Method to the types of the instantiations it transitively contains
+	 * @return
+	 */
+	public Adjacency getAllocationTypes(){
+		return methodAllocationTypes;
+	}
+
+	/**
+	 * Method to the declared types of its parameters
+	 * @return
+	 */
+	public Adjacency getParameterTypes(){
+		return methodParameterTypes;
+	}
+
+	/**
+	 * Method to the declared types of its return value
+	 * @return
+	 */
+	public Adjacency getReturnTypes(){
+		return methodReturnTypes;
+	}
+
+	/**
+	 * Method to the fields that flow into the method (or its contained declarations)
+	 * @return
+	 */
+	public Adjacency getReadFields(){
+		return methodReadFields;
+	}
+
+	/**
+	 * Method to the fields the method (or its contained declarations) flow into
+	 * @return
+	 */
+	public Adjacency getWrittenFields(){
+		return methodWrittenFields;
+	}
+
+	public int getCallsiteFlags(int callsite){
+		return callsiteFlags[callsite];
+	}
+
+	public boolean isStaticDispatch(int callsite){
+		return (callsiteFlags[callsite] & CALLSITE_STATIC_DISPATCH) != 0;
+	}
+
+	public boolean isDynamicDispatch(int callsite){
+		return (callsiteFlags[callsite] & CALLSITE_DYNAMIC_DISPATCH) != 0;
+	}
+
+	/**
+	 * Returns the method locally declaring the callsite or NONE
+	 * @param callsite
+	 * @return
+	 */
+	public int getCallsiteMethod(int callsite){
+		return callsiteMethod[callsite];
+	}
+
+	/**
+	 * Returns the target of the InvokedFunction edge of a static dispatch or NONE
+	 * @param callsite
+	 * @return
+	 */
+	public int getInvokedFunction(int callsite){
+		return callsiteInvokedFunction[callsite];
+	}
+
+	/**
+	 * Returns the target of the InvokedSignature edge of a dynamic dispatch or NONE
+	 * @param callsite
+	 * @return
+	 */
+	public int getInvokedSignature(int callsite){
+		return callsiteInvokedSignature[callsite];
+	}
+
+	/**
+	 * Callsite to the declared types of its receiver object
+	 * @return
+	 */
+	public Adjacency getReceiverTypes(){
+		return callsiteReceiverTypes;
+	}
+
+	/**
+	 * Field to its declared types
+	 * @return
+	 */
+	public Adjacency getFieldTypes(){
+		return fieldTypes;
+	}
+
+	/**
+	 * Field to the methods that read from the field
+	 * @return
+	 */
+	public Adjacency getReadingMethods(){
+		return fieldReadingMethods;
+	}
+
+	/**
+	 * Returns the memoized subtype and supertype closures of the types
+	 * @return
+	 */
+	public TypeHierarchy getTypeHierarchy(){
+		return typeHierarchy;
+	}
+
+	/**
+	 * Returns the reflexive transitive subtypes of the given types
+	 * (the nodes of typeHierarchy.reverse(types))
+	 * @param types
+	 * @return
+	 */
+	public BitSet getSubtypeHierarchy(int... types){
+		return typeHierarchy.getSubtypes(types);
+	}
+
+	/**
+	 * Returns the reflexive transitive subtypes of the types in the given row of an adjacency
+	 * @param adjacency
+	 * @param row
+	 * @return
+	 */
+	public BitSet getSubtypeHierarchy(Adjacency adjacency, int row){
+		return typeHierarchy.getSubtypes(adjacency.toArray(row));
+	}
+
+	/**
+	 * Returns the reflexive transitive supertypes of the given types
+	 * (the nodes of typeHierarchy.forward(types))
+	 * @param types
+	 * @return
+	 */
+	public BitSet getSupertypeHierarchy(int... types){
+		return typeHierarchy.getSupertypes(types);
+	}
+
+	/**
+	 * Collects program facts into a snapshot. The caller is responsible for
+	 * assigning dense ids, the number of each kind of element is fixed up front.
+	 */
+	public static class Builder {
+
+		private final int[] typeFlags;
+		private final Adjacency.Builder supertypes;
+
+		private final int[] methodFlags;
+		private final int[] methodDeclaringType;
+		private final int[] methodSignature;
+		private final BitSet methodStaticInitializer;
+		private final Map<String,Integer> signatures = new HashMap<String,Integer>();
+		private final Adjacency.Builder methodContainedCallsites;
+		private final Adjacency.Builder methodAllocationTypes;
+		private final Adjacency.Builder methodParameterTypes;
+		private final Adjacency.Builder methodReturnTypes;
+		private final Adjacency.Builder methodReadFields;
+		private final Adjacency.Builder methodWrittenFields;
+
+		private final int[] callsiteFlags;
+		private final int[] callsiteMethod;
+		private final int[] callsiteInvokedFunction;
+		private final int[] callsiteInvokedSignature;
+		private final Adjacency.Builder callsiteReceiverTypes;
+
+		private final Adjacency.Builder fieldTypes;
+		private final Adjacency.Builder fieldReadingMethods;
+
+		public Builder(int types, int methods, int callsites, int fields){
+			typeFlags = new int[types];
+			supertypes = new Adjacency.Builder(types);
+
+			methodFlags = new int[methods];
+			methodDeclaringType = new int[methods];
+			Arrays.fill(methodDeclaringType, NONE);
+			methodSignature = new int[methods];
+			Arrays.fill(methodSignature, NONE);
+			methodStaticInitializer = new BitSet(methods);
+			methodContainedCallsites = new Adjacency.Builder(methods);
+			methodAllocationTypes = new Adjacency.Builder(methods);
+			methodParameterTypes = new Adjacency.Builder(methods);
+			methodReturnTypes = new Adjacency.Builder(methods);
+			methodReadFields = new Adjacency.Builder(methods);
+			methodWrittenFields = new Adjacency.Builder(methods);
+
+			callsiteFlags = new int[callsites];
+			callsiteMethod = new int[callsites];
+			Arrays.fill(callsiteMethod, NONE);
+			callsiteInvokedFunction = new int[callsites];
+			Arrays.fill(callsiteInvokedFunction, NONE);
+			callsiteInvokedSignature = new int[callsites];
+			Arrays.fill(callsiteInvokedSignature, NONE);
+			callsiteReceiverTypes = new Adjacency.Builder(callsites);
+
+			fieldTypes = new Adjacency.Builder(fields);
+			fieldReadingMethods = new Adjacency.Builder(fields);
+		}
+
+		public void setTypeFlags(int type, int flags){
+			typeFlags[type] = flags;
+		}
+
+		public void addSupertype(int type, int supertype){
+			supertypes.add(type, supertype);
+		}
+
+		public void setMethodFlags(int method, int flags){
+			methodFlags[method] = flags;
+		}
+
+		public void setDeclaringType(int method, int type){
+			methodDeclaringType[method] = type;
+		}
+
+		/**
+		 * Marks the method as the static initializer (&lt;clinit&gt;) of its declaring type
+		 * @param method
+		 */
+		public void setStaticInitializer(int method){
+			methodStaticInitializer.set(method);
+		}
+
+		public void setSignature(int method, String signature){
+			if(signature != null){
+				Integer id = signatures.get(signature);
+				if(id == null){
+					id = signatures.size();
+					signatures.put(signature, id);
+				}
+				methodSignature[method] = id;
+			}
+		}
+
+		public void addContainedCallsite(int method, int callsite){
+			methodContainedCallsites.add(method, callsite);
+		}
+
+		public void addAllocationType(int method, int type){
+			methodAllocationTypes.add(method, type);
+		}
+
+		public void addParameterType(int method, int type){
+			methodParameterTypes.add(method, type);
+		}
+
+		public void addReturnType(int method, int type){
+			methodReturnTypes.add(method, type);
+		}
+
+		public void addReadField(int method, int field){
+			methodReadFields.add(method, field);
+		}
+
+		public void addWrittenField(int method, int field){
+			methodWrittenFields.add(method, field);
+		}
+
+		public void setCallsiteFlags(int callsite, int flags){
+			callsiteFlags[callsite] = flags;
+		}
+
+		/**
+		 * Sets the method that locally declares the callsite
+		 * @param callsite
+		 * @param method
+		 */
+		public void setCallsiteMethod(int callsite, int method){
+			callsiteMethod[callsite] = method;
+		}
+
+		public void setInvokedFunction(int callsite, int method){
+			callsiteInvokedFunction[callsite] = method;
+		}
+
+		public void setInvokedSignature(int callsite, int method){
+			callsiteInvokedSignature[callsite] = method;
+		}
+
+		public void addReceiverType(int callsite, int type){
+			callsiteReceiverTypes.add(callsite, type);
+		}
+
+		public void addFieldType(int field, int type){
+			fieldTypes.add(field, type);
+		}
+
+		public void addReadingMethod(int field, int method){
+			fieldReadingMethods.add(field, method);
+		}
+
+		public ProgramSnapshot build(){
+			return new ProgramSnapshot(this);
+		}
+	}
+
+}
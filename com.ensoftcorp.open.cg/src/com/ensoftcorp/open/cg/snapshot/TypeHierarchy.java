@@ -0,0 +1,184 @@
+package com.ensoftcorp.open.cg.snapshot;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Memoized reflexive transitive subtype and supertype closures over the type
+ * ids of a ProgramSnapshot.
+ *
+ * The closure of a type is computed the first time it is requested and kept
+ * for the lifetime of the snapshot, so every analysis sharing the snapshot
+ * shares the closures. Closures are stored either as a sorted array of type ids
+ * or as a bitset, whichever is smaller, since most types only have a handful of
+ * subtypes while the closures near the root of the hierarchy cover most types.
+ *
+ * Lookups are safe to make from multiple threads, a closure computed by two
+ * threads at once is just computed twice.
+ */
+public class TypeHierarchy {
+
+	private final int typeCount;
+	private final Adjacency supertypes;
+	private final Adjacency subtypes;
+	private final AtomicReferenceArray<Closure> subtypeClosures;
+	private final AtomicReferenceArray<Closure> supertypeClosures;
+
+	TypeHierarchy(Adjacency supertypes, Adjacency subtypes){
+		this.typeCount = supertypes.rows();
+		this.supertypes = supertypes;
+		this.subtypes = subtypes;
+		this.subtypeClosures = new AtomicReferenceArray<Closure>(typeCount);
+		this.supertypeClosures = new AtomicReferenceArray<Closure>(typeCount);
+	}
+
+	/**
+	 * Returns the reflexive transitive subtypes of the given types
+	 * @param types
+	 * @return a new bitset that the caller is free to modify
+	 */
+	public BitSet getSubtypes(int... types){
+		return union(subtypeClosures, subtypes, types);
+	}
+
+	/**
+	 * Returns the reflexive transitive supertypes of the given types
+	 * @param types
+	 * @return a new bitset that the caller is free to modify
+	 */
+	public BitSet getSupertypes(int... types){
+		return union(supertypeClosures, supertypes, types);
+	}
+
+	/**
+	 * Returns true if the subtype is the given type or one of its transitive subtypes
+	 * @param type
+	 * @param subtype
+	 * @return
+	 */
+	public boolean isSubtype(int type, int subtype){
+		return getClosure(subtypeClosures, subtypes, type).contains(subtype);
+	}
+
+	/**
+	 * Returns true if any of the given types is the given type or one of its transitive subtypes
+	 * @param type
+	 * @param types
+	 * @return
+	 */
+	public boolean intersectsSubtypes(int type, BitSet types){
+		return getClosure(subtypeClosures, subtypes, type).intersects(types);
+	}
+
+	/**
+	 * Returns the number of memoized closures (subtype and supertype)
+	 * @return
+	 */
+	public int getCachedClosureCount(){
+		int count = 0;
+		for(int type=0; type<typeCount; type++){
+			if(subtypeClosures.get(type) != null){
+				count++;
+			}
+			if(supertypeClosures.get(type) != null){
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private BitSet union(AtomicReferenceArray<Closure> closures, Adjacency adjacency, int[] types){
+		BitSet result = new BitSet(typeCount);
+		for(int type : types){
+			getClosure(closures, adjacency, type).addTo(result);
+		}
+		return result;
+	}
+
+	private Closure getClosure(AtomicReferenceArray<Closure> closures, Adjacency adjacency, int type){
+		Closure closure = closures.get(type);
+		if(closure == null){
+			closure = Closure.create(traverse(adjacency, type));
+			closures.set(type, closure);
+		}
+		return closure;
+	}
+
+	private BitSet traverse(Adjacency adjacency, int root){
+		BitSet visited = new BitSet(typeCount);
+		visited.set(root);
+		int[] stack = new int[16];
+		int size = 0;
+		stack[size++] = root;
+		while(size > 0){
+			int type = stack[--size];
+			for(int i=adjacency.start(type); i<adjacency.end(type); i++){
+				int next = adjacency.target(i);
+				if(!visited.get(next)){
+					visited.set(next);
+					if(size == stack.length){
+						stack = Arrays.copyOf(stack, size * 2);
+					}
+					stack[size++] = next;
+				}
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * An immutable set of type ids stored as either a sorted array or a bitset
+	 */
+	private static class Closure {
+
+		private final int[] members;
+		private final BitSet bits;
+
+		private Closure(int[] members, BitSet bits){
+			this.members = members;
+			this.bits = bits;
+		}
+
+		private static Closure create(BitSet types){
+			// an array entry costs 32 bits while a bitset costs a bit per id up to the largest member
+			if((long) types.cardinality() * Integer.SIZE < types.length()){
+				return new Closure(types.stream().toArray(), null);
+			} else {
+				return new Closure(null, BitSet.valueOf(types.toLongArray()));
+			}
+		}
+
+		private boolean contains(int type){
+			if(bits != null){
+				return bits.get(type);
+			} else {
+				return Arrays.binarySearch(members, type) >= 0;
+			}
+		}
+
+		private boolean intersects(BitSet types){
+			if(bits != null){
+				return bits.intersects(types);
+			} else {
+				for(int type : members){
+					if(types.get(type)){
+						return true;
+					}
+				}
+				return false;
+			}
+		}
+
+		private void addTo(BitSet result){
+			if(bits != null){
+				result.or(bits);
+			} else {
+				for(int type : members){
+					result.set(type);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.ensoftcorp.open.cg.summary;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Extracts a ClassSummary from a class file with the ASM visitor API. Frames and
+ * debug information are skipped and no tree of the class is built, so a class is
+ * summarized in a single pass over its bytes.
+ *
+ * Summarizing only reads the given bytes, so classes can be summarized concurrently.
+ */
+public class ClassSummarizer extends ClassVisitor {
+
+	private static final String LAMBDA_METAFACTORY = "java/lang/invoke/LambdaMetafactory";
+
+	private ClassSummary summary;
+
+	private ClassSummarizer(){
+		super(Opcodes.ASM6);
+	}
+
+	/**
+	 * Summarizes the given class file
+	 * @param classBytes
+	 * @return
+	 */
+	public static ClassSummary summarize(byte[] classBytes){
+		ClassSummarizer summarizer = new ClassSummarizer();
+		new ClassReader(classBytes).accept(summarizer, ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+		return summarizer.summary;
+	}
+
+	@Override
+	public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+		summary = new ClassSummary(name);
+	}
+
+	@Override
+	public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+		final ClassSummary.Method method = summary.addMethod(access, name, descriptor);
+		return new MethodVisitor(Opcodes.ASM6) {
+			@Override
+			public void visitTypeInsn(int opcode, String type) {
+				// NEW creates an instance of the type, ANEWARRAY, CHECKCAST and INSTANCEOF do not
+				if(opcode == Opcodes.NEW){
+					method.addAllocation(type);
+				}
+			}
+
+			@Override
+			public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+				method.addInvocation(new ClassSummary.Invocation(opcode, owner, name, descriptor));
+			}
+
+			@Override
+			public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethod, Object... bootstrapArguments) {
+				// a lambda or method reference is bootstrapped by the LambdaMetafactory (metafactory or altMetafactory),
+				// the second bootstrap argument is the handle of the implementation method
+				if(bootstrapMethod.getOwner().equals(LAMBDA_METAFACTORY) && bootstrapArguments.length > 1 && bootstrapArguments[1] instanceof Handle){
+					Handle implementation = (Handle) bootstrapArguments[1];
+					method.addInvocation(new ClassSummary.Invocation(Opcodes.INVOKEDYNAMIC, implementation.getOwner(), implementation.getName(), implementation.getDesc(), implementation.getTag()));
+				}
+			}
+		};
+	}
+
+}
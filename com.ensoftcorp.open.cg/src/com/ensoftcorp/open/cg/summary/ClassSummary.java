@@ -0,0 +1,158 @@
+package com.ensoftcorp.open.cg.summary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The facts of a library class file needed to summarize its methods, collected
+ * by a ClassSummarizer so that the class file does not need to be kept around
+ * (or parsed into a tree) while the summaries are written to the graph.
+ *
+ * Names are JVM internal names (ex: java/util/Iterator) and descriptors are JVM
+ * method descriptors (ex: (Ljava/lang/Object;)Z).
+ */
+public class ClassSummary {
+
+	private final String name;
+	private final List<Method> methods = new ArrayList<Method>();
+
+	public ClassSummary(String name){
+		this.name = name;
+	}
+
+	/**
+	 * Returns the internal name of the class
+	 * @return
+	 */
+	public String getName(){
+		return name;
+	}
+
+	public List<Method> getMethods(){
+		return Collections.unmodifiableList(methods);
+	}
+
+	Method addMethod(int access, String name, String descriptor){
+		Method method = new Method(access, name, descriptor);
+		methods.add(method);
+		return method;
+	}
+
+	/**
+	 * A method declared by the class
+	 */
+	public static class Method {
+
+		private final int access;
+		private final String name;
+		private final String descriptor;
+		private final List<Invocation> invocations = new ArrayList<Invocation>();
+		private final Set<String> allocations = new LinkedHashSet<String>();
+
+		private Method(int access, String name, String descriptor){
+			this.access = access;
+			this.name = name;
+			this.descriptor = descriptor;
+		}
+
+		public int getAccess(){
+			return access;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public String getDescriptor(){
+			return descriptor;
+		}
+
+		/**
+		 * Returns the method invocation instructions of the method body in program order
+		 * @return
+		 */
+		public List<Invocation> getInvocations(){
+			return Collections.unmodifiableList(invocations);
+		}
+
+		void addInvocation(Invocation invocation){
+			invocations.add(invocation);
+		}
+
+		/**
+		 * Returns the internal names of the types instantiated by the method body
+		 * (each type is listed once, in order of its first allocation)
+		 * @return
+		 */
+		public Set<String> getAllocations(){
+			return Collections.unmodifiableSet(allocations);
+		}
+
+		void addAllocation(String type){
+			allocations.add(type);
+		}
+	}
+
+	/**
+	 * A method invocation instruction. An invokedynamic instruction that creates a
+	 * lambda or method reference is recorded as an invocation of its implementation
+	 * method, the owner, name and descriptor are those of the implementation method.
+	 */
+	public static class Invocation {
+
+		private final int opcode;
+		private final String owner;
+		private final String name;
+		private final String descriptor;
+		private final int handleKind;
+
+		Invocation(int opcode, String owner, String name, String descriptor){
+			this(opcode, owner, name, descriptor, 0);
+		}
+
+		Invocation(int opcode, String owner, String name, String descriptor, int handleKind){
+			this.opcode = opcode;
+			this.owner = owner;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.handleKind = handleKind;
+		}
+
+		/**
+		 * Returns the invocation opcode (ex: Opcodes.INVOKEVIRTUAL)
+		 * @return
+		 */
+		public int getOpcode(){
+			return opcode;
+		}
+
+		/**
+		 * Returns the internal name of the type owning the invoked method
+		 * @return
+		 */
+		public String getOwner(){
+			return owner;
+		}
+
+		public String getName(){
+			return name;
+		}
+
+		public String getDescriptor(){
+			return descriptor;
+		}
+
+		/**
+		 * Returns the kind of the implementation method handle of an invokedynamic
+		 * instruction (ex: Opcodes.H_INVOKESTATIC), or 0 for other instructions
+		 * @return
+		 */
+		public int getHandleKind(){
+			return handleKind;
+		}
+	}
+
+}
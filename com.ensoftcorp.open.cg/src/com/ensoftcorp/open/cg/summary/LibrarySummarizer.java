@@ -0,0 +1,219 @@
+package com.ensoftcorp.open.cg.summary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.open.cg.log.Log;
+
+/**
+ * A streaming pipeline that summarizes the callsites of library classes.
+ *
+ * Each jar is read in one sequential pass over its entries. The class files of
+ * interest are summarized (see ClassSummarizer) on a bounded pool of worker
+ * threads, while the summaries are written to the graph (see MethodSummary) by
+ * the thread that runs the pipeline, so all graph mutations come from a single
+ * writer. At most a fixed number of classes are in flight at once, which bounds
+ * the memory held by read but unwritten classes.
+ *
+ * If a LibrarySummaryStore is given, the summaries of a jar are first looked up
+ * in the store by the jar's digest and only the entries that are not stored are
+ * read from the jar, after which the store is updated.
+ */
+public class LibrarySummarizer {
+
+	private final ExecutorService pool;
+	private final int maxInFlight;
+	private final LibrarySummaryStore store;
+	private final MethodIndex methodIndex = new MethodIndex();
+
+	/**
+	 * @param parallelism the number of worker threads summarizing classes
+	 * @param store the store of previously computed summaries (null to always read the jars)
+	 */
+	public LibrarySummarizer(int parallelism, LibrarySummaryStore store){
+		parallelism = Math.max(1, parallelism);
+		this.pool = Executors.newFixedThreadPool(parallelism);
+		this.maxInFlight = parallelism * 4;
+		this.store = store;
+	}
+
+	/**
+	 * Summarizes the callsites of the given class file entries of a jar
+	 * @param jar
+	 * @param types the type node of each class file entry (ex: java/util/ArrayList.class) to summarize
+	 * @return the entries that were not found in the jar
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	public Set<String> summarize(File jar, Map<String,Node> types) throws IOException, InterruptedException {
+		if(store == null){
+			return summarize(jar, types, null);
+		}
+		
+		// write the stored summaries, and find the entries that still need to be read
+		String digest = LibrarySummaryStore.digest(jar);
+		LibrarySummaryStore.StoredLibrary storedLibrary = store.load(digest);
+		Map<String,ClassSummary> summaries = new HashMap<String,ClassSummary>();
+		Set<String> missingEntries = new HashSet<String>();
+		Map<String,Node> remainingTypes = new HashMap<String,Node>();
+		if(storedLibrary != null){
+			summaries.putAll(storedLibrary.getSummaries());
+			missingEntries.addAll(storedLibrary.getMissingEntries());
+		}
+		for(Map.Entry<String,Node> type : types.entrySet()){
+			ClassSummary summary = summaries.get(type.getKey());
+			if(summary != null){
+				write(type.getKey(), type.getValue(), summary);
+			} else if(!missingEntries.contains(type.getKey())){
+				remainingTypes.put(type.getKey(), type.getValue());
+			}
+		}
+		
+		if(!remainingTypes.isEmpty()){
+			missingEntries.addAll(summarize(jar, remainingTypes, summaries));
+			store.save(digest, summaries, missingEntries);
+		}
+		
+		Set<String> result = new HashSet<String>(types.keySet());
+		result.retainAll(missingEntries);
+		return result;
+	}
+
+	/**
+	 * Summarizes the given class file entries in a single pass over the jar
+	 * @param jar
+	 * @param types
+	 * @param summaries collects the summary of each summarized entry (may be null)
+	 * @return the entries that were not found in the jar
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	private Set<String> summarize(File jar, Map<String,Node> types, Map<String,ClassSummary> summaries) throws IOException, InterruptedException {
+		Set<String> missingEntries = new HashSet<String>(types.keySet());
+		CompletionService<SummarizedClass> completionService = new ExecutorCompletionService<SummarizedClass>(pool);
+		int inFlight = 0;
+		try (ZipFile zipFile = new ZipFile(jar)) {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while(entries.hasMoreElements()){
+				ZipEntry entry = entries.nextElement();
+				final Node type = types.get(entry.getName());
+				if(type == null || entry.isDirectory() || !missingEntries.remove(entry.getName())){
+					continue;
+				}
+				final String entryName = entry.getName();
+				final byte[] classBytes = read(zipFile, entry);
+				completionService.submit(new Callable<SummarizedClass>(){
+					@Override
+					public SummarizedClass call(){
+						return summarizeClass(entryName, type, classBytes);
+					}
+				});
+				inFlight++;
+
+				// write whatever is ready, and wait for the oldest work once too much is in flight
+				Future<SummarizedClass> summarized;
+				while((summarized = completionService.poll()) != null){
+					write(summarized, summaries);
+					inFlight--;
+				}
+				if(inFlight >= maxInFlight){
+					write(completionService.take(), summaries);
+					inFlight--;
+				}
+			}
+		} finally {
+			while(inFlight > 0){
+				write(completionService.take(), summaries);
+				inFlight--;
+			}
+		}
+		return missingEntries;
+	}
+
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown(){
+		pool.shutdown();
+	}
+
+	private static SummarizedClass summarizeClass(String entry, Node type, byte[] classBytes){
+		try {
+			return new SummarizedClass(entry, type, ClassSummarizer.summarize(classBytes), null);
+		} catch (RuntimeException e){
+			// malformed class files are reported by the writer
+			return new SummarizedClass(entry, type, null, e);
+		}
+	}
+
+	private void write(Future<SummarizedClass> summarized, Map<String,ClassSummary> summaries) throws InterruptedException {
+		SummarizedClass summarizedClass;
+		try {
+			summarizedClass = summarized.get();
+		} catch (ExecutionException e){
+			Log.warning("Could not summarize class", e.getCause());
+			return;
+		}
+		if(summarizedClass.failure != null){
+			Log.warning("Could not summarize " + summarizedClass.entry, summarizedClass.failure);
+			return;
+		}
+		if(summaries != null){
+			summaries.put(summarizedClass.entry, summarizedClass.summary);
+		}
+		write(summarizedClass.entry, summarizedClass.type, summarizedClass.summary);
+	}
+
+	private void write(String entry, Node type, ClassSummary summary){
+		try {
+			MethodSummary.summarizeCallsites(summary, type, methodIndex);
+		} catch (RuntimeException e){
+			Log.warning("Could not summarize " + entry, e);
+		}
+	}
+
+	private static byte[] read(ZipFile zipFile, ZipEntry entry) throws IOException {
+		long size = entry.getSize();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int) size : 8192);
+		try (InputStream input = zipFile.getInputStream(entry)) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while((read = input.read(buffer)) != -1){
+				bytes.write(buffer, 0, read);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static class SummarizedClass {
+		private final String entry;
+		private final Node type;
+		private final ClassSummary summary;
+		private final RuntimeException failure;
+
+		private SummarizedClass(String entry, Node type, ClassSummary summary, RuntimeException failure){
+			this.entry = entry;
+			this.type = type;
+			this.summary = summary;
+			this.failure = failure;
+		}
+	}
+
+}
@@ -0,0 +1,310 @@
+package com.ensoftcorp.open.cg.summary;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.ensoftcorp.open.cg.Activator;
+import com.ensoftcorp.open.cg.log.Log;
+import com.ensoftcorp.open.cg.preferences.CallGraphPreferences;
+import com.ensoftcorp.open.cg.utils.Encoding;
+
+/**
+ * A content addressed store of library class summaries, so that a library whose
+ * jar has not changed is summarized from its stored summaries without reading
+ * its bytecode.
+ *
+ * Each library has one file named by the SHA-256 digest of its jar, which holds
+ * the ClassSummary of each summarized class file entry (the methods and their
+ * invocations' opcode, handle kind, owner, name and descriptor, from which the callsite,
+ * identity pass and receiver nodes are rebuilt, and their allocated types) and the entries that were looked
+ * for but not found in the jar. Strings are stored once in a table and
+ * referenced by varint indexes.
+ *
+ * The store is bounded by total size, the least recently used files are evicted
+ * first (a file is used when it is written or loaded).
+ */
+public class LibrarySummaryStore {
+
+	private static final int MAGIC = 0x4C535331; // LSS1
+	private static final int VERSION = 3;
+	private static final String STORE_DIRECTORY = "summaries";
+	private static final String EXTENSION = ".lss";
+
+	private final File directory;
+	private final long capacity;
+
+	/**
+	 * @param directory the directory holding the store files
+	 * @param capacity the maximum total size of the store files in bytes
+	 */
+	public LibrarySummaryStore(File directory, long capacity){
+		this.directory = directory;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Opens the store in the plugin's state location, sized by the call graph preferences
+	 * @return the store or null if the store is disabled or there is no state location
+	 */
+	public static LibrarySummaryStore open(){
+		long capacity = CallGraphPreferences.getLibrarySummaryStoreSize() * 1024L * 1024L;
+		Activator plugin = Activator.getDefault();
+		if(capacity <= 0 || plugin == null || plugin.getStateLocation() == null){
+			return null;
+		}
+		return new LibrarySummaryStore(new File(plugin.getStateLocation().toFile(), STORE_DIRECTORY), capacity);
+	}
+
+	/**
+	 * Returns the hex encoded SHA-256 digest of the contents of the file
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static String digest(File file) throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e){
+			throw new IOException(e);
+		}
+		try (InputStream input = new FileInputStream(file)) {
+			byte[] buffer = new byte[65536];
+			int read;
+			while((read = input.read(buffer)) != -1){
+				digest.update(buffer, 0, read);
+			}
+		}
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest.digest()){
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+			hex.append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Loads the stored summaries of the library with the given digest
+	 * @param digest
+	 * @return the stored summaries or null if none are stored
+	 */
+	public StoredLibrary load(String digest){
+		File file = getFile(digest);
+		if(!file.exists()){
+			return null;
+		}
+		try {
+			Map<String,ClassSummary> summaries = new HashMap<String,ClassSummary>();
+			Set<String> missingEntries = new HashSet<String>();
+			ByteBuffer buffer = Encoding.readFile(file);
+			if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+				return null;
+			}
+			String[] strings = new String[Encoding.readVarInt(buffer)];
+			for(int i=0; i<strings.length; i++){
+				strings[i] = Encoding.readString(buffer);
+			}
+			int missingEntryCount = Encoding.readVarInt(buffer);
+			for(int i=0; i<missingEntryCount; i++){
+				missingEntries.add(strings[Encoding.readVarInt(buffer)]);
+			}
+			int classCount = Encoding.readVarInt(buffer);
+			for(int i=0; i<classCount; i++){
+				String entry = strings[Encoding.readVarInt(buffer)];
+				ClassSummary summary = new ClassSummary(strings[Encoding.readVarInt(buffer)]);
+				int methodCount = Encoding.readVarInt(buffer);
+				for(int j=0; j<methodCount; j++){
+					int access = Encoding.readVarInt(buffer);
+					ClassSummary.Method method = summary.addMethod(access, strings[Encoding.readVarInt(buffer)], strings[Encoding.readVarInt(buffer)]);
+					int invocationCount = Encoding.readVarInt(buffer);
+					for(int k=0; k<invocationCount; k++){
+						int opcode = Encoding.readVarInt(buffer);
+						int handleKind = Encoding.readVarInt(buffer);
+						method.addInvocation(new ClassSummary.Invocation(opcode, strings[Encoding.readVarInt(buffer)], strings[Encoding.readVarInt(buffer)], strings[Encoding.readVarInt(buffer)], handleKind));
+					}
+					int allocationCount = Encoding.readVarInt(buffer);
+					for(int k=0; k<allocationCount; k++){
+						method.addAllocation(strings[Encoding.readVarInt(buffer)]);
+					}
+				}
+				summaries.put(entry, summary);
+			}
+			file.setLastModified(System.currentTimeMillis());
+			return new StoredLibrary(summaries, missingEntries);
+		} catch (Exception e){
+			Log.warning("Could not load library summaries from " + file.getName(), e);
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the summaries of the library with the given digest, replacing any stored summaries
+	 * @param digest
+	 * @param summaries the summary of each class file entry
+	 * @param missingEntries the entries that were not found in the library
+	 */
+	public void save(String digest, Map<String,ClassSummary> summaries, Set<String> missingEntries){
+		File file = getFile(digest);
+		try {
+			Map<String,Integer> strings = new LinkedHashMap<String,Integer>();
+			for(String entry : missingEntries){
+				getString(strings, entry);
+			}
+			for(Map.Entry<String,ClassSummary> entry : summaries.entrySet()){
+				getString(strings, entry.getKey());
+				getString(strings, entry.getValue().getName());
+				for(ClassSummary.Method method : entry.getValue().getMethods()){
+					getString(strings, method.getName());
+					getString(strings, method.getDescriptor());
+					for(ClassSummary.Invocation invocation : method.getInvocations()){
+						getString(strings, invocation.getOwner());
+						getString(strings, invocation.getName());
+						getString(strings, invocation.getDescriptor());
+					}
+					for(String allocation : method.getAllocations()){
+						getString(strings, allocation);
+					}
+				}
+			}
+
+			directory.mkdirs();
+			File temporaryFile = new File(directory, file.getName() + ".tmp");
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				Encoding.writeVarInt(output, strings.size());
+				for(String string : strings.keySet()){
+					Encoding.writeString(output, string);
+				}
+				Encoding.writeVarInt(output, missingEntries.size());
+				for(String entry : missingEntries){
+					Encoding.writeVarInt(output, strings.get(entry));
+				}
+				Encoding.writeVarInt(output, summaries.size());
+				for(Map.Entry<String,ClassSummary> entry : summaries.entrySet()){
+					Encoding.writeVarInt(output, strings.get(entry.getKey()));
+					Encoding.writeVarInt(output, strings.get(entry.getValue().getName()));
+					Encoding.writeVarInt(output, entry.getValue().getMethods().size());
+					for(ClassSummary.Method method : entry.getValue().getMethods()){
+						Encoding.writeVarInt(output, method.getAccess());
+						Encoding.writeVarInt(output, strings.get(method.getName()));
+						Encoding.writeVarInt(output, strings.get(method.getDescriptor()));
+						Encoding.writeVarInt(output, method.getInvocations().size());
+						for(ClassSummary.Invocation invocation : method.getInvocations()){
+							Encoding.writeVarInt(output, invocation.getOpcode());
+							Encoding.writeVarInt(output, invocation.getHandleKind());
+							Encoding.writeVarInt(output, strings.get(invocation.getOwner()));
+							Encoding.writeVarInt(output, strings.get(invocation.getName()));
+							Encoding.writeVarInt(output, strings.get(invocation.getDescriptor()));
+						}
+						Encoding.writeVarInt(output, method.getAllocations().size());
+						for(String allocation : method.getAllocations()){
+							Encoding.writeVarInt(output, strings.get(allocation));
+						}
+					}
+				}
+			}
+			Encoding.replaceFile(temporaryFile, file);
+			evict(file);
+		} catch (Exception e){
+			Log.warning("Could not save library summaries to " + file.getName(), e);
+		}
+	}
+
+	/**
+	 * Deletes the least recently used store files until the store fits its capacity
+	 * @param keep a file that should not be evicted
+	 */
+	private void evict(File keep){
+		File[] files = directory.listFiles(new FilenameFilter(){
+			@Override
+			public boolean accept(File dir, String name){
+				return name.endsWith(EXTENSION);
+			}
+		});
+		if(files == null){
+			return;
+		}
+		long size = 0;
+		for(File file : files){
+			size += file.length();
+		}
+		Arrays.sort(files, new Comparator<File>(){
+			@Override
+			public int compare(File a, File b){
+				return Long.compare(a.lastModified(), b.lastModified());
+			}
+		});
+		for(File file : files){
+			if(size <= capacity){
+				break;
+			}
+			if(!file.equals(keep)){
+				long length = file.length();
+				if(file.delete()){
+					size -= length;
+				}
+			}
+		}
+	}
+
+	private File getFile(String digest){
+		return new File(directory, digest + EXTENSION);
+	}
+
+	private static int getString(Map<String,Integer> strings, String string){
+		Integer index = strings.get(string);
+		if(index == null){
+			index = strings.size();
+			strings.put(string, index);
+		}
+		return index;
+	}
+
+	/**
+	 * The stored summaries of a library
+	 */
+	public static class StoredLibrary {
+
+		private final Map<String,ClassSummary> summaries;
+		private final Set<String> missingEntries;
+
+		private StoredLibrary(Map<String,ClassSummary> summaries, Set<String> missingEntries){
+			this.summaries = summaries;
+			this.missingEntries = missingEntries;
+		}
+
+		/**
+		 * Returns the summary of each stored class file entry
+		 * @return
+		 */
+		public Map<String,ClassSummary> getSummaries(){
+			return summaries;
+		}
+
+		/**
+		 * Returns the entries that were not found in the library
+		 * @return
+		 */
+		public Set<String> getMissingEntries(){
+			return missingEntries;
+		}
+	}
+
+}
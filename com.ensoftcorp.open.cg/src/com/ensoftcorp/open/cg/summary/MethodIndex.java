@@ -0,0 +1,170 @@
+package com.ensoftcorp.open.cg.summary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ensoftcorp.atlas.core.db.graph.Node;
+import com.ensoftcorp.atlas.core.query.Q;
+import com.ensoftcorp.atlas.core.query.Query;
+import com.ensoftcorp.atlas.core.script.Common;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+
+/**
+ * Resolves JVM owner names and method descriptors to Atlas types and methods.
+ *
+ * The methods of a type are keyed by their name and the qualified names of
+ * their parameter and return types (ex: put(java.lang.Object,java.util.Map$Entry)void),
+ * which is the key a JVM method descriptor erases to, so that overloaded methods
+ * can be told apart (see MethodResolver). The qualified name of an Atlas type is
+ * built from its package and its enclosing types.
+ *
+ * An index is meant to be used from the single thread that writes summaries.
+ */
+public class MethodIndex extends MethodResolver<Node> {
+
+	private final Map<String,List<Node>> types = new HashMap<String,List<Node>>();
+	private final Map<Node,String> qualifiedNames = new HashMap<Node,String>();
+	private final Q typeOfEdges = Query.universe().edges(XCSG.TypeOf);
+	private final Q arrayElementTypeEdges = Query.universe().edges(XCSG.ArrayElementType);
+	private final Q supertypeEdges = Query.universe().edges(XCSG.Supertype);
+
+	/**
+	 * Returns the Atlas types with the given internal name (ex: java/util/Map$Entry)
+	 * should just be one, but there may be colliding types
+	 * @param internalName
+	 * @return
+	 */
+	public List<Node> getTypes(String internalName){
+		List<Node> result = types.get(internalName);
+		if(result == null){
+			result = new ArrayList<Node>();
+			String name = internalName.replace("/", ".");
+			int separator = name.lastIndexOf(".");
+			String typePackage = separator < 0 ? "" : name.substring(0, separator);
+			String typeName = name.substring(separator + 1);
+			for(Node type : Common.typeSelect(typePackage, typeName).eval().nodes()){
+				result.add(type);
+			}
+			if(result.isEmpty() && !typeName.equals(getSimpleName(internalName))){
+				// nested types may be named by their simple name
+				for(Node type : Common.typeSelect(typePackage, getSimpleName(internalName)).eval().nodes()){
+					result.add(type);
+				}
+			}
+			types.put(internalName, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the methods of the type with the given name (and any descriptor)
+	 * @param type
+	 * @param name
+	 * @return
+	 */
+	public Q getMethods(Node type, String name){
+		return Common.toQ(type).children().nodes(XCSG.Method).selectNode(XCSG.name, name);
+	}
+
+	@Override
+	protected Iterable<Node> getDeclaredMethods(Node type){
+		return Common.toQ(type).children().nodes(XCSG.Method).eval().nodes();
+	}
+
+	@Override
+	protected String getName(Node method){
+		return String.valueOf(method.getAttr(XCSG.name));
+	}
+
+	@Override
+	protected String getKey(Node method){
+		List<String> parameterTypes = new ArrayList<String>();
+		String returnType = "void";
+		for(Node child : Common.toQ(method).children().eval().nodes()){
+			if(child.taggedWith(XCSG.Parameter)){
+				Object index = child.getAttr(XCSG.parameterIndex);
+				if(!(index instanceof Integer)){
+					continue;
+				}
+				while(parameterTypes.size() <= (Integer) index){
+					parameterTypes.add(null);
+				}
+				Node parameterType = Common.toQ(child).successorsOn(typeOfEdges).eval().nodes().one();
+				if(parameterType != null){
+					parameterTypes.set((Integer) index, getQualifiedName(parameterType));
+				}
+			} else if(child.taggedWith(XCSG.ReturnValue) && !method.taggedWith(XCSG.Constructor)){
+				// methods without a return value and constructors return void
+				Node type = Common.toQ(child).successorsOn(typeOfEdges).eval().nodes().one();
+				returnType = type == null ? null : getQualifiedName(type);
+			}
+		}
+		if(returnType == null || parameterTypes.contains(null)){
+			return null;
+		}
+		return getKey(getName(method), parameterTypes, returnType);
+	}
+
+	@Override
+	protected Iterable<Node> getSupertypes(Node type){
+		return Common.toQ(type).successorsOn(supertypeEdges).eval().nodes();
+	}
+
+	@Override
+	protected boolean isInterface(Node type){
+		return type.taggedWith(XCSG.Java.Interface);
+	}
+
+	/**
+	 * Returns the qualified name of a type, the way a JVM descriptor names it
+	 * ex: java.util.Map$Entry, java.lang.String[] or int
+	 */
+	private String getQualifiedName(Node type){
+		String result = qualifiedNames.get(type);
+		if(result == null){
+			String name = String.valueOf(type.getAttr(XCSG.name));
+			if(type.taggedWith(XCSG.ArrayType)){
+				// the array element type qualified with the dimensions of the array
+				int dimensions = 0;
+				while(name.endsWith("[]")){
+					name = name.substring(0, name.length() - 2);
+					dimensions++;
+				}
+				Node elementType = type;
+				while(elementType != null && elementType.taggedWith(XCSG.ArrayType)){
+					elementType = Common.toQ(elementType).successorsOn(arrayElementTypeEdges).eval().nodes().one();
+				}
+				StringBuilder arrayType = new StringBuilder(elementType == null ? name : getQualifiedName(elementType));
+				for(int i=0; i<dimensions; i++){
+					arrayType.append("[]");
+				}
+				result = arrayType.toString();
+			} else {
+				// nested types are joined to their enclosing types with $ and top level types to their package with .
+				Node parent = Common.toQ(type).parent().eval().nodes().one();
+				if(parent != null && parent.taggedWith(XCSG.Type)){
+					result = getQualifiedName(parent) + "$" + name.substring(name.lastIndexOf('$') + 1);
+				} else if(parent != null && parent.taggedWith(XCSG.Package) && !String.valueOf(parent.getAttr(XCSG.name)).isEmpty()){
+					result = parent.getAttr(XCSG.name) + "." + name;
+				} else {
+					// primitive types and types of the default package
+					result = name;
+				}
+			}
+			qualifiedNames.put(type, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the simple name of a type given its internal name
+	 * ex: java/util/Map$Entry is Entry
+	 */
+	private static String getSimpleName(String internalName){
+		String name = internalName.substring(internalName.lastIndexOf('/') + 1);
+		return name.substring(name.lastIndexOf('$') + 1);
+	}
+
+}
@@ -0,0 +1,295 @@
+package com.ensoftcorp.open.cg.summary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves JVM method references (a name and descriptor) against the methods
+ * declared by a type and its supertypes, the way the JVM resolves the method
+ * reference of an invoke instruction.
+ *
+ * The methods of a type are indexed the first time the type is looked up, by
+ * their name and descriptor key (ex: put(java.lang.Object,int[])void, see
+ * getKey). The return type is part of the key since bytecode may declare
+ * methods that only differ in their return type, such as the bridge methods
+ * javac generates for covariant overrides and erased generic methods. A key
+ * declared by more than one method of a type is ambiguous, resolution stops at
+ * the first type declaring the key whether or not the key is ambiguous.
+ *
+ * The types and methods are opaque handles, subclasses provide the declared
+ * methods, descriptor keys and supertypes of a handle (see MethodIndex for the
+ * Atlas types and methods).
+ *
+ * A resolver is meant to be used from a single thread.
+ *
+ * @param <T> the type of the type and method handles
+ */
+public abstract class MethodResolver<T> {
+
+	private final Map<T,DeclaredMethods<T>> typeMethods = new HashMap<T,DeclaredMethods<T>>();
+	private final Map<T,List<T>> resolutionOrders = new HashMap<T,List<T>>();
+
+	/**
+	 * Returns the methods declared by the type
+	 * @param type
+	 * @return
+	 */
+	protected abstract Iterable<T> getDeclaredMethods(T type);
+
+	/**
+	 * Returns the name of the method
+	 * @param method
+	 * @return
+	 */
+	protected abstract String getName(T method);
+
+	/**
+	 * Returns the key of the name and the qualified parameter and return types of the
+	 * method (see getKey), or null if the types of the method are not known
+	 * @param method
+	 * @return
+	 */
+	protected abstract String getKey(T method);
+
+	/**
+	 * Returns the direct supertypes (superclass and superinterfaces) of the type
+	 * @param type
+	 * @return
+	 */
+	protected abstract Iterable<T> getSupertypes(T type);
+
+	/**
+	 * Returns true if the type is an interface
+	 * @param type
+	 * @return
+	 */
+	protected abstract boolean isInterface(T type);
+
+	/**
+	 * Returns the method of the type with the given name and descriptor
+	 * @param type
+	 * @param name
+	 * @param descriptor a JVM method descriptor (ex: (ILjava/lang/String;)V)
+	 * @return the method or null if the type declares no such method or the match is ambiguous
+	 */
+	public T getMethod(T type, String name, String descriptor){
+		return getDeclaredMethodsIndex(type).methods.get(getKey(name, descriptor));
+	}
+
+	/**
+	 * Resolves the method with the given name and descriptor the way the JVM resolves the
+	 * method reference of an invoke instruction, the method may be declared by the type or
+	 * inherited from one of its superclasses or else one of its superinterfaces
+	 * ex: javac names the qualifying type Sub as the owner of Sub.inheritedStatic() and the
+	 * direct superclass as the owner of super.m(), even when a supertype declares the method
+	 * @param type
+	 * @param name
+	 * @param descriptor a JVM method descriptor (ex: (ILjava/lang/String;)V)
+	 * @return the nearest matching method or null if no such method is found or the nearest
+	 * type declaring a match declares more than one
+	 */
+	public T resolveMethod(T type, String name, String descriptor){
+		String key = getKey(name, descriptor);
+		for(T declaringType : getResolutionOrder(type)){
+			DeclaredMethods<T> declaredMethods = getDeclaredMethodsIndex(declaringType);
+			if(declaredMethods.ambiguousKeys.contains(key)){
+				// a supertype's method would be the wrong target
+				return null;
+			}
+			T method = declaredMethods.methods.get(key);
+			if(method != null){
+				return method;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the methods with the given name (and any descriptor) declared by the type, or
+	 * else by the nearest supertype declaring a method of that name (in resolution order)
+	 * @param type
+	 * @param name
+	 * @return
+	 */
+	public List<T> resolveMethods(T type, String name){
+		List<T> result = new ArrayList<T>();
+		for(T declaringType : getResolutionOrder(type)){
+			for(T method : getDeclaredMethods(declaringType)){
+				if(name.equals(getName(method))){
+					result.add(method);
+				}
+			}
+			if(!result.isEmpty()){
+				break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the type followed by its superclasses (nearest first) and then its
+	 * superinterfaces (breadth first), which is the order the JVM searches for
+	 * the declaration of a referenced method
+	 * @param type
+	 * @return
+	 */
+	public List<T> getResolutionOrder(T type){
+		List<T> result = resolutionOrders.get(type);
+		if(result == null){
+			result = new ArrayList<T>();
+			Set<T> visited = new HashSet<T>();
+			List<T> superinterfaces = new ArrayList<T>();
+			T superclass = type;
+			while(superclass != null && visited.add(superclass)){
+				result.add(superclass);
+				T current = superclass;
+				superclass = null;
+				for(T supertype : getSupertypes(current)){
+					if(isInterface(supertype)){
+						superinterfaces.add(supertype);
+					} else {
+						superclass = supertype;
+					}
+				}
+			}
+			for(int i=0; i<superinterfaces.size(); i++){
+				T superinterface = superinterfaces.get(i);
+				if(visited.add(superinterface)){
+					result.add(superinterface);
+					for(T supertype : getSupertypes(superinterface)){
+						if(isInterface(supertype)){
+							superinterfaces.add(supertype);
+						}
+					}
+				}
+			}
+			resolutionOrders.put(type, result);
+		}
+		return result;
+	}
+
+	private DeclaredMethods<T> getDeclaredMethodsIndex(T type){
+		DeclaredMethods<T> declaredMethods = typeMethods.get(type);
+		if(declaredMethods == null){
+			declaredMethods = new DeclaredMethods<T>();
+			for(T method : getDeclaredMethods(type)){
+				String key = getKey(method);
+				if(key == null){
+					// the types are incomplete, the method can only be found by name
+					continue;
+				}
+				if(declaredMethods.ambiguousKeys.contains(key)){
+					continue;
+				}
+				if(declaredMethods.methods.containsKey(key)){
+					declaredMethods.methods.remove(key);
+					declaredMethods.ambiguousKeys.add(key);
+				} else {
+					declaredMethods.methods.put(key, method);
+				}
+			}
+			typeMethods.put(type, declaredMethods);
+		}
+		return declaredMethods;
+	}
+
+	/**
+	 * Returns the key of a method name and its qualified parameter and return types
+	 * ex: put, [java.lang.Object, int[]], void is put(java.lang.Object,int[])void
+	 * @param name
+	 * @param parameterTypes
+	 * @param returnType
+	 * @return
+	 */
+	static String getKey(String name, List<String> parameterTypes, String returnType){
+		StringBuilder key = new StringBuilder(name).append("(");
+		for(int i=0; i<parameterTypes.size(); i++){
+			if(i > 0){
+				key.append(",");
+			}
+			key.append(parameterTypes.get(i));
+		}
+		return key.append(")").append(returnType).toString();
+	}
+
+	/**
+	 * Returns the key of a JVM method name and descriptor
+	 * ex: put (Ljava/util/Map$Entry;[I)V is put(java.util.Map$Entry,int[])void
+	 * @param name
+	 * @param descriptor
+	 * @return
+	 */
+	static String getKey(String name, String descriptor){
+		List<String> parameterTypes = new ArrayList<String>();
+		int position = 1; // skip (
+		while(position < descriptor.length() && descriptor.charAt(position) != ')'){
+			int end = getTypeEnd(descriptor, position);
+			parameterTypes.add(getTypeName(descriptor.substring(position, end)));
+			position = end;
+		}
+		return getKey(name, parameterTypes, getTypeName(descriptor.substring(position + 1)));
+	}
+
+	/**
+	 * Returns the position following the field descriptor that starts at the given position
+	 */
+	private static int getTypeEnd(String descriptor, int position){
+		while(descriptor.charAt(position) == '['){
+			position++;
+		}
+		if(descriptor.charAt(position) == 'L'){
+			return descriptor.indexOf(';', position) + 1;
+		}
+		return position + 1;
+	}
+
+	/**
+	 * Returns the qualified name of a field descriptor
+	 * ex: [Ljava/util/Map$Entry; is java.util.Map$Entry[]
+	 */
+	private static String getTypeName(String descriptor){
+		int dimensions = 0;
+		while(descriptor.charAt(dimensions) == '['){
+			dimensions++;
+		}
+		StringBuilder typeName = new StringBuilder();
+		char kind = descriptor.charAt(dimensions);
+		if(kind == 'L'){
+			typeName.append(descriptor.substring(dimensions + 1, descriptor.length() - 1).replace('/', '.'));
+		} else {
+			typeName.append(getPrimitiveName(kind));
+		}
+		for(int i=0; i<dimensions; i++){
+			typeName.append("[]");
+		}
+		return typeName.toString();
+	}
+
+	private static String getPrimitiveName(char kind){
+		switch(kind){
+			case 'Z': return "boolean";
+			case 'B': return "byte";
+			case 'C': return "char";
+			case 'S': return "short";
+			case 'I': return "int";
+			case 'J': return "long";
+			case 'F': return "float";
+			case 'D': return "double";
+			case 'V': return "void";
+			default: throw new IllegalArgumentException("Unknown descriptor type " + kind);
+		}
+	}
+
+	/**
+	 * The methods a type declares by their unique keys and the keys declared more than once
+	 */
+	private static class DeclaredMethods<T> {
+		private final Map<String,T> methods = new HashMap<String,T>();
+		private final Set<String> ambiguousKeys = new HashSet<String>();
+	}
+
+}
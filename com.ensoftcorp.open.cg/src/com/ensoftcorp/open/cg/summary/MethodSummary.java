@@ -1,35 +1,14 @@
 package com.ensoftcorp.open.cg.summary;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.AbstractInsnNode;
-import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldInsnNode;
-import org.objectweb.asm.tree.FrameNode;
-import org.objectweb.asm.tree.IincInsnNode;
-import org.objectweb.asm.tree.InsnList;
-import org.objectweb.asm.tree.InsnNode;
-import org.objectweb.asm.tree.IntInsnNode;
-import org.objectweb.asm.tree.InvokeDynamicInsnNode;
-import org.objectweb.asm.tree.JumpInsnNode;
-import org.objectweb.asm.tree.LabelNode;
-import org.objectweb.asm.tree.LdcInsnNode;
-import org.objectweb.asm.tree.LineNumberNode;
-import org.objectweb.asm.tree.LookupSwitchInsnNode;
-import org.objectweb.asm.tree.MethodInsnNode;
-import org.objectweb.asm.tree.MethodNode;
-import org.objectweb.asm.tree.MultiANewArrayInsnNode;
-import org.objectweb.asm.tree.TableSwitchInsnNode;
-import org.objectweb.asm.tree.TypeInsnNode;
-import org.objectweb.asm.tree.VarInsnNode;
 
 import com.ensoftcorp.atlas.core.db.graph.Edge;
 import com.ensoftcorp.atlas.core.db.graph.Graph;
 import com.ensoftcorp.atlas.core.db.graph.Node;
 import com.ensoftcorp.atlas.core.db.set.AtlasSet;
-import com.ensoftcorp.atlas.core.query.Q;
-import com.ensoftcorp.atlas.core.script.Common;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
 import com.ensoftcorp.open.cg.log.Log;
 
@@ -37,160 +16,236 @@ public class MethodSummary {
 
 	/**
 	 * Summarizes (recovers) callsites in method bodies of library binaries
-	 * @param classNode
+	 * @param classSummary
 	 * @param type
+	 * @param methodIndex
 	 */
-	@SuppressWarnings("unused")
-	public static void summarizeCallsites(ClassNode classNode, Node type) {
-		
-		Q methods = Common.toQ(type).children().nodes(XCSG.Method);
-		
+	public static void summarizeCallsites(ClassSummary classSummary, Node type, MethodIndex methodIndex) {
+
 		// visit each method in the class
-    	for (Object o : classNode.methods) {
-			MethodNode methodNode = (MethodNode) o;
-			
-			// get corresponding Atlas method
-			Node atlasMethodNode = null;
-			AtlasSet<Node> atlasMethodNodes = methods.selectNode(XCSG.name, methodNode.name).eval().nodes();
-			if(atlasMethodNodes.size() == 1){
-				atlasMethodNode = atlasMethodNodes.one();
-			} else {
-				// TODO: implement
-				// filter by number of parameters
-				// filter by type of parameters
+    	for (ClassSummary.Method methodNode : classSummary.getMethods()) {
+
+			// get corresponding Atlas method, matching the method descriptor tells overloaded methods apart
+			Node atlasMethodNode = methodIndex.getMethod(type, methodNode.getName(), methodNode.getDescriptor());
+			if(atlasMethodNode == null){
+				// fall back to a unique method with the same name
+				AtlasSet<Node> atlasMethodNodes = methodIndex.getMethods(type, methodNode.getName()).eval().nodes();
+				if(atlasMethodNodes.size() == 1){
+					atlasMethodNode = atlasMethodNodes.one();
+				}
 			}
-			
+
 			if(atlasMethodNode != null){
-				InsnList instructions = methodNode.instructions;
-				Iterator<AbstractInsnNode> instructionIterator = instructions.iterator();
-				while (instructionIterator.hasNext()) {
-					AbstractInsnNode abstractInstruction = instructionIterator.next();
-					if (abstractInstruction instanceof FieldInsnNode) {
-						FieldInsnNode instruction = (FieldInsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof FrameNode) {
-						FrameNode instruction = (FrameNode) abstractInstruction;
-					} else if (abstractInstruction instanceof IincInsnNode) {
-						IincInsnNode instruction = (IincInsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof InsnNode) {
-						InsnNode instruction = (InsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof IntInsnNode) {
-						IntInsnNode instruction = (IntInsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof InvokeDynamicInsnNode) {
-						InvokeDynamicInsnNode instruction = (InvokeDynamicInsnNode) abstractInstruction;
+				for(ClassSummary.Invocation instruction : methodNode.getInvocations()){
+					if(instruction.getOpcode() == Opcodes.INVOKESTATIC) {
+						// https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.invokestatic
+						// ex: java/util/Objects requireNonNull (Ljava/lang/Object;)Ljava/lang/Object;
+						createStaticDispatchCallsite(methodIndex, atlasMethodNode, instruction.getOwner(), instruction.getName(), instruction.getDescriptor());
+					} else if(instruction.getOpcode() == Opcodes.INVOKEVIRTUAL || instruction.getOpcode() == Opcodes.INVOKEINTERFACE) {
+						// https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.invokevirtual
+						// https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.invokeinterface
+						// ex: java/util/Iterator hasNext ()Z
+						createDynamicDispatchCallsite(methodIndex, classSummary, atlasMethodNode, instruction.getOwner(), instruction.getName(), instruction.getDescriptor());
+					} else if(instruction.getOpcode() == Opcodes.INVOKESPECIAL) {
+						// https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.invokespecial
+						// constructors (ex: java/lang/UnsupportedOperationException <init> (Ljava/lang/String;)V),
+						// super method calls and private methods are not dispatched on the receiver's runtime type
+						createStaticDispatchCallsite(methodIndex, atlasMethodNode, instruction.getOwner(), instruction.getName(), instruction.getDescriptor());
+					} else if(instruction.getOpcode() == Opcodes.INVOKEDYNAMIC) {
 						// https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.invokedynamic
-					} else if (abstractInstruction instanceof JumpInsnNode) {
-						JumpInsnNode instruction = (JumpInsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof LabelNode) {
-						LabelNode instruction = (LabelNode) abstractInstruction;
-					} else if (abstractInstruction instanceof LdcInsnNode) {
-						LdcInsnNode instruction = (LdcInsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof LineNumberNode) {
-						LineNumberNode instruction = (LineNumberNode) abstractInstruction;
-					} else if (abstractInstruction instanceof LookupSwitchInsnNode) {
-						LookupSwitchInsnNode instruction = (LookupSwitchInsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof MethodInsnNode) {
-						MethodInsnNode instruction = (MethodInsnNode) abstractInstruction;
-						if(instruction.getOpcode() == Opcodes.INVOKESTATIC) {
-							// https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.invokestatic
-							String targetMethodPackage = instruction.owner.replace("/", "."); // ex: java/util/Objects
-							String targetMethod = instruction.name; // ex: requireNonNull
-							String targetMethodParameters = instruction.desc; // ex: (Ljava/lang/Object;)Ljava/lang/Object;
-						} else if(instruction.getOpcode() == Opcodes.INVOKEVIRTUAL || instruction.getOpcode() == Opcodes.INVOKEINTERFACE) {
-							// https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.invokevirtual
-							// https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.invokeinterface
-							String owner = instruction.owner.replace("/", "."); // ex: java/util/AbstractCollection, java/util/Iterator
-							String targetMethodPackage = owner.substring(0, owner.lastIndexOf(".")); 
-							String targetMethodType = owner.substring(owner.lastIndexOf(".")+1);
-							
-							String targetMethod = instruction.name; // ex: size, hasNext
-							String targetMethodParameters = instruction.desc; // ex: ()I, ()Z
-							
-							// create a callsite node
-							Node callsite = Graph.U.createNode();
-							callsite.putAttr(XCSG.name, (targetMethod + "(...)"));
-							callsite.tag(XCSG.DynamicDispatchCallSite);
-							
-							// place the callsite node inside the atlas method node
-							Edge callsiteContainsEdge = Graph.U.createEdge(atlasMethodNode, callsite);
-							callsiteContainsEdge.tag(XCSG.Contains);
-							
-							// create the method signature edge
-							// TODO: this should be more precise and consider parameters (using signature)
-							AtlasSet<Node> targetMethodNodes = Common.methodSelect(targetMethodPackage, targetMethodType, targetMethod).eval().nodes();
-							for(Node targetMethodNode : targetMethodNodes){
-								Edge invokedSignatureEdge = Graph.U.createEdge(callsite, targetMethodNode);
-								invokedSignatureEdge.tag(XCSG.InvokedSignature);
-							}
-							
-							// create the this node
-							Node thisNode = Graph.U.createNode();
-							thisNode.tag(XCSG.IdentityPass);
-							thisNode.putAttr(XCSG.name, "this.");
-	
-							// place the this node inside the atlas method node
-							Edge thisContainsEdge = Graph.U.createEdge(atlasMethodNode, thisNode);
-							thisContainsEdge.tag(XCSG.Contains);
-							
-							// create the receiver object
-							Node receiverObject = Graph.U.createNode();
-							receiverObject.tag(XCSG.DataFlow_Node);
-							String classPackage = classNode.name.replace("/", ".").substring(0, owner.lastIndexOf("."));
-							if(classPackage.equals(targetMethodPackage)){
-								receiverObject.putAttr(XCSG.name, "this");
-							} else {
-								receiverObject.putAttr(XCSG.name, "receiver");
-							}
-							
-							// place the receiver object node inside the atlas method node
-							Edge receiverContainsEdge = Graph.U.createEdge(atlasMethodNode, receiverObject);
-							receiverContainsEdge.tag(XCSG.Contains);
-							
-							// create a data flow edge from the receiver object to the this node
-							Edge dataFlowEdge = Graph.U.createEdge(receiverObject, thisNode);
-							dataFlowEdge.tag(XCSG.LocalDataFlow);
-							
-							// pass the identity node
-							Edge receiverIdentityPassedToEdge = Graph.U.createEdge(thisNode, callsite);
-							receiverIdentityPassedToEdge.tag(XCSG.IdentityPassedTo);
-							
-							// add the receiver type of edge
-							// should just be one, but being cautious just in case there are colliding types
-							for(Node receiverType : Common.typeSelect(targetMethodPackage, targetMethodType).eval().nodes()){
-								Edge receiverTypeOfEdge = Graph.U.createEdge(receiverObject, receiverType);
-								receiverTypeOfEdge.tag(XCSG.TypeOf);
-							}
-						} else if(instruction.getOpcode() == Opcodes.INVOKESPECIAL) {
-							//https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.invokespecial
-							// new instantiation
-							if(instruction.name.equals("<init>")){
-								String instantiationType = instruction.owner.replace("/", "."); // ex: java/lang/UnsupportedOperationException
-								String parameters = instruction.desc; // ex: (Ljava/lang/String;)V
-							} else {
-								// TODO: super method calls...
-								String targetMethodPackage = instruction.owner.replace("/", "."); // ex: java/util/Locale
-								String targetMethod = instruction.name; // ex: getDisplayString
-								String targetMethodParameters = instruction.desc; // ex: (Ljava/lang/String;Ljava/util/Locale;I)Ljava/lang/String;
-							}
+						// a lambda or method reference (see ClassSummarizer), the implementation method is called
+						// when the functional interface method of the created object is called, which is summarized
+						// as a call from the method creating the object
+						if(instruction.getHandleKind() == Opcodes.H_INVOKEVIRTUAL || instruction.getHandleKind() == Opcodes.H_INVOKEINTERFACE){
+							// ex: String::length
+							createDynamicDispatchCallsite(methodIndex, classSummary, atlasMethodNode, instruction.getOwner(), instruction.getName(), instruction.getDescriptor());
+						} else {
+							// ex: a lambda body (private static lambda$main$0), ArrayList::new, super::toString
+							createStaticDispatchCallsite(methodIndex, atlasMethodNode, instruction.getOwner(), instruction.getName(), instruction.getDescriptor());
 						}
-					} else if (abstractInstruction instanceof MultiANewArrayInsnNode) {
-						MultiANewArrayInsnNode instruction = (MultiANewArrayInsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof TableSwitchInsnNode) {
-						TableSwitchInsnNode instruction = (TableSwitchInsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof TypeInsnNode) {
-						TypeInsnNode instruction = (TypeInsnNode) abstractInstruction;
-					} else if (abstractInstruction instanceof VarInsnNode) {
-						VarInsnNode instruction = (VarInsnNode) abstractInstruction;
 					}
 				}
+
+				// https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-6.html#jvms-6.5.new
+				// ex: new java/util/ArrayList
+				for(String allocation : methodNode.getAllocations()){
+					createAllocation(methodIndex, atlasMethodNode, allocation);
+				}
 			} else {
-				if(methodNode.name.equals("<init>") || methodNode.name.equals("<clinit>")){
+				if(methodNode.getName().equals("<init>") || methodNode.getName().equals("<clinit>")){
 					// Atlas does not stub out the class initializers, so don't need to log this for every class
 					// TODO: we should really be creating the missing atlas class initializers...
 				} else {
-					Log.warning("Unable to locate corresponding Atlas method for " + methodNode.name);
+					Log.warning("Unable to locate corresponding Atlas method for " + methodNode.getName());
 				}
 			}
     	}
     }
-	
+
+	/**
+	 * Creates a static dispatch callsite in the given method that invokes the target method
+	 * @param methodIndex
+	 * @param atlasMethodNode
+	 * @param owner
+	 * @param targetMethod
+	 * @param targetMethodParameters
+	 */
+	private static void createStaticDispatchCallsite(MethodIndex methodIndex, Node atlasMethodNode, String owner, String targetMethod, String targetMethodParameters){
+		// the invoked function is the method declared or inherited by the owner matching the descriptor,
+		// or the only method with the same name declared by the owner (or its nearest supertype declaring one)
+		Node targetMethodNode = null;
+		List<Node> targetMethodNodes = new ArrayList<Node>();
+		for(Node ownerType : methodIndex.getTypes(owner)){
+			Node match = methodIndex.resolveMethod(ownerType, targetMethod, targetMethodParameters);
+			if(match != null){
+				targetMethodNodes.add(match);
+			}
+		}
+		if(targetMethodNodes.isEmpty()){
+			for(Node ownerType : methodIndex.getTypes(owner)){
+				targetMethodNodes.addAll(methodIndex.resolveMethods(ownerType, targetMethod));
+			}
+		}
+		if(targetMethodNodes.size() == 1){
+			targetMethodNode = targetMethodNodes.get(0);
+		} else {
+			// the target is not indexed (or is ambiguous), a static dispatch without a target would be unresolvable
+			return;
+		}
+
+		// create a callsite node
+		Node callsite = Graph.U.createNode();
+		callsite.putAttr(XCSG.name, (targetMethod + "(...)"));
+		callsite.tag(XCSG.StaticDispatchCallSite);
+
+		// place the callsite node inside the atlas method node
+		Edge callsiteContainsEdge = Graph.U.createEdge(atlasMethodNode, callsite);
+		callsiteContainsEdge.tag(XCSG.Contains);
+
+		// create the invoked function edge
+		Edge invokedFunctionEdge = Graph.U.createEdge(callsite, targetMethodNode);
+		invokedFunctionEdge.tag(XCSG.InvokedFunction);
+	}
+
+	/**
+	 * Creates a dynamic dispatch callsite in the given method that invokes the target method signature
+	 * on a receiver of the owner type
+	 * @param methodIndex
+	 * @param classSummary
+	 * @param atlasMethodNode
+	 * @param owner
+	 * @param targetMethod
+	 * @param targetMethodParameters
+	 */
+	private static void createDynamicDispatchCallsite(MethodIndex methodIndex, ClassSummary classSummary, Node atlasMethodNode, String owner, String targetMethod, String targetMethodParameters){
+		List<Node> targetMethodTypes = methodIndex.getTypes(owner);
+
+		// create a callsite node
+		Node callsite = Graph.U.createNode();
+		callsite.putAttr(XCSG.name, (targetMethod + "(...)"));
+		callsite.tag(XCSG.DynamicDispatchCallSite);
+
+		// place the callsite node inside the atlas method node
+		Edge callsiteContainsEdge = Graph.U.createEdge(atlasMethodNode, callsite);
+		callsiteContainsEdge.tag(XCSG.Contains);
+
+		// create the method signature edge to the nearest method declared or inherited by the owner
+		// matching the descriptor, if there is no matching method fall back to each method with the
+		// same name declared by the owner (or its nearest supertype declaring one)
+		List<Node> targetMethodNodes = new ArrayList<Node>();
+		for(Node ownerType : targetMethodTypes){
+			Node targetMethodNode = methodIndex.resolveMethod(ownerType, targetMethod, targetMethodParameters);
+			if(targetMethodNode != null){
+				targetMethodNodes.add(targetMethodNode);
+			}
+		}
+		if(targetMethodNodes.isEmpty()){
+			for(Node ownerType : targetMethodTypes){
+				targetMethodNodes.addAll(methodIndex.resolveMethods(ownerType, targetMethod));
+			}
+		}
+		for(Node targetMethodNode : targetMethodNodes){
+			Edge invokedSignatureEdge = Graph.U.createEdge(callsite, targetMethodNode);
+			invokedSignatureEdge.tag(XCSG.InvokedSignature);
+		}
+
+		// create the this node
+		Node thisNode = Graph.U.createNode();
+		thisNode.tag(XCSG.IdentityPass);
+		thisNode.putAttr(XCSG.name, "this.");
+
+		// place the this node inside the atlas method node
+		Edge thisContainsEdge = Graph.U.createEdge(atlasMethodNode, thisNode);
+		thisContainsEdge.tag(XCSG.Contains);
+
+		// create the receiver object
+		Node receiverObject = Graph.U.createNode();
+		receiverObject.tag(XCSG.DataFlow_Node);
+		if(getPackage(classSummary.getName()).equals(getPackage(owner))){
+			receiverObject.putAttr(XCSG.name, "this");
+		} else {
+			receiverObject.putAttr(XCSG.name, "receiver");
+		}
+
+		// place the receiver object node inside the atlas method node
+		Edge receiverContainsEdge = Graph.U.createEdge(atlasMethodNode, receiverObject);
+		receiverContainsEdge.tag(XCSG.Contains);
+
+		// create a data flow edge from the receiver object to the this node
+		Edge dataFlowEdge = Graph.U.createEdge(receiverObject, thisNode);
+		dataFlowEdge.tag(XCSG.LocalDataFlow);
+
+		// pass the identity node
+		Edge receiverIdentityPassedToEdge = Graph.U.createEdge(thisNode, callsite);
+		receiverIdentityPassedToEdge.tag(XCSG.IdentityPassedTo);
+
+		// add the receiver type of edge
+		// should just be one, but being cautious just in case there are colliding types
+		for(Node receiverType : targetMethodTypes){
+			Edge receiverTypeOfEdge = Graph.U.createEdge(receiverObject, receiverType);
+			receiverTypeOfEdge.tag(XCSG.TypeOf);
+		}
+	}
+
+	/**
+	 * Creates an instantiation of the allocated type in the given method, so that analyses
+	 * seeded by allocations (RTA, MTA, FTA, XTA...) see the types allocated by library methods
+	 * note that each allocated type is instantiated once per method, since the analyses only
+	 * consider the set of types a method allocates
+	 * @param methodIndex
+	 * @param atlasMethodNode
+	 * @param allocatedType
+	 */
+	private static void createAllocation(MethodIndex methodIndex, Node atlasMethodNode, String allocatedType){
+		List<Node> allocatedTypes = methodIndex.getTypes(allocatedType);
+		if(allocatedTypes.isEmpty()){
+			return;
+		}
+
+		// create the instantiation node
+		Node instantiation = Graph.U.createNode();
+		instantiation.putAttr(XCSG.name, "new " + allocatedType.substring(allocatedType.lastIndexOf('/') + 1));
+		instantiation.tag(XCSG.Instantiation);
+
+		// place the instantiation node inside the atlas method node
+		Edge instantiationContainsEdge = Graph.U.createEdge(atlasMethodNode, instantiation);
+		instantiationContainsEdge.tag(XCSG.Contains);
+
+		// add the allocated type of edge
+		// should just be one, but being cautious just in case there are colliding types
+		for(Node type : allocatedTypes){
+			Edge typeOfEdge = Graph.U.createEdge(instantiation, type);
+			typeOfEdge.tag(XCSG.TypeOf);
+		}
+	}
+
+	/**
+	 * Returns the package of a type given its internal name
+	 * ex: java/util/Map$Entry is java.util
+	 */
+	private static String getPackage(String internalName){
+		int separator = internalName.lastIndexOf('/');
+		return separator < 0 ? "" : internalName.substring(0, separator).replace("/", ".");
+	}
+
 }
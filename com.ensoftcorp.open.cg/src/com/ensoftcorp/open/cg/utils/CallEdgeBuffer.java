@@ -0,0 +1,223 @@
+package com.ensoftcorp.open.cg.utils;
+
+import com.ensoftcorp.atlas.core.db.graph.Edge;
+import com.ensoftcorp.atlas.core.db.graph.Graph;
+import com.ensoftcorp.atlas.core.query.Query;
+import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.snapshot.AtlasProgramSnapshot;
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
+
+/**
+ * Buffers the call edges (method to method) and per control flow edges (callsite
+ * to method) resolved by an analysis for a single pair of relationship tags.
+ *
+ * Edges are recorded by the snapshot ids of their endpoints and deduplicated in
+ * memory, the Atlas graph is only touched when the buffer is flushed with either
+ * createEdges (new edges) or tagEdges (existing edges of another call graph).
+ * A buffer created without an Atlas snapshot only collects the edges resolved
+ * against a ProgramSnapshot, which can then be read back with getCallEdges and
+ * getPerControlFlowEdges (ex: to benchmark or test an analysis without Atlas).
+ */
+public class CallEdgeBuffer {
+
+	private final AtlasProgramSnapshot snapshot;
+	private final String methodRelationship;
+	private final String callsiteRelationship;
+
+	// method to target method keys
+	private final LongHashSet callEdges = new LongHashSet();
+
+	// callsite to target method keys
+	private final LongHashSet perControlFlowEdges = new LongHashSet();
+
+	public CallEdgeBuffer(AtlasProgramSnapshot snapshot, String methodRelationship, String callsiteRelationship){
+		this.snapshot = snapshot;
+		this.methodRelationship = methodRelationship;
+		this.callsiteRelationship = callsiteRelationship;
+	}
+
+	/**
+	 * Creates a buffer that is not backed by the graph, its edges can be read but not flushed
+	 * @param methodRelationship
+	 * @param callsiteRelationship
+	 */
+	public CallEdgeBuffer(String methodRelationship, String callsiteRelationship){
+		this(null, methodRelationship, callsiteRelationship);
+	}
+
+	/**
+	 * Records a call relationship between the method and the target method for the given callsite
+	 * (relationships with an endpoint that is not part of the snapshot are ignored)
+	 * @param callsite
+	 * @param method
+	 * @param targetMethod
+	 */
+	public void add(int callsite, int method, int targetMethod){
+		if(callsite == ProgramSnapshot.NONE || method == ProgramSnapshot.NONE || targetMethod == ProgramSnapshot.NONE){
+			return;
+		}
+		callEdges.add(LongHashSet.key(method, targetMethod));
+		perControlFlowEdges.add(LongHashSet.key(callsite, targetMethod));
+	}
+
+	/**
+	 * Adds the edges recorded by another buffer (for the same snapshot) to this buffer
+	 * @param buffer
+	 */
+	public void addAll(CallEdgeBuffer buffer){
+		for(long key : buffer.callEdges.toArray()){
+			callEdges.add(key);
+		}
+		for(long key : buffer.perControlFlowEdges.toArray()){
+			perControlFlowEdges.add(key);
+		}
+	}
+
+	/**
+	 * Returns the number of buffered call edges
+	 * @return
+	 */
+	public int getCallEdgeCount(){
+		return callEdges.size();
+	}
+
+	/**
+	 * Returns the number of buffered per control flow edges
+	 * @return
+	 */
+	public int getPerControlFlowEdgeCount(){
+		return perControlFlowEdges.size();
+	}
+
+	/**
+	 * Returns the buffered call edges as keys packing the method and target method ids (see LongHashSet.key)
+	 * @return
+	 */
+	public long[] getCallEdges(){
+		return callEdges.toArray();
+	}
+
+	/**
+	 * Returns the buffered per control flow edges as keys packing the callsite and target method ids (see LongHashSet.key)
+	 * @return
+	 */
+	public long[] getPerControlFlowEdges(){
+		return perControlFlowEdges.toArray();
+	}
+
+	/**
+	 * Creates the buffered edges that do not already exist in the graph and empties the buffer
+	 * @param displayName the name given to new call edges
+	 * @return the number of edges created
+	 */
+	public int createEdges(String displayName){
+		checkSnapshot();
+		// relationships may already exist from a previous run, collect them in one pass
+		LongHashSet existingCallEdges = getExistingCallEdges();
+		LongHashSet existingPerControlFlowEdges = getExistingPerControlFlowEdges();
+
+		int created = 0;
+		for(long key : callEdges.toArray()){
+			if(!existingCallEdges.contains(key)){
+				Edge callEdge = Graph.U.createEdge(snapshot.getMethod(LongHashSet.high(key)), snapshot.getMethod(LongHashSet.low(key)));
+				callEdge.tag(methodRelationship);
+				callEdge.attr().put(XCSG.name, displayName);
+				created++;
+			}
+		}
+		for(long key : perControlFlowEdges.toArray()){
+			if(!existingPerControlFlowEdges.contains(key)){
+				Edge perCFEdge = Graph.U.createEdge(snapshot.getCallsite(LongHashSet.high(key)), snapshot.getMethod(LongHashSet.low(key)));
+				perCFEdge.tag(callsiteRelationship);
+				created++;
+			}
+		}
+
+		callEdges.clear();
+		perControlFlowEdges.clear();
+		return created;
+	}
+
+	/**
+	 * Returns the number of buffered edges missing from the graph plus the number of
+	 * edges in the graph (between snapshot elements) that are not buffered
+	 * @return
+	 */
+	public int countDifferences(){
+		checkSnapshot();
+		int differences = 0;
+		LongHashSet existingCallEdges = getExistingCallEdges();
+		differences += countMissing(callEdges, existingCallEdges) + countMissing(existingCallEdges, callEdges);
+		LongHashSet existingPerControlFlowEdges = getExistingPerControlFlowEdges();
+		differences += countMissing(perControlFlowEdges, existingPerControlFlowEdges) + countMissing(existingPerControlFlowEdges, perControlFlowEdges);
+		return differences;
+	}
+
+	/**
+	 * Tags the edges of the given call graph that match the buffered edges and empties the buffer
+	 * @param callGraph
+	 * @return the number of edges tagged
+	 */
+	public int tagEdges(CallGraphSnapshot<Edge> callGraph){
+		checkSnapshot();
+		int tagged = 0;
+		for(int slot=0; slot<callGraph.getCallEdgeCount(); slot++){
+			if(callEdges.contains(LongHashSet.key(callGraph.getCaller(slot), callGraph.getTarget(slot)))){
+				callGraph.getCallEdge(slot).tag(methodRelationship);
+				tagged++;
+			}
+		}
+		for(int slot=0; slot<callGraph.getPerControlFlowEdgeCount(); slot++){
+			if(perControlFlowEdges.contains(LongHashSet.key(callGraph.getPerControlFlowCallsite(slot), callGraph.getPerControlFlowTarget(slot)))){
+				callGraph.getPerControlFlowEdge(slot).tag(callsiteRelationship);
+				tagged++;
+			}
+		}
+
+		callEdges.clear();
+		perControlFlowEdges.clear();
+		return tagged;
+	}
+
+	private void checkSnapshot(){
+		if(snapshot == null){
+			throw new IllegalStateException("Buffer is not backed by an Atlas program snapshot");
+		}
+	}
+
+	private LongHashSet getExistingCallEdges(){
+		LongHashSet existingCallEdges = new LongHashSet();
+		for(Edge callEdge : Query.universe().edges(methodRelationship).eval().edges()){
+			int method = snapshot.getMethodId(callEdge.from());
+			int targetMethod = snapshot.getMethodId(callEdge.to());
+			if(method != ProgramSnapshot.NONE && targetMethod != ProgramSnapshot.NONE){
+				existingCallEdges.add(LongHashSet.key(method, targetMethod));
+			}
+		}
+		return existingCallEdges;
+	}
+
+	private LongHashSet getExistingPerControlFlowEdges(){
+		LongHashSet existingPerControlFlowEdges = new LongHashSet();
+		for(Edge perControlFlowEdge : Query.universe().edges(callsiteRelationship).eval().edges()){
+			int callsite = snapshot.getCallsiteId(perControlFlowEdge.from());
+			int targetMethod = snapshot.getMethodId(perControlFlowEdge.to());
+			if(callsite != ProgramSnapshot.NONE && targetMethod != ProgramSnapshot.NONE){
+				existingPerControlFlowEdges.add(LongHashSet.key(callsite, targetMethod));
+			}
+		}
+		return existingPerControlFlowEdges;
+	}
+
+	private static int countMissing(LongHashSet keys, LongHashSet other){
+		int missing = 0;
+		for(long key : keys.toArray()){
+			if(!other.contains(key)){
+				missing++;
+			}
+		}
+		return missing;
+	}
+
+}
@@ -1,5 +1,8 @@
 package com.ensoftcorp.open.cg.utils;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+
 import com.ensoftcorp.atlas.core.db.graph.Edge;
 import com.ensoftcorp.atlas.core.db.graph.Graph;
 import com.ensoftcorp.atlas.core.db.graph.Node;
@@ -8,18 +11,27 @@ import com.ensoftcorp.atlas.core.query.Q;
 import com.ensoftcorp.atlas.core.query.Query;
 import com.ensoftcorp.atlas.core.script.Common;
 import com.ensoftcorp.atlas.core.xcsg.XCSG;
+import com.ensoftcorp.open.cg.snapshot.Adjacency;
+import com.ensoftcorp.open.cg.snapshot.CallGraphSnapshot;
+import com.ensoftcorp.open.cg.snapshot.ProgramSnapshot;
 
 public class CallGraphConstruction {
 
+	public static final String CALL_EDGE_NAME = "call";
+	public static final String LIBRARY_CALL_EDGE_NAME = "library-call";
+	
 	/**
 	 * Creates a CALL relationship between the method and the target method if one does not already exist
 	 * 
+	 * Note: Each call queries the graph for existing edges, analyses creating many edges should
+	 * collect them in a CallEdgeBuffer instead.
+	 * 
 	 * @param method
 	 * @param targetMethod
 	 * @return
 	 */
 	public static void createCallEdge(Node callsite, Node method, Node targetMethod, String methodRelationship, String callsiteRelationship) {
-		createRelationship(callsite, method, targetMethod, methodRelationship, callsiteRelationship, "call");
+		createRelationship(callsite, method, targetMethod, methodRelationship, callsiteRelationship, CALL_EDGE_NAME);
 	}
 	
 	/**
@@ -30,7 +42,7 @@ public class CallGraphConstruction {
 	 * @return
 	 */
 	public static void createLibraryCallEdge(Node callsite, Node method, Node targetMethod, String methodRelationship, String callsiteRelationship) {
-		createRelationship(callsite, method, targetMethod, methodRelationship, callsiteRelationship, "library-call");
+		createRelationship(callsite, method, targetMethod, methodRelationship, callsiteRelationship, LIBRARY_CALL_EDGE_NAME);
 	}
 	
 	private static void createRelationship(Node callsite, Node method, Node targetMethod, String methodRelationship, String callsiteRelationship, String displayName) {
@@ -52,6 +64,10 @@ public class CallGraphConstruction {
 	
 	/**
 	 * Tags and existing call edge and per control flow edge
+	 * 
+	 * Note: Each call queries the graph, analyses tagging many edges should
+	 * collect them in a CallEdgeBuffer instead.
+	 * 
 	 * @param cgCHA
 	 * @param pcfCHA
 	 * @param callsite
@@ -61,12 +77,68 @@ public class CallGraphConstruction {
 	 * @param PER_CONTROL_FLOW
 	 */
 	public static void tagExistingCallEdge(Q cgCHA, Q pcfCHA, Node callsite, Node method, Node targetMethod, String CALL, String PER_CONTROL_FLOW) {
-		for(Edge callEdge : cgCHA.between(Common.toQ(method), Common.toQ(targetMethod)).eval().edges()){
+		for(Edge callEdge : cgCHA.betweenStep(Common.toQ(method), Common.toQ(targetMethod)).eval().edges()){
 			callEdge.tag(CALL);
 		}
-		for(Edge perControlFlowEdge : cgCHA.between(Common.toQ(callsite), Common.toQ(targetMethod)).eval().edges()){
+		for(Edge perControlFlowEdge : pcfCHA.betweenStep(Common.toQ(callsite), Common.toQ(targetMethod)).eval().edges()){
 			perControlFlowEdge.tag(PER_CONTROL_FLOW);
 		}
 	}
 	
+	/**
+	 * Removes the given tags from the edges that carry them. An analysis refining a CHA call
+	 * graph that was incrementally updated (see ClassHierarchyAnalysis.isIncrementalUpdate)
+	 * clears the tags of its previous run first, since the CHA edges that were kept still
+	 * carry them.
+	 * @param CALL
+	 * @param PER_CONTROL_FLOW
+	 * @return the number of edges untagged
+	 */
+	public static int untagEdges(String CALL, String PER_CONTROL_FLOW) {
+		// the tagged edges are collected before they are untagged
+		ArrayList<Edge> taggedEdges = new ArrayList<Edge>();
+		for(Edge taggedEdge : Query.universe().edges(CALL, PER_CONTROL_FLOW).eval().edges()){
+			taggedEdges.add(taggedEdge);
+		}
+		for(Edge taggedEdge : taggedEdges){
+			taggedEdge.untag(CALL);
+			taggedEdge.untag(PER_CONTROL_FLOW);
+		}
+		return taggedEdges.size();
+	}
+	
+	/**
+	 * Tags the selected call edges of a call graph snapshot and the per control flow 
+	 * edges from the callsites contained in each calling method to the called method
+	 * @param program
+	 * @param callGraph
+	 * @param callEdges the slots of the call edges to tag
+	 * @param CALL
+	 * @param PER_CONTROL_FLOW
+	 * @return the number of edges tagged
+	 */
+	public static int tagCallEdges(ProgramSnapshot program, CallGraphSnapshot<Edge> callGraph, BitSet callEdges, String CALL, String PER_CONTROL_FLOW) {
+		Adjacency containedCallsites = program.getContainedCallsites();
+		Adjacency perControlFlowEdges = callGraph.getPerControlFlowEdges();
+		
+		int tagged = 0;
+		for(int slot = callEdges.nextSetBit(0); slot >= 0; slot = callEdges.nextSetBit(slot+1)){
+			callGraph.getCallEdge(slot).tag(CALL);
+			tagged++;
+			int callingMethod = callGraph.getCaller(slot);
+			int calledMethod = callGraph.getTarget(slot);
+			for(int i=containedCallsites.start(callingMethod); i<containedCallsites.end(callingMethod); i++){
+				int callsite = containedCallsites.target(i);
+				for(int j=perControlFlowEdges.start(callsite); j<perControlFlowEdges.end(callsite); j++){
+					int perControlFlowSlot = perControlFlowEdges.target(j);
+					if(callGraph.getPerControlFlowTarget(perControlFlowSlot) == calledMethod){
+						callGraph.getPerControlFlowEdge(perControlFlowSlot).tag(PER_CONTROL_FLOW);
+						tagged++;
+					}
+				}
+			}
+		}
+		return tagged;
+	}
+	
 }
@@ -0,0 +1,135 @@
+package com.ensoftcorp.open.cg.utils;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The compact binary encoding of the files the toolbox stores on disk (see
+ * CallGraphCache and LibrarySummaryStore) and the 64 bit hashes used to
+ * fingerprint their contents (see ProgramFingerprint).
+ *
+ * Integers are written as unsigned LEB128 varints and strings as the varint
+ * length of their UTF-8 bytes followed by the bytes.
+ *
+ * Files are read into heap buffers rather than mapped, since a mapped file
+ * cannot be deleted or replaced on Windows until the mapping is garbage
+ * collected.
+ */
+public class Encoding {
+
+	private Encoding(){
+		// exists only to defeat instantiation
+	}
+
+	/**
+	 * Reads the whole file into a heap buffer
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static ByteBuffer readFile(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE){
+				throw new IOException(file + " is too large to read");
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int) size);
+			while(buffer.hasRemaining()){
+				if(channel.read(buffer) < 0){
+					throw new EOFException("Unexpected end of " + file);
+				}
+			}
+			buffer.flip();
+			return buffer;
+		}
+	}
+
+	/**
+	 * Replaces the file with the temporary file it was written to, atomically where the
+	 * file system supports it, so that a reader never sees a partially written file
+	 * @param temporaryFile
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void replaceFile(File temporaryFile, File file) throws IOException {
+		try {
+			Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e){
+			Files.move(temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	public static void writeVarInt(OutputStream output, int value) throws IOException {
+		while((value & ~0x7F) != 0){
+			output.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		output.write(value);
+	}
+
+	public static int readVarInt(ByteBuffer buffer) throws IOException {
+		int value = 0;
+		for(int shift=0; shift<32; shift+=7){
+			byte b = buffer.get();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0){
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	public static void writeString(OutputStream output, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(output, bytes.length);
+		output.write(bytes);
+	}
+
+	public static String readString(ByteBuffer buffer) throws IOException {
+		byte[] bytes = new byte[readVarInt(buffer)];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns a 64 bit hash of the string (0 for null)
+	 * @param value
+	 * @return
+	 */
+	public static long hash(String value){
+		if(value == null){
+			return 0;
+		}
+		// two independent 32 bit hashes make a 64 bit hash
+		long hash = 1125899906842597L;
+		for(int i=0; i<value.length(); i++){
+			hash = 31 * hash + value.charAt(i);
+		}
+		return mix(hash ^ (((long) value.hashCode()) << 32));
+	}
+
+	/**
+	 * Scrambles the bits of the value, so that values that differ slightly hash far apart
+	 * @param value
+	 * @return
+	 */
+	public static long mix(long value){
+		// murmur3 64-bit finalizer
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+
+}
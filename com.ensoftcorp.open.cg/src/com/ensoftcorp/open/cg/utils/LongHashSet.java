@@ -0,0 +1,138 @@
+package com.ensoftcorp.open.cg.utils;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing (linear probing) hash set of non-negative primitive longs.
+ * Typically used to hold pairs of dense int ids packed with key(int,int).
+ */
+public class LongHashSet {
+
+	private static final long EMPTY = -1L;
+
+	private long[] table;
+	private int size = 0;
+
+	public LongHashSet(){
+		this(16);
+	}
+
+	public LongHashSet(int expectedSize){
+		int capacity = 16;
+		while(capacity < expectedSize * 2){
+			capacity <<= 1;
+		}
+		table = new long[capacity];
+		Arrays.fill(table, EMPTY);
+	}
+
+	/**
+	 * Packs a pair of non-negative ints into a single long key
+	 * @param high
+	 * @param low
+	 * @return
+	 */
+	public static long key(int high, int low){
+		return (((long) high) << 32) | (low & 0xFFFFFFFFL);
+	}
+
+	public static int high(long key){
+		return (int) (key >>> 32);
+	}
+
+	public static int low(long key){
+		return (int) key;
+	}
+
+	/**
+	 * Adds the key to the set
+	 * @param key
+	 * @return true if the set did not already contain the key
+	 */
+	public boolean add(long key){
+		if(key < 0){
+			throw new IllegalArgumentException("Key " + key + " is negative");
+		}
+		if((size + 1) * 2 > table.length){
+			rehash(table.length * 2);
+		}
+		int mask = table.length - 1;
+		int index = hash(key) & mask;
+		while(table[index] != EMPTY){
+			if(table[index] == key){
+				return false;
+			}
+			index = (index + 1) & mask;
+		}
+		table[index] = key;
+		size++;
+		return true;
+	}
+
+	public boolean contains(long key){
+		int mask = table.length - 1;
+		int index = hash(key) & mask;
+		while(table[index] != EMPTY){
+			if(table[index] == key){
+				return true;
+			}
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	public void clear(){
+		Arrays.fill(table, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * Returns the keys of the set (in no particular order)
+	 * @return
+	 */
+	public long[] toArray(){
+		long[] keys = new long[size];
+		int index = 0;
+		for(long key : table){
+			if(key != EMPTY){
+				keys[index++] = key;
+			}
+		}
+		return keys;
+	}
+
+	private void rehash(int capacity){
+		long[] oldTable = table;
+		table = new long[capacity];
+		Arrays.fill(table, EMPTY);
+		int mask = capacity - 1;
+		for(long key : oldTable){
+			if(key != EMPTY){
+				int index = hash(key) & mask;
+				while(table[index] != EMPTY){
+					index = (index + 1) & mask;
+				}
+				table[index] = key;
+			}
+		}
+	}
+
+	private static int hash(long key){
+		// murmur3 64-bit finalizer
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+}